@@ -0,0 +1,126 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+
+import nablarch.core.util.BinaryUtil;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.integration.messaging.wmq.WmqBenchmarkSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BasicWmqMqmdFieldsOperator}のベンチマーク。
+ * <p/>
+ * MQMDフィールドの設定/取得と、メッセージIDの16進数表記への変換を計測する。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class BasicWmqMqmdFieldsOperatorBenchmark {
+
+    /** メッセージID */
+    private static final String MESSAGE_ID = "414D51205445535420202020202020205A24D84E20000F02";
+
+    /** ベンチマーク対象 */
+    private ExposedOperator operator;
+
+    /** 送信メッセージ */
+    private SendingMessage sendingMessage;
+
+    /** 受信した{@link MQMessage} */
+    private MQMessage receivedMqMessage;
+
+    /** バイト配列で表現されたメッセージID */
+    private byte[] messageIdBytes;
+
+    /**
+     * ベンチマークの準備を行う。
+     */
+    @Setup
+    public void setUp() {
+        WmqBenchmarkSupport.loadSystemRepository();
+        operator = new ExposedOperator();
+
+        sendingMessage = new SendingMessage();
+        sendingMessage.setCorrelationId(MESSAGE_ID);
+        sendingMessage.setReplyTo("TEST.RESPONSE");
+
+        messageIdBytes = BinaryUtil.convertHexToBytes(MESSAGE_ID);
+        receivedMqMessage = new MQMessage();
+        receivedMqMessage.messageId = messageIdBytes;
+        receivedMqMessage.correlationId = messageIdBytes;
+        receivedMqMessage.replyToQueueName = "TEST.RESPONSE";
+    }
+
+    /**
+     * メッセージ送信前のMQMDフィールドの設定。
+     * @return MQMDフィールドを設定した{@link MQMessage}
+     * @throws MQException MQMDフィールドに対して不正な操作が行われた場合
+     */
+    @Benchmark
+    public MQMessage setFieldsBeforeSend() throws MQException {
+        MQMessage mqMessage = new MQMessage();
+        operator.setFieldsBeforeSend(sendingMessage, mqMessage, 60 * 1000);
+        return mqMessage;
+    }
+
+    /**
+     * メッセージ受信後のMQMDフィールドの取得。
+     * @return MQMDフィールドを取得した受信メッセージ
+     * @throws MQException MQMDフィールドに対して不正な操作が行われた場合
+     */
+    @Benchmark
+    public ReceivedMessage getFieldsAfterReceive() throws MQException {
+        ReceivedMessage receivedMessage = new ReceivedMessage(messageIdBytes);
+        operator.getFieldsAfterReceive(receivedMqMessage, receivedMessage);
+        return receivedMessage;
+    }
+
+    /**
+     * メッセージIDのバイト配列から16進数表記への変換。
+     * @return 16進数表記のメッセージID
+     */
+    @Benchmark
+    public String convertIdToString() {
+        return operator.convertIdToString(messageIdBytes);
+    }
+
+    /**
+     * 16進数表記のメッセージIDからバイト配列への変換。
+     * @return バイト配列で表現されたメッセージID
+     */
+    @Benchmark
+    public byte[] convertIdToByte() {
+        return operator.convertIdToByte(MESSAGE_ID);
+    }
+
+    /**
+     * メッセージIDの変換処理を呼び出せるようにした{@link BasicWmqMqmdFieldsOperator}。
+     */
+    private static final class ExposedOperator extends BasicWmqMqmdFieldsOperator {
+        @Override
+        protected String convertIdToString(byte[] id) {
+            return super.convertIdToString(id);
+        }
+        @Override
+        protected byte[] convertIdToByte(String id) {
+            return super.convertIdToByte(id);
+        }
+    }
+}
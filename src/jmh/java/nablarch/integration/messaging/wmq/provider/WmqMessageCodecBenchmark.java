@@ -0,0 +1,121 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import nablarch.integration.messaging.wmq.WmqBenchmarkSupport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link DeflateWmqMessageCodec}のベンチマーク。
+ * <pre>
+ * 本文の種類とサイズ、圧縮レベルごとに、圧縮と復号に要するCPU時間を計測する。
+ * 圧縮による転送量の削減は、補助カウンタとして1操作あたりの元の長さ(originalBytes)と
+ * 圧縮後の長さ(encodedBytes)を出力する。
+ *
+ *     record: 固定長レコードを並べた本文(業務電文を想定)
+ *     random: 英数字をランダムに並べた本文(圧縮しにくい本文を想定)
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class WmqMessageCodecBenchmark {
+
+    /** 本文の種類 */
+    @Param({"record", "random"})
+    public String payload;
+
+    /** 本文のサイズ(単位:byte) */
+    @Param({"1024", "16384", "262144"})
+    public int bodySize;
+
+    /** 圧縮レベル(1は{@link java.util.zip.Deflater#BEST_SPEED}、6はDeflaterのデフォルト) */
+    @Param({"1", "6"})
+    public int level;
+
+    /** ベンチマーク対象 */
+    private DeflateWmqMessageCodec codec;
+
+    /** 本文 */
+    private byte[] body;
+
+    /** 圧縮した本文 */
+    private byte[] encoded;
+
+    /**
+     * 1操作あたりの転送量を出力する補助カウンタ。
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+
+        /** 元の本文の長さ(単位:byte) */
+        public long originalBytes;
+
+        /** 圧縮後の本文の長さ(単位:byte) */
+        public long encodedBytes;
+
+        /**
+         * 反復ごとにカウンタを初期化する。
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            originalBytes = 0;
+            encodedBytes = 0;
+        }
+    }
+
+    /**
+     * ベンチマークの準備を行う。
+     * @throws IOException 圧縮に失敗した場合
+     */
+    @Setup
+    public void setUp() throws IOException {
+        codec = new DeflateWmqMessageCodec().setLevel(level);
+        body = "record".equals(payload)
+                ? WmqBenchmarkSupport.createRecordBody(bodySize)
+                : WmqBenchmarkSupport.createBody(bodySize);
+        encoded = codec.encode(body);
+    }
+
+    /**
+     * 本文の圧縮。
+     * @param bytes 転送量の補助カウンタ
+     * @return 圧縮した本文
+     * @throws IOException 圧縮に失敗した場合
+     */
+    @Benchmark
+    public byte[] encode(Bytes bytes) throws IOException {
+        byte[] result = codec.encode(body);
+        bytes.originalBytes += body.length;
+        bytes.encodedBytes += result.length;
+        return result;
+    }
+
+    /**
+     * 圧縮した本文の復号。
+     * @return 復号した本文
+     * @throws IOException 復号に失敗した場合
+     */
+    @Benchmark
+    public byte[] decode() throws IOException {
+        return codec.decode(encoded);
+    }
+}
@@ -0,0 +1,83 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.integration.messaging.wmq.WmqBenchmarkSupport;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link WmqMessagingProvider#putMessage(MQQueue, SendingMessage)}と
+ * {@link WmqMessagingProvider#getMessage(MQQueue, String, long, MQQueue)}のベンチマーク。
+ * <p/>
+ * {@link InMemoryQueueManager}のキューに対する書き込みと読み込みを1往復として計測する。
+ * 計測結果にはネットワークやキューマネージャの処理時間は含まれず、アダプタ自身の処理時間のみが含まれる。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class WmqMessagingProviderBenchmark {
+
+    /** 本文のサイズ(単位:byte) */
+    @Param({"128", "4096", "65536"})
+    public int bodySize;
+
+    /** ベンチマーク対象 */
+    private WmqMessagingProvider provider;
+
+    /** 送受信に使用するキュー */
+    private MQQueue mqQueue;
+
+    /** 本文 */
+    private byte[] body;
+
+    /**
+     * ベンチマークの準備を行う。
+     * @throws MQException キューのオープンに失敗した場合
+     */
+    @Setup
+    public void setUp() throws MQException {
+        WmqBenchmarkSupport.loadSystemRepository();
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("BENCHMARK.QM");
+        provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setUseXa(false);
+        mqQueue = queueManager.connect().accessQueue("BENCHMARK", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        body = WmqBenchmarkSupport.createBody(bodySize);
+    }
+
+    /**
+     * メッセージの書き込みと読み込み。
+     * @return 受信メッセージ
+     * @throws IOException 本文の書き込みに失敗した場合
+     */
+    @Benchmark
+    public ReceivedMessage putAndGet() throws IOException {
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setDestination("BENCHMARK");
+        sendingMessage.getBodyStream().write(body);
+        provider.putMessage(mqQueue, sendingMessage);
+        return provider.getMessage(mqQueue, null, 0, null);
+    }
+}
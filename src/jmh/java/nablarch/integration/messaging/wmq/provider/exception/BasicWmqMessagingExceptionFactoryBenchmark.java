@@ -0,0 +1,83 @@
+package nablarch.integration.messaging.wmq.provider.exception;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.fw.messaging.MessagingException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BasicWmqMessagingExceptionFactory}のベンチマーク。
+ * <p/>
+ * 発生した例外の種類ごとに、MOM接続エラーの判定と例外の生成を計測する。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class BasicWmqMessagingExceptionFactoryBenchmark {
+
+    /**
+     * 発生した例外の種類。
+     * <pre>
+     * connection
+     *     MOM接続エラーの理由コードを持つ{@link MQException}
+     * other
+     *     MOM接続エラー以外の理由コードを持つ{@link MQException}
+     * nested
+     *     MOM接続エラーの{@link MQException}を3階層下に持つ例外
+     * notMq
+     *     {@link MQException}を含まない例外
+     * </pre>
+     */
+    @Param({"connection", "other", "nested", "notMq"})
+    public String cause;
+
+    /** ベンチマーク対象 */
+    private BasicWmqMessagingExceptionFactory factory;
+
+    /** 発生した例外 */
+    private Throwable throwable;
+
+    /**
+     * ベンチマークの準備を行う。
+     */
+    @Setup
+    public void setUp() {
+        factory = new BasicWmqMessagingExceptionFactory();
+        MQException connectionError = new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_CONNECTION_BROKEN, null);
+        if ("connection".equals(cause)) {
+            throwable = connectionError;
+        } else if ("other".equals(cause)) {
+            throwable = new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_NOT_OPEN_FOR_OUTPUT, null);
+        } else if ("nested".equals(cause)) {
+            throwable = new RuntimeException(new IllegalStateException(new RuntimeException(connectionError)));
+        } else {
+            throwable = new IllegalArgumentException("not mq");
+        }
+    }
+
+    /**
+     * 例外の生成。
+     * @return 生成した例外
+     */
+    @Benchmark
+    public MessagingException createMessagingException() {
+        return factory.createMessagingException("benchmark", throwable);
+    }
+}
@@ -0,0 +1,35 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 処理中の送信数が最も少ない候補を選択するクラス。
+ * <p/>
+ * 応答の遅いキューマネージャほど処理中の送信数が多くなるため、送信が応答の速いキューマネージャに寄る。
+ * 処理中の送信数が同じ候補が複数ある場合は、それらを順番に選択する。
+ */
+public class LeastInFlightWmqLoadBalancingPolicy implements WmqLoadBalancingPolicy {
+
+    /** 選択した回数 */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    public WmqClusterMember select(List<WmqClusterMember> candidates) {
+        int size = candidates.size();
+        int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        WmqClusterMember selected = null;
+        int least = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            WmqClusterMember candidate = candidates.get((start + i) % size);
+            int inFlight = candidate.getInFlight();
+            if (inFlight < least) {
+                least = inFlight;
+                selected = candidate;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,21 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 送信先の候補を順番に選択するクラス。
+ */
+public class RoundRobinWmqLoadBalancingPolicy implements WmqLoadBalancingPolicy {
+
+    /** 選択した回数 */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    public WmqClusterMember select(List<WmqClusterMember> candidates) {
+        int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % candidates.size();
+        return candidates.get(index);
+    }
+}
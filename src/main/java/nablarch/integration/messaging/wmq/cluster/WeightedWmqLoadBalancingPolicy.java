@@ -0,0 +1,38 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 送信先の候補を重み({@link WmqClusterMember#getWeight()})の比率で選択するクラス。
+ * <p/>
+ * 平滑化した重み付きラウンドロビンで選択するため、重みの大きい候補が連続して選択されることはなく、
+ * 重みの比率に従って各候補に均等に分散する。
+ */
+public class WeightedWmqLoadBalancingPolicy implements WmqLoadBalancingPolicy {
+
+    /** 候補ごとの現在の重み */
+    private final Map<WmqClusterMember, Integer> currentWeights = new IdentityHashMap<WmqClusterMember, Integer>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized WmqClusterMember select(List<WmqClusterMember> candidates) {
+        WmqClusterMember selected = null;
+        int selectedWeight = Integer.MIN_VALUE;
+        int totalWeight = 0;
+        for (WmqClusterMember candidate : candidates) {
+            Integer current = currentWeights.get(candidate);
+            int weight = (current == null ? 0 : current) + candidate.getWeight();
+            currentWeights.put(candidate, weight);
+            totalWeight += candidate.getWeight();
+            if (weight > selectedWeight) {
+                selectedWeight = weight;
+                selected = candidate;
+            }
+        }
+        currentWeights.put(selected, selectedWeight - totalWeight);
+        return selected;
+    }
+}
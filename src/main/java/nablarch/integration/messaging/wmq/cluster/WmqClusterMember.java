@@ -0,0 +1,119 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.integration.messaging.wmq.provider.WmqMessagingProvider;
+
+/**
+ * {@link WmqClusterMessagingProvider}の送信先となる1つのキューマネージャ。
+ * <pre>
+ * キューマネージャへの接続と送信は、メンバごとに設定した{@link WmqMessagingProvider}が行う。
+ * 
+ * メンバの状態(処理中の送信数と接続障害による除外期限)は、
+ * {@link WmqClusterMessagingProvider}が生成したすべての{@link WmqClusterMessagingContext}で共有する。
+ * </pre>
+ */
+public class WmqClusterMember {
+
+    /** 接続と送信に使用する{@link WmqMessagingProvider} */
+    private WmqMessagingProvider provider;
+
+    /** 重み */
+    private int weight = 1;
+
+    /** 処理中の送信数 */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** 送信先から除外する期限(エポックミリ秒) */
+    private volatile long unavailableUntil = 0L;
+
+    /**
+     * 接続と送信に使用する{@link WmqMessagingProvider}を取得する。
+     * @return 接続と送信に使用する{@link WmqMessagingProvider}
+     */
+    public WmqMessagingProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * 重みを取得する。
+     * @return 重み
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * 処理中の送信数を取得する。
+     * @return 処理中の送信数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 送信先として使用できるか否かを判定する。
+     * @param now 現在時刻(エポックミリ秒)
+     * @return 接続障害により除外されていない場合はtrue
+     */
+    public boolean isAvailable(long now) {
+        return unavailableUntil <= now;
+    }
+
+    /**
+     * 送信の開始を記録する。
+     */
+    void beginSend() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 送信の終了を記録する。
+     */
+    void endSend() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 接続障害を記録し、指定された期限まで送信先から除外する。
+     * @param until 除外する期限(エポックミリ秒)
+     */
+    void markUnavailable(long until) {
+        unavailableUntil = until;
+    }
+
+    /**
+     * 送信の成功を記録し、送信先からの除外を解除する。
+     */
+    void markAvailable() {
+        if (unavailableUntil != 0L) {
+            unavailableUntil = 0L;
+        }
+    }
+
+    /**
+     * 接続と送信に使用する{@link WmqMessagingProvider}を設定する。
+     * @param provider 接続と送信に使用する{@link WmqMessagingProvider}
+     * @return このオブジェクト自体
+     */
+    public WmqClusterMember setProvider(WmqMessagingProvider provider) {
+        this.provider = provider;
+        return this;
+    }
+
+    /**
+     * 重みを設定する。
+     * <p/>
+     * {@link WeightedWmqLoadBalancingPolicy}が使用する。デフォルトは1。
+     *
+     * @param weight 重み(1以上)
+     * @return このオブジェクト自体
+     */
+    public WmqClusterMember setWeight(int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be greater than 0. weight = [" + weight + "]");
+        }
+        this.weight = weight;
+        return this;
+    }
+}
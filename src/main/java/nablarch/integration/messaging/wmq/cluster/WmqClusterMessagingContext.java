@@ -0,0 +1,452 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.StringUtil;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.provider.exception.MomConnectionException;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+
+/**
+ * {@link WmqClusterMessagingProvider}が生成する{@link MessagingContext}。
+ * <pre>
+ * キューマネージャごとの{@link WmqMessagingContext}を、最初に使用する時点で生成して保持する。
+ * 
+ * メッセージIDを指定した受信は、このコンテキストで最後に送信したキューマネージャから行う。
+ * 同期応答メッセージの送信({@link #sendSync(SendingMessage)})では、
+ * 要求メッセージを送信したキューマネージャから応答メッセージを受信する。
+ * 送信する前に受信する場合は、{@link WmqLoadBalancingPolicy}が選択したキューマネージャから受信する。
+ * 
+ * メッセージIDを指定しない受信は、すべてのキューマネージャの同じ受信キューを競合コンシューマとして読み込む。
+ * {@link WmqLoadBalancingPolicy}が選択したキューマネージャから順に、
+ * 1つのキューマネージャあたり最大{@link WmqClusterMessagingProvider#setReceivePollInterval(long)}の時間だけ待機して読み込み、
+ * メッセージがなければ次のキューマネージャに移る。これをタイムアウト値に達するまで繰り返す。
+ * 接続障害が発生したキューマネージャは送信と同様に除外する。
+ * 
+ * 同期点はキューマネージャへの接続ごとであり、複数のキューマネージャの作業単位を原子的にコミットする手段はない。
+ * このため、作業単位は1つのキューマネージャへの接続で開き、下記のように制御する。
+ * 
+ *     - {@link #begin()}で作業単位を開始する。各キューマネージャの{@link WmqMessagingContext}の作業単位は、
+ *       作業単位の中で最初に使用する時点で開始する。
+ *     - 作業単位の中で最初にメッセージを受信した、または送信したキューマネージャに作業単位を固定する。
+ *       以降の送受信はそのキューマネージャでのみ行い、接続障害が発生しても他のキューマネージャに送受信し直さない。
+ *     - 作業単位を固定したキューマネージャの{@link WmqMessagingContext}をカレントスレッドに紐づける。
+ *       作業単位の中では、{@link WmqMessagingContext#getInstance()}でそのコンテキストを取得し、
+ *       {@link WmqMessagingContext#getJdbcConnection(javax.sql.XADataSource)}などで同じ作業単位に参加できる。
+ *     - {@link #commit()}と{@link #backout()}は、作業単位を固定したキューマネージャでコミットまたはバックアウトし、
+ *       メッセージを受信しなかった他のキューマネージャの作業単位はバックアウトする。
+ *       作業単位の終了後は、紐づけを作業単位の開始前の状態に戻す。
+ * 
+ * 作業単位を使用する場合は、各キューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}の
+ * useXaプロパティにtrueを指定すること。受信したメッセージは、コミットするまでキューから削除されず、
+ * バックアウトした場合はバックアウト回数によるポイズンメッセージの判定と退避の対象となる。
+ * 同期点内で送受信したメッセージはコミットするまで確定しないため、送受信は必ず作業単位の中で行うこと。
+ * 作業単位の開始はキューマネージャが決まる前に行われるため、
+ * {@link nablarch.integration.messaging.wmq.xa.WmqXATransaction}ではなく本クラスの{@link #begin()}、
+ * {@link #commit()}、{@link #backout()}を使用すること。
+ * 
+ * useXaプロパティにfalseを指定した場合は、送信と受信はいずれも同期点外で行われ、下記の動作となる。
+ * 
+ *     - 送信したメッセージは、送信した時点で送信先のキューマネージャで確定する。
+ *       1つの処理で複数のメッセージを送信した後に処理が失敗しても、送信済みのメッセージは取り消されない。
+ *     - 受信したメッセージは、受信した時点でキューから削除される。
+ *       受信後に処理が失敗してもキューには戻らないため、バックアウト回数によるポイズンメッセージの判定と退避は行われない。
+ *     - {@link #begin()}は{@link IllegalStateException}を送出する。
+ * 
+ * このコンテキストがスレッドに紐づけられている場合(作業単位を固定している間を除く)、
+ * {@link WmqMessagingContext#getInstance()}は{@link IllegalStateException}を送出する。
+ * 
+ * 本クラスはスレッドセーフではない。スレッドごとにコンテキストを生成すること。
+ * </pre>
+ */
+public class WmqClusterMessagingContext extends MessagingContext {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get("MESSAGING");
+
+    /** このコンテキストを生成した{@link WmqClusterMessagingProvider} */
+    private final WmqClusterMessagingProvider provider;
+
+    /** キューマネージャごとの{@link WmqMessagingContext} */
+    private final Map<WmqClusterMember, WmqMessagingContext> contexts
+            = new IdentityHashMap<WmqClusterMember, WmqMessagingContext>();
+
+    /** 最後に送信したキューマネージャ。送信していない場合はnull */
+    private WmqClusterMember lastMember = null;
+
+    /** 作業単位を開始している場合はtrue */
+    private boolean unitOfWorkStarted = false;
+
+    /** 作業単位を開始したキューマネージャ */
+    private final List<WmqClusterMember> begunMembers = new ArrayList<WmqClusterMember>();
+
+    /** 作業単位を固定したキューマネージャ。固定していない場合はnull */
+    private WmqClusterMember unitOfWorkMember = null;
+
+    /** 作業単位を固定したキューマネージャの{@link WmqMessagingContext}をカレントスレッドに紐づけている場合はtrue */
+    private boolean bound = false;
+
+    /** 紐づけの前にカレントスレッドに紐づけられていたコンテキスト。紐づけられていなかった場合はnull */
+    private MessagingContext previousContext = null;
+
+    /**
+     * コンストラクタ。
+     * @param provider このコンテキストを生成した{@link WmqClusterMessagingProvider}
+     */
+    public WmqClusterMessagingContext(WmqClusterMessagingProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * {@link WmqLoadBalancingPolicy}が選択したキューマネージャに送信する。
+     * {@link MomConnectionException}が送出された場合は、そのキューマネージャを送信先から除外し、
+     * 残りのキューマネージャから選択し直して送信する。
+     * すべてのキューマネージャで失敗した場合は、最後に送出された{@link MomConnectionException}を送出する。
+     * <p/>
+     * 作業単位を固定したキューマネージャがある場合は、そのキューマネージャにのみ送信し、送信し直さずに例外を送出する。
+     * 他のキューマネージャに送信し直すと、作業単位の中で送受信したメッセージの一部のみが確定するためである。
+     * なお、同期点外の送信で接続障害が発生した場合、メッセージがキューマネージャに書き込まれたか否かは判別できないため、
+     * 送信し直したメッセージが重複して届く可能性がある。
+     */
+    @Override
+    public String sendMessage(SendingMessage sendingMessage) {
+        List<WmqClusterMember> failed = new ArrayList<WmqClusterMember>();
+        while (true) {
+            List<WmqClusterMember> candidates = getCandidates(failed);
+            WmqClusterMember member = provider.getLoadBalancingPolicy().select(candidates);
+            member.beginSend();
+            try {
+                String messageId = getContext(member).sendMessage(sendingMessage);
+                member.markAvailable();
+                lastMember = member;
+                fixUnitOfWork(member);
+                return messageId;
+            } catch (MomConnectionException e) {
+                handleConnectionError(member, e);
+                failed.add(member);
+                if (candidates.size() == 1) {
+                    throw e;
+                }
+            } finally {
+                member.endSend();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * メッセージIDが指定された場合は、最後に送信したキューマネージャ(作業単位を固定している場合はそのキューマネージャ)から受信する。
+     * {@link MomConnectionException}が送出された場合は、そのキューマネージャを送信先から除外した上で送出する。
+     * <p/>
+     * メッセージIDが指定されない場合は、{@link #receiveFromAny(String, long)}メソッドに処理を委譲する。
+     */
+    @Override
+    public ReceivedMessage receiveMessage(String receiveQueue, String messageId, long timeout) {
+        if (StringUtil.isNullOrEmpty(messageId)) {
+            return receiveFromAny(receiveQueue, timeout);
+        }
+        WmqClusterMember member = unitOfWorkMember != null ? unitOfWorkMember : lastMember;
+        if (member == null) {
+            member = provider.getLoadBalancingPolicy().select(
+                    provider.getCandidates(new ArrayList<WmqClusterMember>()));
+        }
+        try {
+            ReceivedMessage receivedMessage = getContext(member).receiveMessage(receiveQueue, messageId, timeout);
+            if (receivedMessage != null) {
+                fixUnitOfWork(member);
+            }
+            return receivedMessage;
+        } catch (MomConnectionException e) {
+            handleConnectionError(member, e);
+            throw e;
+        }
+    }
+
+    /**
+     * すべてのキューマネージャの受信キューから、最初に読み込めたメッセージを受信する。
+     * <p/>
+     * 作業単位を開始している場合は、メッセージを受信したキューマネージャに作業単位を固定する。
+     * 作業単位を固定したキューマネージャがある場合は、そのキューマネージャからのみ受信する。
+     * 作業単位を開始していない場合は同期点外で読み込むため、受信したメッセージは受信した時点でキューから削除される。
+     * <p/>
+     * すべてのキューマネージャで接続障害が発生した場合は、最後に送出された{@link MomConnectionException}を送出する。
+     *
+     * @param receiveQueue 受信キュー名
+     * @param timeout タイムアウト値(単位:msec)。0以下の場合はデフォルトのタイムアウト値を使用する
+     * @return 受信メッセージ。タイムアウト値までに受信できなかった場合はnull
+     */
+    protected ReceivedMessage receiveFromAny(String receiveQueue, long timeout) {
+        long deadline = System.currentTimeMillis() + (timeout > 0 ? timeout : provider.getDefaultResponseTimeout());
+        List<WmqClusterMember> failed = new ArrayList<WmqClusterMember>();
+        while (true) {
+            List<WmqClusterMember> candidates = getCandidates(failed);
+            int size = candidates.size();
+            int start = candidates.indexOf(provider.getLoadBalancingPolicy().select(candidates));
+            for (int i = 0; i < size; i++) {
+                WmqClusterMember member = candidates.get((start + i) % size);
+                long wait = Math.max(1L, Math.min(provider.getReceivePollInterval(),
+                                                  deadline - System.currentTimeMillis()));
+                try {
+                    ReceivedMessage receivedMessage = getContext(member).receiveMessage(receiveQueue, null, wait);
+                    member.markAvailable();
+                    if (receivedMessage != null) {
+                        fixUnitOfWork(member);
+                        return receivedMessage;
+                    }
+                } catch (MomConnectionException e) {
+                    handleConnectionError(member, e);
+                    failed.add(member);
+                    if (unitOfWorkMember != null || failed.size() >= provider.getMemberCount()) {
+                        throw e;
+                    }
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 作業単位を開始する。
+     * <p/>
+     * 各キューマネージャの{@link WmqMessagingContext}の作業単位は、作業単位の中で最初に使用する時点で開始する。
+     *
+     * @throws IllegalStateException 作業単位を既に開始している場合、
+     *                               またはuseXaプロパティがfalseのキューマネージャがある場合
+     */
+    public void begin() {
+        if (unitOfWorkStarted) {
+            throw new IllegalStateException("unit of work was already started.");
+        }
+        provider.checkXa();
+        unitOfWorkStarted = true;
+    }
+
+    /**
+     * 作業単位をコミットする。
+     * <p/>
+     * 作業単位を固定したキューマネージャでコミットし、他のキューマネージャの作業単位はバックアウトする。
+     *
+     * @throws IllegalStateException 作業単位を開始していない場合
+     * @throws MessagingException 作業単位を固定したキューマネージャとの接続が失われていた場合
+     *                            (作業単位はキューマネージャによってバックアウトされている)
+     */
+    public void commit() {
+        checkUnitOfWork();
+        try {
+            if (unitOfWorkMember != null) {
+                WmqMessagingContext context = contexts.get(unitOfWorkMember);
+                if (context == null) {
+                    throw new MessagingException(
+                            "could not commit the unit of work because the connection to the queue manager was lost.");
+                }
+                context.commit();
+            }
+        } finally {
+            endUnitOfWork();
+        }
+    }
+
+    /**
+     * 作業単位をバックアウトする。
+     * <p/>
+     * 作業単位を固定したキューマネージャでバックアウトし、他のキューマネージャの作業単位もバックアウトする。
+     *
+     * @throws IllegalStateException 作業単位を開始していない場合
+     */
+    public void backout() {
+        checkUnitOfWork();
+        try {
+            if (unitOfWorkMember != null) {
+                WmqMessagingContext context = contexts.get(unitOfWorkMember);
+                if (context != null) {
+                    context.backout();
+                }
+            }
+        } finally {
+            endUnitOfWork();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 作業単位を開始している場合はバックアウトした後、生成済みのすべての{@link WmqMessagingContext}をクローズする。
+     */
+    @Override
+    public void close() {
+        if (unitOfWorkStarted) {
+            if (unitOfWorkMember != null && contexts.containsKey(unitOfWorkMember)) {
+                backoutQuietly(contexts.get(unitOfWorkMember));
+            }
+            endUnitOfWork();
+        }
+        for (WmqMessagingContext context : contexts.values()) {
+            closeQuietly(context);
+        }
+        contexts.clear();
+        lastMember = null;
+    }
+
+    /**
+     * 指定されたキューマネージャの{@link WmqMessagingContext}を取得する。生成していない場合は生成する。
+     * @param member キューマネージャ
+     * @return {@link WmqMessagingContext}
+     */
+    private WmqMessagingContext getContext(WmqClusterMember member) {
+        WmqMessagingContext context = contexts.get(member);
+        if (context == null) {
+            context = (WmqMessagingContext) member.getProvider().createContext();
+            contexts.put(member, context);
+        }
+        beginIfNecessary(member, context);
+        return context;
+    }
+
+    /**
+     * 作業単位を開始している場合に、指定されたキューマネージャの作業単位を開始していなければ開始する。
+     * @param member キューマネージャ
+     * @param context キューマネージャの{@link WmqMessagingContext}
+     */
+    private void beginIfNecessary(WmqClusterMember member, WmqMessagingContext context) {
+        if (unitOfWorkStarted && !begunMembers.contains(member)) {
+            context.begin();
+            begunMembers.add(member);
+        }
+    }
+
+    /**
+     * 送受信の候補を取得する。
+     * <p/>
+     * 作業単位を固定したキューマネージャがある場合は、そのキューマネージャのみを返す。
+     *
+     * @param failed この送受信で既に失敗したキューマネージャ
+     * @return 送受信の候補
+     */
+    private List<WmqClusterMember> getCandidates(List<WmqClusterMember> failed) {
+        if (unitOfWorkMember != null) {
+            return Collections.singletonList(unitOfWorkMember);
+        }
+        return provider.getCandidates(failed);
+    }
+
+    /**
+     * 作業単位を開始している場合は、メッセージを送受信したキューマネージャに作業単位を固定し、
+     * そのキューマネージャの{@link WmqMessagingContext}をカレントスレッドに紐づける。
+     * @param member メッセージを送受信したキューマネージャ
+     */
+    private void fixUnitOfWork(WmqClusterMember member) {
+        if (!unitOfWorkStarted || unitOfWorkMember != null) {
+            return;
+        }
+        unitOfWorkMember = member;
+        previousContext = getBoundContext();
+        MessagingContext.attach(contexts.get(member));
+        bound = true;
+    }
+
+    /**
+     * 作業単位を終了する。
+     * <p/>
+     * 作業単位を固定したキューマネージャ以外の作業単位をバックアウトし、
+     * カレントスレッドの紐づけを作業単位の開始前の状態に戻す。
+     */
+    private void endUnitOfWork() {
+        for (WmqClusterMember member : begunMembers) {
+            WmqMessagingContext context = contexts.get(member);
+            if (member != unitOfWorkMember && context != null) {
+                backoutQuietly(context);
+            }
+        }
+        begunMembers.clear();
+        unitOfWorkMember = null;
+        unitOfWorkStarted = false;
+        if (bound) {
+            if (previousContext != null) {
+                MessagingContext.attach(previousContext);
+            } else {
+                MessagingContext.detach();
+            }
+            bound = false;
+            previousContext = null;
+        }
+    }
+
+    /**
+     * 作業単位を開始していることをチェックする。
+     * @throws IllegalStateException 作業単位を開始していない場合
+     */
+    private void checkUnitOfWork() {
+        if (!unitOfWorkStarted) {
+            throw new IllegalStateException("unit of work was not started.");
+        }
+    }
+
+    /**
+     * カレントスレッドに紐づけられているコンテキストを取得する。
+     * @return カレントスレッドに紐づけられているコンテキスト。紐づけられていない場合はnull
+     */
+    private static MessagingContext getBoundContext() {
+        try {
+            return MessagingContext.getInstance();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 接続障害が発生したキューマネージャを送信先から除外し、{@link WmqMessagingContext}を破棄する。
+     * @param member キューマネージャ
+     * @param e 送出された例外
+     */
+    private void handleConnectionError(WmqClusterMember member, MomConnectionException e) {
+        LOGGER.logWarn(String.format("queue manager was excluded from the destinations for %s msec.",
+                                     provider.getRecoveryInterval()), e);
+        member.markUnavailable(System.currentTimeMillis() + provider.getRecoveryInterval());
+        begunMembers.remove(member);
+        WmqMessagingContext context = contexts.remove(member);
+        if (context != null) {
+            closeQuietly(context);
+        }
+        if (lastMember == member) {
+            lastMember = null;
+        }
+    }
+
+    /**
+     * 例外を送出せずに{@link WmqMessagingContext}の作業単位をバックアウトする。
+     * @param context {@link WmqMessagingContext}
+     */
+    private void backoutQuietly(WmqMessagingContext context) {
+        try {
+            context.backout();
+        } catch (RuntimeException e) {
+            LOGGER.logWarn("failed to backout the unit of work.", e);
+        }
+    }
+
+    /**
+     * 例外を送出せずに{@link WmqMessagingContext}をクローズする。
+     * @param context {@link WmqMessagingContext}
+     */
+    private void closeQuietly(WmqMessagingContext context) {
+        try {
+            context.close();
+        } catch (RuntimeException e) {
+            LOGGER.logWarn("failed to close messaging context.", e);
+        }
+    }
+}
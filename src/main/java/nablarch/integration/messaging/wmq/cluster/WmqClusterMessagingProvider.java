@@ -0,0 +1,275 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.MessagingProvider;
+import nablarch.fw.messaging.provider.MessagingExceptionFactory;
+import nablarch.fw.messaging.provider.exception.MomConnectionException;
+import nablarch.integration.messaging.wmq.provider.exception.BasicWmqMessagingExceptionFactory;
+
+/**
+ * 複数のキューマネージャに負荷を分散して送信する{@link MessagingProvider}の実装クラス。
+ * <pre>
+ * キューマネージャごとに{@link WmqClusterMember}を設定し、送信のたびに
+ * {@link WmqLoadBalancingPolicy}が選択したキューマネージャに送信する。
+ * 
+ * 送信またはキューマネージャへの接続で{@link MomConnectionException}
+ * ({@link BasicWmqMessagingExceptionFactory}が接続障害と判定した例外)が送出された場合は、
+ * そのキューマネージャを{@link #recoveryInterval}の間送信先から除外し、他のキューマネージャに送信し直す。
+ * 除外期間が過ぎたキューマネージャは再び送信先の候補となり、送信に成功した時点で除外が解除される。
+ * すべてのキューマネージャが除外されている場合は、除外期間中でもすべてのキューマネージャを候補とする。
+ * 
+ * 接続障害以外の例外は送信し直さずに送出する。
+ * 
+ * メッセージIDを指定しない受信では、すべてのキューマネージャの同じ受信キューを順に読み込む
+ * (詳細は{@link WmqClusterMessagingContext}を参照)。
+ * 各キューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}には、
+ * 同じ受信キュー名と、キューマネージャごとの退避キューを設定すること。
+ * 
+ * 設定例:
+ * 
+ *     &lt;component name="messagingProvider"
+ *                class="nablarch.integration.messaging.wmq.cluster.WmqClusterMessagingProvider"&gt;
+ *       &lt;property name="members"&gt;
+ *         &lt;list&gt;
+ *           &lt;component class="nablarch.integration.messaging.wmq.cluster.WmqClusterMember"&gt;
+ *             &lt;property name="provider" ref="qm1MessagingProvider" /&gt;
+ *           &lt;/component&gt;
+ *           &lt;component class="nablarch.integration.messaging.wmq.cluster.WmqClusterMember"&gt;
+ *             &lt;property name="provider" ref="qm2MessagingProvider" /&gt;
+ *           &lt;/component&gt;
+ *         &lt;/list&gt;
+ *       &lt;/property&gt;
+ *       &lt;property name="loadBalancingPolicy"&gt;
+ *         &lt;component class="nablarch.integration.messaging.wmq.cluster.LeastInFlightWmqLoadBalancingPolicy" /&gt;
+ *       &lt;/property&gt;
+ *     &lt;/component&gt;
+ * 
+ * 各キューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}は
+ * 通常どおり初期化対象のコンポーネントとして設定すること。
+ * 
+ * 複数のキューマネージャにまたがる作業単位は原子的にコミットできないため、作業単位は1つのキューマネージャへの接続で開く。
+ * 各キューマネージャのuseXaプロパティにtrueを指定した場合は、{@link WmqClusterMessagingContext#begin()}で開始した作業単位を、
+ * メッセージを受信したキューマネージャでコミットまたはバックアウトする。
+ * falseを指定した場合は、送信と受信はいずれも同期点外で行われ、送受信した時点で各キューマネージャで確定する
+ * (詳細は{@link WmqClusterMessagingContext}を参照)。
+ * </pre>
+ */
+public class WmqClusterMessagingProvider implements MessagingProvider {
+
+    /** 送信先のキューマネージャ */
+    private List<WmqClusterMember> members = Collections.emptyList();
+
+    /** 送信先を選択する{@link WmqLoadBalancingPolicy} */
+    private WmqLoadBalancingPolicy loadBalancingPolicy = new RoundRobinWmqLoadBalancingPolicy();
+
+    /** 接続障害が発生したキューマネージャを送信先から除外する期間(単位:msec) */
+    private long recoveryInterval = 30 * 1000;
+
+    /** メッセージIDを指定しない受信で、1つのキューマネージャあたりに待機する時間(単位:msec) */
+    private long receivePollInterval = 100;
+
+    /** 受信のデフォルトのタイムアウト値(単位:msec) */
+    private long defaultResponseTimeout = 300 * 1000;
+
+    /**
+     * {@link WmqClusterMessagingContext}を生成する。
+     * <p/>
+     * キューマネージャへの接続は、各キューマネージャへの最初の送信時に行う。
+     *
+     * @return {@link WmqClusterMessagingContext}
+     */
+    public MessagingContext createContext() {
+        if (members.isEmpty()) {
+            throw new IllegalStateException("members was not set.");
+        }
+        return new WmqClusterMessagingContext(this);
+    }
+
+    /**
+     * すべてのキューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}が
+     * 同期点内で送受信する(useXaプロパティがtrueである)ことをチェックする。
+     * @throws IllegalStateException useXaプロパティがfalseのキューマネージャがある場合
+     */
+    void checkXa() {
+        for (WmqClusterMember member : members) {
+            if (!member.getProvider().isUseXa()) {
+                throw new IllegalStateException(
+                        "unit of work requires the syncpoint. "
+                      + "must be set true to WmqMessagingProvider's useXa property of all members.");
+            }
+        }
+    }
+
+    /**
+     * 送信先の候補を取得する。
+     * <p/>
+     * 送信先から除外されていないキューマネージャを返す。
+     * すべてのキューマネージャが除外されている場合は、すべてのキューマネージャを返す。
+     *
+     * @param excluded この送信で既に失敗したキューマネージャ
+     * @return 送信先の候補。候補がない場合は空のリスト
+     */
+    List<WmqClusterMember> getCandidates(List<WmqClusterMember> excluded) {
+        long now = System.currentTimeMillis();
+        List<WmqClusterMember> available = new ArrayList<WmqClusterMember>(members.size());
+        List<WmqClusterMember> remaining = new ArrayList<WmqClusterMember>(members.size());
+        for (WmqClusterMember member : members) {
+            if (excluded.contains(member)) {
+                continue;
+            }
+            remaining.add(member);
+            if (member.isAvailable(now)) {
+                available.add(member);
+            }
+        }
+        return available.isEmpty() ? remaining : available;
+    }
+
+    /**
+     * キューマネージャの数を取得する。
+     * @return キューマネージャの数
+     */
+    int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * すべてのキューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}が
+     * 準備完了であるか否かを判定する。
+     * @return すべて準備完了の場合はtrue
+     * @see nablarch.integration.messaging.wmq.provider.WmqMessagingProvider#isReady()
+     */
+    public boolean isReady() {
+        for (WmqClusterMember member : members) {
+            if (!member.getProvider().isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * メッセージIDを指定しない受信で、1つのキューマネージャあたりに待機する時間(単位:msec)を取得する。
+     * @return 1つのキューマネージャあたりに待機する時間(単位:msec)
+     */
+    long getReceivePollInterval() {
+        return receivePollInterval;
+    }
+
+    /**
+     * 受信のデフォルトのタイムアウト値(単位:msec)を取得する。
+     * @return 受信のデフォルトのタイムアウト値(単位:msec)
+     */
+    long getDefaultResponseTimeout() {
+        return defaultResponseTimeout;
+    }
+
+    /**
+     * 送信先を選択する{@link WmqLoadBalancingPolicy}を取得する。
+     * @return 送信先を選択する{@link WmqLoadBalancingPolicy}
+     */
+    WmqLoadBalancingPolicy getLoadBalancingPolicy() {
+        return loadBalancingPolicy;
+    }
+
+    /**
+     * 接続障害が発生したキューマネージャを送信先から除外する期間(単位:msec)を取得する。
+     * @return 接続障害が発生したキューマネージャを送信先から除外する期間(単位:msec)
+     */
+    long getRecoveryInterval() {
+        return recoveryInterval;
+    }
+
+    /**
+     * 送信先のキューマネージャを設定する。
+     * @param members 送信先のキューマネージャ
+     * @return このオブジェクト自体
+     */
+    public WmqClusterMessagingProvider setMembers(List<WmqClusterMember> members) {
+        this.members = new ArrayList<WmqClusterMember>(members);
+        return this;
+    }
+
+    /**
+     * 送信先を選択する{@link WmqLoadBalancingPolicy}を設定する。
+     * <p/>
+     * デフォルトは{@link RoundRobinWmqLoadBalancingPolicy}。
+     *
+     * @param loadBalancingPolicy 送信先を選択する{@link WmqLoadBalancingPolicy}
+     * @return このオブジェクト自体
+     */
+    public WmqClusterMessagingProvider setLoadBalancingPolicy(WmqLoadBalancingPolicy loadBalancingPolicy) {
+        this.loadBalancingPolicy = loadBalancingPolicy;
+        return this;
+    }
+
+    /**
+     * 接続障害が発生したキューマネージャを送信先から除外する期間(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは30秒。
+     *
+     * @param recoveryInterval 接続障害が発生したキューマネージャを送信先から除外する期間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqClusterMessagingProvider setRecoveryInterval(long recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+        return this;
+    }
+
+    /**
+     * メッセージIDを指定しない受信で、1つのキューマネージャあたりに待機する時間(単位:msec)を設定する。
+     * <p/>
+     * 他のキューマネージャに到着したメッセージは、最大で(キューマネージャの数 - 1) × この時間だけ遅れて受信される。
+     * デフォルトは100ミリ秒。
+     *
+     * @param receivePollInterval 1つのキューマネージャあたりに待機する時間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqClusterMessagingProvider setReceivePollInterval(long receivePollInterval) {
+        this.receivePollInterval = receivePollInterval;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 設定済みのすべてのキューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}に設定する。
+     */
+    public MessagingProvider setDefaultResponseTimeout(long defaultResponseTimeout) {
+        this.defaultResponseTimeout = defaultResponseTimeout;
+        for (WmqClusterMember member : members) {
+            member.getProvider().setDefaultResponseTimeout(defaultResponseTimeout);
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 設定済みのすべてのキューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}に設定する。
+     */
+    public MessagingProvider setDefaultTimeToLive(long defaultTimeToLive) {
+        for (WmqClusterMember member : members) {
+            member.getProvider().setDefaultTimeToLive(defaultTimeToLive);
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 設定済みのすべてのキューマネージャの{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}に設定する。
+     * 接続障害の判定に{@link MomConnectionException}を使用するため、
+     * 接続障害の場合に{@link MomConnectionException}を生成する実装を指定すること。
+     */
+    public MessagingProvider setMessagingExceptionFactory(MessagingExceptionFactory messagingExceptionFactory) {
+        for (WmqClusterMember member : members) {
+            member.getProvider().setMessagingExceptionFactory(messagingExceptionFactory);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,18 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import java.util.List;
+
+/**
+ * 送信のたびに、送信先の{@link WmqClusterMember}を選択するクラス。
+ * <p/>
+ * 複数のスレッドから同時に呼び出されるため、実装クラスはスレッドセーフであること。
+ */
+public interface WmqLoadBalancingPolicy {
+
+    /**
+     * 送信先の{@link WmqClusterMember}を選択する。
+     * @param candidates 送信先の候補(1件以上、設定された順)
+     * @return 送信先の{@link WmqClusterMember}
+     */
+    WmqClusterMember select(List<WmqClusterMember> candidates);
+}
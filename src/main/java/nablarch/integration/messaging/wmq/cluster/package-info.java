@@ -0,0 +1,6 @@
+/**
+ * 複数のキューマネージャに負荷を分散して送信する機能と、
+ * 複数のキューマネージャの同じキューを競合コンシューマとして受信する機能を提供する。
+ * 
+ */
+package nablarch.integration.messaging.wmq.cluster;
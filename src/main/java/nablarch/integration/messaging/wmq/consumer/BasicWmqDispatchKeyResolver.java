@@ -0,0 +1,37 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import nablarch.fw.messaging.InterSystemMessage.HeaderName;
+import nablarch.fw.messaging.ReceivedMessage;
+
+/**
+ * 受信メッセージのヘッダから振り分けキーを取得する{@link WmqDispatchKeyResolver}の基本実装クラス。
+ * <pre>
+ * デフォルトでは相関ID({@link HeaderName#CORRELATION_ID})を振り分けキーとする。
+ * グループIDを振り分けキーとする場合は、
+ * {@link nablarch.integration.messaging.wmq.provider.BasicWmqMqmdFieldsOperator#GROUP_ID_HEADER}を指定する。
+ * ヘッダに値が設定されていない場合はnull(順序保証なし)を返す。
+ * </pre>
+ */
+public class BasicWmqDispatchKeyResolver implements WmqDispatchKeyResolver {
+
+    /** 振り分けキーを取得するヘッダ名 */
+    private String headerName = HeaderName.CORRELATION_ID;
+
+    /**
+     * {@inheritDoc}
+     */
+    public String resolve(ReceivedMessage receivedMessage) {
+        Object value = receivedMessage.getHeaderMap().get(headerName);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * 振り分けキーを取得するヘッダ名を設定する。
+     * @param headerName 振り分けキーを取得するヘッダ名
+     * @return このオブジェクト自体
+     */
+    public BasicWmqDispatchKeyResolver setHeaderName(String headerName) {
+        this.headerName = headerName;
+        return this;
+    }
+}
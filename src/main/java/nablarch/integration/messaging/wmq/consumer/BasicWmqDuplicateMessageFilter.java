@@ -0,0 +1,213 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+
+/**
+ * 処理済みのメッセージIDをメモリ上に保持する{@link WmqDuplicateMessageFilter}の基本実装クラス。
+ * <pre>
+ * メッセージIDは記録した順に保持し、下記のいずれかに該当するものから破棄する。
+ *
+ *     {@link #maxSize}件を超えた場合、最も古いもの
+ *     {@link #expiration}が経過したもの
+ *
+ * 再配信はバックアウトの直後に行われるため、通常は数千件・数分程度を保持すれば足りる。
+ * 保持期間を超えた重複やプロセスの再起動をまたいだ重複を検出する場合は、
+ * {@link #store}プロパティに{@link WmqProcessedMessageStore}を指定する。
+ * 指定した場合、メモリ上にないメッセージIDは{@link WmqProcessedMessageStore}に問い合わせ、
+ * 処理したメッセージIDはコミットの直前に{@link WmqProcessedMessageStore}に記録する。
+ *
+ * メモリ上には、コミットが完了したメッセージIDに加えて、バックアウトされたバッチ内で処理が正常に終了していたメッセージIDを記録する。
+ * {@link WmqParallelConsumer}は{@link WmqMessageHandler}をワーカスレッドで呼び出し、
+ * ハンドラの処理結果は受信と同じ作業単位に含まれないため、バックアウトにより再配信されたメッセージのうち
+ * 処理が終了していたものを、処理済みと判定する必要があるためである。
+ *
+ * ハンドラの処理結果をメッセージの受信と同じ作業単位でコミットし、バックアウトで処理結果も取り消される場合は、
+ * {@link #rememberBackedOut}プロパティにfalseを指定し、コミットが完了したメッセージIDのみを記録する。
+ * この場合、コミット済みのメッセージは再配信されないため、メモリ上で検出できるのは
+ * 送信側が同じメッセージIDで送信し直したメッセージのみとなる。
+ * </pre>
+ */
+public class BasicWmqDuplicateMessageFilter implements WmqDuplicateMessageFilter {
+
+    /** 保持するメッセージIDの最大件数 */
+    private int maxSize = 10000;
+
+    /** メッセージIDを保持する期間(単位:msec)。0以下の場合は期間による破棄を行わない */
+    private long expiration = 10 * 60 * 1000;
+
+    /** バックアウトされたバッチ内で処理が正常に終了していたメッセージIDを記録する場合はtrue */
+    private boolean rememberBackedOut = true;
+
+    /** 処理済みのメッセージIDを永続化する{@link WmqProcessedMessageStore}。使用しない場合はnull */
+    private WmqProcessedMessageStore store = null;
+
+    /** 処理済みのメッセージIDと記録時刻(エポックミリ秒)。記録した順に保持する */
+    private final LinkedHashMap<String, Long> processedIds = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * メモリ上にない場合は、{@link #store}プロパティが指定されていれば問い合わせる。
+     * {@link WmqProcessedMessageStore}に記録されていた場合は、メモリ上にも記録する。
+     */
+    public boolean isDuplicate(WmqMessagingContext context, String messageId) {
+        if (contains(messageId)) {
+            return true;
+        }
+        if (store != null && store.contains(context, messageId)) {
+            put(messageId, System.currentTimeMillis());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * {@link #store}プロパティが指定された場合は、{@link WmqProcessedMessageStore}に記録する。
+     */
+    public void processed(WmqMessagingContext context, List<String> messageIds) {
+        if (store != null && !messageIds.isEmpty()) {
+            store.add(context, messageIds);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * メモリ上に記録する。
+     */
+    public void committed(List<String> messageIds) {
+        putAll(messageIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * {@link #rememberBackedOut}プロパティがtrueの場合のみ、メモリ上に記録する。
+     */
+    public void backedOut(List<String> handledMessageIds) {
+        if (rememberBackedOut) {
+            putAll(handledMessageIds);
+        }
+    }
+
+    /**
+     * 保持しているメッセージIDの件数を取得する。
+     * @return 保持しているメッセージIDの件数
+     */
+    public synchronized int size() {
+        evictExpired(System.currentTimeMillis());
+        return processedIds.size();
+    }
+
+    /**
+     * メモリ上に保持しているか否かを判定する。
+     * @param messageId メッセージID
+     * @return 保持している場合はtrue
+     */
+    private synchronized boolean contains(String messageId) {
+        evictExpired(System.currentTimeMillis());
+        return processedIds.containsKey(messageId);
+    }
+
+    /**
+     * メモリ上に記録する。
+     * @param messageIds メッセージID
+     */
+    private synchronized void putAll(List<String> messageIds) {
+        long now = System.currentTimeMillis();
+        for (String messageId : messageIds) {
+            put(messageId, now);
+        }
+    }
+
+    /**
+     * メモリ上に記録する。既に記録されている場合は、最新として記録し直す。
+     * @param messageId メッセージID
+     * @param now 現在時刻(エポックミリ秒)
+     */
+    private synchronized void put(String messageId, long now) {
+        processedIds.remove(messageId);
+        processedIds.put(messageId, now);
+    }
+
+    /**
+     * 保持期間が経過したメッセージIDを、古いものから破棄する。
+     * @param now 現在時刻(エポックミリ秒)
+     */
+    private void evictExpired(long now) {
+        if (expiration <= 0) {
+            return;
+        }
+        Iterator<Long> iterator = processedIds.values().iterator();
+        while (iterator.hasNext() && iterator.next() + expiration <= now) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 保持するメッセージIDの最大件数を設定する。
+     * <p/>
+     * デフォルトは10000。
+     *
+     * @param maxSize 保持するメッセージIDの最大件数
+     * @return このオブジェクト自体
+     * @throws IllegalArgumentException 1未満の値が指定された場合
+     */
+    public BasicWmqDuplicateMessageFilter setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 0. maxSize = [" + maxSize + "]");
+        }
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * メッセージIDを保持する期間(単位:msec)を設定する。
+     * <p/>
+     * 0以下の場合は期間による破棄を行わない。デフォルトは600000(10分)。
+     *
+     * @param expiration メッセージIDを保持する期間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public BasicWmqDuplicateMessageFilter setExpiration(long expiration) {
+        this.expiration = expiration;
+        return this;
+    }
+
+    /**
+     * バックアウトされたバッチ内で処理が正常に終了していたメッセージIDを記録するか否かを設定する。
+     * <p/>
+     * デフォルトはtrue(バックアウトによる再配信を検出する)。
+     * {@link WmqMessageHandler}の処理結果がメッセージの受信と同じ作業単位でコミットされ、
+     * バックアウトで処理結果も取り消される場合にfalseを指定する。
+     *
+     * @param rememberBackedOut 記録する場合はtrue
+     * @return このオブジェクト自体
+     */
+    public BasicWmqDuplicateMessageFilter setRememberBackedOut(boolean rememberBackedOut) {
+        this.rememberBackedOut = rememberBackedOut;
+        return this;
+    }
+
+    /**
+     * 処理済みのメッセージIDを永続化する{@link WmqProcessedMessageStore}を設定する。
+     * @param store 処理済みのメッセージIDを永続化する{@link WmqProcessedMessageStore}
+     * @return このオブジェクト自体
+     */
+    public BasicWmqDuplicateMessageFilter setStore(WmqProcessedMessageStore store) {
+        this.store = store;
+        return this;
+    }
+}
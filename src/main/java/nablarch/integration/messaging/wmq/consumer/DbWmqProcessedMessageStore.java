@@ -0,0 +1,210 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.sql.XADataSource;
+import javax.transaction.xa.XAException;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.fw.messaging.MessagingException;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+
+/**
+ * 処理済みのメッセージIDをデータベースのテーブルに記録する{@link WmqProcessedMessageStore}の実装クラス。
+ * <pre>
+ * データベース接続は{@link WmqMessagingContext#getJdbcConnection(XADataSource)}メソッドで取得するため、
+ * メッセージIDの記録はメッセージの受信と同じ作業単位(IBM MQをトランザクションマネージャとするXA)で
+ * コミットまたはバックアウトされる。このため、{@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}には
+ * useXa=trueを指定すること。
+ *
+ * 使用するテーブルは下記のとおり。テーブル名とカラム名は設定で変更できる。
+ *
+ *     CREATE TABLE WMQ_PROCESSED_MESSAGE (
+ *         MESSAGE_ID   VARCHAR(48) NOT NULL PRIMARY KEY,
+ *         PROCESSED_AT TIMESTAMP   NOT NULL
+ *     )
+ *
+ * 記録したメッセージIDは削除しないため、保持期間を過ぎたレコードは運用で定期的に削除すること。
+ *
+ * データベース接続は{@link WmqMessagingContext}ごとに1度だけ取得し、
+ * {@link WmqMessagingContext}がクローズされた時点でクローズする。
+ * </pre>
+ */
+public class DbWmqProcessedMessageStore implements WmqProcessedMessageStore {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(DbWmqProcessedMessageStore.class);
+
+    /** XAデータソース */
+    private XADataSource xaDataSource;
+
+    /** テーブル名 */
+    private String tableName = "WMQ_PROCESSED_MESSAGE";
+
+    /** メッセージIDのカラム名 */
+    private String messageIdColumnName = "MESSAGE_ID";
+
+    /** 処理日時のカラム名 */
+    private String processedAtColumnName = "PROCESSED_AT";
+
+    /** {@link WmqMessagingContext}ごとのデータベース接続 */
+    private final Map<WmqMessagingContext, Connection> connections = new WeakHashMap<WmqMessagingContext, Connection>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains(WmqMessagingContext context, String messageId) {
+        String sql = String.format("SELECT %s FROM %s WHERE %s = ?", messageIdColumnName, tableName, messageIdColumnName);
+        try {
+            PreparedStatement statement = getConnection(context).prepareStatement(sql);
+            try {
+                statement.setString(1, messageId);
+                ResultSet resultSet = statement.executeQuery();
+                try {
+                    return resultSet.next();
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new MessagingException(
+                    String.format("failed to find processed message. messageId = [%s]", messageId), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * バッチ更新で1回の実行にまとめて記録する。
+     */
+    public void add(WmqMessagingContext context, List<String> messageIds) {
+        String sql = String.format("INSERT INTO %s (%s, %s) VALUES (?, ?)",
+                                   tableName, messageIdColumnName, processedAtColumnName);
+        try {
+            PreparedStatement statement = getConnection(context).prepareStatement(sql);
+            try {
+                Timestamp processedAt = new Timestamp(System.currentTimeMillis());
+                for (String messageId : messageIds) {
+                    statement.setString(1, messageId);
+                    statement.setTimestamp(2, processedAt);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new MessagingException(
+                    String.format("failed to add processed messages. messageIds = %s", messageIds), e);
+        }
+    }
+
+    /**
+     * {@link WmqMessagingContext}に対応するデータベース接続を取得する。
+     * <p/>
+     * 初回は{@link WmqMessagingContext#getJdbcConnection(XADataSource)}メソッドで取得し、
+     * {@link WmqMessagingContext}のクローズ時に{@link #closeConnection(WmqMessagingContext)}メソッドが呼び出されるように登録する。
+     *
+     * @param context {@link WmqMessagingContext}
+     * @return データベース接続
+     * @throws SQLException データベース接続の取得に失敗した場合
+     */
+    protected synchronized Connection getConnection(final WmqMessagingContext context) throws SQLException {
+        Connection connection = connections.get(context);
+        if (connection == null) {
+            try {
+                connection = context.getJdbcConnection(xaDataSource);
+            } catch (XAException e) {
+                throw new MessagingException("failed to get database connection.", e);
+            }
+            connections.put(context, connection);
+            context.addCloseHook(new Runnable() {
+                public void run() {
+                    closeConnection(context);
+                }
+            });
+        }
+        return connection;
+    }
+
+    /**
+     * {@link WmqMessagingContext}に対応するデータベース接続をクローズする。
+     * <p/>
+     * クローズに失敗した場合はWARNレベルのログを出力し、例外は送出しない。
+     *
+     * @param context {@link WmqMessagingContext}
+     */
+    protected void closeConnection(WmqMessagingContext context) {
+        Connection connection;
+        synchronized (this) {
+            connection = connections.remove(context);
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.logWarn("failed to close database connection.", e);
+        }
+    }
+
+    /**
+     * XAデータソースを設定する。
+     * @param xaDataSource XAデータソース
+     * @return このオブジェクト自体
+     */
+    public DbWmqProcessedMessageStore setXaDataSource(XADataSource xaDataSource) {
+        this.xaDataSource = xaDataSource;
+        return this;
+    }
+
+    /**
+     * テーブル名を設定する。
+     * <p/>
+     * デフォルトは"WMQ_PROCESSED_MESSAGE"。
+     *
+     * @param tableName テーブル名
+     * @return このオブジェクト自体
+     */
+    public DbWmqProcessedMessageStore setTableName(String tableName) {
+        this.tableName = tableName;
+        return this;
+    }
+
+    /**
+     * メッセージIDのカラム名を設定する。
+     * <p/>
+     * デフォルトは"MESSAGE_ID"。
+     *
+     * @param messageIdColumnName メッセージIDのカラム名
+     * @return このオブジェクト自体
+     */
+    public DbWmqProcessedMessageStore setMessageIdColumnName(String messageIdColumnName) {
+        this.messageIdColumnName = messageIdColumnName;
+        return this;
+    }
+
+    /**
+     * 処理日時のカラム名を設定する。
+     * <p/>
+     * デフォルトは"PROCESSED_AT"。
+     *
+     * @param processedAtColumnName 処理日時のカラム名
+     * @return このオブジェクト自体
+     */
+    public DbWmqProcessedMessageStore setProcessedAtColumnName(String processedAtColumnName) {
+        this.processedAtColumnName = processedAtColumnName;
+        return this;
+    }
+}
@@ -0,0 +1,18 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import nablarch.fw.messaging.ReceivedMessage;
+
+/**
+ * 受信メッセージから、処理順序を保証する単位となる振り分けキーを取得するインタフェース。
+ * <p/>
+ * 同じ振り分けキーを持つメッセージは、同じワーカスレッドで受信順に処理される。
+ */
+public interface WmqDispatchKeyResolver {
+
+    /**
+     * 受信メッセージから振り分けキーを取得する。
+     * @param receivedMessage 受信メッセージ
+     * @return 振り分けキー。順序を保証する必要がない場合はnull
+     */
+    String resolve(ReceivedMessage receivedMessage);
+}
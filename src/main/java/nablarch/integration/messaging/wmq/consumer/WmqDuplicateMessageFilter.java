@@ -0,0 +1,56 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import java.util.List;
+
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+
+/**
+ * {@link WmqParallelConsumer}で再配信されたメッセージのうち、処理済みのものを検出するインタフェース。
+ * <pre>
+ * バックアウトやコミット中の障害で再配信されたメッセージを、メッセージIDで処理済みと判定する。
+ * 処理済みと判定されたメッセージは、{@link WmqMessageHandler}を呼び出さずに受信のみを確定する。
+ *
+ * 本インタフェースは{@link WmqParallelConsumer#setDuplicateMessageFilter(WmqDuplicateMessageFilter)}で指定した場合のみ使用される。
+ * {@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}による受信
+ * (メッセージングコンテキストを直接使用する受信)では、処理済みのメッセージは検出されない。
+ *
+ * 各メソッドは{@link WmqParallelConsumer}の受信スレッドから、下記の順に呼び出される。
+ *
+ *     {@link #isDuplicate(WmqMessagingContext, String)}  受信したメッセージごと(同期点内)
+ *     {@link #processed(WmqMessagingContext, List)}      バッチ内のすべての処理が正常に終了した場合、コミットの直前(同期点内)
+ *     {@link #committed(List)}                           コミットの後
+ *     {@link #backedOut(List)}                           バックアウトの後(受信中に例外が送出された場合を含む)
+ * </pre>
+ */
+public interface WmqDuplicateMessageFilter {
+
+    /**
+     * 処理済みのメッセージであるか否かを判定する。
+     * @param context 受信に使用した{@link WmqMessagingContext}
+     * @param messageId メッセージID
+     * @return 処理済みの場合はtrue
+     */
+    boolean isDuplicate(WmqMessagingContext context, String messageId);
+
+    /**
+     * コミットの直前に、処理したメッセージを記録する。
+     * <p/>
+     * 受信と同じ作業単位で記録する場合に使用する。
+     *
+     * @param context 受信に使用した{@link WmqMessagingContext}
+     * @param messageIds 処理したメッセージのメッセージID
+     */
+    void processed(WmqMessagingContext context, List<String> messageIds);
+
+    /**
+     * コミットが完了したことを通知する。
+     * @param messageIds 処理したメッセージのメッセージID
+     */
+    void committed(List<String> messageIds);
+
+    /**
+     * バッチ内のいずれかの処理に失敗し、バックアウトしたことを通知する。
+     * @param handledMessageIds 処理が正常に終了していたメッセージのメッセージID
+     */
+    void backedOut(List<String> handledMessageIds);
+}
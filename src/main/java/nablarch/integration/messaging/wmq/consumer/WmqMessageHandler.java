@@ -0,0 +1,22 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import nablarch.fw.messaging.ReceivedMessage;
+
+/**
+ * {@link WmqParallelConsumer}が受信したメッセージを処理するハンドラ。
+ * <p/>
+ * ワーカスレッドから呼び出される。受信に使用した{@link nablarch.fw.messaging.MessagingContext}は
+ * 受信スレッドに紐づいているため、本インタフェースの実装から使用してはならない。
+ */
+public interface WmqMessageHandler {
+
+    /**
+     * 受信メッセージを処理する。
+     * <p/>
+     * 例外を送出した場合は、同じバッチで受信したすべてのメッセージがバックアウトされる。
+     *
+     * @param receivedMessage 受信メッセージ
+     * @throws Exception 処理に失敗した場合
+     */
+    void handle(ReceivedMessage receivedMessage) throws Exception;
+}
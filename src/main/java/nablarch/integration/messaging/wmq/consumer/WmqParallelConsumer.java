@@ -0,0 +1,706 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.fw.launcher.ProcessAbnormalEnd;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.integration.messaging.wmq.provider.BasicWmqMqmdFieldsOperator;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingProvider;
+
+/**
+ * 1つの受信キューから受信したメッセージを、振り分けキーごとの順序を保ったまま複数のワーカスレッドで処理するクラス。
+ * <pre>
+ * 受信スレッドが1つの{@link WmqMessagingContext}で同期点内の受信を行い、
+ * 受信したメッセージを振り分けキーのハッシュ値に対応するワーカスレッドに振り分ける。
+ * ワーカスレッドは1つのキーに対して常に同じスレッドとなるため、同じキーのメッセージは受信順に処理される。
+ * 振り分けキーがnullのメッセージは、ワーカスレッドに順番に振り分ける。
+ *
+ * 同時に処理中となるメッセージ数は{@link #maxInFlight}件を上限とし、この件数を1つのバッチとする。
+ * バッチ内のすべてのメッセージの処理が終わった時点で、
+ *
+ *     すべて正常に終了した場合はコミット
+ *     例外が送出されたメッセージがある場合は、そのメッセージのみを単独で処理し直し、成功すればコミット
+ *     処理し直しても失敗した場合はバックアウト(バッチ内のすべてのメッセージが再配信される)
+ *
+ * を行う。バッチの完了を待ってから次のバッチを受信するため、キーごとの順序はバッチをまたいでも保たれる。
+ * 処理し直すのは、同じバッチ内に同じ振り分けキーの後続のメッセージがない場合のみとする
+ * (後続のメッセージが処理済みの場合、処理し直すとキーごとの順序が入れ替わるため)。
+ *
+ * バックアウトした場合は、バックアウトしたバッチの件数分のメッセージを1件ずつのバッチで処理する。
+ * これにより、失敗の原因となったメッセージが再び失敗しても、バックアウトされるのはそのメッセージのみとなり、
+ * 同じバッチで受信した他のメッセージのバックアウト回数が増え続けることはない。
+ * バックアウトされたメッセージは{@link WmqMessagingProvider}のポイズンメッセージの処理の対象となる。
+ * ポイズンメッセージの処理で{@link ProcessAbnormalEnd}が送出された場合は受信を停止し、{@link #stop()}で送出する。
+ * 正常に処理済みのメッセージも再配信されるため、{@link WmqMessageHandler}は冪等に実装すること。
+ *
+ * IBM MQの作業単位は接続(スレッド)単位のため、{@link WmqMessagingProvider}にはuseXa=trueを指定すること。
+ * {@link WmqMessageHandler}はワーカスレッドで呼び出され、ワーカスレッドには{@link WmqMessagingContext}が
+ * 紐づかないため、ハンドラが行うデータベースの更新はIBM MQの作業単位(分散トランザクション)に含まれない。
+ * データベースの更新はハンドラ内でコミットし、メッセージの再配信に備えて冪等にすること
+ * (処理済みの判定には{@link #duplicateMessageFilter}プロパティを使用できる)。
+ *
+ * {@link #latencyRecorder}プロパティが指定された場合は、正常に処理したメッセージの
+ * 書き込みから処理完了までの遅延時間を優先度ごとに記録する。
+ *
+ * {@link WmqMessagingProvider}が{@link WmqMessagingContext}の事前生成を行う場合は、
+ * 事前生成の完了({@link WmqMessagingProvider#isReady()})を待ってから受信を開始する。
+ *
+ * {@link #duplicateMessageFilter}プロパティが指定された場合は、処理済みと判定されたメッセージを
+ * {@link WmqMessageHandler}を呼び出さずに受信のみ確定する。
+ * </pre>
+ */
+public class WmqParallelConsumer {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(WmqParallelConsumer.class);
+
+    /** 受信に使用する{@link WmqMessagingProvider} */
+    private final WmqMessagingProvider provider;
+
+    /** 受信キュー名 */
+    private final String receivedQueueName;
+
+    /** 受信メッセージを処理するハンドラ */
+    private final WmqMessageHandler handler;
+
+    /** 振り分けキーを取得するオブジェクト */
+    private WmqDispatchKeyResolver dispatchKeyResolver = new BasicWmqDispatchKeyResolver();
+
+    /** ワーカスレッド数 */
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+
+    /** 同時に処理中となるメッセージ数の上限(1バッチの件数) */
+    private int maxInFlight = 100;
+
+    /** バッチの最初のメッセージを待つタイムアウト値(単位:msec) */
+    private long receiveTimeout = 1000;
+
+    /** バッチの2件目以降のメッセージを待つタイムアウト値(単位:msec) */
+    private long batchWaitTimeout = 1;
+
+    /** ワーカスレッド */
+    private ExecutorService[] workers;
+
+    /** 受信スレッド */
+    private Thread receiver;
+
+    /** 受信スレッドが使用中の{@link WmqMessagingContext}。使用していない場合はnull */
+    private volatile WmqMessagingContext receivingContext;
+
+    /** 受信スレッドを異常終了させた{@link ProcessAbnormalEnd}。異常終了していない場合はnull */
+    private volatile ProcessAbnormalEnd abnormalEnd;
+
+    /** 停止を指示されている場合はtrue */
+    private volatile boolean stopped = false;
+
+    /** 優先度ごとの遅延時間を記録するオブジェクト。記録しない場合はnull */
+    private WmqPriorityLatencyRecorder latencyRecorder = null;
+
+    /** 処理済みのメッセージを検出するフィルタ。使用しない場合はnull */
+    private WmqDuplicateMessageFilter duplicateMessageFilter = null;
+
+    /** 振り分けキーがnullのメッセージの振り分け先 */
+    private int roundRobin = 0;
+
+    /** バックアウトした後に、1件ずつのバッチで処理する残りのメッセージ数 */
+    private int isolationRemaining = 0;
+
+    /** コミットしたメッセージ数 */
+    private final AtomicLong committedCount = new AtomicLong();
+
+    /** バックアウトしたメッセージ数 */
+    private final AtomicLong backedOutCount = new AtomicLong();
+
+    /** 処理済みと判定して処理を省略したメッセージ数 */
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * コンストラクタ。
+     * @param provider 受信に使用する{@link WmqMessagingProvider}
+     * @param receivedQueueName 受信キュー名
+     * @param handler 受信メッセージを処理するハンドラ
+     */
+    public WmqParallelConsumer(WmqMessagingProvider provider, String receivedQueueName, WmqMessageHandler handler) {
+        this.provider = provider;
+        this.receivedQueueName = receivedQueueName;
+        this.handler = handler;
+    }
+
+    /**
+     * ワーカスレッドと受信スレッドを開始する。
+     * @throws IllegalStateException 既に開始している場合
+     */
+    public synchronized void start() {
+        if (receiver != null) {
+            throw new IllegalStateException("consumer was already started. queueName = [" + receivedQueueName + "]");
+        }
+        workers = new ExecutorService[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(new NamedThreadFactory(receivedQueueName + "-worker-" + i));
+        }
+        stopped = false;
+        abnormalEnd = null;
+        receiver = new NamedThreadFactory(receivedQueueName + "-receiver").newThread(new Runnable() {
+            public void run() {
+                receiveLoop();
+            }
+        });
+        receiver.start();
+    }
+
+    /**
+     * 受信を停止し、処理中のバッチの完了を待ってから、受信スレッドとワーカスレッドを終了する。
+     * <p/>
+     * 受信スレッドが使用中の{@link WmqMessagingContext}に{@link WmqMessagingContext#requestShutdownPolling()}で
+     * 以降の受信待ちを行わないように指示する。
+     * 実行中の受信待ちは中断できないため、停止までの時間は、実行中の受信の待機時間
+     * ({@link #receiveTimeout}、または{@link WmqMessagingProvider#setMaxAdaptiveWaitInterval(long)}で指定した上限値)
+     * と処理中のバッチの処理時間が上限となる。
+     * <p/>
+     * 受信スレッドが{@link ProcessAbnormalEnd}により異常終了していた場合は、
+     * ワーカスレッドを終了した後にその{@link ProcessAbnormalEnd}を送出し、呼び出し元にプロセスの異常終了を委ねる。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     * @throws ProcessAbnormalEnd 受信スレッドが異常終了していた場合
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (receiver == null) {
+            return;
+        }
+        stopped = true;
+        WmqMessagingContext context = receivingContext;
+        if (context != null) {
+            context.requestShutdownPolling();
+        }
+        receiver.join();
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        receiver = null;
+        workers = null;
+        if (abnormalEnd != null) {
+            throw abnormalEnd;
+        }
+    }
+
+    /**
+     * 停止を指示されるまで、バッチの受信と処理を繰り返す。
+     * <p/>
+     * バッチの処理で実行時例外が送出された場合は、WARNレベルでログを出力し、
+     * コンテキストを作り直して受信を続ける。
+     * <p/>
+     * {@link ProcessAbnormalEnd}が送出された場合(ポイズンメッセージの退避キューがない場合や、
+     * 退避キューへの送信にリトライ不可の理由で失敗した場合)は、受信を続けると同じメッセージの受信を繰り返すため、
+     * ERRORレベルでログを出力して受信を停止する。
+     * 送出された{@link ProcessAbnormalEnd}は{@link #getAbnormalEnd()}で取得でき、{@link #stop()}で送出する。
+     */
+    private void receiveLoop() {
+        WmqMessagingContext context = null;
+        try {
+            if (!awaitProviderReady()) {
+                return;
+            }
+            while (!stopped) {
+                if (context == null) {
+                    context = (WmqMessagingContext) provider.createContext();
+                    receivingContext = context;
+                    if (stopped) {
+                        // 停止の指示がコンテキストの生成と行き違った場合
+                        context.requestShutdownPolling();
+                    }
+                }
+                try {
+                    processBatch(context);
+                } catch (ProcessAbnormalEnd e) {
+                    LOGGER.logError("the receiver stopped due to an abnormal end. queueName = [" + receivedQueueName + "]", e);
+                    abnormalEnd = e;
+                    stopped = true;
+                } catch (RuntimeException e) {
+                    LOGGER.logWarn("an error occurred while consuming messages. queueName = [" + receivedQueueName + "]", e);
+                    receivingContext = null;
+                    closeQuietly(context);
+                    context = null;
+                }
+            }
+        } finally {
+            receivingContext = null;
+            if (context != null) {
+                closeQuietly(context);
+            }
+        }
+    }
+
+    /**
+     * 停止を指示されるまで、{@link WmqMessagingProvider}の準備完了を待つ。
+     * <p/>
+     * 停止の指示に応答できるように、{@link #receiveTimeout}ごとに待機を区切る。
+     *
+     * @return 準備完了となった場合はtrue。停止を指示された場合または割り込まれた場合はfalse
+     */
+    private boolean awaitProviderReady() {
+        try {
+            while (!stopped) {
+                if (provider.awaitReady(receiveTimeout)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 1バッチ分のメッセージを受信して処理し、コミットまたはバックアウトする。
+     * <p/>
+     * {@link #duplicateMessageFilter}プロパティが指定された場合は、
+     * 処理済みと判定されたメッセージを振り分けずに、受信したメッセージとしてのみ数える。
+     * <p/>
+     * 例外が送出されたメッセージは{@link #retryFailed(List, List, List)}で単独で処理し直す。
+     * 処理し直しても失敗した場合はバックアウトし、バックアウトしたバッチの件数分のメッセージを1件ずつのバッチで処理する。
+     * <p/>
+     * 受信や振り分けで実行時例外が送出された場合は、振り分け済みのメッセージの処理の完了を待ってから
+     * バックアウトし、送出された例外を再送出する。
+     * この場合も、処理が正常に終了していたメッセージを{@link WmqDuplicateMessageFilter#backedOut(List)}に通知する。
+     *
+     * @param context 受信に使用する{@link WmqMessagingContext}
+     * @return 受信したメッセージ数
+     */
+    protected int processBatch(WmqMessagingContext context) {
+
+        context.begin();
+        int batchSize = isolationRemaining > 0 ? 1 : maxInFlight;
+        int receivedCount = 0;
+        List<String> messageIds = new ArrayList<String>(batchSize);
+        List<ReceivedMessage> dispatched = new ArrayList<ReceivedMessage>(batchSize);
+        List<Integer> workerIndexes = new ArrayList<Integer>(batchSize);
+        List<Future<?>> futures = new ArrayList<Future<?>>(batchSize);
+        try {
+            ReceivedMessage receivedMessage = context.receiveMessage(receivedQueueName, null, receiveTimeout);
+            while (receivedMessage != null) {
+                receivedCount++;
+                if (isDuplicate(context, receivedMessage)) {
+                    duplicateCount.incrementAndGet();
+                } else {
+                    int workerIndex = selectWorker(receivedMessage);
+                    messageIds.add(receivedMessage.getMessageId());
+                    dispatched.add(receivedMessage);
+                    workerIndexes.add(workerIndex);
+                    futures.add(dispatch(workerIndex, receivedMessage));
+                }
+                if (receivedCount >= batchSize || stopped) {
+                    break;
+                }
+                receivedMessage = context.receiveMessage(receivedQueueName, null, batchWaitTimeout);
+            }
+        } catch (RuntimeException e) {
+            awaitAll(futures);
+            backoutQuietly(context);
+            backedOutCount.addAndGet(receivedCount);
+            if (duplicateMessageFilter != null) {
+                duplicateMessageFilter.backedOut(getSucceededMessageIds(futures, messageIds));
+            }
+            throw e;
+        }
+
+        Throwable failure = awaitAll(futures);
+        if (failure != null) {
+            failure = retryFailed(dispatched, workerIndexes, futures);
+        }
+        if (failure == null && duplicateMessageFilter != null) {
+            try {
+                duplicateMessageFilter.processed(context, messageIds);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure == null) {
+            context.commit();
+            committedCount.addAndGet(receivedCount);
+            isolationRemaining = Math.max(0, isolationRemaining - receivedCount);
+            if (duplicateMessageFilter != null) {
+                duplicateMessageFilter.committed(messageIds);
+            }
+        } else {
+            LOGGER.logWarn(String.format("message handling failed. backout %s messages. queueName = [%s]",
+                                         receivedCount, receivedQueueName), failure);
+            context.backout();
+            backedOutCount.addAndGet(receivedCount);
+            if (isolationRemaining == 0 && receivedCount > 1) {
+                isolationRemaining = receivedCount;
+            }
+            if (duplicateMessageFilter != null) {
+                duplicateMessageFilter.backedOut(getSucceededMessageIds(futures, messageIds));
+            }
+        }
+        return receivedCount;
+    }
+
+    /**
+     * 例外が送出されたメッセージを、同じワーカスレッドで1件ずつ処理し直す。
+     * <p/>
+     * 同じバッチ内に同じ振り分けキーの後続のメッセージがある場合は、キーごとの順序を保つため処理し直さない。
+     * 処理し直した結果で、処理結果のリストを置き換える。
+     *
+     * @param dispatched 振り分けた受信メッセージ
+     * @param workerIndexes 受信メッセージと同じ順に並んだ振り分け先のワーカスレッド
+     * @param futures 受信メッセージと同じ順に並んだ処理結果
+     * @return 処理し直しても失敗した、または処理し直さなかったメッセージの例外。すべて成功した場合はnull
+     */
+    private Throwable retryFailed(List<ReceivedMessage> dispatched, List<Integer> workerIndexes, List<Future<?>> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            Throwable cause = getFailure(futures.get(i));
+            if (cause == null) {
+                continue;
+            }
+            ReceivedMessage failed = dispatched.get(i);
+            if (hasSubsequentMessage(dispatched, i)) {
+                return cause;
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.logDebug(String.format("retry the failed message alone. messageId = [%s], queueName = [%s]",
+                                              failed.getMessageId(), receivedQueueName));
+            }
+            Future<?> retried = dispatch(workerIndexes.get(i), failed);
+            futures.set(i, retried);
+            cause = getFailure(retried);
+            if (cause != null) {
+                return cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 同じバッチ内に、指定された受信メッセージと同じ振り分けキーの後続のメッセージがあるか否かを判定する。
+     * @param dispatched 振り分けた受信メッセージ
+     * @param index 判定する受信メッセージの位置
+     * @return 後続のメッセージがある場合はtrue。振り分けキーがnullの場合は常にfalse
+     */
+    private boolean hasSubsequentMessage(List<ReceivedMessage> dispatched, int index) {
+        String key = dispatchKeyResolver.resolve(dispatched.get(index));
+        if (key == null) {
+            return false;
+        }
+        for (int i = index + 1; i < dispatched.size(); i++) {
+            if (key.equals(dispatchKeyResolver.resolve(dispatched.get(i)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 受信メッセージが処理済みであるか否かを判定する。
+     * @param context 受信に使用した{@link WmqMessagingContext}
+     * @param receivedMessage 受信メッセージ
+     * @return 処理済みの場合はtrue。{@link #duplicateMessageFilter}プロパティが指定されていない場合は常にfalse
+     */
+    private boolean isDuplicate(WmqMessagingContext context, ReceivedMessage receivedMessage) {
+        return duplicateMessageFilter != null
+                && receivedMessage.getMessageId() != null
+                && duplicateMessageFilter.isDuplicate(context, receivedMessage.getMessageId());
+    }
+
+    /**
+     * 受信メッセージの振り分けキーに対応するワーカスレッドを選択する。
+     * @param receivedMessage 受信メッセージ
+     * @return ワーカスレッドの位置
+     */
+    private int selectWorker(ReceivedMessage receivedMessage) {
+        String key = dispatchKeyResolver.resolve(receivedMessage);
+        if (key == null) {
+            int index = roundRobin;
+            roundRobin = (roundRobin + 1) % workers.length;
+            return index;
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * 受信メッセージをワーカスレッドに振り分ける。
+     * @param workerIndex ワーカスレッドの位置
+     * @param receivedMessage 受信メッセージ
+     * @return 処理結果
+     */
+    private Future<?> dispatch(int workerIndex, final ReceivedMessage receivedMessage) {
+        return workers[workerIndex].submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                handler.handle(receivedMessage);
+                if (latencyRecorder != null) {
+                    recordLatency(receivedMessage);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 受信メッセージの書き込みから現在までの遅延時間を、優先度ごとに記録する。
+     * <p/>
+     * 受信メッセージのヘッダに優先度({@link BasicWmqMqmdFieldsOperator#PRIORITY_HEADER})と
+     * 書き込み日時({@link BasicWmqMqmdFieldsOperator#PUT_DATE_TIME_HEADER})が設定されていない場合は記録しない。
+     *
+     * @param receivedMessage 受信メッセージ
+     */
+    private void recordLatency(ReceivedMessage receivedMessage) {
+        Object priority = receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER);
+        Object putDateTime = receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.PUT_DATE_TIME_HEADER);
+        if (priority instanceof Integer && putDateTime instanceof Date) {
+            latencyRecorder.record((Integer) priority, System.currentTimeMillis() - ((Date) putDateTime).getTime());
+        }
+    }
+
+    /**
+     * すべての処理の完了を待つ。
+     * @param futures 処理結果
+     * @return 最初に失敗した処理の例外。すべて成功した場合はnull
+     */
+    private Throwable awaitAll(List<Future<?>> futures) {
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * 処理の完了を待ち、失敗した場合は例外を取得する。
+     * @param future 処理結果
+     * @return 処理で送出された例外。成功した場合はnull
+     */
+    private static Throwable getFailure(Future<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+    }
+
+    /**
+     * 正常に終了した処理のメッセージIDを取得する。
+     * @param futures 完了した処理結果
+     * @param messageIds 処理結果と同じ順に並んだメッセージID
+     * @return 正常に終了した処理のメッセージID
+     */
+    private static List<String> getSucceededMessageIds(List<Future<?>> futures, List<String> messageIds) {
+        List<String> succeeded = new ArrayList<String>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+                succeeded.add(messageIds.get(i));
+            } catch (ExecutionException e) {
+                // 失敗した処理は対象外
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * 例外を送出せずに{@link WmqMessagingContext}をクローズする。
+     * @param context {@link WmqMessagingContext}
+     */
+    private void closeQuietly(WmqMessagingContext context) {
+        try {
+            context.close();
+        } catch (RuntimeException e) {
+            LOGGER.logWarn("failed to close messaging context. queueName = [" + receivedQueueName + "]", e);
+        }
+    }
+
+    /**
+     * 例外を送出せずにバックアウトする。
+     * <p/>
+     * 呼び出し元の例外を優先するため、バックアウトで送出された例外はWARNレベルでログを出力するのみとする。
+     *
+     * @param context バックアウトする{@link WmqMessagingContext}
+     */
+    private void backoutQuietly(WmqMessagingContext context) {
+        try {
+            context.backout();
+        } catch (RuntimeException e) {
+            LOGGER.logWarn("failed to backout. queueName = [" + receivedQueueName + "]", e);
+        }
+    }
+
+    /**
+     * 受信スレッドを異常終了させた{@link ProcessAbnormalEnd}を取得する。
+     * @return 受信スレッドを異常終了させた{@link ProcessAbnormalEnd}。異常終了していない場合はnull
+     */
+    public ProcessAbnormalEnd getAbnormalEnd() {
+        return abnormalEnd;
+    }
+
+    /**
+     * コミットしたメッセージ数を取得する。
+     * @return コミットしたメッセージ数
+     */
+    public long getCommittedCount() {
+        return committedCount.get();
+    }
+
+    /**
+     * バックアウトしたメッセージ数を取得する。
+     * @return バックアウトしたメッセージ数
+     */
+    public long getBackedOutCount() {
+        return backedOutCount.get();
+    }
+
+    /**
+     * 処理済みと判定して処理を省略したメッセージ数を取得する。
+     * @return 処理済みと判定して処理を省略したメッセージ数
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * 振り分けキーを取得するオブジェクトを設定する。
+     * <p/>
+     * デフォルトは{@link BasicWmqDispatchKeyResolver}(相関IDを振り分けキーとする)。
+     *
+     * @param dispatchKeyResolver 振り分けキーを取得するオブジェクト
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setDispatchKeyResolver(WmqDispatchKeyResolver dispatchKeyResolver) {
+        this.dispatchKeyResolver = dispatchKeyResolver;
+        return this;
+    }
+
+    /**
+     * 処理済みのメッセージを検出するフィルタを設定する。
+     * <p/>
+     * デフォルトはnull(検出しない)。
+     *
+     * @param duplicateMessageFilter 処理済みのメッセージを検出するフィルタ
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setDuplicateMessageFilter(WmqDuplicateMessageFilter duplicateMessageFilter) {
+        this.duplicateMessageFilter = duplicateMessageFilter;
+        return this;
+    }
+
+    /**
+     * 優先度ごとの遅延時間を記録するオブジェクトを設定する。
+     * <p/>
+     * デフォルトはnull(記録しない)。
+     *
+     * @param latencyRecorder 優先度ごとの遅延時間を記録するオブジェクト
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setLatencyRecorder(WmqPriorityLatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+        return this;
+    }
+
+    /**
+     * ワーカスレッド数を設定する。
+     * <p/>
+     * デフォルトは利用可能なプロセッサ数。
+     *
+     * @param workerCount ワーカスレッド数
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    /**
+     * 同時に処理中となるメッセージ数の上限(1バッチの件数)を設定する。
+     * <p/>
+     * デフォルトは100件。
+     *
+     * @param maxInFlight 同時に処理中となるメッセージ数の上限
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * バッチの最初のメッセージを待つタイムアウト値(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは1000ミリ秒。
+     *
+     * @param receiveTimeout バッチの最初のメッセージを待つタイムアウト値(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setReceiveTimeout(long receiveTimeout) {
+        this.receiveTimeout = receiveTimeout;
+        return this;
+    }
+
+    /**
+     * バッチの2件目以降のメッセージを待つタイムアウト値(単位:msec)を設定する。
+     * <p/>
+     * この時間内に次のメッセージが届かない場合は、それまでに受信したメッセージでバッチを確定する。
+     * デフォルトは1ミリ秒。
+     *
+     * @param batchWaitTimeout バッチの2件目以降のメッセージを待つタイムアウト値(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqParallelConsumer setBatchWaitTimeout(long batchWaitTimeout) {
+        this.batchWaitTimeout = batchWaitTimeout;
+        return this;
+    }
+
+    /**
+     * 名前を指定してスレッドを生成する{@link ThreadFactory}。
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        /** スレッド名 */
+        private final String name;
+
+        /**
+         * コンストラクタ。
+         * @param name スレッド名
+         */
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * メッセージの優先度ごとに、書き込まれてから処理が完了するまでの遅延時間を集計するクラス。
+ * <pre>
+ * 優先度の高いメッセージが負荷の高い状況でもSLAを満たしていることを確認するために使用する。
+ * 遅延時間は下記の上限値(単位:msec)を持つ区間ごとの件数として保持し、
+ * パーセンタイルは該当する区間の上限値で近似する。
+ * 
+ *     1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, (上限なし)
+ * 
+ * 記録はロックを使用せずに行うため、処理スレッドから直接呼び出してもスループットを低下させない。
+ * 監視ツールなどから任意のスレッドで集計結果を参照できる。
+ * 
+ * 遅延時間はMQMDフィールドの書き込み日時(精度は1/100秒)を基点とするため、
+ * 送信側と受信側のサーバの時刻のずれがそのまま誤差となる。
+ * </pre>
+ */
+public class WmqPriorityLatencyRecorder {
+
+    /** メッセージの優先度の最大値 */
+    public static final int MAX_PRIORITY = 9;
+
+    /** 区間の上限値(単位:msec) */
+    private static final long[] BUCKET_BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE
+    };
+
+    /** 区間ごとの件数(優先度 * 区間数 + 区間の位置) */
+    private final AtomicLongArray bucketCounts = new AtomicLongArray((MAX_PRIORITY + 1) * BUCKET_BOUNDS.length);
+
+    /** 優先度ごとの遅延時間の合計(単位:msec) */
+    private final AtomicLongArray totalLatencies = new AtomicLongArray(MAX_PRIORITY + 1);
+
+    /** 優先度ごとの遅延時間の最大値(単位:msec) */
+    private final AtomicLong[] maxLatencies = new AtomicLong[MAX_PRIORITY + 1];
+
+    /**
+     * コンストラクタ。
+     */
+    public WmqPriorityLatencyRecorder() {
+        for (int i = 0; i < maxLatencies.length; i++) {
+            maxLatencies[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * 遅延時間を記録する。
+     * <p/>
+     * 優先度は0から{@link #MAX_PRIORITY}の範囲に、遅延時間は0以上に丸めて記録する。
+     *
+     * @param priority メッセージの優先度
+     * @param latencyMillis 遅延時間(単位:msec)
+     */
+    public void record(int priority, long latencyMillis) {
+        int index = normalize(priority);
+        long latency = Math.max(0L, latencyMillis);
+        bucketCounts.incrementAndGet(index * BUCKET_BOUNDS.length + bucketOf(latency));
+        totalLatencies.addAndGet(index, latency);
+        AtomicLong max = maxLatencies[index];
+        long current = max.get();
+        while (latency > current && !max.compareAndSet(current, latency)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * 指定された優先度の件数を取得する。
+     * @param priority メッセージの優先度
+     * @return 件数
+     */
+    public long getCount(int priority) {
+        int index = normalize(priority);
+        long count = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            count += bucketCounts.get(index * BUCKET_BOUNDS.length + i);
+        }
+        return count;
+    }
+
+    /**
+     * 指定された優先度の遅延時間の平均値を取得する。
+     * @param priority メッセージの優先度
+     * @return 遅延時間の平均値(単位:msec)。記録がない場合は0
+     */
+    public double getAverageLatency(int priority) {
+        long count = getCount(priority);
+        return count == 0 ? 0d : (double) totalLatencies.get(normalize(priority)) / count;
+    }
+
+    /**
+     * 指定された優先度の遅延時間の最大値を取得する。
+     * @param priority メッセージの優先度
+     * @return 遅延時間の最大値(単位:msec)。記録がない場合は0
+     */
+    public long getMaxLatency(int priority) {
+        return maxLatencies[normalize(priority)].get();
+    }
+
+    /**
+     * 指定された優先度の遅延時間のパーセンタイルを取得する。
+     * <p/>
+     * 指定された割合の件数が含まれる区間の上限値を返す。
+     * 上限のない区間に含まれる場合は、遅延時間の最大値を返す。
+     *
+     * @param priority メッセージの優先度
+     * @param percentile パーセンタイル(0より大きく100以下)
+     * @return 遅延時間のパーセンタイル(単位:msec)。記録がない場合は0
+     */
+    public long getPercentileLatency(int priority, double percentile) {
+        int index = normalize(priority);
+        long count = getCount(priority);
+        if (count == 0) {
+            return 0L;
+        }
+        long threshold = (long) Math.ceil(count * percentile / 100d);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length - 1; i++) {
+            cumulative += bucketCounts.get(index * BUCKET_BOUNDS.length + i);
+            if (cumulative >= threshold) {
+                return Math.min(BUCKET_BOUNDS[i], getMaxLatency(priority));
+            }
+        }
+        return getMaxLatency(priority);
+    }
+
+    /**
+     * 優先度を0から{@link #MAX_PRIORITY}の範囲に丸める。
+     * @param priority メッセージの優先度
+     * @return 丸めた優先度
+     */
+    private static int normalize(int priority) {
+        return Math.min(Math.max(priority, 0), MAX_PRIORITY);
+    }
+
+    /**
+     * 遅延時間が含まれる区間の位置を取得する。
+     * @param latency 遅延時間(単位:msec)
+     * @return 区間の位置
+     */
+    private static int bucketOf(long latency) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (latency <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length - 1;
+    }
+}
@@ -0,0 +1,29 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import java.util.List;
+
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+
+/**
+ * 処理済みのメッセージIDを永続化するインタフェース。
+ * <p/>
+ * {@link BasicWmqDuplicateMessageFilter}のメモリ上のキャッシュから溢れたメッセージIDや、
+ * プロセスの再起動をまたいだ重複を検出するために使用する。
+ */
+public interface WmqProcessedMessageStore {
+
+    /**
+     * 処理済みのメッセージIDが記録されているか否かを判定する。
+     * @param context 受信に使用した{@link WmqMessagingContext}
+     * @param messageId メッセージID
+     * @return 記録されている場合はtrue
+     */
+    boolean contains(WmqMessagingContext context, String messageId);
+
+    /**
+     * 処理済みのメッセージIDを記録する。
+     * @param context 受信に使用した{@link WmqMessagingContext}
+     * @param messageIds メッセージID
+     */
+    void add(WmqMessagingContext context, List<String> messageIds);
+}
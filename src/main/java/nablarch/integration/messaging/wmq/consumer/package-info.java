@@ -0,0 +1,5 @@
+/**
+ * 1つの受信キューのメッセージを複数のスレッドで並列に処理する機能を提供する。
+ * 
+ */
+package nablarch.integration.messaging.wmq.consumer;
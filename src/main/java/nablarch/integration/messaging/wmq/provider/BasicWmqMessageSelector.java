@@ -0,0 +1,66 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * メッセージプロパティの値が指定された値と一致するメッセージを選択するクラス。
+ * <pre>
+ * 指定されたすべてのメッセージプロパティの値が一致するメッセージを選択する。
+ * 値は文字列に変換して比較し、メッセージプロパティが存在しない場合は一致しないものとする。
+ * 条件が指定されない場合はすべてのメッセージを選択する。
+ * 
+ * 設定例:
+ * 
+ *     &lt;component class="nablarch.integration.messaging.wmq.provider.BasicWmqMessageSelector"&gt;
+ *       &lt;property name="properties"&gt;
+ *         &lt;map&gt;
+ *           &lt;entry key="region" value="EAST" /&gt;
+ *         &lt;/map&gt;
+ *       &lt;/property&gt;
+ *     &lt;/component&gt;
+ * </pre>
+ */
+public class BasicWmqMessageSelector implements WmqMessageSelector {
+
+    /** 選択条件(キーはメッセージプロパティ名、値は一致する値) */
+    private Map<String, String> properties = Collections.emptyMap();
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 指定されたすべてのメッセージプロパティの値が一致する場合にtrueを返す。
+     */
+    public boolean select(MQMessage mqMessage) throws MQException {
+        for (Map.Entry<String, String> condition : properties.entrySet()) {
+            Object value;
+            try {
+                value = mqMessage.getObjectProperty(condition.getKey());
+            } catch (MQException e) {
+                if (e.reasonCode == CMQC.MQRC_PROPERTY_NOT_AVAILABLE) {
+                    return false;
+                }
+                throw e;
+            }
+            if (value == null || !String.valueOf(value).equals(condition.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 選択条件を設定する。
+     * @param properties 選択条件(キーはメッセージプロパティ名、値は一致する値)
+     * @return このオブジェクト自体
+     */
+    public BasicWmqMessageSelector setProperties(Map<String, String> properties) {
+        this.properties = new LinkedHashMap<String, String>(properties);
+        return this;
+    }
+}
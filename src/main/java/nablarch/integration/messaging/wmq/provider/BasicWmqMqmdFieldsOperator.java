@@ -1,8 +1,12 @@
 package nablarch.integration.messaging.wmq.provider;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import nablarch.core.date.SystemTimeUtil;
 import nablarch.core.util.BinaryUtil;
@@ -22,12 +26,39 @@ import com.ibm.mq.constants.CMQC;
  */
 public class BasicWmqMqmdFieldsOperator implements WmqMqmdFieldsOperator {
 
+    /** グループIDを設定するヘッダ名 */
+    public static final String GROUP_ID_HEADER = "GroupId";
+
+    /** 受信したメッセージプロパティ({@link WmqMessageProperties})を設定するヘッダ名 */
+    public static final String MESSAGE_PROPERTIES_HEADER = "MessageProperties";
+
+    /** メッセージの優先度を設定するヘッダ名 */
+    public static final String PRIORITY_HEADER = "Priority";
+
+    /** 受信したメッセージが書き込まれた日時({@link Date})を設定するヘッダ名 */
+    public static final String PUT_DATE_TIME_HEADER = "PutDateTime";
+
+    /** メッセージの優先度の最大値 */
+    private static final int MAX_PRIORITY = 9;
+
+    /** MQMDフィールドに対応するため、メッセージプロパティに設定しないヘッダ名 */
+    private static final Set<String> MQMD_HEADER_NAMES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            HeaderName.MESSAGE_ID, HeaderName.CORRELATION_ID, HeaderName.DESTINATION,
+            HeaderName.REPLY_TO, HeaderName.TIME_TO_LIVE, GROUP_ID_HEADER, MESSAGE_PROPERTIES_HEADER,
+            PRIORITY_HEADER, PUT_DATE_TIME_HEADER)));
+
     /** メッセージデータの文字セットID(MQMDフィールド)の値 */
     private Integer characterSetId = null;
 
     /** メッセージの持続性(MQMDフィールド)の値 */
     private boolean persistence = true;
 
+    /** ヘッダとメッセージプロパティを対応付ける場合はtrue */
+    private boolean useMessageProperties = false;
+
+    /** ヘッダ名とメッセージプロパティ名の変換 */
+    private final WmqPropertyNameConverter propertyNameConverter = new WmqPropertyNameConverter(1000);
+
     /**
      * {@inheritDoc}
      * <pre>
@@ -65,6 +96,12 @@ public class BasicWmqMqmdFieldsOperator implements WmqMqmdFieldsOperator {
      *     {@link SendingMessage}のヘッダ({@link HeaderName#TIME_TO_LIVE})に指定された値
      *     指定がない場合はdefaultTimeToLive引数に指定された値
      *     値が0以下の場合は{@link CMQC#MQEI_UNLIMITED}
+     * メッセージの優先度
+     *     {@link #getPriority(SendingMessage)}の戻り値
+     * 
+     * {@link #useMessageProperties}プロパティがtrueの場合は、
+     * MQMDフィールドに対応しないヘッダを{@link #setMessageProperties(Map, MQMessage)}メソッドで
+     * メッセージプロパティに設定する。
      * </pre>
      */
     public void setFieldsBeforeSend(SendingMessage sendingMessage, MQMessage mqMessage, long defaultTimeToLive)
@@ -134,6 +171,86 @@ public class BasicWmqMqmdFieldsOperator implements WmqMqmdFieldsOperator {
         sendingMessage.setTimeToLive(timeToLive);
         int expiry = (int) (timeToLive / 100); // ミリ秒単位 -> 1/10秒単位
         mqMessage.expiry = expiry <= 0 ? CMQC.MQEI_UNLIMITED : expiry;
+
+        // メッセージの優先度
+        mqMessage.priority = getPriority(sendingMessage);
+
+        // メッセージプロパティ
+        if (useMessageProperties) {
+            setMessageProperties(headerMap, mqMessage);
+        }
+    }
+
+    /**
+     * MQMDフィールドに対応しないヘッダを{@link MQMessage}のメッセージプロパティに設定する。
+     * <pre>
+     * 値がnullのヘッダは設定しない。
+     * メッセージプロパティ名には、ヘッダ名の使用できない文字を"_"に置き換えた名前を使用する。
+     * 値がString、Boolean、Byte、Short、Integer、Long、Float、Double、byte[]の場合はそのまま設定し、
+     * それ以外の場合は文字列に変換して設定する。
+     * </pre>
+     * @param headerMap ヘッダマップ(キーはヘッダ名)
+     * @param mqMessage {@link MQMessage}
+     * @throws MQException メッセージプロパティの設定に失敗した場合
+     */
+    protected void setMessageProperties(Map<String, Object> headerMap, MQMessage mqMessage) throws MQException {
+        for (Map.Entry<String, Object> header : headerMap.entrySet()) {
+            Object value = header.getValue();
+            if (value == null || MQMD_HEADER_NAMES.contains(header.getKey())) {
+                continue;
+            }
+            mqMessage.setObjectProperty(propertyNameConverter.toPropertyName(header.getKey()),
+                                        isPropertyValue(value) ? value : value.toString());
+        }
+    }
+
+    /**
+     * メッセージプロパティにそのまま設定できる型の値であるか否かを判定する。
+     * @param value 値
+     * @return メッセージプロパティにそのまま設定できる場合はtrue
+     */
+    private static boolean isPropertyValue(Object value) {
+        return value instanceof String || value instanceof Boolean
+                || value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long
+                || value instanceof Float || value instanceof Double || value instanceof byte[];
+    }
+
+    /**
+     * 送信メッセージに設定するメッセージの優先度を取得する。
+     * <pre>
+     * 下記の順に優先度を決定する。
+     * 
+     * 送信メッセージのヘッダ({@link #PRIORITY_HEADER})に指定された値
+     *     数値または数値を表す文字列を指定する。
+     * ヘッダに指定がない場合
+     *     {@link CMQC#MQPRI_PRIORITY_AS_Q_DEF}(キューのDEFPRTY属性の値を使用する)
+     *
+     * 送信先ごとの優先度は{@link WmqDestinationProfile#setPriority(int)}で指定する。
+     * 優先順位は、ヘッダ、送信先プロファイル、キューのデフォルトの順となる。
+     * </pre>
+     * @param sendingMessage 送信メッセージ
+     * @return メッセージの優先度
+     * @throws IllegalArgumentException 優先度が0から9の範囲外の場合、またはヘッダの値を数値に変換できない場合
+     */
+    protected int getPriority(SendingMessage sendingMessage) {
+        Object value = sendingMessage.getHeaderMap().get(PRIORITY_HEADER);
+        Integer priority;
+        if (value == null) {
+            return CMQC.MQPRI_PRIORITY_AS_Q_DEF;
+        } else if (value instanceof Number) {
+            priority = ((Number) value).intValue();
+        } else {
+            try {
+                priority = Integer.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid priority. priority = [" + value + "]", e);
+            }
+        }
+        if (priority < 0 || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException("priority must be between 0 and " + MAX_PRIORITY
+                                             + ". priority = [" + priority + "]");
+        }
+        return priority;
     }
 
     /**
@@ -223,6 +340,21 @@ public class BasicWmqMqmdFieldsOperator implements WmqMqmdFieldsOperator {
      * 応答先キューの名前
      *     {@link SendingMessage}のヘッダ({@link HeaderName#REPLY_TO})に指定された値
      *     指定がない場合は設定しない。
+     * グループID
+     *     {@link MQMessage}に設定されたグループIDを
+     *     {@link ReceivedMessage}のヘッダ({@link #GROUP_ID_HEADER})に設定する。
+     *     指定がない場合は設定しない。
+     * メッセージの優先度
+     *     {@link MQMessage}に設定された優先度({@link Integer})を
+     *     {@link ReceivedMessage}のヘッダ({@link #PRIORITY_HEADER})に設定する。
+     * メッセージが書き込まれた日時
+     *     {@link MQMessage}に設定された日時({@link Date})を
+     *     {@link ReceivedMessage}のヘッダ({@link #PUT_DATE_TIME_HEADER})に設定する。
+     *     指定がない場合は設定しない。
+     * メッセージプロパティ
+     *     {@link #useMessageProperties}プロパティがtrueの場合は、
+     *     メッセージプロパティをアクセス時に読み込む{@link WmqMessageProperties}を
+     *     {@link ReceivedMessage}のヘッダ({@link #MESSAGE_PROPERTIES_HEADER})に設定する。
      * </pre>
      * @param mqMessage {@link MQMessage}
      * @param receivedMessage 受信メッセージ
@@ -243,6 +375,24 @@ public class BasicWmqMqmdFieldsOperator implements WmqMqmdFieldsOperator {
         if (StringUtil.hasValue(replyTo)) {
             receivedMessage.setReplyTo(replyTo);
         }
+
+        // グループID
+        if (mqMessage.groupId != null && !Arrays.equals(mqMessage.groupId, CMQC.MQGI_NONE)) {
+            receivedMessage.setHeader(GROUP_ID_HEADER, convertIdToString(mqMessage.groupId));
+        }
+
+        // メッセージの優先度
+        receivedMessage.setHeader(PRIORITY_HEADER, mqMessage.priority);
+
+        // メッセージが書き込まれた日時
+        if (mqMessage.putDateTime != null) {
+            receivedMessage.setHeader(PUT_DATE_TIME_HEADER, mqMessage.putDateTime.getTime());
+        }
+
+        // メッセージプロパティ
+        if (useMessageProperties) {
+            receivedMessage.setHeader(MESSAGE_PROPERTIES_HEADER, new WmqMessageProperties(mqMessage, propertyNameConverter));
+        }
     }
 
     /**
@@ -317,4 +467,23 @@ public class BasicWmqMqmdFieldsOperator implements WmqMqmdFieldsOperator {
         this.persistence = persistence;
         return this;
     }
+
+    /**
+     * ヘッダとメッセージプロパティを対応付けるか否かを設定する。
+     * <pre>
+     * trueが指定された場合は、送信時にMQMDフィールドに対応しないヘッダをメッセージプロパティに設定し、
+     * 受信時にメッセージプロパティを{@link WmqMessageProperties}としてヘッダに設定する。
+     * 
+     * メッセージプロパティに対応していないアプリケーションがキューを読み込む場合は、
+     * キューのPROPCTL属性によってはメッセージプロパティがMQRFH2ヘッダとして本文に付加されるため注意すること。
+     * 
+     * デフォルトはfalse。
+     * </pre>
+     * @param useMessageProperties ヘッダとメッセージプロパティを対応付ける場合はtrue
+     * @return このオブジェクト自体
+     */
+    public BasicWmqMqmdFieldsOperator setUseMessageProperties(boolean useMessageProperties) {
+        this.useMessageProperties = useMessageProperties;
+        return this;
+    }
 }
@@ -0,0 +1,89 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate(zlib形式)で本文を圧縮する{@link WmqMessageCodec}の実装クラス。
+ * <p/>
+ * 圧縮レベルは{@link #setLevel(int)}で指定する。デフォルトは{@link Deflater#BEST_SPEED}。
+ * 固定長やXMLの本文は、最も速い圧縮レベルでも十分に圧縮されるため、CPU負荷の低さを優先している。
+ */
+public class DeflateWmqMessageCodec implements WmqMessageCodec {
+
+    /** 圧縮したメッセージに設定するメッセージデータの形式名 */
+    public static final String FORMAT = "NBDEFLAT";
+
+    /** 圧縮レベル */
+    private int level = Deflater.BEST_SPEED;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * {@link #FORMAT}を返す。
+     */
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] encode(byte[] body) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] decode(byte[] body) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("compressed body was truncated.");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("invalid compressed body.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 圧縮レベルを設定する。
+     * <p/>
+     * {@link Deflater#BEST_SPEED}(1)から{@link Deflater#BEST_COMPRESSION}(9)の範囲で指定する。
+     * デフォルトは{@link Deflater#BEST_SPEED}。
+     *
+     * @param level 圧縮レベル
+     * @return このオブジェクト自体
+     */
+    public DeflateWmqMessageCodec setLevel(int level) {
+        this.level = level;
+        return this;
+    }
+}
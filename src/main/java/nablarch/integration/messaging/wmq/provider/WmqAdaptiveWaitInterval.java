@@ -0,0 +1,77 @@
+package nablarch.integration.messaging.wmq.provider;
+
+/**
+ * 受信待ちのメッセージがない間は待機時間を延ばし、メッセージを受信できた場合は待機時間を縮める、
+ * 適応的な受信の待機時間(MQGMO.WaitInterval)を保持するクラス。
+ * <pre>
+ * 待機時間は{@link #minInterval}から開始し、
+ * メッセージを受信できなかった場合は2倍({@link #maxInterval}が上限)、
+ * メッセージを受信できた場合は半分({@link #minInterval}が下限)にする。
+ *
+ * 本クラスは{@link WmqMessagingContext}ごとに生成され、状態を保持する。
+ * {@link WmqMessagingContext}と同様に、複数のスレッドから使用することはできない。
+ * </pre>
+ */
+public class WmqAdaptiveWaitInterval {
+
+    /** 待機時間の下限値(単位:msec) */
+    private final long minInterval;
+
+    /** 待機時間の上限値(単位:msec) */
+    private final long maxInterval;
+
+    /** 現在の待機時間(単位:msec) */
+    private long currentInterval;
+
+    /**
+     * コンストラクタ。
+     * @param minInterval 待機時間の下限値(単位:msec)
+     * @param maxInterval 待機時間の上限値(単位:msec)
+     * @throws IllegalArgumentException 下限値が1未満の場合、または下限値が上限値より大きい場合
+     */
+    public WmqAdaptiveWaitInterval(long minInterval, long maxInterval) {
+        if (minInterval < 1 || maxInterval < minInterval) {
+            throw new IllegalArgumentException(
+                String.format("adaptive wait interval setting was invalid. "
+                            + "minInterval must be greater than 0 and less than or equal to maxInterval. "
+                            + "minInterval = [%s], maxInterval = [%s]", minInterval, maxInterval));
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.currentInterval = minInterval;
+    }
+
+    /**
+     * 次の受信で使用する待機時間を取得する。
+     * <p/>
+     * 現在の待機時間と、呼び出し元が指定した待機時間のうち短い方を返す。
+     *
+     * @param requestedInterval 呼び出し元が指定した待機時間(単位:msec)
+     * @return 次の受信で使用する待機時間(単位:msec)
+     */
+    public long getWaitInterval(long requestedInterval) {
+        return Math.min(currentInterval, requestedInterval);
+    }
+
+    /**
+     * メッセージを受信できたことを通知し、待機時間を縮める。
+     */
+    public void received() {
+        currentInterval = Math.max(minInterval, currentInterval / 2);
+    }
+
+    /**
+     * メッセージを受信できなかったことを通知し、待機時間を延ばす。
+     */
+    public void empty() {
+        currentInterval = Math.min(maxInterval, currentInterval * 2);
+    }
+
+    /**
+     * 現在の待機時間を取得する。
+     * @return 現在の待機時間(単位:msec)
+     */
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+}
@@ -0,0 +1,124 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import nablarch.fw.messaging.SendingMessage;
+
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * 送信先ごとに使用するMQMDフィールドの値(送信先プロファイル)を保持するクラス。
+ * <pre>
+ * 監査ログのように失われてはならないメッセージは永続、通知のように失われても再送できるメッセージは非永続とするなど、
+ * 1つの{@link WmqMessagingProvider}で送信先ごとにMQMDフィールドの値を使い分けるために使用する。
+ *
+ * 指定したプロパティのみ、{@link WmqMqmdFieldsOperator}が設定した値を上書きする。
+ * 指定しないプロパティは、{@link WmqMqmdFieldsOperator}と{@link WmqMessagingProvider}の設定値を使用する。
+ *
+ *     persistence     メッセージの持続性
+ *     timeToLive      メッセージ存続時間(単位:msec)。送信メッセージのヘッダで指定された場合はヘッダの値を優先する
+ *     priority        メッセージの優先度。送信メッセージのヘッダ({@link BasicWmqMqmdFieldsOperator#PRIORITY_HEADER})で
+ *                     指定された場合はヘッダの値を優先する
+ *     characterSetId  メッセージデータの文字セットID
+ *
+ * 送信先プロファイルは、{@link WmqMessagingProvider#setDestinationProfiles(java.util.Map)}で送信先キュー名と対応付ける。
+ * 対応付けは送信先{@link com.ibm.mq.MQQueue}をオープンした時点で1度だけ解決し、送信ごとには検索しない。
+ * </pre>
+ */
+public class WmqDestinationProfile {
+
+    /** メッセージの持続性。指定しない場合はnull */
+    private Boolean persistence = null;
+
+    /** メッセージ存続時間(単位:msec)。指定しない場合はnull */
+    private Long timeToLive = null;
+
+    /** メッセージの優先度。指定しない場合はnull */
+    private Integer priority = null;
+
+    /** メッセージデータの文字セットID。指定しない場合はnull */
+    private Integer characterSetId = null;
+
+    /**
+     * 送信メッセージのヘッダで指定がない場合に使用するメッセージ存続時間を取得する。
+     * @param defaultTimeToLive {@link WmqMessagingProvider}に設定されたメッセージ存続時間(単位:msec)
+     * @return 送信先プロファイルのメッセージ存続時間。指定しない場合はdefaultTimeToLive引数の値
+     */
+    public long getTimeToLive(long defaultTimeToLive) {
+        return timeToLive != null ? timeToLive : defaultTimeToLive;
+    }
+
+    /**
+     * {@link WmqMqmdFieldsOperator}が設定したMQMDフィールドを、送信先プロファイルの値で上書きする。
+     * @param sendingMessage 送信メッセージ
+     * @param mqMessage MQMDフィールドを設定済みの{@link MQMessage}
+     */
+    public void apply(SendingMessage sendingMessage, MQMessage mqMessage) {
+        if (persistence != null) {
+            mqMessage.persistence = persistence ? CMQC.MQPER_PERSISTENT : CMQC.MQPER_NOT_PERSISTENT;
+        }
+        if (priority != null && sendingMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER) == null) {
+            mqMessage.priority = priority;
+        }
+        if (characterSetId != null) {
+            mqMessage.characterSet = characterSetId;
+        }
+    }
+
+    /**
+     * メッセージの持続性を設定する。
+     * <p/>
+     * trueの場合は{@link CMQC#MQPER_PERSISTENT}、falseの場合は{@link CMQC#MQPER_NOT_PERSISTENT}を使用する。
+     *
+     * @param persistence 永続メッセージとする場合はtrue
+     * @return このオブジェクト自体
+     */
+    public WmqDestinationProfile setPersistence(boolean persistence) {
+        this.persistence = persistence;
+        return this;
+    }
+
+    /**
+     * メッセージ存続時間(単位:msec)を設定する。
+     * <p/>
+     * 0以下の場合は{@link CMQC#MQEI_UNLIMITED}となる。
+     *
+     * @param timeToLive メッセージ存続時間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqDestinationProfile setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * メッセージの優先度を設定する。
+     * <pre>
+     * 送信メッセージのヘッダ({@link BasicWmqMqmdFieldsOperator#PRIORITY_HEADER})で優先度が指定されない場合に使用する。
+     * 優先順位は、ヘッダ、送信先プロファイル、キューのデフォルト(DEFPRTY属性)の順となる。
+     * オンラインの緊急のメッセージとバッチの大量のメッセージが同じキューを共有する場合などに、
+     * 送信先ごとに優先度を設定することで、緊急のメッセージを先に読み込ませることができる。
+     *
+     * 優先度の順に読み込まれるのは、キューのMSGDLVSQ属性がPRIORITYの場合のみであるため注意すること。
+     * </pre>
+     * @param priority メッセージの優先度(0から9)
+     * @return このオブジェクト自体
+     * @throws IllegalArgumentException 0から9の範囲外の値が指定された場合
+     */
+    public WmqDestinationProfile setPriority(int priority) {
+        if (priority < 0 || priority > 9) {
+            throw new IllegalArgumentException("priority must be between 0 and 9. priority = [" + priority + "]");
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * メッセージデータの文字セットIDを設定する。
+     * @param characterSetId メッセージデータの文字セットID
+     * @return このオブジェクト自体
+     */
+    public WmqDestinationProfile setCharacterSetId(int characterSetId) {
+        this.characterSetId = characterSetId;
+        return this;
+    }
+}
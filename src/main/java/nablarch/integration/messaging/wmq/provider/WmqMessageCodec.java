@@ -0,0 +1,41 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.io.IOException;
+
+/**
+ * 送信時にメッセージの本文を符号化(圧縮など)し、受信時に復号するクラス。
+ * <pre>
+ * 符号化したメッセージには、MQMDフィールドのメッセージデータの形式名({@link com.ibm.mq.MQMessage#format})に
+ * {@link #getFormat()}メソッドが返す形式名を設定する。
+ * 受信時は形式名が一致するメッセージのみを復号するため、符号化していないメッセージはそのまま受信できる。
+ *
+ * 実装クラスはスレッドセーフであること。
+ * </pre>
+ */
+public interface WmqMessageCodec {
+
+    /**
+     * 符号化したメッセージに設定するメッセージデータの形式名を取得する。
+     * <p/>
+     * 8文字以内とし、IBM MQが予約している"MQ"で始まる名前は使用しないこと。
+     *
+     * @return メッセージデータの形式名
+     */
+    String getFormat();
+
+    /**
+     * 本文を符号化する。
+     * @param body 本文
+     * @return 符号化した本文
+     * @throws IOException 符号化に失敗した場合
+     */
+    byte[] encode(byte[] body) throws IOException;
+
+    /**
+     * 符号化された本文を復号する。
+     * @param body 符号化された本文
+     * @return 復号した本文
+     * @throws IOException 復号に失敗した場合
+     */
+    byte[] decode(byte[] body) throws IOException;
+}
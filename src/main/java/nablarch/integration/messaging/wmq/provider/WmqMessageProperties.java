@@ -0,0 +1,101 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import nablarch.fw.messaging.MessagingException;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * 受信メッセージのメッセージプロパティを、アクセスされた時点で読み込むクラス。
+ * <pre>
+ * {@link BasicWmqMqmdFieldsOperator}が受信メッセージのヘッダ
+ * ({@link BasicWmqMqmdFieldsOperator#MESSAGE_PROPERTIES_HEADER})に設定する。
+ * 
+ * メッセージプロパティはメッセージハンドルを経由して1件ずつ取得するため、
+ * 本文に付加されたMQRFH2ヘッダを解析する必要はない。
+ * 受信時点ではメッセージプロパティを一切読み込まず、
+ * {@link #get(String)}メソッドでは指定されたプロパティのみ、
+ * {@link #getAll()}メソッドではすべてのプロパティを読み込む。読み込んだ値はキャッシュする。
+ * 
+ * メッセージプロパティの読み込みで{@link MQException}が送出された場合は{@link MessagingException}を送出する。
+ * </pre>
+ */
+public class WmqMessageProperties {
+
+    /** メッセージプロパティを読み込む{@link MQMessage} */
+    private final MQMessage mqMessage;
+
+    /** ヘッダ名とメッセージプロパティ名の変換 */
+    private final WmqPropertyNameConverter nameConverter;
+
+    /** 読み込んだメッセージプロパティ(キーはヘッダ名) */
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+
+    /** すべてのメッセージプロパティを読み込み済みの場合はtrue */
+    private boolean loadedAll = false;
+
+    /**
+     * コンストラクタ。
+     * @param mqMessage メッセージプロパティを読み込む{@link MQMessage}
+     * @param nameConverter ヘッダ名とメッセージプロパティ名の変換
+     */
+    WmqMessageProperties(MQMessage mqMessage, WmqPropertyNameConverter nameConverter) {
+        this.mqMessage = mqMessage;
+        this.nameConverter = nameConverter;
+    }
+
+    /**
+     * 指定されたヘッダ名に対応するメッセージプロパティの値を取得する。
+     * @param headerName ヘッダ名
+     * @return メッセージプロパティの値。存在しない場合はnull
+     */
+    public synchronized Object get(String headerName) {
+        if (loadedAll || properties.containsKey(headerName)) {
+            return properties.get(headerName);
+        }
+        Object value;
+        try {
+            value = mqMessage.getObjectProperty(nameConverter.toPropertyName(headerName));
+        } catch (MQException e) {
+            if (e.reasonCode != CMQC.MQRC_PROPERTY_NOT_AVAILABLE) {
+                throw new MessagingException("failed to get the message property. headerName = [" + headerName + "]", e);
+            }
+            value = null;
+        }
+        properties.put(headerName, value);
+        return value;
+    }
+
+    /**
+     * すべてのメッセージプロパティを取得する。
+     * @return メッセージプロパティ(キーはヘッダ名)
+     */
+    public synchronized Map<String, Object> getAll() {
+        if (!loadedAll) {
+            properties.clear();
+            try {
+                Enumeration<String> names = mqMessage.getPropertyNames("%");
+                while (names.hasMoreElements()) {
+                    String propertyName = names.nextElement();
+                    properties.put(nameConverter.toHeaderName(propertyName), mqMessage.getObjectProperty(propertyName));
+                }
+            } catch (MQException e) {
+                throw new MessagingException("failed to get the message properties.", e);
+            }
+            loadedAll = true;
+        }
+        Map<String, Object> all = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (entry.getValue() != null) {
+                all.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return Collections.unmodifiableMap(all);
+    }
+}
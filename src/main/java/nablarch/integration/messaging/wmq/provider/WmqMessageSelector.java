@@ -0,0 +1,27 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+
+/**
+ * 受信するメッセージを選択するクラス。
+ * <pre>
+ * {@link WmqMessagingProvider}は受信キューをブラウズし、本クラスが選択したメッセージのみを
+ * メッセージIDを突合して読み込む。選択されなかったメッセージは読み込まれずにキューに残るため、
+ * コミットやバックアウト、再送の対象とならない。
+ * 
+ * ブラウズでは本文を転送しないため、選択にはMQMDフィールドとメッセージプロパティのみを使用すること。
+ * 
+ * 実装クラスはスレッドセーフであること。
+ * </pre>
+ */
+public interface WmqMessageSelector {
+
+    /**
+     * 指定された{@link MQMessage}を受信するか否かを判定する。
+     * @param mqMessage ブラウズした{@link MQMessage}(本文は含まない)
+     * @return 受信する場合はtrue
+     * @throws MQException MQMDフィールドやメッセージプロパティの取得に失敗した場合
+     */
+    boolean select(MQMessage mqMessage) throws MQException;
+}
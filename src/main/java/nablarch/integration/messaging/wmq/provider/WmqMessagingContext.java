@@ -1,12 +1,21 @@
 package nablarch.integration.messaging.wmq.provider;
 
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.sql.XADataSource;
 import javax.transaction.xa.XAException;
 
+import nablarch.core.util.StringUtil;
 import nablarch.fw.messaging.MessagingContext;
 import nablarch.fw.messaging.MessagingException;
 import nablarch.fw.messaging.ReceivedMessage;
@@ -24,10 +33,21 @@ public class WmqMessagingContext extends MessagingContext {
 
     /**
      * カレントスレッドに紐づけられている{@link WmqMessagingContext}を取得する。
+     * <p/>
+     * カレントスレッドに紐づけられているコンテキストが{@link WmqMessagingContext}でない場合
+     * ({@link nablarch.integration.messaging.wmq.cluster.WmqClusterMessagingContext}など)は、
+     * {@link IllegalStateException}を送出する。
+     *
      * @return カレントスレッドに紐づけられている{@link WmqMessagingContext}
      */
     public static WmqMessagingContext getInstance() {
-        return (WmqMessagingContext) MessagingContext.getInstance();
+        MessagingContext context = MessagingContext.getInstance();
+        if (!(context instanceof WmqMessagingContext)) {
+            throw new IllegalStateException(String.format(
+                    "WmqMessagingContext was not bound to the current thread. bound context = [%s]",
+                    context.getClass().getName()));
+        }
+        return (WmqMessagingContext) context;
     }
 
     /** {@link WmqMessagingProvider} */
@@ -45,6 +65,39 @@ public class WmqMessagingContext extends MessagingContext {
     /** ポイズンメッセージ送信先{@link MQQueue} */
     private final MQQueue poisonMqQueue;
 
+    /** 適応的な受信の待機時間。使用しない場合はnull */
+    private final WmqAdaptiveWaitInterval adaptiveWaitInterval;
+
+    /** オープンしたままにしている、送信先{@link MQQueue}マップにない送信先の{@link MQQueue}。使用順に並ぶ */
+    private final Map<String, MQQueue> dynamicMqQueues = new LinkedHashMap<String, MQQueue>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MQQueue> eldest) {
+            if (size() <= provider.getDynamicQueueCacheSize()) {
+                return false;
+            }
+            sendingProfiles.remove(eldest.getValue());
+            provider.close(eldest.getValue());
+            return true;
+        }
+    };
+
+    /** 送信先{@link MQQueue}ごとの{@link WmqDestinationProfile}。オープンした時点で解決する */
+    private final Map<MQQueue, WmqDestinationProfile> sendingProfiles = new IdentityHashMap<MQQueue, WmqDestinationProfile>();
+
+    /** 送信先{@link MQQueue}マップにない送信先ごとの送信回数。使用順に並ぶ */
+    private final Map<String, Integer> dynamicSendCounts = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > Math.max(provider.getDynamicQueueCacheSize() * 4, 64);
+        }
+    };
+
+    /** クローズ時に呼び出す処理。登録順に並ぶ */
+    private final List<Runnable> closeHooks = new ArrayList<Runnable>();
+
+    /** 停止のために受信待ちを行わないように指示されている場合はtrue */
+    private volatile boolean shutdownPollingRequested = false;
+
     /**
      * コンストラクタ。
      * @param provider {@link WmqMessagingProvider}
@@ -58,33 +111,300 @@ public class WmqMessagingContext extends MessagingContext {
                                 Map<String, MQQueue> sendingMqQueues,
                                 MQQueue receivedMqQueue,
                                 MQQueue poisonMqQueue) {
+        this(provider, mqQueueManager, sendingMqQueues, receivedMqQueue, poisonMqQueue, null);
+    }
+
+    /**
+     * コンストラクタ。
+     * @param provider {@link WmqMessagingProvider}
+     * @param mqQueueManager {@link MQQueueManager}
+     * @param sendingMqQueues 送信先{@link MQQueue}マップ(キーはキュー名)
+     * @param receivedMqQueue 受信先{@link MQQueue}
+     * @param poisonMqQueue ポイズンメッセージ送信先{@link MQQueue}
+     * @param adaptiveWaitInterval 適応的な受信の待機時間。使用しない場合はnull
+     */
+    public WmqMessagingContext(WmqMessagingProvider provider,
+                                MQQueueManager mqQueueManager,
+                                Map<String, MQQueue> sendingMqQueues,
+                                MQQueue receivedMqQueue,
+                                MQQueue poisonMqQueue,
+                                WmqAdaptiveWaitInterval adaptiveWaitInterval) {
         this.provider = provider;
         this.mqQueueManager = mqQueueManager;
         this.sendingMqQueues = sendingMqQueues;
         this.receivedMqQueue = receivedMqQueue;
         this.poisonMqQueue = poisonMqQueue;
+        this.adaptiveWaitInterval = adaptiveWaitInterval;
+        if (sendingMqQueues != null) {
+            for (Map.Entry<String, MQQueue> entry : sendingMqQueues.entrySet()) {
+                resolveProfile(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 送信先{@link MQQueue}に対応する{@link WmqDestinationProfile}を解決する。
+     * <p/>
+     * {@link WmqMessagingProvider#getDestinationProfile(String)}メソッドで取得し、送信先{@link MQQueue}と対応付けて保持する。
+     * 
+     * @param queueName キュー名
+     * @param mqQueue オープンした送信先{@link MQQueue}
+     */
+    private void resolveProfile(String queueName, MQQueue mqQueue) {
+        WmqDestinationProfile profile = provider.getDestinationProfile(queueName);
+        if (profile != null && mqQueue != null) {
+            sendingProfiles.put(mqQueue, profile);
+        }
     }
 
     /**
      * {@inheritDoc}
      * </p>
-     * {@link WmqMessagingProvider#putMessage(MQQueue, SendingMessage)}メソッドに処理を委譲する。
+     * {@link WmqMessagingProvider#putMessage(MQQueue, SendingMessage, WmqDestinationProfile)}メソッドに処理を委譲する。
+     * 送信先の{@link WmqDestinationProfile}は、送信先{@link MQQueue}をオープンした時点で解決したものを使用する。
+     * <p/>
+     * {@link WmqMessagingProvider#setUseDynamicDestinations(boolean)}でtrueが指定され、
+     * 送信先{@link MQQueue}マップにない送信先の場合は、{@link #sendToDynamicDestination(SendingMessage)}メソッドに処理を委譲する。
      */
     @Override
     public String sendMessage(SendingMessage sendingMessage) {
+        if (isDynamicDestination(sendingMessage.getDestination())) {
+            return sendToDynamicDestination(sendingMessage);
+        }
         MQQueue mqQueue = getMQQueue(sendingMqQueues, sendingMessage.getDestination());
-        return provider.putMessage(mqQueue, sendingMessage);
+        return provider.putMessage(mqQueue, sendingMessage, sendingProfiles.get(mqQueue));
+    }
+
+    /**
+     * 送信先{@link MQQueue}マップにない送信先にメッセージを送信する。
+     * <pre>
+     * 送信先ごとの送信回数を数え、{@link WmqMessagingProvider#setDynamicQueueOpenThreshold(int)}に達した送信先は
+     * {@link MQQueue}をオープンしたままにして再利用する。それ以外の送信先は、
+     * {@link WmqMessagingProvider#putMessage(MQQueueManager, String, SendingMessage)}メソッドでMQPUT1により送信する。
+     * ただし、MQPUT1ではセグメントに分割できないため、{@link WmqMessagingProvider#exceedsSegmentSize(SendingMessage)}が
+     * trueを返す送信メッセージは、{@link #getDynamicMQQueue(String)}メソッドで取得した{@link MQQueue}に書き込む。
+     * 
+     * 応答先キューのように送信先が要求ごとに変わる場合にオープンしたままの{@link MQQueue}が増え続けないよう、
+     * オープンしたままにする数は{@link WmqMessagingProvider#setDynamicQueueCacheSize(int)}を上限とし、
+     * 超えた場合は最も長く使用されていないものからクローズする。
+     * </pre>
+     * @param sendingMessage 送信メッセージ
+     * @return メッセージID
+     */
+    protected String sendToDynamicDestination(SendingMessage sendingMessage) {
+        String queueName = sendingMessage.getDestination();
+        MQQueue mqQueue = dynamicMqQueues.get(queueName);
+        if (mqQueue == null) {
+            Integer count = dynamicSendCounts.get(queueName);
+            int sendCount = count == null ? 1 : count + 1;
+            if (!provider.exceedsSegmentSize(sendingMessage)
+                    && (sendCount < provider.getDynamicQueueOpenThreshold() || provider.getDynamicQueueCacheSize() <= 0)) {
+                dynamicSendCounts.put(queueName, sendCount);
+                return provider.putMessage(mqQueueManager, queueName, sendingMessage);
+            }
+            mqQueue = getDynamicMQQueue(queueName);
+        }
+        try {
+            return provider.putMessage(mqQueue, sendingMessage, sendingProfiles.get(mqQueue));
+        } finally {
+            releaseDynamicMQQueue(mqQueue);
+        }
+    }
+
+    /**
+     * 送信先{@link MQQueue}マップにない送信先の{@link MQQueue}を取得する。
+     * <p/>
+     * オープンしたままにしている{@link MQQueue}がない場合は、
+     * {@link WmqMessagingProvider#openSendingQueue(MQQueueManager, String)}メソッドでオープンする。
+     * 
+     * @param queueName キュー名
+     * @return {@link MQQueue}
+     */
+    protected MQQueue getDynamicMQQueue(String queueName) {
+        MQQueue mqQueue = dynamicMqQueues.get(queueName);
+        if (mqQueue == null) {
+            mqQueue = provider.openSendingQueue(mqQueueManager, queueName);
+            dynamicSendCounts.remove(queueName);
+            resolveProfile(queueName, mqQueue);
+            if (provider.getDynamicQueueCacheSize() > 0) {
+                dynamicMqQueues.put(queueName, mqQueue);
+            }
+        }
+        return mqQueue;
+    }
+
+    /**
+     * {@link #getDynamicMQQueue(String)}メソッドで取得した{@link MQQueue}を、使用後に解放する。
+     * <p/>
+     * {@link WmqMessagingProvider#setDynamicQueueCacheSize(int)}に0以下が指定され、
+     * オープンしたままにしない場合はクローズする。
+     * 
+     * @param mqQueue {@link MQQueue}
+     */
+    private void releaseDynamicMQQueue(MQQueue mqQueue) {
+        if (provider.getDynamicQueueCacheSize() <= 0) {
+            sendingProfiles.remove(mqQueue);
+            provider.close(mqQueue);
+        }
+    }
+
+    /**
+     * 送信先{@link MQQueue}マップにない送信先への送信として扱うか否かを判定する。
+     * @param queueName キュー名
+     * @return {@link WmqMessagingProvider#setUseDynamicDestinations(boolean)}でtrueが指定され、
+     *          送信先{@link MQQueue}マップにない送信先の場合はtrue
+     */
+    private boolean isDynamicDestination(String queueName) {
+        return queueName != null && !sendingMqQueues.containsKey(queueName)
+                && provider != null && provider.isUseDynamicDestinations();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * {@link WmqMessagingProvider#getReplyCache()}が返す{@link WmqReplyCache}がキャッシュの対象とする送信メッセージの場合は、
+     * {@link WmqReplyCache#getReply(SendingMessage, long, Callable)}メソッドで応答メッセージを取得する。
+     */
+    @Override
+    public ReceivedMessage sendSync(final SendingMessage sendingMessage, final long timeout) {
+        WmqReplyCache replyCache = provider.getReplyCache();
+        if (replyCache == null || !replyCache.isCacheable(sendingMessage)) {
+            return super.sendSync(sendingMessage, timeout);
+        }
+        return replyCache.getReply(sendingMessage, timeout, new Callable<ReceivedMessage>() {
+            public ReceivedMessage call() {
+                return WmqMessagingContext.super.sendSync(sendingMessage, timeout);
+            }
+        });
     }
 
     /**
      * {@inheritDoc}
      * </p>
-     * {@link WmqMessagingProvider#getMessage(MQQueue, String, long, MQQueue)}メソッドに処理を委譲する。
+     * {@link WmqMessagingProvider#getMessage(MQQueue, String, long, MQQueue, WmqAdaptiveWaitInterval)}メソッドに処理を委譲する。
+     * <p/>
+     * {@link #requestShutdownPolling()}が呼び出された後のメッセージIDを指定しない受信は、
+     * キューにアクセスせずにnullを返す。
      */
     @Override
     public ReceivedMessage receiveMessage(String receiveQueue, String messageId, long timeout) {
         checkReceivedQueueName(receiveQueue);
-        return provider.getMessage(receivedMqQueue, messageId, timeout, poisonMqQueue);
+        if (isPollingShutDown(messageId)) {
+            return null;
+        }
+        return provider.getMessage(receivedMqQueue, messageId, timeout, poisonMqQueue, adaptiveWaitInterval);
+    }
+
+    /**
+     * 指定された{@link WmqMessageSelector}が選択したメッセージを受信する。
+     * <p/>
+     * {@link WmqMessagingProvider#getSelectedMessage(MQQueue, WmqMessageSelector, long, MQQueue)}メソッドに処理を委譲する。
+     * {@link #requestShutdownPolling()}が呼び出された後は、キューにアクセスせずにnullを返す。
+     * 
+     * @param receiveQueue 受信キュー名
+     * @param selector 受信するメッセージを選択する{@link WmqMessageSelector}
+     * @param timeout タイムアウト値(単位:msec)
+     * @return 受信メッセージ。受信できなかった場合はnull
+     */
+    public ReceivedMessage receiveSelectedMessage(String receiveQueue, WmqMessageSelector selector, long timeout) {
+        checkReceivedQueueName(receiveQueue);
+        if (shutdownPollingRequested) {
+            return null;
+        }
+        return provider.getSelectedMessage(receivedMqQueue, selector, timeout, poisonMqQueue);
+    }
+
+    /**
+     * 指定された{@link InputStream}から読み込んだ本文でメッセージを送信する。
+     * <p/>
+     * 宛先とヘッダは送信メッセージに指定された値を使用し、送信メッセージの本文は使用しない。
+     * {@link WmqMessagingProvider#putMessage(MQQueue, SendingMessage, InputStream, WmqDestinationProfile)}メソッドに処理を委譲する。
+     * 本文をセグメントに分割して書き込むためMQPUT1は使用せず、送信先{@link MQQueue}マップにない送信先は
+     * {@link #getDynamicMQQueue(String)}メソッドで取得した{@link MQQueue}に書き込む。
+     * 
+     * @param sendingMessage 送信メッセージ
+     * @param body 本文を読み込む{@link InputStream}
+     * @return メッセージID
+     */
+    public String sendMessage(SendingMessage sendingMessage, InputStream body) {
+        if (isDynamicDestination(sendingMessage.getDestination())) {
+            MQQueue mqQueue = getDynamicMQQueue(sendingMessage.getDestination());
+            try {
+                return provider.putMessage(mqQueue, sendingMessage, body, sendingProfiles.get(mqQueue));
+            } finally {
+                releaseDynamicMQQueue(mqQueue);
+            }
+        }
+        MQQueue mqQueue = getMQQueue(sendingMqQueues, sendingMessage.getDestination());
+        return provider.putMessage(mqQueue, sendingMessage, body, sendingProfiles.get(mqQueue));
+    }
+
+    /**
+     * 指定された{@link ReadableByteChannel}から読み込んだ本文でメッセージを送信する。
+     * <p/>
+     * {@link #sendMessage(SendingMessage, InputStream)}メソッドに処理を委譲する。
+     * 
+     * @param sendingMessage 送信メッセージ
+     * @param body 本文を読み込む{@link ReadableByteChannel}
+     * @return メッセージID
+     */
+    public String sendMessage(SendingMessage sendingMessage, ReadableByteChannel body) {
+        return sendMessage(sendingMessage, Channels.newInputStream(body));
+    }
+
+    /**
+     * 本文を{@link InputStream}で読み込むメッセージを受信する。
+     * <p/>
+     * {@link WmqMessagingProvider#getMessageStream(MQQueue, String, long, MQQueue)}メソッドに処理を委譲する。
+     * {@link #requestShutdownPolling()}が呼び出された後のメッセージIDを指定しない受信は、
+     * キューにアクセスせずにnullを返す。
+     * 
+     * @param receiveQueue 受信キュー名
+     * @param messageId 相関IDに指定するメッセージID
+     * @param timeout タイムアウト値(単位:msec)
+     * @return 受信メッセージ。受信できなかった場合はnull
+     */
+    public WmqStreamingReceivedMessage receiveMessageStream(String receiveQueue, String messageId, long timeout) {
+        checkReceivedQueueName(receiveQueue);
+        if (isPollingShutDown(messageId)) {
+            return null;
+        }
+        return provider.getMessageStream(receivedMqQueue, messageId, timeout, poisonMqQueue);
+    }
+
+    /**
+     * 停止のため、このコンテキストで以降のメッセージIDを指定しない受信を行わないように指示する。
+     * <pre>
+     * 受信スレッドを停止する際に、受信スレッド以外のスレッドから呼び出すことを想定している。
+     * 指示はこのコンテキストにのみ有効で、他のコンテキストの受信には影響しない。
+     * また、同期応答の待ち受け(メッセージIDを指定した受信)には影響しない。
+     * 
+     * 呼び出し時点で実行中のMQGETは中断できないため、停止までの時間は
+     * 実行中の受信の待機時間(タイムアウト値、または適応的な受信の待機時間の上限値)が上限となる。
+     * 本メソッドは、その待機時間の経過後に次の受信待ちを始めないことだけを保証する。
+     * 
+     * 指示は解除できない。コンテキストをクローズし、新たに作成したコンテキストには影響しない。
+     * </pre>
+     */
+    public void requestShutdownPolling() {
+        shutdownPollingRequested = true;
+    }
+
+    /**
+     * {@link #requestShutdownPolling()}が呼び出されたか否かを判定する。
+     * @return 呼び出された場合はtrue
+     */
+    public boolean isShutdownPollingRequested() {
+        return shutdownPollingRequested;
+    }
+
+    /**
+     * 停止の指示により、指定されたメッセージIDでの受信を行わないか否かを判定する。
+     * @param messageId 相関IDに指定するメッセージID
+     * @return 受信を行わない場合はtrue
+     */
+    private boolean isPollingShutDown(String messageId) {
+        return shutdownPollingRequested && StringUtil.isNullOrEmpty(messageId);
     }
 
     /**
@@ -121,6 +441,7 @@ public class WmqMessagingContext extends MessagingContext {
     /**
      * {@inheritDoc}
      * <p/>
+     * {@link #addCloseHook(Runnable)}メソッドで登録された処理を登録順に呼び出した後、
      * {@link WmqMessagingProvider#close(Map)}メソッド、
      * {@link WmqMessagingProvider#close(MQQueue)}メソッド、
      * {@link WmqMessagingProvider#disconnect(MQQueueManager)}メソッド
@@ -128,12 +449,35 @@ public class WmqMessagingContext extends MessagingContext {
      */
     @Override
     public void close() {
+        for (Runnable closeHook : closeHooks) {
+            closeHook.run();
+        }
+        closeHooks.clear();
         provider.close(sendingMqQueues);
+        if (!dynamicMqQueues.isEmpty()) {
+            provider.close(dynamicMqQueues);
+            dynamicMqQueues.clear();
+        }
+        sendingProfiles.clear();
         provider.close(receivedMqQueue);
         provider.close(poisonMqQueue);
         provider.disconnect(mqQueueManager);
     }
 
+    /**
+     * クローズ時に呼び出す処理を登録する。
+     * <p/>
+     * {@link #getJdbcConnection(XADataSource)}メソッドで取得したデータベース接続など、
+     * キューマネージャへの接続とともに解放するリソースの解放に使用する。
+     * 登録した処理は、キューのクローズとキューマネージャからの切断の前に呼び出す。
+     * 例外を送出するとキューのクローズと切断が行われないため、登録する処理では例外を送出しないこと。
+     *
+     * @param closeHook クローズ時に呼び出す処理
+     */
+    public void addCloseHook(Runnable closeHook) {
+        closeHooks.add(closeHook);
+    }
+
     /**
      * {@link MQQueueManager}から{@link java.sql.Connection}を取得する。
      * <p/>
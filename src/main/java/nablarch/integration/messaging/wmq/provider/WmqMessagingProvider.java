@@ -24,10 +24,12 @@ import nablarch.fw.messaging.ReceivedMessage;
 import nablarch.fw.messaging.SendingMessage;
 import nablarch.fw.messaging.provider.MessagingExceptionFactory;
 import nablarch.integration.messaging.wmq.provider.exception.BasicWmqMessagingExceptionFactory;
+import nablarch.integration.messaging.wmq.provider.exception.WmqQueueFullException;
 
 import javax.sql.XADataSource;
 import javax.transaction.xa.XAException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -36,6 +38,17 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * IBM MQを使用した{@link MessagingProvider}の実装クラス。
@@ -64,6 +77,9 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
     /** バックアウト回数の上限値  */
     private int backoutLimit = 0; 
 
+    /** {@link #setBackoutLimit(int)}でバックアウト回数の上限値が指定された場合はtrue */
+    private boolean backoutLimitSpecified = false;
+
     /** バックアウト上限を超えた場合に使用する終了コード(プロセスを終了({@link System#exit(int)})する際に設定する値) */
     private int backoutLimitExceededExitCode = 190;
     
@@ -100,6 +116,88 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      */
     private boolean useProductSystemErrorOutput = false;
 
+    /** IBM MQへの操作の実行結果を受け取るリスナ。指定がない場合はnull */
+    private WmqOperationListener operationListener = null;
+
+    /** 適応的な受信の待機時間の下限値(単位:msec) */
+    private long minAdaptiveWaitInterval = 100;
+
+    /** 適応的な受信の待機時間の上限値(単位:msec)。0以下の場合は適応的な待機時間を使用しない */
+    private long maxAdaptiveWaitInterval = 0;
+
+    /** 受信キューごとのポイズンメッセージの件数 */
+    private final WmqPoisonMessageCounter poisonMessageCounter = new WmqPoisonMessageCounter();
+
+    /** ポイズンメッセージの障害ログの出力を集約するオブジェクト */
+    private final WmqPoisonLogAggregator poisonLogAggregator = new WmqPoisonLogAggregator();
+
+    /**
+     * ポイズンメッセージの判定のために最初に読み込む本文の長さ(単位:byte)。
+     * 0以下の場合は最初から本文全体を読み込む。
+     */
+    private int poisonDetectionLength = 0;
+
+    /**
+     * メッセージを分割して書き込む場合の1セグメントの長さ(単位:byte)。
+     * 0以下の場合は分割しない。
+     */
+    private int segmentSize = 0;
+
+    /** 本文を符号化する{@link WmqMessageCodec}。指定がない場合はnull */
+    private WmqMessageCodec messageCodec = null;
+
+    /** 本文を符号化する長さの下限値(単位:byte) */
+    private int encodeThreshold = 1024;
+
+    /** メッセージIDが指定されない受信で、受信するメッセージを選択する{@link WmqMessageSelector}。指定がない場合はnull */
+    private WmqMessageSelector messageSelector = null;
+
+    /** 受信ごとに{@link WmqMessageSelector}を指定して受信する場合はtrue */
+    private boolean useMessageSelector = false;
+
+    /**
+     * ブラウズ・カーソルが位置付け済みの受信先{@link MQQueue}。
+     * カーソルはハンドルごとに保持されるため、クローズされたハンドルは参照されなくなった時点で除かれる。
+     */
+    private final Set<MQQueue> browsedMqQueues = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<MQQueue, Boolean>()));
+
+    /** 初期化時に事前に生成しておく{@link WmqMessagingContext}の数 */
+    private int warmUpContextCount = 0;
+
+    /** 事前生成を並列に行うスレッド数。0以下の場合は事前生成する数と同じ */
+    private int warmUpParallelism = 0;
+
+    /** 事前生成をバックグラウンドで行う場合はtrue */
+    private boolean warmUpInBackground = false;
+
+    /** 送信先ごとの{@link WmqDestinationProfile}(キーは送信先キュー名) */
+    private Map<String, WmqDestinationProfile> destinationProfiles = Collections.emptyMap();
+
+    /** {@link #sendingQueueNames}にない送信先への送信を許可する場合はtrue */
+    private boolean useDynamicDestinations = false;
+
+    /** {@link WmqMessagingContext}ごとにオープンしたままにする、{@link #sendingQueueNames}にない送信先の最大数 */
+    private int dynamicQueueCacheSize = 16;
+
+    /** {@link #sendingQueueNames}にない送信先をオープンしたままにする送信回数 */
+    private int dynamicQueueOpenThreshold = 2;
+
+    /** 送信先キューのキュー深さを監視する{@link WmqQueueDepthMonitor}。使用しない場合はnull */
+    private WmqQueueDepthMonitor queueDepthMonitor = null;
+
+    /** キュー属性をキャッシュする{@link WmqQueueAttributeCache}。使用しない場合はnull */
+    private WmqQueueAttributeCache queueAttributeCache = null;
+
+    /** 同期送信の応答メッセージをキャッシュする{@link WmqReplyCache}。使用しない場合はnull */
+    private WmqReplyCache replyCache = null;
+
+    /** 事前に生成され、まだ払い出されていない{@link WmqMessagingContext} */
+    private final ConcurrentLinkedQueue<WmqMessagingContext> warmedContexts = new ConcurrentLinkedQueue<WmqMessagingContext>();
+
+    /** 事前生成の完了を待ち合わせるラッチ。事前生成を行わない場合はカウント0 */
+    private volatile CountDownLatch warmUpLatch = new CountDownLatch(0);
+
     /**
      * IBM MQの初期化処理を行う。
      * <p/>
@@ -111,6 +209,9 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * <li>{@link #useProductSystemErrorOutput}プロパティがfalseの場合はIBM MQによる標準エラー出力を無効化する。</li>
      * <li>接続モード({@link CMQC#TRANSPORT_PROPERTY})をバインディングモードに設定する。</li>
      * <li>{@link #poisonQueueNamePattern}が指定された場合は{@link #receivedQueueName}を使用してフォーマットした退避キュー名を設定する。</li>
+     * <li>{@link #warmUpContextCount}プロパティが指定された場合は{@link #warmUp()}メソッドを呼び出し、{@link WmqMessagingContext}を事前に生成する。
+     *     {@link #warmUpInBackground}プロパティがtrueの場合は、バックグラウンドのスレッドで事前生成を行い、完了を待たずに復帰する。
+     *     {@link #useXa}プロパティがtrueの場合は{@link IllegalArgumentException}を送出する。</li>
      * </ul>
      */
     @SuppressWarnings("unchecked")
@@ -134,6 +235,105 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
         if (StringUtil.hasValue(receivedQueueName) && StringUtil.hasValue(poisonQueueNamePattern)) {
             poisonQueueName = String.format(poisonQueueNamePattern, receivedQueueName);
         }
+
+        // 事前生成
+        if (warmUpContextCount > 0) {
+            if (useXa) {
+                throw new IllegalArgumentException(String.format(
+                        "warm up was not supported with XA. "
+                      + "must be set false to useXa property when warmUpContextCount was set. "
+                      + "queueManagerName = [%s], warmUpContextCount = [%s]",
+                        queueManagerName, warmUpContextCount));
+            }
+            warmUpLatch = new CountDownLatch(1);
+            if (warmUpInBackground) {
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        warmUp();
+                    }
+                }, "wmq-warm-up-" + queueManagerName);
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                warmUp();
+            }
+        }
+    }
+
+    /**
+     * {@link #warmUpContextCount}プロパティに指定された数の{@link WmqMessagingContext}を事前に生成する。
+     * <pre>
+     * キューマネージャへの接続とキューのオープンは接続ごとに逐次となるため、
+     * {@link #warmUpParallelism}プロパティに指定された数のスレッドで、複数の接続を並列に生成する。
+     * 生成した{@link WmqMessagingContext}は、{@link #createContext()}メソッドで順に払い出す。
+     *
+     * 生成に失敗した場合はWARNレベルのログを出力し、残りの生成を続ける。
+     * 不足分は{@link #createContext()}メソッドの呼び出し時に生成される。
+     *
+     * 成否にかかわらず、すべての生成が終わった時点で準備完了({@link #isReady()}がtrue)とする。
+     *
+     * 事前生成した接続は、生成したスレッドとは別のスレッドで使用される。
+     * {@link #useXa}プロパティがtrueの場合はスレッド類縁性({@link CMQC#THREAD_AFFINITY_PROPERTY})が有効となり、
+     * 接続は生成したスレッドでのみ使用できるため、事前生成は{@link #useXa}プロパティがfalseの場合のみ行う。
+     * </pre>
+     */
+    protected void warmUp() {
+        int parallelism = warmUpParallelism > 0 ? Math.min(warmUpParallelism, warmUpContextCount) : warmUpContextCount;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "wmq-warm-up-" + queueManagerName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<WmqMessagingContext>> futures = new ArrayList<Future<WmqMessagingContext>>(warmUpContextCount);
+            for (int i = 0; i < warmUpContextCount; i++) {
+                futures.add(executor.submit(new Callable<WmqMessagingContext>() {
+                    public WmqMessagingContext call() {
+                        return openContext();
+                    }
+                }));
+            }
+            for (Future<WmqMessagingContext> future : futures) {
+                try {
+                    warmedContexts.add(future.get());
+                } catch (ExecutionException e) {
+                    LOGGER.logWarn(String.format("could not warm up IBM MQ MQQueueManager/MQQueue. "
+                                               + "queueManagerName = [%s]", queueManagerName), e.getCause());
+                }
+            }
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.logInfo(String.format("IBM MQ warm up was completed. queueManagerName = [%s], contextCount = [%s]",
+                                             queueManagerName, warmedContexts.size()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            warmUpLatch.countDown();
+        }
+    }
+
+    /**
+     * 事前生成が完了し、メッセージングを開始できる状態であるか否かを判定する。
+     * <p/>
+     * 事前生成を行わない場合は、常にtrueを返す。
+     * 
+     * @return 準備完了の場合はtrue
+     */
+    public boolean isReady() {
+        return warmUpLatch.getCount() == 0;
+    }
+
+    /**
+     * 事前生成の完了を待つ。
+     * @param timeout タイムアウト値(単位:msec)
+     * @return タイムアウト値までに準備完了となった場合はtrue
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public boolean awaitReady(long timeout) throws InterruptedException {
+        return warmUpLatch.await(timeout, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -188,6 +388,10 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * 送信先{@link MQQueue}マップの初期化は{@link #getMQQueues(MQQueueManager, Collection, int)}メソッド、
      * 受信先{@link MQQueue}とポイズンメッセージ送信先{@link MQQueue}の初期化は{@link #getPoisonQueueOpenOptions()}メソッドに委譲する。
      * 
+     * {@link WmqMessagingContext}ごとの適応的な受信の待機時間は{@link #createAdaptiveWaitInterval()}メソッドから取得する。
+     * 
+     * {@link #warmUp()}メソッドで事前に生成された{@link WmqMessagingContext}が残っている場合は、それを返す。
+     * 
      * 送信先{@link MQQueue}のオープンを制御するオプションは{@link #getSendingQueueOpenOptions()}メソッド、
      * 受信先{@link MQQueue}のオープンを制御するオプションは{@link #getReceivedQueueOpenOptions()}メソッド、
      * ポイズンメッセージ送信先{@link MQQueue}のオープンを制御するオプションは{@link #getPoisonQueueOpenOptions()}メソッド、
@@ -201,13 +405,26 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * @return {@link WmqMessagingContext}
      */
     public MessagingContext createContext() {
+        WmqMessagingContext warmedContext = warmedContexts.poll();
+        if (warmedContext != null) {
+            return warmedContext;
+        }
+        return openContext();
+    }
+
+    /**
+     * キューマネージャに接続し、{@link MQQueue}をオープンした{@link WmqMessagingContext}を生成する。
+     * @return {@link WmqMessagingContext}
+     */
+    private WmqMessagingContext openContext() {
         try {
-            MQQueueManager mqQueueManager = createMQQueueManager();
+            MQQueueManager mqQueueManager = connect();
             return new WmqMessagingContext(
                 this, mqQueueManager,
                 getMQQueues(mqQueueManager, sendingQueueNames, getSendingQueueOpenOptions()),
                 getMQQueue(mqQueueManager, receivedQueueName, getReceivedQueueOpenOptions()),
-                getMQQueue(mqQueueManager, poisonQueueName, getPoisonQueueOpenOptions()));
+                getMQQueue(mqQueueManager, resolvePoisonQueueName(), getPoisonQueueOpenOptions()),
+                createAdaptiveWaitInterval());
         } catch (MQException e) {
             throw messagingExceptionFactory.createMessagingException(
                 String.format("could not initialize IBM MQ MQQueueManager/MQQueue. "
@@ -215,6 +432,61 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
         }
     }
 
+    /**
+     * ポイズンメッセージの退避先キュー名を解決する。
+     * <p/>
+     * 退避キュー名が指定されず、{@link #queueAttributeCache}プロパティが指定された場合は、
+     * 受信先キューのバックアウト再キュー名(BOQNAME)を使用する。
+     * 受信先キューの属性は、受信先{@link MQQueue}のオープン時に問い合わせ済みであること。
+     * 
+     * @return ポイズンメッセージの退避先キュー名。指定がない場合はnull
+     */
+    private String resolvePoisonQueueName() {
+        if (StringUtil.hasValue(poisonQueueName) || queueAttributeCache == null) {
+            return poisonQueueName;
+        }
+        WmqQueueAttributes attributes = queueAttributeCache.getCachedAttributes(receivedQueueName);
+        return attributes != null ? attributes.getBackoutRequeueName() : null;
+    }
+
+    /**
+     * {@link #createMQQueueManager()}メソッドを呼び出し、キューマネージャに接続する。
+     * <p/>
+     * {@link #operationListener}プロパティが指定された場合は、接続の実行結果を通知する。
+     * 
+     * @return {@link MQQueueManager}
+     * @throws MQException {@link MQQueueManager}の生成に失敗した場合
+     */
+    MQQueueManager connect() throws MQException {
+        if (operationListener == null) {
+            return createMQQueueManager();
+        }
+        long startTime = System.nanoTime();
+        int reasonCode = CMQC.MQRC_NONE;
+        try {
+            return createMQQueueManager();
+        } catch (MQException e) {
+            reasonCode = e.reasonCode;
+            throw e;
+        } finally {
+            operationListener.connected(queueManagerName, System.nanoTime() - startTime, reasonCode);
+        }
+    }
+
+    /**
+     * {@link WmqMessagingContext}ごとに使用する、適応的な受信の待機時間を生成する。
+     * <p/>
+     * {@link #maxAdaptiveWaitInterval}プロパティが0以下の場合は適応的な待機時間を使用しないため、nullを返す。
+     * 
+     * @return 適応的な受信の待機時間。使用しない場合はnull
+     */
+    protected WmqAdaptiveWaitInterval createAdaptiveWaitInterval() {
+        if (maxAdaptiveWaitInterval <= 0) {
+            return null;
+        }
+        return new WmqAdaptiveWaitInterval(minAdaptiveWaitInterval, maxAdaptiveWaitInterval);
+    }
+
     /**
      * キューマネージャ名称を指定して{@link MQQueueManager}を生成する。
      * @return {@link MQQueueManager}
@@ -231,11 +503,16 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * <ul>
      * <li>{@link CMQC#MQOO_OUTPUT}</li>
      * <li>{@link CMQC#MQOO_FAIL_IF_QUIESCING}</li>
+     * <li>{@link #queueDepthMonitor}プロパティまたは{@link #queueAttributeCache}プロパティが指定された場合は{@link CMQC#MQOO_INQUIRE}</li>
      * </ul>
      * @return 送信先{@link MQQueue}のオープンを制御するオプション
      */
     protected int getSendingQueueOpenOptions() {
-        return CMQC.MQOO_OUTPUT | CMQC.MQOO_FAIL_IF_QUIESCING;
+        int openOptions = CMQC.MQOO_OUTPUT | CMQC.MQOO_FAIL_IF_QUIESCING;
+        if (queueDepthMonitor != null || queueAttributeCache != null) {
+            openOptions |= CMQC.MQOO_INQUIRE;
+        }
+        return openOptions;
     }
 
     /**
@@ -245,11 +522,20 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * <ul>
      * <li>{@link CMQC#MQOO_INPUT_SHARED}</li>
      * <li>{@link CMQC#MQOO_FAIL_IF_QUIESCING}</li>
+     * <li>{@link #messageSelector}プロパティが指定された場合、または{@link #useMessageSelector}プロパティがtrueの場合は{@link CMQC#MQOO_BROWSE}</li>
+     * <li>{@link #queueAttributeCache}プロパティが指定された場合は{@link CMQC#MQOO_INQUIRE}</li>
      * </ul>
      * @return 受信先{@link MQQueue}のオープンを制御するオプション
      */
     protected int getReceivedQueueOpenOptions() {
-        return CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_FAIL_IF_QUIESCING;
+        int openOptions = CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_FAIL_IF_QUIESCING;
+        if (messageSelector != null || useMessageSelector) {
+            openOptions |= CMQC.MQOO_BROWSE;
+        }
+        if (queueAttributeCache != null) {
+            openOptions |= CMQC.MQOO_INQUIRE;
+        }
+        return openOptions;
     }
 
     /**
@@ -286,6 +572,12 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
 
     /**
      * 指定されたキュー名とオプションを使用して、正常にオープンされた{@link MQQueue}を取得する。
+     * <p/>
+     * {@link #operationListener}プロパティが指定された場合は、オープンの実行結果を通知する。
+     * <p/>
+     * {@link #queueAttributeCache}プロパティが指定され、問い合わせを許可してオープンした場合は、
+     * {@link WmqQueueAttributeCache#getAttributes(MQQueue, String)}メソッドでキュー属性を問い合わせる。
+     * 
      * @param mqQueueManager {@link MQQueueManager}
      * @param queueName キュー名
      * @param openOptions {@link MQQueue}のオープンを制御するオプション
@@ -297,7 +589,38 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
         if (StringUtil.isNullOrEmpty(queueName)) {
             return null;
         }
-        return mqQueueManager.accessQueue(queueName, openOptions);
+        MQQueue mqQueue = accessQueue(mqQueueManager, queueName, openOptions);
+        if (queueAttributeCache != null && (openOptions & CMQC.MQOO_INQUIRE) != 0) {
+            queueAttributeCache.getAttributes(mqQueue, queueName);
+        }
+        return mqQueue;
+    }
+
+    /**
+     * 指定されたキュー名とオプションを使用して{@link MQQueue}をオープンし、
+     * {@link #operationListener}プロパティが指定された場合は、オープンの実行結果を通知する。
+     * 
+     * @param mqQueueManager {@link MQQueueManager}
+     * @param queueName キュー名
+     * @param openOptions {@link MQQueue}のオープンを制御するオプション
+     * @return オープンした{@link MQQueue}
+     * @throws MQException {@link MQQueue}のオープンに失敗した場合
+     */
+    private MQQueue accessQueue(MQQueueManager mqQueueManager, String queueName, int openOptions)
+            throws MQException {
+        if (operationListener == null) {
+            return mqQueueManager.accessQueue(queueName, openOptions);
+        }
+        long startTime = System.nanoTime();
+        int reasonCode = CMQC.MQRC_NONE;
+        try {
+            return mqQueueManager.accessQueue(queueName, openOptions);
+        } catch (MQException e) {
+            reasonCode = e.reasonCode;
+            throw e;
+        } finally {
+            operationListener.queueOpened(queueName, openOptions, System.nanoTime() - startTime, reasonCode);
+        }
     }
 
     /**
@@ -312,30 +635,489 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * <br/>
      * メッセージ送信後のMQMDフィールドの取得は、
      * {@link WmqMqmdFieldsOperator#getFieldsAfterSend(MQMessage, SendingMessage)}メソッドに委譲する。
+     * <p/>
+     * 本文は{@link #encodeBody(byte[], MQMessage)}メソッドで符号化した上で書き込む。
+     * <p/>
+     * {@link #segmentSize}プロパティが指定され、本文がその長さを超える場合は、
+     * {@link #putSegments(MQQueue, MQMessage, byte[])}メソッドに書き込みを委譲する。
      * </p>
      * MQExceptionを捕捉した場合は、
      * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッドに例外処理を委譲する。
+     * <p/>
+     * {@link #operationListener}プロパティが指定された場合は、書き込みの実行結果を通知する。
+     * <p/>
+     * {@link #queueDepthMonitor}プロパティが指定された場合は、書き込みの前に
+     * {@link WmqQueueDepthMonitor#beforePut(MQQueue, String)}メソッドを呼び出し、キュー深さを確認する。
      * 
      * @param mqQueue {@link MQQueue}
      * @param sendingMessage 送信メッセージ
      * @return メッセージID
      */
     protected String putMessage(MQQueue mqQueue, SendingMessage sendingMessage) {
+        return putMessage(mqQueue, sendingMessage, (WmqDestinationProfile) null);
+    }
+
+    /**
+     * 送信メッセージを指定された{@link MQQueue}に書き込む。
+     * <p/>
+     * MQMDフィールドの設定を{@link #setFieldsBeforeSend(SendingMessage, MQMessage, WmqDestinationProfile)}メソッドで行う以外は、
+     * {@link #putMessage(MQQueue, SendingMessage)}メソッドと同じ。
+     * 
+     * @param mqQueue {@link MQQueue}
+     * @param sendingMessage 送信メッセージ
+     * @param profile 送信先の{@link WmqDestinationProfile}。指定がない場合はnull
+     * @return メッセージID
+     */
+    protected String putMessage(MQQueue mqQueue, SendingMessage sendingMessage, WmqDestinationProfile profile) {
+        return put(null, mqQueue, null, sendingMessage, null, profile);
+    }
+
+    /**
+     * 送信メッセージを書き込む共通処理。
+     * <pre>
+     * {@link #putMessage(MQQueue, SendingMessage, WmqDestinationProfile)}、
+     * {@link #putMessage(MQQueue, SendingMessage, InputStream, WmqDestinationProfile)}、
+     * {@link #putMessage(MQQueueManager, String, SendingMessage)}の各メソッドから呼び出され、
+     * MQMDフィールドの設定と取得、例外処理、実行結果の通知を行う。
+     * 
+     * {@link MQQueue}が指定された場合は{@link MQQueue}に書き込み、
+     * 指定されない場合は{@link MQQueueManager#put(String, MQMessage, MQPutMessageOptions)}(MQPUT1)で書き込む。
+     * 
+     * 本文の{@link InputStream}が指定されない場合は、送信メッセージの本文を{@link #encodeBody(byte[], MQMessage)}メソッドで
+     * 符号化し、符号化した本文が{@link #segmentSize}プロパティの長さを超える場合はセグメントに分割する。
+     * MQPUT1ではセグメントに分割して書き込めないため、分割が必要な送信メッセージはMQPUT1で書き込まないこと
+     * ({@link #exceedsSegmentSize(SendingMessage)}メソッドを参照)。
+     * </pre>
+     * @param mqQueueManager {@link MQQueueManager}。{@link MQQueue}に書き込む場合はnull
+     * @param mqQueue {@link MQQueue}。MQPUT1で書き込む場合はnull
+     * @param queueName キュー名。{@link MQQueue}に書き込む場合はnull
+     * @param sendingMessage 送信メッセージ
+     * @param body 本文を読み込む{@link InputStream}。送信メッセージの本文を使用する場合はnull
+     * @param profile 送信先の{@link WmqDestinationProfile}。指定がない場合はnull
+     * @return メッセージID
+     */
+    private String put(MQQueueManager mqQueueManager, MQQueue mqQueue, String queueName,
+                       SendingMessage sendingMessage, InputStream body, WmqDestinationProfile profile) {
+        checkQueueDepth(mqQueue, queueName);
         MQMessage mqMessage = new MQMessage();
+        long startTime = operationListener != null ? System.nanoTime() : 0L;
+        long messageLength = 0;
+        int reasonCode = CMQC.MQRC_NONE;
         try {
-            mqmdFieldsOperator.setFieldsBeforeSend(sendingMessage, mqMessage, defaultTimeToLive);
-            mqMessage.write(sendingMessage.getBodyBytes());
-            mqQueue.put(mqMessage, getPutMessageOptions());
+            setFieldsBeforeSend(sendingMessage, mqMessage, profile);
+            if (body != null) {
+                messageLength = writeBody(mqQueue, mqMessage, body);
+            } else {
+                byte[] encoded = encodeBody(sendingMessage.getBodyBytes(), mqMessage);
+                messageLength = encoded.length;
+                boolean segmented = mqQueue != null && segmentSize > 0 && encoded.length > segmentSize;
+                checkMessageLength(mqQueue, queueName, segmented ? segmentSize : encoded.length);
+                if (segmented) {
+                    putSegments(mqQueue, mqMessage, encoded);
+                } else {
+                    mqMessage.write(encoded);
+                    if (mqQueue != null) {
+                        mqQueue.put(mqMessage, getPutMessageOptions());
+                    } else {
+                        mqQueueManager.put(queueName, mqMessage, getPutMessageOptions());
+                    }
+                }
+            }
             mqmdFieldsOperator.getFieldsAfterSend(mqMessage, sendingMessage);
         } catch (MQException e) {
-            throw messagingExceptionFactory.createMessagingException(
-                    "an error occurred while sending the message.", e);
+            reasonCode = e.reasonCode;
+            if (reasonCode == CMQC.MQRC_Q_FULL && queueDepthMonitor != null) {
+                queueDepthMonitor.queueFull(mqQueue != null ? getQueueName(mqQueue) : queueName);
+            }
+            throw messagingExceptionFactory.createMessagingException(mqQueue != null
+                    ? "an error occurred while sending the message."
+                    : String.format("an error occurred while sending the message. queueName = [%s]", queueName), e);
         } catch (IOException e) {
             throw new MessagingException(e);
+        } finally {
+            if (operationListener != null) {
+                operationListener.messagePut(mqQueue != null ? getQueueName(mqQueue) : queueName,
+                                             (int) Math.min(messageLength, Integer.MAX_VALUE),
+                                             System.nanoTime() - startTime, reasonCode);
+            }
         }
         return sendingMessage.getMessageId();
     }
 
+    /**
+     * メッセージ送信前に{@link MQMessage}のMQMDフィールドに値を設定する。
+     * <p/>
+     * {@link WmqMqmdFieldsOperator#setFieldsBeforeSend(SendingMessage, MQMessage, long)}メソッドに処理を委譲した後、
+     * 送信先の{@link WmqDestinationProfile}が指定された場合は、{@link WmqDestinationProfile#apply(SendingMessage, MQMessage)}
+     * メソッドで送信先ごとの値を上書きする。
+     * メッセージ存続時間は、{@link WmqDestinationProfile#getTimeToLive(long)}メソッドの戻り値を
+     * {@link #defaultTimeToLive}プロパティの代わりに使用する。
+     * 
+     * @param sendingMessage 送信メッセージ
+     * @param mqMessage {@link MQMessage}
+     * @param profile 送信先の{@link WmqDestinationProfile}。指定がない場合はnull
+     * @throws MQException MQMDフィールドに対して不正な操作が行われた場合
+     */
+    protected void setFieldsBeforeSend(SendingMessage sendingMessage, MQMessage mqMessage, WmqDestinationProfile profile)
+            throws MQException {
+        if (profile == null) {
+            mqmdFieldsOperator.setFieldsBeforeSend(sendingMessage, mqMessage, defaultTimeToLive);
+            return;
+        }
+        mqmdFieldsOperator.setFieldsBeforeSend(sendingMessage, mqMessage, profile.getTimeToLive(defaultTimeToLive));
+        profile.apply(sendingMessage, mqMessage);
+    }
+
+    /**
+     * 指定された送信先キュー名に対応付けられた{@link WmqDestinationProfile}を取得する。
+     * <p/>
+     * 送信先{@link MQQueue}をオープンした時点で呼び出され、送信ごとには呼び出されない。
+     * 
+     * @param queueName 送信先キュー名
+     * @return {@link WmqDestinationProfile}。対応付けられていない場合はnull
+     */
+    protected WmqDestinationProfile getDestinationProfile(String queueName) {
+        return destinationProfiles.get(queueName);
+    }
+
+    /**
+     * 送信する本文を{@link #messageCodec}プロパティで符号化する。
+     * <pre>
+     * 下記のすべてに該当する場合に、符号化した本文を返し、
+     * {@link MQMessage}のメッセージデータの形式名に{@link WmqMessageCodec#getFormat()}の値を設定する。
+     * 
+     *     {@link #messageCodec}プロパティが指定されている
+     *     本文の長さが{@link #encodeThreshold}プロパティの値以上である
+     *     符号化した本文が元の本文より短い
+     * 
+     * いずれかに該当しない場合は、元の本文をそのまま返す。
+     * </pre>
+     * @param body 本文
+     * @param mqMessage MQMDフィールドを設定済みの{@link MQMessage}
+     * @return 書き込む本文
+     * @throws IOException 符号化に失敗した場合
+     */
+    protected byte[] encodeBody(byte[] body, MQMessage mqMessage) throws IOException {
+        if (messageCodec == null || body.length < encodeThreshold) {
+            return body;
+        }
+        byte[] encoded = messageCodec.encode(body);
+        if (encoded.length >= body.length) {
+            return body;
+        }
+        mqMessage.format = messageCodec.getFormat();
+        return encoded;
+    }
+
+    /**
+     * 受信した本文を{@link #messageCodec}プロパティで復号する。
+     * <p/>
+     * {@link #messageCodec}プロパティが指定され、{@link MQMessage}のメッセージデータの形式名が
+     * {@link WmqMessageCodec#getFormat()}の値と一致する場合に、復号した本文を返し、
+     * 形式名を{@link CMQC#MQFMT_NONE}に戻す。一致しない場合は、受信した本文をそのまま返す。
+     * 
+     * @param body 受信した本文
+     * @param mqMessage 読み込んだ{@link MQMessage}
+     * @return 復号した本文
+     * @throws IOException 復号に失敗した場合
+     */
+    protected byte[] decodeBody(byte[] body, MQMessage mqMessage) throws IOException {
+        if (messageCodec == null || mqMessage.format == null
+                || !mqMessage.format.trim().equals(messageCodec.getFormat().trim())) {
+            return body;
+        }
+        byte[] decoded = messageCodec.decode(body);
+        mqMessage.format = CMQC.MQFMT_NONE;
+        return decoded;
+    }
+
+    /**
+     * 本文を{@link #segmentSize}プロパティの長さごとに分割し、1つの論理メッセージのセグメントとして書き込む。
+     * <pre>
+     * IBM MQのメッセージ・セグメント化を使用する。
+     * 各セグメントは{@link CMQC#MQPMO_LOGICAL_ORDER}を指定して書き込み、
+     * 最後のセグメント以外には{@link CMQC#MQMF_SEGMENT}、最後のセグメントには{@link CMQC#MQMF_LAST_SEGMENT}を設定する。
+     * グループIDとオフセットはキューマネージャが設定する。
+     * 
+     * メッセージIDは最初のセグメントの書き込みで採番し、以降のセグメントには同じメッセージIDを設定する。
+     * 
+     * 途中のセグメントの書き込みに失敗した場合は、書き込み済みのセグメントがキューに残る。
+     * 分割して書き込む場合は、{@link #useXa}プロパティにtrueを指定し、同期点内で書き込むこと。
+     * 受信側は{@link CMQC#MQGMO_COMPLETE_MSG}を指定して読み込むことで、すべてのセグメントが揃った論理メッセージのみを受信する。
+     * </pre>
+     * @param mqQueue {@link MQQueue}
+     * @param mqMessage MQMDフィールドを設定済みの{@link MQMessage}
+     * @param body 本文
+     * @throws MQException 書き込みに失敗した場合
+     * @throws IOException 本文の書き込みに失敗した場合
+     */
+    protected void putSegments(MQQueue mqQueue, MQMessage mqMessage, byte[] body) throws MQException, IOException {
+        MQPutMessageOptions mqPutMessageOptions = getPutMessageOptions();
+        mqPutMessageOptions.options |= CMQC.MQPMO_LOGICAL_ORDER;
+        for (int offset = 0; offset < body.length; offset += segmentSize) {
+            int length = Math.min(segmentSize, body.length - offset);
+            boolean last = offset + length >= body.length;
+            mqMessage.messageFlags = last ? CMQC.MQMF_LAST_SEGMENT : CMQC.MQMF_SEGMENT;
+            mqMessage.clearMessage();
+            mqMessage.write(body, offset, length);
+            mqQueue.put(mqMessage, mqPutMessageOptions);
+            // 2つ目以降のセグメントは最初のセグメントと同じメッセージIDで書き込む
+            mqPutMessageOptions.options &= ~CMQC.MQPMO_NEW_MSG_ID;
+        }
+    }
+
+    /**
+     * 指定された{@link InputStream}から読み込んだ本文で、送信メッセージを指定された{@link MQQueue}に書き込む。
+     * <pre>
+     * 送信メッセージのヘッダからMQMDフィールドを設定する処理と、例外処理、実行結果の通知は
+     * {@link #putMessage(MQQueue, SendingMessage)}メソッドと同じ。送信メッセージの本文は使用しない。
+     * 
+     * {@link #segmentSize}プロパティが指定された場合は、{@link #putSegments(MQQueue, MQMessage, InputStream)}メソッドに
+     * 書き込みを委譲し、本文をセグメント単位で読み込みながら書き込む。ヒープに保持される本文は最大でセグメント2つ分となる。
+     * 
+     * {@link #segmentSize}プロパティが指定されない場合は、本文全体を1つのメッセージとして書き込むため、
+     * 本文全体がヒープに保持される。
+     * 
+     * 本文は{@link #messageCodec}プロパティで符号化しない。
+     * 
+     * キュー深さの確認も{@link #putMessage(MQQueue, SendingMessage)}メソッドと同じ。
+     * </pre>
+     * @param mqQueue {@link MQQueue}
+     * @param sendingMessage 送信メッセージ
+     * @param body 本文を読み込む{@link InputStream}
+     * @return メッセージID
+     */
+    protected String putMessage(MQQueue mqQueue, SendingMessage sendingMessage, InputStream body) {
+        return putMessage(mqQueue, sendingMessage, body, null);
+    }
+
+    /**
+     * 指定された{@link InputStream}から読み込んだ本文で、送信メッセージを指定された{@link MQQueue}に書き込む。
+     * <p/>
+     * MQMDフィールドの設定を{@link #setFieldsBeforeSend(SendingMessage, MQMessage, WmqDestinationProfile)}メソッドで行う以外は、
+     * {@link #putMessage(MQQueue, SendingMessage, InputStream)}メソッドと同じ。
+     * 
+     * @param mqQueue {@link MQQueue}
+     * @param sendingMessage 送信メッセージ
+     * @param body 本文を読み込む{@link InputStream}
+     * @param profile 送信先の{@link WmqDestinationProfile}。指定がない場合はnull
+     * @return メッセージID
+     */
+    protected String putMessage(MQQueue mqQueue, SendingMessage sendingMessage, InputStream body,
+                                WmqDestinationProfile profile) {
+        return put(null, mqQueue, null, sendingMessage, body, profile);
+    }
+
+    /**
+     * 指定された{@link InputStream}から読み込んだ本文を{@link MQQueue}に書き込む。
+     * <p/>
+     * {@link #segmentSize}プロパティが指定された場合は{@link #putSegments(MQQueue, MQMessage, InputStream)}メソッドに
+     * 書き込みを委譲し、指定されない場合は本文全体を1つのメッセージとして書き込む。
+     * 
+     * @param mqQueue {@link MQQueue}
+     * @param mqMessage MQMDフィールドを設定済みの{@link MQMessage}
+     * @param body 本文を読み込む{@link InputStream}
+     * @return 書き込んだ本文の長さ(単位:byte)
+     * @throws MQException 書き込みに失敗した場合
+     * @throws IOException 本文の読み込みまたは書き込みに失敗した場合
+     */
+    private long writeBody(MQQueue mqQueue, MQMessage mqMessage, InputStream body) throws MQException, IOException {
+        if (segmentSize > 0) {
+            return putSegments(mqQueue, mqMessage, body);
+        }
+        long messageLength = 0;
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = body.read(buffer)) != -1) {
+            mqMessage.write(buffer, 0, length);
+            messageLength += length;
+        }
+        mqQueue.put(mqMessage, getPutMessageOptions());
+        return messageLength;
+    }
+
+    /**
+     * 指定された{@link InputStream}から本文を{@link #segmentSize}プロパティの長さずつ読み込み、
+     * 1つの論理メッセージのセグメントとして書き込む。
+     * <p/>
+     * セグメントの書き込み方法は{@link #putSegments(MQQueue, MQMessage, byte[])}メソッドと同じ。
+     * 本文が1セグメントに収まる場合は、分割せずに1つのメッセージとして書き込む。
+     * 
+     * @param mqQueue {@link MQQueue}
+     * @param mqMessage MQMDフィールドを設定済みの{@link MQMessage}
+     * @param body 本文を読み込む{@link InputStream}
+     * @return 書き込んだ本文の長さ(単位:byte)
+     * @throws MQException 書き込みに失敗した場合
+     * @throws IOException 本文の読み込みまたは書き込みに失敗した場合
+     */
+    protected long putSegments(MQQueue mqQueue, MQMessage mqMessage, InputStream body) throws MQException, IOException {
+        byte[] current = new byte[segmentSize];
+        byte[] next = new byte[segmentSize];
+        int length = readSegment(body, current);
+        int nextLength = length == segmentSize ? readSegment(body, next) : 0;
+        if (nextLength == 0) {
+            mqMessage.write(current, 0, length);
+            mqQueue.put(mqMessage, getPutMessageOptions());
+            return length;
+        }
+
+        MQPutMessageOptions mqPutMessageOptions = getPutMessageOptions();
+        mqPutMessageOptions.options |= CMQC.MQPMO_LOGICAL_ORDER;
+        long total = 0;
+        while (true) {
+            boolean last = nextLength == 0;
+            mqMessage.messageFlags = last ? CMQC.MQMF_LAST_SEGMENT : CMQC.MQMF_SEGMENT;
+            mqMessage.clearMessage();
+            mqMessage.write(current, 0, length);
+            mqQueue.put(mqMessage, mqPutMessageOptions);
+            // 2つ目以降のセグメントは最初のセグメントと同じメッセージIDで書き込む
+            mqPutMessageOptions.options &= ~CMQC.MQPMO_NEW_MSG_ID;
+            total += length;
+            if (last) {
+                return total;
+            }
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            length = nextLength;
+            nextLength = length == segmentSize ? readSegment(body, next) : 0;
+        }
+    }
+
+    /**
+     * 指定された{@link InputStream}から、バッファが一杯になるか終端に達するまで読み込む。
+     * @param in {@link InputStream}
+     * @param buffer バッファ
+     * @return 読み込んだ長さ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static int readSegment(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * 送信メッセージを、オープンしていない{@link MQQueue}にMQPUT1で書き込む。
+     * <pre>
+     * {@link MQQueueManager#put(String, MQMessage, MQPutMessageOptions)}を使用し、
+     * キューのオープン、書き込み、クローズを1回の呼び出しで行う。
+     * MQMDフィールドの設定と取得、本文の符号化、例外処理、実行結果の通知は
+     * {@link #putMessage(MQQueue, SendingMessage)}メソッドと同じ。
+     * 
+     * MQPUT1ではセグメントに分割して書き込めないため、{@link #exceedsSegmentSize(SendingMessage)}メソッドが
+     * trueを返す送信メッセージは、呼び出し元でオープンした{@link MQQueue}に書き込むこと。
+     * 本メソッドでは分割せずに1つのメッセージとして書き込む。
+     * 
+     * キュー深さを問い合わせることができないため、{@link #queueDepthMonitor}プロパティによる確認は、
+     * キャッシュしたキュー深さ(送信でキューが満杯となった記録など)を使用して行う。
+     * 
+     * 送信先の{@link WmqDestinationProfile}は、{@link #getDestinationProfile(String)}メソッドで送信ごとに取得する。
+     * </pre>
+     * @param mqQueueManager {@link MQQueueManager}
+     * @param queueName キュー名
+     * @param sendingMessage 送信メッセージ
+     * @return メッセージID
+     */
+    protected String putMessage(MQQueueManager mqQueueManager, String queueName, SendingMessage sendingMessage) {
+        return put(mqQueueManager, null, queueName, sendingMessage, null, getDestinationProfile(queueName));
+    }
+
+    /**
+     * 送信メッセージがセグメントに分割して書き込まれ得るか否かを判定する。
+     * <p/>
+     * {@link #segmentSize}プロパティが指定され、本文がその長さを超える場合にtrueを返す。
+     * {@link #encodeBody(byte[], MQMessage)}メソッドは本文を長くしないため、falseを返した送信メッセージは
+     * 符号化の有無にかかわらず分割されず、{@link #putMessage(MQQueueManager, String, SendingMessage)}メソッドで
+     * MQPUT1により書き込める。
+     * 
+     * @param sendingMessage 送信メッセージ
+     * @return 分割して書き込まれ得る場合はtrue
+     */
+    protected boolean exceedsSegmentSize(SendingMessage sendingMessage) {
+        return segmentSize > 0 && sendingMessage.getBodyBytes().length > segmentSize;
+    }
+
+    /**
+     * {@link #sendingQueueNames}にない送信先の{@link MQQueue}を、送信先{@link MQQueue}と同じオプションでオープンする。
+     * <p/>
+     * MQExceptionを捕捉した場合は、
+     * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッドに例外処理を委譲する。
+     * 
+     * @param mqQueueManager {@link MQQueueManager}
+     * @param queueName キュー名
+     * @return オープンした{@link MQQueue}
+     */
+    protected MQQueue openSendingQueue(MQQueueManager mqQueueManager, String queueName) {
+        try {
+            return getMQQueue(mqQueueManager, queueName, getSendingQueueOpenOptions());
+        } catch (MQException e) {
+            throw messagingExceptionFactory.createMessagingException(
+                    String.format("could not open IBM MQ MQQueue. queueName = [%s]", queueName), e);
+        }
+    }
+
+    /**
+     * {@link #queueDepthMonitor}プロパティが指定された場合は、書き込み先のキュー深さを確認する。
+     * @param mqQueue {@link MQQueue}。MQPUT1で書き込む場合はnull
+     * @param queueName キュー名。{@link MQQueue}に書き込む場合はnull
+     */
+    private void checkQueueDepth(MQQueue mqQueue, String queueName) {
+        if (queueDepthMonitor != null) {
+            queueDepthMonitor.beforePut(mqQueue, mqQueue != null ? getQueueName(mqQueue) : queueName);
+        }
+    }
+
+    /**
+     * {@link #queueAttributeCache}プロパティが指定された場合は、書き込むメッセージの長さがキューの最大メッセージ長(MAXMSGL)を
+     * 超えていないことを確認する。
+     * <p/>
+     * 超えている場合は、キューマネージャに本文を転送せずに、キューマネージャと同じ{@link CMQC#MQRC_MSG_TOO_BIG_FOR_Q}の
+     * {@link MQException}を送出する。
+     * {@link MQQueue}の指定がない場合(MQPUT1)は問い合わせを行わず、キャッシュしているキュー属性のみを使用する。
+     * 
+     * @param mqQueue {@link MQQueue}。オープンしていないキューに書き込む場合はnull
+     * @param queueName キュー名。nullの場合は{@link MQQueue}から取得する
+     * @param messageLength 1回の書き込みで転送するメッセージの長さ(単位:byte)
+     * @throws MQException 最大メッセージ長を超えている場合
+     */
+    private void checkMessageLength(MQQueue mqQueue, String queueName, int messageLength) throws MQException {
+        if (queueAttributeCache == null) {
+            return;
+        }
+        WmqQueueAttributes attributes = mqQueue != null
+                ? queueAttributeCache.getAttributes(mqQueue, queueName != null ? queueName : getQueueName(mqQueue))
+                : queueAttributeCache.getCachedAttributes(queueName);
+        if (attributes != null && attributes.isTooLong(messageLength)) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_MSG_TOO_BIG_FOR_Q, this);
+        }
+    }
+
+    /**
+     * 指定された{@link MQQueue}のキュー名を取得する。
+     * <p/>
+     * {@link WmqOperationListener}への通知に使用するため、キュー名を取得できない場合は例外を送出せずにnullを返す。
+     * 
+     * @param mqQueue {@link MQQueue}
+     * @return キュー名。取得できない場合はnull
+     */
+    private String getQueueName(MQQueue mqQueue) {
+        if (mqQueue == null) {
+            return null;
+        }
+        try {
+            return mqQueue.getName().trim();
+        } catch (MQException e) {
+            return null;
+        }
+    }
+
     /**
      * {@link MQQueue}へのメッセージ書き込みを制御するオプションを取得する。
      * <p/>
@@ -392,14 +1174,20 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * <br/>
      * {@link MQQueue}への書き込みを制御するオプションは{@link #getGetMessageOptions(String, long)}メソッドから取得する。
      * <br/>
+     * {@link MQQueue}からの読み込みは{@link #getMQMessage(MQQueue, MQMessage, MQGetMessageOptions)}メソッドに委譲する。
+     * <br/>
      * メッセージ受信後のMQMDフィールドの取得は
      * {@link WmqMqmdFieldsOperator#getFieldsAfterReceive(MQMessage, ReceivedMessage)}メソッドに委譲する。
+     * <br/>
+     * 本文は{@link #decodeBody(byte[], MQMessage)}メソッドで復号する。
      * <p/>
      * {@link MQException}が送出され、理由コードが{@link CMQC#MQRC_NO_MSG_AVAILABLE}の場合はnullを返す。
      * <p/>
      * MQExceptionを捕捉した場合は、
      * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッド
      * に例外処理を委譲する。
+     * <p/>
+     * {@link #operationListener}プロパティが指定された場合は、読み込みの実行結果を通知する。
      * 
      * @param receivedMqQueue {@link MQQueue}
      * @param messageId 相関IDに指定するメッセージID
@@ -408,47 +1196,492 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * @return 受信メッセージ。受信できなかった場合はnull
      */
     protected ReceivedMessage getMessage(MQQueue receivedMqQueue, String messageId, long timeout, MQQueue poisonMqQueue) {
+        return getMessage(receivedMqQueue, messageId, timeout, poisonMqQueue, null);
+    }
+
+    /**
+     * 指定された{@link MQQueue}から受信メッセージを読み込む。
+     * <p/>
+     * 処理内容は{@link #getMessage(MQQueue, String, long, MQQueue)}メソッドと同じ。
+     * <p/>
+     * メッセージIDが指定されない受信(同期応答の待ち受けではない受信)の場合は、
+     * {@link #getPollingWaitInterval(int, WmqAdaptiveWaitInterval)}メソッドから取得した待機時間を使用し、
+     * 受信結果を適応的な受信の待機時間に通知する。
+     * <p/>
+     * メッセージIDが指定されない受信で、{@link #messageSelector}プロパティが指定された場合は、
+     * {@link #getSelectedMessage(MQQueue, WmqMessageSelector, long, MQQueue)}メソッドに処理を委譲する。
+     * 
+     * @param receivedMqQueue {@link MQQueue}
+     * @param messageId 相関IDに指定するメッセージID
+     * @param timeout タイムアウト値(単位:msec)
+     * @param poisonMqQueue ポイズンメッセージ送信先{@link MQQueue}。指定がない場合はnull
+     * @param adaptiveWaitInterval 適応的な受信の待機時間。使用しない場合はnull
+     * @return 受信メッセージ。受信できなかった場合はnull
+     */
+    protected ReceivedMessage getMessage(MQQueue receivedMqQueue, String messageId, long timeout, MQQueue poisonMqQueue,
+                                         WmqAdaptiveWaitInterval adaptiveWaitInterval) {
+        boolean polling = StringUtil.isNullOrEmpty(messageId);
+        if (polling && messageSelector != null) {
+            return getSelectedMessage(receivedMqQueue, messageSelector, timeout, poisonMqQueue);
+        }
+        MQGetMessageOptions mqGetMessageOptions = getGetMessageOptions(messageId, timeout);
+        if (polling) {
+            mqGetMessageOptions.waitInterval
+                = getPollingWaitInterval(mqGetMessageOptions.waitInterval, adaptiveWaitInterval);
+        }
+        return readMessage(receivedMqQueue, messageId, null, mqGetMessageOptions, poisonMqQueue,
+                           polling ? adaptiveWaitInterval : null);
+    }
+
+    /**
+     * 指定されたオプションを使用して{@link MQQueue}から受信メッセージを読み込む。
+     * <p/>
+     * {@link #getMessage(MQQueue, String, long, MQQueue, WmqAdaptiveWaitInterval)}メソッドと
+     * {@link #getSelectedMessage(MQQueue, WmqMessageSelector, long, MQQueue)}メソッドの共通処理。
+     * 
+     * @param receivedMqQueue {@link MQQueue}
+     * @param messageId 相関IDに指定するメッセージID
+     * @param selectedMessageId 突合するメッセージID。メッセージIDを突合しない場合はnull
+     * @param mqGetMessageOptions {@link MQQueue}からのメッセージ読み取りを制御するオプション
+     * @param poisonMqQueue ポイズンメッセージ送信先{@link MQQueue}。指定がない場合はnull
+     * @param adaptiveWaitInterval 受信結果を通知する適応的な受信の待機時間。通知しない場合はnull
+     * @return 受信メッセージ。受信できなかった場合はnull
+     */
+    private ReceivedMessage readMessage(MQQueue receivedMqQueue, String messageId, byte[] selectedMessageId,
+                                        MQGetMessageOptions mqGetMessageOptions, MQQueue poisonMqQueue,
+                                        WmqAdaptiveWaitInterval adaptiveWaitInterval) {
         MQMessage mqMessage = new MQMessage();
+        long startTime = operationListener != null ? System.nanoTime() : 0L;
+        long gotTime = 0L;
+        boolean copying = false;
+        int messageLength = 0;
+        int reasonCode = CMQC.MQRC_NONE;
         try {
             mqmdFieldsOperator.setFieldsBeforeReceive(messageId, mqMessage);
-            receivedMqQueue.get(mqMessage, getGetMessageOptions(messageId, timeout));
+            if (selectedMessageId != null) {
+                mqMessage.messageId = selectedMessageId;
+            }
+            if (operationListener != null) {
+                startTime = System.nanoTime();
+            }
+            getMQMessage(receivedMqQueue, mqMessage, mqGetMessageOptions);
+            if (operationListener != null) {
+                gotTime = System.nanoTime();
+            }
+            if (adaptiveWaitInterval != null) {
+                adaptiveWaitInterval.received();
+            }
 
+            refreshReceivedQueueAttributes(receivedMqQueue);
             if (isPoisonMessage(mqMessage)) {
                 // バックアウト回数の上限値を超えている場合
+                String queueName = getQueueName(receivedMqQueue);
+                poisonMessageCounter.increment(queueName != null ? queueName : "");
                 processPoisonMessage(poisonMqQueue, mqMessage);
                 return null;
             }
 
+            copying = true;
             byte[] body = new byte[mqMessage.getDataLength()];
             mqMessage.readFully(body);
-            ReceivedMessage receivedMessage = new ReceivedMessage(body);
+            messageLength = body.length;
+            ReceivedMessage receivedMessage = new ReceivedMessage(decodeBody(body, mqMessage));
             mqmdFieldsOperator.getFieldsAfterReceive(mqMessage, receivedMessage);
             return receivedMessage;
         } catch (MQException e) {
+            reasonCode = e.reasonCode;
             if (e.reasonCode == CMQC.MQRC_NO_MSG_AVAILABLE) {
+                if (adaptiveWaitInterval != null) {
+                    adaptiveWaitInterval.empty();
+                }
                 return null;
             }
-            throw messagingExceptionFactory.createMessagingException(
-                    "an error occurred while receiving the message.", e);
-        } catch (IOException e) {
-            throw new MessagingException(e);
+            throw messagingExceptionFactory.createMessagingException(
+                    "an error occurred while receiving the message.", e);
+        } catch (IOException e) {
+            throw new MessagingException(e);
+        } finally {
+            if (operationListener != null) {
+                long endTime = System.nanoTime();
+                if (gotTime == 0L) {
+                    // MQGETが失敗した場合
+                    gotTime = endTime;
+                }
+                operationListener.messageGot(getQueueName(receivedMqQueue), messageLength,
+                                             gotTime - startTime, copying ? endTime - gotTime : 0L, reasonCode);
+            }
+        }
+    }
+
+    /**
+     * 指定された{@link MQQueue}から、{@link WmqMessageSelector}が選択したメッセージを読み込む。
+     * <pre>
+     * 受信先{@link MQQueue}をブラウズし、{@link WmqMessageSelector#select(MQMessage)}が
+     * trueを返したメッセージを、メッセージIDを突合して読み込む。
+     * ブラウズを制御するオプションは{@link #getBrowseMessageOptions()}メソッドから取得する。
+     * ブラウズでは本文を転送せず、MQMDフィールドとメッセージプロパティのみを取得する。
+     * 選択されなかったメッセージは読み込まないため、同期点に含まれず、コミットやバックアウトの対象とならない。
+     * 
+     * ブラウズ・カーソルは{@link MQQueue}ごとに呼び出しをまたいで保持し、前回ブラウズした位置の後ろから
+     * ブラウズを再開する({@link CMQC#MQGMO_BROWSE_NEXT})。これにより、選択されないメッセージが
+     * キューに滞留していても、受信ごとにキューの先頭からブラウズし直すことはない。
+     * 再開した位置からキューの末尾に達した場合({@link CMQC#MQRC_NO_MSG_AVAILABLE})は、待機せずに
+     * 先頭からブラウズし直す({@link CMQC#MQGMO_BROWSE_FIRST})。このため、カーソルより前に到着した
+     * 優先度の高いメッセージや、前回と異なる条件で選択されるメッセージも受信の対象となる。
+     * 
+     * 分割されたメッセージは、論理メッセージの先頭のセグメントのみを選択の対象とする。
+     * 選択したメッセージを他の受信処理が先に読み込んだ場合は、ブラウズを続行する。
+     * 
+     * 先頭からブラウズし直した後にキューの末尾に達した場合は、メッセージの到着を待機する。
+     * 待機時間の合計はタイムアウト値({@link #getPollingWaitInterval(int, WmqAdaptiveWaitInterval)}メソッドが返す値)までとし、
+     * 待機時間内に選択したメッセージを読み込めなかった場合はnullを返す。
+     * 
+     * 読み込みの処理内容は{@link #getMessage(MQQueue, String, long, MQQueue)}メソッドと同じ。
+     * {@link #operationListener}プロパティが指定された場合は、ブラウズは通知せず、読み込みの実行結果のみを通知する。
+     * 
+     * 受信先{@link MQQueue}はブラウズを許可してオープンする必要があるため、
+     * {@link #messageSelector}プロパティを指定するか、{@link #useMessageSelector}プロパティにtrueを指定すること。
+     * </pre>
+     * @param receivedMqQueue {@link MQQueue}
+     * @param selector 受信するメッセージを選択する{@link WmqMessageSelector}
+     * @param timeout タイムアウト値(単位:msec)
+     * @param poisonMqQueue ポイズンメッセージ送信先{@link MQQueue}。指定がない場合はnull
+     * @return 受信メッセージ。受信できなかった場合はnull
+     */
+    protected ReceivedMessage getSelectedMessage(MQQueue receivedMqQueue, WmqMessageSelector selector, long timeout,
+                                                 MQQueue poisonMqQueue) {
+        MQGetMessageOptions mqGetMessageOptions = getGetMessageOptions(null, timeout);
+        long deadline = System.currentTimeMillis()
+                      + getPollingWaitInterval(mqGetMessageOptions.waitInterval, null);
+        // 選択したメッセージはブラウズ済みのため待機しない
+        mqGetMessageOptions.options = (mqGetMessageOptions.options & ~CMQC.MQGMO_WAIT) | CMQC.MQGMO_NO_WAIT;
+        mqGetMessageOptions.matchOptions = CMQC.MQMO_MATCH_MSG_ID;
+
+        MQGetMessageOptions browseOptions = getBrowseMessageOptions();
+        // 前回の呼び出しでカーソルが位置付け済みの場合は、その後ろから再開する
+        boolean fromFirst = !browsedMqQueues.contains(receivedMqQueue);
+        browseOptions.options |= fromFirst ? CMQC.MQGMO_BROWSE_FIRST : CMQC.MQGMO_BROWSE_NEXT;
+        try {
+            while (true) {
+                MQMessage browsedMessage = new MQMessage();
+                // 先頭からブラウズし直すまでは、末尾に達しても待機しない
+                browseOptions.waitInterval = fromFirst ? (int) Math.max(0L, deadline - System.currentTimeMillis()) : 0;
+                try {
+                    receivedMqQueue.get(browsedMessage, browseOptions, 0);
+                } catch (MQException e) {
+                    if (e.reasonCode == CMQC.MQRC_NO_MSG_AVAILABLE && !fromFirst) {
+                        fromFirst = true;
+                        browseOptions.options = (browseOptions.options & ~CMQC.MQGMO_BROWSE_NEXT) | CMQC.MQGMO_BROWSE_FIRST;
+                        continue;
+                    }
+                    if (e.reasonCode != CMQC.MQRC_TRUNCATED_MSG_ACCEPTED) {
+                        throw e;
+                    }
+                }
+                browsedMqQueues.add(receivedMqQueue);
+                browseOptions.options = (browseOptions.options & ~CMQC.MQGMO_BROWSE_FIRST) | CMQC.MQGMO_BROWSE_NEXT;
+
+                boolean segment = (browsedMessage.messageFlags & (CMQC.MQMF_SEGMENT | CMQC.MQMF_LAST_SEGMENT)) != 0;
+                if ((segment && browsedMessage.offset != 0) || !selector.select(browsedMessage)) {
+                    continue;
+                }
+                ReceivedMessage receivedMessage = readMessage(receivedMqQueue, null, browsedMessage.messageId,
+                                                              mqGetMessageOptions, poisonMqQueue, null);
+                if (receivedMessage != null) {
+                    return receivedMessage;
+                }
+            }
+        } catch (MQException e) {
+            if (e.reasonCode == CMQC.MQRC_NO_MSG_AVAILABLE) {
+                return null;
+            }
+            throw messagingExceptionFactory.createMessagingException(
+                    "an error occurred while browsing the message.", e);
+        }
+    }
+
+    /**
+     * {@link MQQueue}のブラウズを制御するオプションを取得する。
+     * <p/>
+     * 下記を指定したオプションを返す。
+     * ブラウズの開始位置({@link CMQC#MQGMO_BROWSE_FIRST}または{@link CMQC#MQGMO_BROWSE_NEXT})と待機時間は、
+     * {@link #getSelectedMessage(MQQueue, WmqMessageSelector, long, MQQueue)}メソッドが設定する。
+     * <ul>
+     * <li>{@link CMQC#MQGMO_WAIT}</li>
+     * <li>{@link CMQC#MQGMO_ACCEPT_TRUNCATED_MSG}(本文を転送しないため)</li>
+     * <li>{@link CMQC#MQGMO_PROPERTIES_IN_HANDLE}</li>
+     * <li>{@link CMQC#MQGMO_FAIL_IF_QUIESCING}</li>
+     * </ul>
+     * @return {@link MQQueue}のブラウズを制御するオプション
+     */
+    protected MQGetMessageOptions getBrowseMessageOptions() {
+        MQGetMessageOptions mqGetMessageOptions = new MQGetMessageOptions();
+        mqGetMessageOptions.options = CMQC.MQGMO_WAIT | CMQC.MQGMO_ACCEPT_TRUNCATED_MSG
+                                    | CMQC.MQGMO_PROPERTIES_IN_HANDLE | CMQC.MQGMO_FAIL_IF_QUIESCING;
+        mqGetMessageOptions.matchOptions = CMQC.MQMO_NONE;
+        return mqGetMessageOptions;
+    }
+
+    /**
+     * 指定された{@link MQQueue}から、本文を{@link java.io.InputStream}で読み込む受信メッセージを読み込む。
+     * <pre>
+     * 論理メッセージの最初のセグメントのみを読み込み、2つ目以降のセグメントは
+     * {@link WmqStreamingReceivedMessage#getBodyInputStream()}から本文を読み込むのに応じて読み込む。
+     * 読み込みを制御するオプションは{@link #getSegmentGetMessageOptions(String, long)}メソッドから取得する。
+     * 分割されていないメッセージの場合は、1つのメッセージの本文を読み込む{@link InputStream}となる。
+     * 本文は{@link #messageCodec}プロパティで復号しない。
+     * 
+     * MQMDフィールドの設定と取得、例外処理は{@link #getMessage(MQQueue, String, long, MQQueue)}メソッドと同じ。
+     * 
+     * 最初のセグメントがポイズンメッセージの場合は、残りのセグメントをすべて読み込んで1つのメッセージとし、
+     * {@link #processPoisonMessage(MQQueue, MQMessage)}メソッドに処理を委譲してnullを返す。
+     * この場合は本文全体がヒープに保持される。
+     * 
+     * セグメントの読み込みが途中で失敗した場合に論理メッセージをキューに戻せるように、
+     * {@link #useXa}プロパティにtrueを指定し、同期点内で読み込むこと。
+     * </pre>
+     * @param receivedMqQueue {@link MQQueue}
+     * @param messageId 相関IDに指定するメッセージID
+     * @param timeout タイムアウト値(単位:msec)
+     * @param poisonMqQueue ポイズンメッセージ送信先{@link MQQueue}。指定がない場合はnull
+     * @return 受信メッセージ。受信できなかった場合はnull
+     */
+    protected WmqStreamingReceivedMessage getMessageStream(MQQueue receivedMqQueue, String messageId, long timeout,
+                                                           MQQueue poisonMqQueue) {
+        MQMessage mqMessage = new MQMessage();
+        long startTime = operationListener != null ? System.nanoTime() : 0L;
+        long gotTime = 0L;
+        int messageLength = 0;
+        int reasonCode = CMQC.MQRC_NONE;
+        try {
+            mqmdFieldsOperator.setFieldsBeforeReceive(messageId, mqMessage);
+            MQGetMessageOptions mqGetMessageOptions = getSegmentGetMessageOptions(messageId, timeout);
+            if (operationListener != null) {
+                startTime = System.nanoTime();
+            }
+            receivedMqQueue.get(mqMessage, mqGetMessageOptions);
+            if (operationListener != null) {
+                gotTime = System.nanoTime();
+            }
+
+            // 2つ目以降のセグメントは揃っているため待機しない
+            MQGetMessageOptions nextGetMessageOptions = getSegmentGetMessageOptions(messageId, timeout);
+            nextGetMessageOptions.options = (nextGetMessageOptions.options & ~CMQC.MQGMO_WAIT) | CMQC.MQGMO_NO_WAIT;
+
+            refreshReceivedQueueAttributes(receivedMqQueue);
+            if (isPoisonMessage(mqMessage)) {
+                String queueName = getQueueName(receivedMqQueue);
+                poisonMessageCounter.increment(queueName != null ? queueName : "");
+                readRemainingSegments(receivedMqQueue, mqMessage, nextGetMessageOptions);
+                processPoisonMessage(poisonMqQueue, mqMessage);
+                return null;
+            }
+
+            messageLength = mqMessage.getDataLength();
+            WmqStreamingReceivedMessage receivedMessage = new WmqStreamingReceivedMessage(
+                    new WmqSegmentInputStream(this, receivedMqQueue, mqMessage, nextGetMessageOptions));
+            mqmdFieldsOperator.getFieldsAfterReceive(mqMessage, receivedMessage);
+            return receivedMessage;
+        } catch (MQException e) {
+            reasonCode = e.reasonCode;
+            if (e.reasonCode == CMQC.MQRC_NO_MSG_AVAILABLE) {
+                return null;
+            }
+            throw messagingExceptionFactory.createMessagingException(
+                    "an error occurred while receiving the message.", e);
+        } catch (IOException e) {
+            throw new MessagingException(e);
+        } finally {
+            if (operationListener != null) {
+                // 本文は受信メッセージの利用側で取り出すため、取り出しの時間は計測しない
+                operationListener.messageGot(getQueueName(receivedMqQueue), messageLength,
+                                             (gotTime != 0L ? gotTime : System.nanoTime()) - startTime, -1L, reasonCode);
+            }
+        }
+    }
+
+    /**
+     * 論理メッセージの残りのセグメントをすべて読み込み、本文を指定された{@link MQMessage}の末尾に連結する。
+     * <p/>
+     * 連結後の{@link MQMessage}は、分割されていない1つのメッセージとしてMQMDフィールドを設定する。
+     * 
+     * @param receivedMqQueue {@link MQQueue}
+     * @param mqMessage 最初のセグメントを読み込んだ{@link MQMessage}
+     * @param mqGetMessageOptions 2つ目以降のセグメントの読み込みを制御するオプション
+     * @throws MQException 読み込みに失敗した場合
+     * @throws IOException 本文の連結に失敗した場合
+     */
+    private void readRemainingSegments(MQQueue receivedMqQueue, MQMessage mqMessage,
+                                       MQGetMessageOptions mqGetMessageOptions) throws MQException, IOException {
+        MQMessage segment = mqMessage;
+        while ((segment.messageFlags & CMQC.MQMF_SEGMENT) != 0 && (segment.messageFlags & CMQC.MQMF_LAST_SEGMENT) == 0) {
+            segment = new MQMessage();
+            receivedMqQueue.get(segment, mqGetMessageOptions);
+            byte[] body = new byte[segment.getDataLength()];
+            segment.readFully(body);
+            mqMessage.seek(mqMessage.getMessageLength());
+            mqMessage.write(body);
+        }
+        mqMessage.messageFlags &= ~(CMQC.MQMF_SEGMENT | CMQC.MQMF_LAST_SEGMENT);
+        mqMessage.offset = 0;
+        mqMessage.seek(0);
+    }
+
+    /**
+     * 論理メッセージの次のセグメントを、指定された{@link MQMessage}に読み込む。
+     * <p/>
+     * {@link MQException}を捕捉した場合は、
+     * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッドに例外処理を委譲する。
+     * 
+     * @param receivedMqQueue {@link MQQueue}
+     * @param mqMessage 読み込み先の{@link MQMessage}
+     * @param mqGetMessageOptions セグメントの読み込みを制御するオプション
+     */
+    protected void getNextSegment(MQQueue receivedMqQueue, MQMessage mqMessage, MQGetMessageOptions mqGetMessageOptions) {
+        try {
+            receivedMqQueue.get(mqMessage, mqGetMessageOptions);
+        } catch (MQException e) {
+            throw messagingExceptionFactory.createMessagingException(
+                    "an error occurred while receiving the message segment.", e);
+        }
+    }
+
+    /**
+     * {@link MQQueue}からのセグメント単位の読み込みを制御するオプションを取得する。
+     * <p/>
+     * {@link #getGetMessageOptions(String, long)}メソッドが返すオプションから{@link CMQC#MQGMO_COMPLETE_MSG}を除き、
+     * {@link CMQC#MQGMO_LOGICAL_ORDER}と{@link CMQC#MQGMO_ALL_SEGMENTS_AVAILABLE}を加えた値を返す。
+     * 
+     * @param messageId 相関IDに指定するメッセージID
+     * @param timeout タイムアウト値(単位:msec)
+     * @return {@link MQQueue}からのセグメント単位の読み込みを制御するオプション
+     */
+    protected MQGetMessageOptions getSegmentGetMessageOptions(String messageId, long timeout) {
+        MQGetMessageOptions mqGetMessageOptions = getGetMessageOptions(messageId, timeout);
+        mqGetMessageOptions.options = (mqGetMessageOptions.options & ~CMQC.MQGMO_COMPLETE_MSG)
+                | CMQC.MQGMO_LOGICAL_ORDER | CMQC.MQGMO_ALL_SEGMENTS_AVAILABLE;
+        return mqGetMessageOptions;
+    }
+
+    /**
+     * 指定された{@link MQQueue}から{@link MQMessage}を読み込む。
+     * <pre>
+     * {@link #poisonDetectionLength}プロパティが0以下の場合は、本文全体を1回で読み込む。
+     * 
+     * {@link #poisonDetectionLength}プロパティが指定された場合は、最初に本文の先頭から指定された長さまでを
+     * 切り捨てを許可せずに読み込む。本文が指定された長さに収まるメッセージは、この1回の読み込みで完了する。
+     * 
+     * 本文が指定された長さを超える場合({@link CMQC#MQRC_TRUNCATED_MSG_FAILED})は、
+     * メッセージはキューに残り、MQMDフィールド(バックアウト回数を含む)のみが設定される。
+     * この時点でポイズンメッセージか否かが判明するため、ログに出力した上で、
+     * MQMDフィールドから取得したメッセージ長を最大メッセージ長に指定し、メッセージIDを突合して本文全体を読み込む。
+     * 本文はこの2回目の読み込みでのみ転送されるため、大きなポイズンメッセージを退避キューに送信する場合でも、
+     * 本文がJVMのヒープに複製されるのは1回となる。
+     * 
+     * 2回目の読み込みの前に他の受信処理がメッセージを読み込んだ場合は、
+     * {@link CMQC#MQRC_NO_MSG_AVAILABLE}の{@link MQException}を送出する(メッセージがない場合と同じ扱いとなる)。
+     * </pre>
+     * @param receivedMqQueue {@link MQQueue}
+     * @param mqMessage 読み込み先の{@link MQMessage}
+     * @param mqGetMessageOptions {@link MQQueue}からのメッセージ読み取りを制御するオプション
+     * @throws MQException 読み込みに失敗した場合
+     */
+    protected void getMQMessage(MQQueue receivedMqQueue, MQMessage mqMessage, MQGetMessageOptions mqGetMessageOptions)
+            throws MQException {
+
+        if (poisonDetectionLength <= 0) {
+            receivedMqQueue.get(mqMessage, mqGetMessageOptions);
+            return;
+        }
+
+        try {
+            receivedMqQueue.get(mqMessage, mqGetMessageOptions, poisonDetectionLength);
+            return;
+        } catch (MQException e) {
+            if (e.reasonCode != CMQC.MQRC_TRUNCATED_MSG_FAILED) {
+                throw e;
+            }
+        }
+
+        // 本文が長いメッセージは、MQMDフィールドのみ読み込まれた状態でキューに残っている
+        if (isPoisonMessage(mqMessage) && LOGGER.isDebugEnabled()) {
+            LOGGER.logDebug(String.format("poison message was detected before reading the body. messageId = [%s], backoutCount = [%s]",
+                                          BinaryUtil.convertToHexString(mqMessage.messageId), mqMessage.backoutCount));
+        }
+        int totalMessageLength = mqMessage.getTotalMessageLength();
+        MQGetMessageOptions fullGetMessageOptions = new MQGetMessageOptions();
+        fullGetMessageOptions.options = (mqGetMessageOptions.options & ~CMQC.MQGMO_WAIT) | CMQC.MQGMO_NO_WAIT;
+        fullGetMessageOptions.matchOptions = CMQC.MQMO_MATCH_MSG_ID;
+        if (totalMessageLength > poisonDetectionLength) {
+            receivedMqQueue.get(mqMessage, fullGetMessageOptions, totalMessageLength);
+        } else {
+            // メッセージ長を取得できない場合は、IBM MQに読み込み領域の拡張を任せる
+            receivedMqQueue.get(mqMessage, fullGetMessageOptions);
+        }
+    }
+
+    /**
+     * メッセージIDが指定されない受信で使用する待機時間を取得する。
+     * <p/>
+     * 適応的な受信の待機時間が指定された場合は、指定された待機時間を上限として適応的な待機時間を返す。
+     * 指定されない場合は、指定された待機時間をそのまま返す。
+     * 
+     * @param waitInterval {@link #getGetMessageOptions(String, long)}メソッドで設定された待機時間(単位:msec)
+     * @param adaptiveWaitInterval 適応的な受信の待機時間。使用しない場合はnull
+     * @return 受信で使用する待機時間(単位:msec)
+     */
+    protected int getPollingWaitInterval(int waitInterval, WmqAdaptiveWaitInterval adaptiveWaitInterval) {
+        if (adaptiveWaitInterval == null) {
+            return waitInterval;
         }
+        return (int) adaptiveWaitInterval.getWaitInterval(waitInterval);
     }
 
     /**
      * 指定された{@link MQMessage}がポイズンメッセージであるか否かを判定する。
      * <p/>
-     * {@link MQMessage}のバックアウト回数が{@link #backoutLimit}プロパティより大きい場合にtrueを返す。
+     * {@link MQMessage}のバックアウト回数が{@link #getBackoutLimit()}メソッドの戻り値より大きい場合にtrueを返す。
      * 
      * @param mqMessage {@link MQMessage}
      * @return ポイズンメッセージである場合はtrue
      */
     protected boolean isPoisonMessage(MQMessage mqMessage) {
+        int limit = getBackoutLimit();
         if (LOGGER.isTraceEnabled()) {
             LOGGER.logTrace(String.format("backoutLimit = [%s], backoutCount = [%s]",
-                                          backoutLimit, mqMessage.backoutCount));
+                                          limit, mqMessage.backoutCount));
+        }
+        return limit < mqMessage.backoutCount;
+    }
+
+    /**
+     * バックアウト回数の上限値を取得する。
+     * <p/>
+     * {@link #setBackoutLimit(int)}で指定された場合は、{@link #backoutLimit}プロパティの値を返す。
+     * 指定されず、{@link #queueAttributeCache}プロパティが指定され、受信先キューにバックアウトしきい値(BOTHRESH)が定義されている場合は、
+     * バックアウト回数がしきい値に達したメッセージをポイズンメッセージとするため、しきい値から1を引いた値を返す。
+     * いずれにも該当しない場合は、デフォルトの0を返す。
+     * 
+     * @return バックアウト回数の上限値
+     */
+    protected int getBackoutLimit() {
+        if (!backoutLimitSpecified && queueAttributeCache != null) {
+            WmqQueueAttributes attributes = queueAttributeCache.getCachedAttributes(receivedQueueName);
+            if (attributes != null && attributes.getBackoutThreshold() > 0) {
+                return attributes.getBackoutThreshold() - 1;
+            }
+        }
+        return backoutLimit;
+    }
+
+    /**
+     * {@link #queueAttributeCache}プロパティが指定された場合は、キャッシュの期間を過ぎた受信先キューの属性を問い合わせ直す。
+     * @param receivedMqQueue 受信先{@link MQQueue}
+     */
+    private void refreshReceivedQueueAttributes(MQQueue receivedMqQueue) {
+        if (queueAttributeCache != null && StringUtil.hasValue(receivedQueueName)) {
+            queueAttributeCache.getAttributes(receivedMqQueue, receivedQueueName);
         }
-        return backoutLimit < mqMessage.backoutCount;
     }
 
     /**
@@ -466,11 +1699,16 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * ポイズンメッセージ送信先{@link MQQueue}が指定された場合
      * 
      *   FATALレベルで障害ログを出力し、指定された{@link MQQueue}にポイズンメッセージを送信する。
+     *   障害ログの出力は{@link #writeBackoutLimitExceededLog(MessagingException, MQMessage)}メソッドに委譲する。
+     *   {@link #setPoisonLogAggregationCount(int)}または{@link #setPoisonLogAggregationInterval(long)}が指定された場合は、
+     *   障害ログを集約して出力する(集約した件数をメッセージに含める)。ポイズンメッセージの送信は集約せず1件ごとに行う。
      *   送信時は、メッセージ存続時間を無制限、元々設定されていたメッセージIDを相関IDに設定する。
      *   ポイズンメッセージの送信で{@link MQException}が送出された場合は、
      *   送出された{@link MQException}がリトライ可能な例外である場合は再送出し、
      *   リトライ不可の場合は、メッセージ受信処理が無限ループになるのを防止するために、
      *   {@link ProcessAbnormalEnd}を送出しプロセスを異常終了させる。
+     *   退避キューの満杯({@link WmqQueueFullException})はリトライ可能な例外だが、退避キューは運用者が対処するまで空かず、
+     *   リトライしてもポイズンメッセージの受信が繰り返されるだけのため、リトライ不可として扱う。
      *   {@link ProcessAbnormalEnd}の終了コードと障害コードには、
      *   {@link #backoutLimitExceededExitCode}プロパティと{@link #backoutLimitExceededFailureCode}プロパティを指定する。
      * 
@@ -494,26 +1732,56 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
         }
 
         // 退避キューが指定されている場合(順序保障なし)
+        long startTime = operationListener != null ? System.nanoTime() : 0L;
+        int reasonCode = CMQC.MQRC_NONE;
         try {
-            FailureLogUtil.logFatal(backoutLimitExceededException, mqMessage, backoutLimitExceededFailureCode);
+            long logCount = poisonLogAggregator.aggregate(System.currentTimeMillis());
+            if (logCount == 1) {
+                writeBackoutLimitExceededLog(backoutLimitExceededException, mqMessage);
+            } else if (logCount > 1) {
+                writeBackoutLimitExceededLog(
+                        new MessagingException(String.format("%s, poisonMessageCount = [%s]",
+                                                             backoutLimitExceededException.getMessage(), logCount)),
+                        mqMessage);
+            }
             mqMessage.expiry = CMQC.MQEI_UNLIMITED;
             mqMessage.correlationId = mqMessage.messageId;
             poisonMqQueue.put(mqMessage, getPutPoisonMessageOptions());
         } catch (MQException e) {
+            reasonCode = e.reasonCode;
             // ポイズンメッセージ送信エラーの場合
             MessagingException sendingPoisonFailedException
                 = messagingExceptionFactory.createMessagingException(
                         "an error occurred while sending the poison message.", e);
-            if (sendingPoisonFailedException instanceof Retryable) {
+            if (sendingPoisonFailedException instanceof Retryable
+                    && !(sendingPoisonFailedException instanceof WmqQueueFullException)) {
                 // リトライ可能な例外の場合
                 throw sendingPoisonFailedException;
             } else {
                 // 無限ループになるためプロセス異常終了
                 throw new ProcessAbnormalEnd(putPoisonFailedExitCode, sendingPoisonFailedException, putPoisonFailedFailureCode);
             }
+        } finally {
+            if (operationListener != null) {
+                operationListener.poisonMessageRouted(getQueueName(poisonMqQueue), mqMessage.getTotalMessageLength(),
+                                                      mqMessage.backoutCount, System.nanoTime() - startTime, reasonCode);
+            }
         }
     }
 
+    /**
+     * バックアウト回数の上限を超えたことを示す障害ログを出力する。
+     * <p/>
+     * {@link FailureLogUtil#logFatal(Throwable, Object, String, Object...)}メソッドを使用し、
+     * 障害コードには{@link #backoutLimitExceededFailureCode}プロパティを指定する。
+     * 
+     * @param backoutLimitExceededException バックアウト回数の上限を超えたことを示す例外
+     * @param mqMessage ポイズンメッセージ
+     */
+    protected void writeBackoutLimitExceededLog(MessagingException backoutLimitExceededException, MQMessage mqMessage) {
+        FailureLogUtil.logFatal(backoutLimitExceededException, mqMessage, backoutLimitExceededFailureCode);
+    }
+
     /**
      * {@link MQQueue}からのメッセージ読み取りを制御するオプションを取得する。
      * <p/>
@@ -529,6 +1797,7 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * <li>
      * タイムアウト値。タイムアウト値が0以下の場合は{@link #defaultResponseTimeout}プロパティの値を使用する。
      * </li>
+     * <li>{@link #segmentSize}プロパティが指定された場合は{@link CMQC#MQGMO_COMPLETE_MSG}</li>
      * </ul>
      * @param messageId 相関IDに指定するメッセージID
      * @param timeout タイムアウト値(単位:msec)
@@ -538,6 +1807,9 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
         MQGetMessageOptions mqGetMessageOptions = new MQGetMessageOptions();
         int syncpointOption = getGetSyncpointOption();
         mqGetMessageOptions.options = syncpointOption | CMQC.MQGMO_WAIT;
+        if (segmentSize > 0) {
+            mqGetMessageOptions.options |= CMQC.MQGMO_COMPLETE_MSG;
+        }
         mqGetMessageOptions.matchOptions = StringUtil.hasValue(messageId)
                                             ? CMQC.MQMO_MATCH_CORREL_ID : CMQC.MQMO_NONE;
         mqGetMessageOptions.waitInterval = (int) (timeout <= 0 ? defaultResponseTimeout : timeout);
@@ -675,16 +1947,25 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * MQExceptionを捕捉した場合は、
      * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッド
      * に例外処理を委譲する。
+     * <p/>
+     * {@link #operationListener}プロパティが指定された場合は、コミットの実行結果を通知する。
      *
      * @param mqQueueManager {@link MQQueueManager}
      */
     protected void commit(MQQueueManager mqQueueManager) {
         checkXa();
+        long startTime = operationListener != null ? System.nanoTime() : 0L;
+        int reasonCode = CMQC.MQRC_NONE;
         try {
             mqQueueManager.commit();
         } catch (MQException e) {
+            reasonCode = e.reasonCode;
             throw messagingExceptionFactory.createMessagingException(
                                         "failed to commit transaction", e);
+        } finally {
+            if (operationListener != null) {
+                operationListener.committed(queueManagerName, System.nanoTime() - startTime, reasonCode);
+            }
         }
     }
 
@@ -694,16 +1975,25 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * MQExceptionを捕捉した場合は、
      * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッド
      * に例外処理を委譲する。
+     * <p/>
+     * {@link #operationListener}プロパティが指定された場合は、バックアウトの実行結果を通知する。
      *
      * @param mqQueueManager {@link MQQueueManager}
      */
     protected void backout(MQQueueManager mqQueueManager) {
         checkXa();
+        long startTime = operationListener != null ? System.nanoTime() : 0L;
+        int reasonCode = CMQC.MQRC_NONE;
         try {
             mqQueueManager.backout();
         } catch (MQException e) {
+            reasonCode = e.reasonCode;
             throw messagingExceptionFactory.createMessagingException(
                                         "failed to backout transaction", e);
+        } finally {
+            if (operationListener != null) {
+                operationListener.backedOut(queueManagerName, System.nanoTime() - startTime, reasonCode);
+            }
         }
     }
 
@@ -770,11 +2060,14 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
      * バックアウト回数の上限値を設定する。
      * <p/>
      * デフォルトは0。
+     * 指定した場合は、{@link #setQueueAttributeCache(WmqQueueAttributeCache)}で問い合わせた
+     * キューのバックアウトしきい値(BOTHRESH)より優先する。
      * @param backoutLimit バックアウト回数の上限値
      * @return このオブジェクト自体
      */
     public WmqMessagingProvider setBackoutLimit(int backoutLimit) {
         this.backoutLimit = backoutLimit;
+        this.backoutLimitSpecified = true;
         return this;
     }
 
@@ -882,6 +2175,14 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
         this.useXa = useXa;
     }
 
+    /**
+     * 分散トランザクションを使用するか否かを取得する。
+     * @return 分散トランザクションを使用する場合はtrue
+     */
+    public boolean isUseXa() {
+        return useXa;
+    }
+
     /**
      * IBM MQによる{@link MQException}発生時の標準エラー出力を使用するか否かを設定する。
      * <p/>
@@ -894,4 +2195,396 @@ public class WmqMessagingProvider implements MessagingProvider, Initializable {
     public void setUseProductSystemErrorOutput(boolean useProductSystemErrorOutput) {
         this.useProductSystemErrorOutput = useProductSystemErrorOutput;
     }
+
+    /**
+     * IBM MQへの操作の実行結果を受け取るリスナを設定する。
+     * <p/>
+     * デフォルトはnull(通知しない)。
+     * 
+     * @param operationListener IBM MQへの操作の実行結果を受け取るリスナ
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setOperationListener(WmqOperationListener operationListener) {
+        this.operationListener = operationListener;
+        return this;
+    }
+
+    /**
+     * 適応的な受信の待機時間の下限値(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは100ミリ秒。
+     * {@link #setMaxAdaptiveWaitInterval(long)}で上限値を指定した場合のみ使用する。
+     * 
+     * @param minAdaptiveWaitInterval 適応的な受信の待機時間の下限値(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setMinAdaptiveWaitInterval(long minAdaptiveWaitInterval) {
+        this.minAdaptiveWaitInterval = minAdaptiveWaitInterval;
+        return this;
+    }
+
+    /**
+     * 適応的な受信の待機時間の上限値(単位:msec)を設定する。
+     * <pre>
+     * 指定した場合は、メッセージIDを指定しない受信において、
+     * キューが空の間は待機時間を上限値まで延ばし、メッセージを受信できた場合は下限値まで縮める。
+     * デフォルトは0(適応的な待機時間を使用せず、常にタイムアウト値で待機する)。
+     * 
+     * 実行中のMQGETを中断することはできないため、
+     * {@link WmqMessagingContext#requestShutdownPolling()}を呼び出してから
+     * 受信待ちが終わるまでには最大で上限値の時間がかかる。
+     * 停止処理で許容できる待ち時間を上限値に指定すること。
+     * </pre>
+     * @param maxAdaptiveWaitInterval 適応的な受信の待機時間の上限値(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setMaxAdaptiveWaitInterval(long maxAdaptiveWaitInterval) {
+        this.maxAdaptiveWaitInterval = maxAdaptiveWaitInterval;
+        return this;
+    }
+
+    /**
+     * ポイズンメッセージの障害ログを集約して出力する件数を設定する。
+     * <p/>
+     * 指定した場合は、ポイズンメッセージを指定件数検出するごとに1件の障害ログを出力する。
+     * デフォルトは0(件数による集約を行わない)。
+     * 
+     * @param poisonLogAggregationCount ポイズンメッセージの障害ログを集約して出力する件数
+     * @return このオブジェクト自体
+     * @see WmqPoisonLogAggregator
+     */
+    public WmqMessagingProvider setPoisonLogAggregationCount(int poisonLogAggregationCount) {
+        poisonLogAggregator.setAggregationCount(poisonLogAggregationCount);
+        return this;
+    }
+
+    /**
+     * ポイズンメッセージの障害ログを集約して出力する間隔(単位:msec)を設定する。
+     * <p/>
+     * 指定した場合は、前回の出力から指定時間経過した後に検出したポイズンメッセージで、1件の障害ログを出力する。
+     * デフォルトは0(間隔による集約を行わない)。
+     * 
+     * @param poisonLogAggregationInterval ポイズンメッセージの障害ログを集約して出力する間隔(単位:msec)
+     * @return このオブジェクト自体
+     * @see WmqPoisonLogAggregator
+     */
+    public WmqMessagingProvider setPoisonLogAggregationInterval(long poisonLogAggregationInterval) {
+        poisonLogAggregator.setAggregationInterval(poisonLogAggregationInterval);
+        return this;
+    }
+
+    /**
+     * 受信キューごとのポイズンメッセージの件数を取得する。
+     * @return 受信キューごとのポイズンメッセージの件数
+     */
+    public WmqPoisonMessageCounter getPoisonMessageCounter() {
+        return poisonMessageCounter;
+    }
+
+    /**
+     * ポイズンメッセージの判定のために最初に読み込む本文の長さ(単位:byte)を設定する。
+     * <p/>
+     * 指定した場合は、本文がこの長さを超えるメッセージについて、本文を読み込む前にポイズンメッセージの判定を行う。
+     * 大半のメッセージが収まる長さを指定すること。デフォルトは0(最初から本文全体を読み込む)。
+     * 
+     * @param poisonDetectionLength ポイズンメッセージの判定のために最初に読み込む本文の長さ(単位:byte)
+     * @return このオブジェクト自体
+     * @see #getMQMessage(MQQueue, MQMessage, MQGetMessageOptions)
+     */
+    public WmqMessagingProvider setPoisonDetectionLength(int poisonDetectionLength) {
+        this.poisonDetectionLength = poisonDetectionLength;
+        return this;
+    }
+
+    /**
+     * メッセージを分割して書き込む場合の1セグメントの長さ(単位:byte)を設定する。
+     * <p/>
+     * 指定した場合は、本文がこの長さを超えるメッセージを複数のセグメントに分割して書き込み、
+     * 読み込み時にはキューマネージャが再構成した論理メッセージを受信する。
+     * キューの最大メッセージ長(MAXMSGL)を超える本文を送受信する場合に、最大メッセージ長以下の値を指定する。
+     * 送信側と受信側の両方に指定すること。デフォルトは0(分割しない)。
+     * 
+     * @param segmentSize 1セグメントの長さ(単位:byte)
+     * @return このオブジェクト自体
+     * @see #putSegments(MQQueue, MQMessage, byte[])
+     */
+    public WmqMessagingProvider setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * 本文を符号化する{@link WmqMessageCodec}を設定する。
+     * <p/>
+     * 指定した場合は、{@link #setEncodeThreshold(int)}で指定した長さ以上の本文を符号化して送信し、
+     * 符号化されたメッセージを受信した場合は復号する。
+     * 符号化されていないメッセージはそのまま受信するため、受信側に先に指定してから送信側に指定すること。
+     * デフォルトは指定なし(符号化しない)。
+     * 
+     * @param messageCodec 本文を符号化する{@link WmqMessageCodec}
+     * @return このオブジェクト自体
+     * @see #encodeBody(byte[], MQMessage)
+     * @see #decodeBody(byte[], MQMessage)
+     */
+    public WmqMessagingProvider setMessageCodec(WmqMessageCodec messageCodec) {
+        this.messageCodec = messageCodec;
+        return this;
+    }
+
+    /**
+     * 本文を符号化する長さの下限値(単位:byte)を設定する。
+     * <p/>
+     * 短い本文は符号化しても転送量がほとんど減らないため、符号化しない。デフォルトは1024バイト。
+     * 
+     * @param encodeThreshold 本文を符号化する長さの下限値(単位:byte)
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setEncodeThreshold(int encodeThreshold) {
+        this.encodeThreshold = encodeThreshold;
+        return this;
+    }
+
+    /**
+     * メッセージIDが指定されない受信で、受信するメッセージを選択する{@link WmqMessageSelector}を設定する。
+     * <p/>
+     * 指定した場合は、受信先{@link MQQueue}をブラウズを許可してオープンする。
+     * 
+     * @param messageSelector 受信するメッセージを選択する{@link WmqMessageSelector}
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setMessageSelector(WmqMessageSelector messageSelector) {
+        this.messageSelector = messageSelector;
+        return this;
+    }
+
+    /**
+     * 受信ごとに{@link WmqMessageSelector}を指定して受信するか否かを設定する。
+     * <p/>
+     * trueを指定した場合は、受信先{@link MQQueue}をブラウズを許可してオープンし、
+     * {@link WmqMessagingContext#receiveSelectedMessage(String, WmqMessageSelector, long)}メソッドを使用できるようにする。
+     * デフォルトはfalse。
+     * 
+     * @param useMessageSelector 受信ごとに{@link WmqMessageSelector}を指定して受信する場合はtrue
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setUseMessageSelector(boolean useMessageSelector) {
+        this.useMessageSelector = useMessageSelector;
+        return this;
+    }
+
+    /**
+     * 初期化時に事前に生成しておく{@link WmqMessagingContext}の数を設定する。
+     * <p/>
+     * デプロイや再起動の直後に、最初のメッセージングの処理が接続とキューのオープンの時間を待つことを避けるために指定する。
+     * 同時にメッセージングを行うスレッド数を目安に指定する。デフォルトは0(事前生成しない)。
+     * 事前生成した接続は生成したスレッドとは別のスレッドで使用されるため、{@link #useXa}プロパティにfalseを指定した場合のみ使用できる。
+     * 
+     * @param warmUpContextCount 事前に生成しておく{@link WmqMessagingContext}の数
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setWarmUpContextCount(int warmUpContextCount) {
+        this.warmUpContextCount = warmUpContextCount;
+        return this;
+    }
+
+    /**
+     * 事前生成を並列に行うスレッド数を設定する。
+     * <p/>
+     * デフォルトは0(事前に生成する数と同じスレッド数で、すべて並列に生成する)。
+     * 
+     * @param warmUpParallelism 事前生成を並列に行うスレッド数
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setWarmUpParallelism(int warmUpParallelism) {
+        this.warmUpParallelism = warmUpParallelism;
+        return this;
+    }
+
+    /**
+     * 事前生成をバックグラウンドで行うか否かを設定する。
+     * <p/>
+     * trueを指定した場合は、{@link #initialize()}メソッドは事前生成の完了を待たずに復帰する。
+     * メッセージングを開始する側で{@link #isReady()}または{@link #awaitReady(long)}を使用して完了を確認すること。
+     * デフォルトはfalse。
+     * 
+     * @param warmUpInBackground 事前生成をバックグラウンドで行う場合はtrue
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setWarmUpInBackground(boolean warmUpInBackground) {
+        this.warmUpInBackground = warmUpInBackground;
+        return this;
+    }
+
+    /**
+     * 送信先ごとの{@link WmqDestinationProfile}を設定する。
+     * <pre>
+     * 送信先キュー名に対応付けた{@link WmqDestinationProfile}の値で、
+     * {@link #mqmdFieldsOperator}プロパティが設定したMQMDフィールド(持続性、優先度、文字セットID)と
+     * {@link #defaultTimeToLive}プロパティを上書きする。
+     * 対応付けていない送信先は、従来どおり{@link #mqmdFieldsOperator}プロパティと{@link #defaultTimeToLive}プロパティの値を使用する。
+     * 
+     * 対応付けは{@link WmqMessagingContext}が送信先{@link MQQueue}をオープンした時点で解決するため、
+     * 送信ごとに送信先キュー名で検索することはない。
+     * </pre>
+     * @param destinationProfiles 送信先ごとの{@link WmqDestinationProfile}(キーは送信先キュー名)
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setDestinationProfiles(Map<String, WmqDestinationProfile> destinationProfiles) {
+        this.destinationProfiles = new HashMap<String, WmqDestinationProfile>(destinationProfiles);
+        return this;
+    }
+
+    /**
+     * {@link #sendingQueueNames}にない送信先への送信を許可するか否かを設定する。
+     * <pre>
+     * trueを指定した場合は、受信メッセージの応答先キューなど、事前に列挙できない送信先に送信できる。
+     * 送信先ごとの送信回数を{@link WmqMessagingContext}ごとに数え、
+     * 
+     *     {@link #dynamicQueueOpenThreshold}回未満の送信先  MQPUT1で送信する(オープン、書き込み、クローズを1回で行う)
+     *     {@link #dynamicQueueOpenThreshold}回以上の送信先  オープンした{@link MQQueue}をキャッシュして送信する
+     * 
+     * キャッシュする{@link MQQueue}の数は{@link #dynamicQueueCacheSize}を上限とし、
+     * 超えた場合は最も長く使用されていないものからクローズする。
+     * 
+     * デフォルトはfalse({@link #sendingQueueNames}にない送信先への送信は例外とする)。
+     * </pre>
+     * @param useDynamicDestinations {@link #sendingQueueNames}にない送信先への送信を許可する場合はtrue
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setUseDynamicDestinations(boolean useDynamicDestinations) {
+        this.useDynamicDestinations = useDynamicDestinations;
+        return this;
+    }
+
+    /**
+     * {@link #sendingQueueNames}にない送信先への送信を許可するか否かを取得する。
+     * @return 許可する場合はtrue
+     */
+    boolean isUseDynamicDestinations() {
+        return useDynamicDestinations;
+    }
+
+    /**
+     * {@link WmqMessagingContext}ごとにオープンしたままにする、{@link #sendingQueueNames}にない送信先の最大数を設定する。
+     * <p/>
+     * 0を指定した場合は、常にMQPUT1で送信する。デフォルトは16。
+     * 
+     * @param dynamicQueueCacheSize オープンしたままにする送信先の最大数
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setDynamicQueueCacheSize(int dynamicQueueCacheSize) {
+        this.dynamicQueueCacheSize = dynamicQueueCacheSize;
+        return this;
+    }
+
+    /**
+     * {@link WmqMessagingContext}ごとにオープンしたままにする、{@link #sendingQueueNames}にない送信先の最大数を取得する。
+     * @return オープンしたままにする送信先の最大数
+     */
+    int getDynamicQueueCacheSize() {
+        return dynamicQueueCacheSize;
+    }
+
+    /**
+     * {@link #sendingQueueNames}にない送信先をオープンしたままにする送信回数を設定する。
+     * <p/>
+     * デフォルトは2(2回目の送信からオープンしたままにする)。
+     * 
+     * @param dynamicQueueOpenThreshold オープンしたままにする送信回数
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setDynamicQueueOpenThreshold(int dynamicQueueOpenThreshold) {
+        this.dynamicQueueOpenThreshold = dynamicQueueOpenThreshold;
+        return this;
+    }
+
+    /**
+     * {@link #sendingQueueNames}にない送信先をオープンしたままにする送信回数を取得する。
+     * @return オープンしたままにする送信回数
+     */
+    int getDynamicQueueOpenThreshold() {
+        return dynamicQueueOpenThreshold;
+    }
+
+    /**
+     * 受信先キュー名を取得する。
+     * @return 受信先キュー名
+     */
+    String getReceivedQueueName() {
+        return receivedQueueName;
+    }
+
+    /**
+     * ポイズンメッセージの退避先キュー名を取得する。
+     * <p/>
+     * {@link #poisonQueueNamePattern}プロパティが指定された場合は、{@link #initialize()}メソッドで解決したキュー名を返す。
+     * 
+     * @return ポイズンメッセージの退避先キュー名
+     */
+    String getPoisonQueueName() {
+        return poisonQueueName;
+    }
+
+    /**
+     * {@link MessagingExceptionFactory}を取得する。
+     * @return {@link MessagingExceptionFactory}
+     */
+    MessagingExceptionFactory getMessagingExceptionFactory() {
+        return messagingExceptionFactory;
+    }
+
+    /**
+     * 送信先キューのキュー深さを監視する{@link WmqQueueDepthMonitor}を設定する。
+     * <p/>
+     * 指定した場合は、送信先{@link MQQueue}を問い合わせを許可してオープンし、
+     * 送信の前にキュー深さに応じた背圧をかける。デフォルトはnull(監視しない)。
+     * 
+     * @param queueDepthMonitor 送信先キューのキュー深さを監視する{@link WmqQueueDepthMonitor}
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setQueueDepthMonitor(WmqQueueDepthMonitor queueDepthMonitor) {
+        this.queueDepthMonitor = queueDepthMonitor;
+        return this;
+    }
+
+    /**
+     * キュー属性をキャッシュする{@link WmqQueueAttributeCache}を設定する。
+     * <pre>
+     * 指定した場合は、送信先、受信先、退避先の{@link MQQueue}を問い合わせを許可してオープンし、
+     * キューに定義された下記の属性を使用する。
+     * 
+     *     BOTHRESH  バックアウト回数の上限値(しきい値から1を引いた値。{@link #setBackoutLimit(int)}を指定しない場合)
+     *     BOQNAME   退避キュー名(退避キュー名と退避キュー名パターンのいずれも指定しない場合)
+     *     MAXMSGL   送信前に確認する最大メッセージ長。超える場合はキューマネージャに本文を転送せずに送信エラーとする
+     * 
+     * 本文をストリームで書き込む送信では、メッセージ長が事前にわからないため最大メッセージ長を確認しない。
+     * </pre>
+     * @param queueAttributeCache キュー属性をキャッシュする{@link WmqQueueAttributeCache}
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setQueueAttributeCache(WmqQueueAttributeCache queueAttributeCache) {
+        this.queueAttributeCache = queueAttributeCache;
+        return this;
+    }
+
+    /**
+     * 同期送信の応答メッセージをキャッシュする{@link WmqReplyCache}を設定する。
+     * <p/>
+     * デフォルトはnull(キャッシュしない)。
+     * 
+     * @param replyCache 同期送信の応答メッセージをキャッシュする{@link WmqReplyCache}
+     * @return このオブジェクト自体
+     */
+    public WmqMessagingProvider setReplyCache(WmqReplyCache replyCache) {
+        this.replyCache = replyCache;
+        return this;
+    }
+
+    /**
+     * 同期送信の応答メッセージをキャッシュする{@link WmqReplyCache}を取得する。
+     * @return 同期送信の応答メッセージをキャッシュする{@link WmqReplyCache}。使用しない場合はnull
+     */
+    public WmqReplyCache getReplyCache() {
+        return replyCache;
+    }
 }
@@ -0,0 +1,94 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link WmqMessagingProvider}が行うIBM MQへの操作の実行結果を受け取るリスナ。
+ * <pre>
+ * 接続、キューのオープン、メッセージの書き込み/読み込み、コミット/バックアウト、
+ * ポイズンメッセージの退避が行われるたびに、操作対象と所要時間(単位:nsec)と理由コードが通知される。
+ * 操作が正常に終了した場合の理由コードは{@link CMQC#MQRC_NONE}となる。
+ *
+ * Java Flight Recorderのカスタムイベントやメトリクスへの出力は、本インタフェースを実装して行う。
+ * {@link WmqMessagingProvider}にリスナが設定されていない場合は、
+ * 時間計測を含め通知に関する処理は一切行われない。
+ *
+ * 各メソッドはメッセージングの処理スレッドから直接呼び出されるため、
+ * 実装クラスはスレッドセーフかつ短時間で処理を終えること。
+ * </pre>
+ */
+public interface WmqOperationListener {
+
+    /**
+     * キューマネージャへの接続が行われたことを通知する。
+     * @param queueManagerName キューマネージャ名称
+     * @param elapsedNanos 所要時間(単位:nsec)
+     * @param reasonCode 理由コード
+     */
+    void connected(String queueManagerName, long elapsedNanos, int reasonCode);
+
+    /**
+     * キューのオープンが行われたことを通知する。
+     * @param queueName キュー名
+     * @param openOptions オープンを制御するオプション
+     * @param elapsedNanos 所要時間(単位:nsec)
+     * @param reasonCode 理由コード
+     */
+    void queueOpened(String queueName, int openOptions, long elapsedNanos, int reasonCode);
+
+    /**
+     * メッセージの書き込みが行われたことを通知する。
+     * @param queueName キュー名。取得できない場合はnull
+     * @param messageLength メッセージ長(単位:byte)
+     * @param elapsedNanos 所要時間(単位:nsec)
+     * @param reasonCode 理由コード
+     */
+    void messagePut(String queueName, int messageLength, long elapsedNanos, int reasonCode);
+
+    /**
+     * メッセージの読み込みが行われたことを通知する。
+     * <pre>
+     * 所要時間は、下記の2つに分けて通知する。
+     * 
+     *     mqGetNanos  MQGETの呼び出しに要した時間。メッセージの到着待ちと、キューマネージャからの転送の両方を含む
+     *     copyNanos   読み込んだ{@link com.ibm.mq.MQMessage}から受信メッセージを作成するのに要した時間。
+     *                 本文の取り出し、復号、MQMDフィールドの取得を含む
+     * 
+     * MQGETが失敗した場合、またはポイズンメッセージとして退避した場合は、copyNanosは0となる。
+     * 本文を{@link java.io.InputStream}で読み込む受信(ストリーミング)では、MQGETの時点では本文を取り出さず、
+     * 取り出しは受信メッセージの利用側で行われるため、copyNanosは計測せずに-1を通知する。
+     * </pre>
+     * @param queueName キュー名。取得できない場合はnull
+     * @param messageLength メッセージ長(単位:byte)。メッセージを読み込めなかった場合は0
+     * @param mqGetNanos MQGETの呼び出しに要した時間(単位:nsec)
+     * @param copyNanos 受信メッセージの作成に要した時間(単位:nsec)。計測しない場合は-1
+     * @param reasonCode 理由コード
+     */
+    void messageGot(String queueName, int messageLength, long mqGetNanos, long copyNanos, int reasonCode);
+
+    /**
+     * コミットが行われたことを通知する。
+     * @param queueManagerName キューマネージャ名称
+     * @param elapsedNanos 所要時間(単位:nsec)
+     * @param reasonCode 理由コード
+     */
+    void committed(String queueManagerName, long elapsedNanos, int reasonCode);
+
+    /**
+     * バックアウトが行われたことを通知する。
+     * @param queueManagerName キューマネージャ名称
+     * @param elapsedNanos 所要時間(単位:nsec)
+     * @param reasonCode 理由コード
+     */
+    void backedOut(String queueManagerName, long elapsedNanos, int reasonCode);
+
+    /**
+     * ポイズンメッセージが退避キューに送信されたことを通知する。
+     * @param poisonQueueName 退避キュー名。取得できない場合はnull
+     * @param messageLength メッセージ長(単位:byte)
+     * @param backoutCount バックアウト回数
+     * @param elapsedNanos 所要時間(単位:nsec)
+     * @param reasonCode 理由コード
+     */
+    void poisonMessageRouted(String poisonQueueName, int messageLength, int backoutCount, long elapsedNanos, int reasonCode);
+}
@@ -0,0 +1,79 @@
+package nablarch.integration.messaging.wmq.provider;
+
+/**
+ * ポイズンメッセージの障害ログの出力を集約するクラス。
+ * <pre>
+ * 大量のポイズンメッセージが発生した場合に、1件ごとに障害ログを出力すると、
+ * ログ出力が正常なメッセージの処理を遅延させる。
+ * 本クラスは、ポイズンメッセージを{@link #aggregationCount}件検出するごと、
+ * または前回の出力から{@link #aggregationInterval}ミリ秒経過するごとに、1件のログにまとめて出力させる。
+ * 
+ * 最初に検出したポイズンメッセージは、検出時点でログを出力させる。
+ * 集約した件数は次に出力するログに含まれるため、ポイズンメッセージの発生が止まった場合、
+ * 最後の出力以降に集約した件数はログに出力されない。
+ * 正確な件数は{@link WmqPoisonMessageCounter}から取得すること。
+ * 
+ * 件数と間隔のいずれも指定しない場合は、集約を行わず1件ごとにログを出力させる。
+ * </pre>
+ */
+public class WmqPoisonLogAggregator {
+
+    /** ログを出力する件数。0以下の場合は件数による出力を行わない */
+    private int aggregationCount = 0;
+
+    /** ログを出力する間隔(単位:msec)。0以下の場合は間隔による出力を行わない */
+    private long aggregationInterval = 0;
+
+    /** 前回のログ出力以降に検出した件数 */
+    private long pendingCount = 0;
+
+    /** 前回ログを出力した時刻(単位:msec)。ログを出力していない場合は負の値 */
+    private long lastLoggedTime = -1;
+
+    /**
+     * ポイズンメッセージの検出を通知し、ログを出力すべきか否かを判定する。
+     * @param currentTime 現在時刻(単位:msec)
+     * @return ログを出力すべき場合は、前回のログ出力以降に検出した件数(今回の検出を含む)。出力しない場合は0
+     */
+    public synchronized long aggregate(long currentTime) {
+        pendingCount++;
+        if (!isEnabled()
+                || lastLoggedTime < 0
+                || (aggregationCount > 0 && pendingCount >= aggregationCount)
+                || (aggregationInterval > 0 && currentTime - lastLoggedTime >= aggregationInterval)) {
+            long count = pendingCount;
+            pendingCount = 0;
+            lastLoggedTime = currentTime;
+            return count;
+        }
+        return 0;
+    }
+
+    /**
+     * ログの出力を集約するか否かを判定する。
+     * @return 件数または間隔が指定された場合はtrue
+     */
+    public synchronized boolean isEnabled() {
+        return aggregationCount > 0 || aggregationInterval > 0;
+    }
+
+    /**
+     * ログを出力する件数を設定する。
+     * @param aggregationCount ログを出力する件数
+     * @return このオブジェクト自体
+     */
+    public synchronized WmqPoisonLogAggregator setAggregationCount(int aggregationCount) {
+        this.aggregationCount = aggregationCount;
+        return this;
+    }
+
+    /**
+     * ログを出力する間隔(単位:msec)を設定する。
+     * @param aggregationInterval ログを出力する間隔(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public synchronized WmqPoisonLogAggregator setAggregationInterval(long aggregationInterval) {
+        this.aggregationInterval = aggregationInterval;
+        return this;
+    }
+}
@@ -0,0 +1,58 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 受信キューごとに、検出したポイズンメッセージの件数を保持するクラス。
+ * <p/>
+ * 件数の加算はロックを使用せずに行うため、大量のポイズンメッセージが発生している間も受信処理を遅延させない。
+ * 監視ツールなどから任意のスレッドで件数を参照できる。
+ */
+public class WmqPoisonMessageCounter {
+
+    /** 件数(キーは受信キュー名) */
+    private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * 指定された受信キューの件数を加算する。
+     * @param queueName 受信キュー名
+     * @return 加算後の件数
+     */
+    public long increment(String queueName) {
+        AtomicLong count = counts.get(queueName);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = counts.putIfAbsent(queueName, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        return count.incrementAndGet();
+    }
+
+    /**
+     * 指定された受信キューの件数を取得する。
+     * @param queueName 受信キュー名
+     * @return 件数。ポイズンメッセージを検出していない場合は0
+     */
+    public long getCount(String queueName) {
+        AtomicLong count = counts.get(queueName);
+        return count == null ? 0L : count.get();
+    }
+
+    /**
+     * すべての受信キューの件数を取得する。
+     * @return 件数(キーは受信キュー名、キュー名の昇順)
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,536 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.BinaryUtil;
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.provider.MessagingExceptionFactory;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQGetMessageOptions;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.MQPutMessageOptions;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * 退避キューに移動されたポイズンメッセージを、元の受信先キューに戻す(再投入する)クラス。
+ * <pre>
+ * 不具合の修正後に、{@link WmqMessagingProvider}が退避キューに移動したポイズンメッセージをまとめて再処理するために使用する。
+ * 接続と{@link MQQueue}のオープンには、指定された{@link WmqMessagingProvider}の設定を使用する。
+ *
+ * 退避キューから同期点内で読み込んだメッセージを、MQMD(メッセージID、相関ID、メッセージプロパティなど)を変えずに
+ * 同期点内で書き込み、{@link #batchSize}件ごとにコミットする。
+ * 書き込みで新しいメッセージとなるため、バックアウト回数は0に戻る。
+ * コミットの前に失敗した場合は、そのバッチをバックアウトするため、メッセージが失われたり重複したりすることはない。
+ *
+ * 下記の条件で再投入するメッセージを絞り込むことができる。
+ *
+ *     putTimeFrom、putTimeTo  退避キューに書き込まれた日時の範囲
+ *     correlationIds          相関ID(16進数表記)。退避時に相関IDには元のメッセージIDが設定されている
+ *
+ * 日時の範囲を指定した場合は、退避キューをブラウズしてMQMDのみを読み込み、条件に一致したメッセージを
+ * メッセージIDを突合して読み込む。相関IDのみを指定した場合は、相関IDを突合して読み込む。
+ * いずれも指定しない場合は、退避キューの先頭から順に読み込む。
+ *
+ * {@link #maxRate}を指定した場合は、再投入の流量(1秒あたりの件数)を制限し、受信側のアプリケーションに過負荷をかけないようにする。
+ * 進捗(再投入した件数とスループット)は、{@link #progressInterval}ごとにINFOレベルのログに出力する。
+ * </pre>
+ */
+public class WmqPoisonMessageReplayer {
+
+    /** メッセージングログを出力するロガー */
+    private static final Logger LOGGER = LoggerManager.get("MESSAGING");
+
+    /** 接続と{@link MQQueue}のオープンに使用する{@link WmqMessagingProvider} */
+    private final WmqMessagingProvider provider;
+
+    /** 退避キュー名。指定しない場合は{@link WmqMessagingProvider}の退避キュー名 */
+    private String poisonQueueName;
+
+    /** 再投入先のキュー名。指定しない場合は{@link WmqMessagingProvider}の受信先キュー名 */
+    private String targetQueueName;
+
+    /** 1回のコミットで再投入する件数 */
+    private int batchSize = 100;
+
+    /** 1秒あたりに再投入する最大件数。0以下の場合は制限しない */
+    private double maxRate = 0;
+
+    /** 再投入する最大件数。0以下の場合は制限しない */
+    private long maxMessages = 0;
+
+    /** 退避キューに書き込まれた日時の下限(この日時を含む)。指定しない場合はnull */
+    private Date putTimeFrom;
+
+    /** 退避キューに書き込まれた日時の上限(この日時を含まない)。指定しない場合はnull */
+    private Date putTimeTo;
+
+    /** 再投入する相関ID。指定しない場合は空 */
+    private List<byte[]> correlationIds = new ArrayList<byte[]>();
+
+    /** 進捗をログに出力する間隔(単位:msec) */
+    private long progressInterval = 5000;
+
+    /**
+     * コンストラクタ。
+     * @param provider 接続と{@link MQQueue}のオープンに使用する{@link WmqMessagingProvider}
+     */
+    public WmqPoisonMessageReplayer(WmqMessagingProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * 退避キューのメッセージを再投入する。
+     * <p/>
+     * 条件に一致するメッセージがなくなるか、{@link #maxMessages}件を再投入した時点で終了する。
+     * MQExceptionを捕捉した場合は、
+     * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}メソッドに例外処理を委譲する。
+     * それまでにコミットしたバッチは再投入済みとなる。
+     *
+     * @return 再投入した件数
+     * @throws IllegalArgumentException 退避キュー名または再投入先のキュー名が解決できない場合
+     */
+    public long replay() {
+        String poison = poisonQueueName != null ? poisonQueueName : provider.getPoisonQueueName();
+        String target = targetQueueName != null ? targetQueueName : provider.getReceivedQueueName();
+        if (poison == null || target == null) {
+            throw new IllegalArgumentException(
+                    String.format("poisonQueueName and targetQueueName must be specified. "
+                                + "poisonQueueName = [%s], targetQueueName = [%s]", poison, target));
+        }
+
+        Progress progress = new Progress(poison, target);
+        MQQueueManager mqQueueManager = null;
+        MQQueue poisonMqQueue = null;
+        MQQueue targetMqQueue = null;
+        try {
+            mqQueueManager = provider.connect();
+            poisonMqQueue = provider.getMQQueue(mqQueueManager, poison, getPoisonQueueOpenOptions());
+            targetMqQueue = provider.getMQQueue(mqQueueManager, target, CMQC.MQOO_OUTPUT | CMQC.MQOO_FAIL_IF_QUIESCING);
+            Cursor cursor = new Cursor();
+            while (maxMessages <= 0 || progress.replayed < maxMessages) {
+                int limit = maxMessages <= 0 ? batchSize : (int) Math.min(batchSize, maxMessages - progress.replayed);
+                int moved = replayBatch(mqQueueManager, poisonMqQueue, targetMqQueue, cursor, limit, progress);
+                if (moved == 0) {
+                    break;
+                }
+                progress.committed(moved);
+            }
+        } catch (MQException e) {
+            throw provider.getMessagingExceptionFactory().createMessagingException(
+                    String.format("an error occurred while replaying the poison messages. "
+                                + "poisonQueueName = [%s], targetQueueName = [%s], replayed = [%s]",
+                                  poison, target, progress.replayed), e);
+        } finally {
+            provider.close(poisonMqQueue);
+            provider.close(targetMqQueue);
+            if (mqQueueManager != null) {
+                provider.disconnect(mqQueueManager);
+            }
+        }
+        progress.finished();
+        return progress.replayed;
+    }
+
+    /**
+     * 1バッチ分のメッセージを再投入し、コミットする。
+     * <p/>
+     * 失敗した場合はバックアウトし、MQExceptionを送出する。
+     *
+     * @param mqQueueManager {@link MQQueueManager}
+     * @param poisonMqQueue 退避キュー
+     * @param targetMqQueue 再投入先のキュー
+     * @param cursor 読み込み位置
+     * @param limit 再投入する最大件数
+     * @param progress 進捗
+     * @return 再投入した件数
+     * @throws MQException 読み込み、書き込み、コミットのいずれかに失敗した場合
+     */
+    private int replayBatch(MQQueueManager mqQueueManager, MQQueue poisonMqQueue, MQQueue targetMqQueue,
+                            Cursor cursor, int limit, Progress progress) throws MQException {
+        int count = 0;
+        try {
+            while (count < limit) {
+                MQMessage mqMessage = next(poisonMqQueue, cursor);
+                if (mqMessage == null) {
+                    break;
+                }
+                MQPutMessageOptions pmo = new MQPutMessageOptions();
+                pmo.options = CMQC.MQPMO_SYNCPOINT | CMQC.MQPMO_FAIL_IF_QUIESCING;
+                targetMqQueue.put(mqMessage, pmo);
+                count++;
+                progress.throttle();
+            }
+            if (count > 0) {
+                mqQueueManager.commit();
+            }
+            return count;
+        } catch (MQException e) {
+            try {
+                mqQueueManager.backout();
+            } catch (MQException backoutError) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.logDebug("could not back out the replay batch.", backoutError);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 条件に一致する次のメッセージを、退避キューから同期点内で読み込む。
+     * @param poisonMqQueue 退避キュー
+     * @param cursor 読み込み位置
+     * @return 読み込んだメッセージ。条件に一致するメッセージがない場合はnull
+     * @throws MQException 読み込みに失敗した場合
+     */
+    private MQMessage next(MQQueue poisonMqQueue, Cursor cursor) throws MQException {
+        if (putTimeFrom != null || putTimeTo != null) {
+            MQMessage browsed;
+            while ((browsed = browseNext(poisonMqQueue, cursor)) != null) {
+                if (matches(browsed)) {
+                    MQMessage mqMessage = get(poisonMqQueue, CMQC.MQMO_MATCH_MSG_ID, browsed.messageId, CMQC.MQCI_NONE);
+                    if (mqMessage != null) {
+                        return mqMessage;
+                    }
+                }
+            }
+            return null;
+        }
+        if (!correlationIds.isEmpty()) {
+            while (cursor.correlationIdIndex < correlationIds.size()) {
+                byte[] correlationId = correlationIds.get(cursor.correlationIdIndex);
+                MQMessage mqMessage = get(poisonMqQueue, CMQC.MQMO_MATCH_CORREL_ID, CMQC.MQMI_NONE, correlationId);
+                if (mqMessage != null) {
+                    return mqMessage;
+                }
+                cursor.correlationIdIndex++;
+            }
+            return null;
+        }
+        return get(poisonMqQueue, CMQC.MQMO_NONE, CMQC.MQMI_NONE, CMQC.MQCI_NONE);
+    }
+
+    /**
+     * 退避キューから同期点内でメッセージを読み込む。
+     * @param poisonMqQueue 退避キュー
+     * @param matchOptions 突合オプション
+     * @param messageId 突合するメッセージID
+     * @param correlationId 突合する相関ID
+     * @return 読み込んだメッセージ。メッセージがない場合はnull
+     * @throws MQException 読み込みに失敗した場合
+     */
+    private static MQMessage get(MQQueue poisonMqQueue, int matchOptions, byte[] messageId, byte[] correlationId)
+            throws MQException {
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.messageId = messageId;
+        mqMessage.correlationId = correlationId;
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_SYNCPOINT | CMQC.MQGMO_NO_WAIT | CMQC.MQGMO_FAIL_IF_QUIESCING;
+        gmo.matchOptions = matchOptions;
+        try {
+            poisonMqQueue.get(mqMessage, gmo);
+            return mqMessage;
+        } catch (MQException e) {
+            if (e.reasonCode == CMQC.MQRC_NO_MSG_AVAILABLE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 退避キューをブラウズし、次のメッセージのMQMDのみを読み込む。
+     * <p/>
+     * 本文は転送しないよう、最大メッセージ長に0を指定し、切り捨てを許可して読み込む。
+     *
+     * @param poisonMqQueue 退避キュー
+     * @param cursor 読み込み位置
+     * @return MQMDを読み込んだメッセージ。後ろにメッセージがない場合はnull
+     * @throws MQException ブラウズに失敗した場合
+     */
+    private static MQMessage browseNext(MQQueue poisonMqQueue, Cursor cursor) throws MQException {
+        MQMessage mqMessage = new MQMessage();
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = (cursor.browsing ? CMQC.MQGMO_BROWSE_NEXT : CMQC.MQGMO_BROWSE_FIRST)
+                | CMQC.MQGMO_NO_WAIT | CMQC.MQGMO_ACCEPT_TRUNCATED_MSG | CMQC.MQGMO_FAIL_IF_QUIESCING;
+        gmo.matchOptions = CMQC.MQMO_NONE;
+        try {
+            poisonMqQueue.get(mqMessage, gmo, 0);
+        } catch (MQException e) {
+            if (e.reasonCode == CMQC.MQRC_NO_MSG_AVAILABLE) {
+                return null;
+            }
+            if (e.reasonCode != CMQC.MQRC_TRUNCATED_MSG_ACCEPTED) {
+                throw e;
+            }
+        }
+        cursor.browsing = true;
+        return mqMessage;
+    }
+
+    /**
+     * ブラウズしたメッセージが、日時の範囲と相関IDの条件に一致するか否かを判定する。
+     * @param browsed ブラウズしたメッセージ
+     * @return 一致する場合はtrue
+     */
+    private boolean matches(MQMessage browsed) {
+        long putTime = browsed.putDateTime.getTimeInMillis();
+        if ((putTimeFrom != null && putTime < putTimeFrom.getTime())
+                || (putTimeTo != null && putTime >= putTimeTo.getTime())) {
+            return false;
+        }
+        if (correlationIds.isEmpty()) {
+            return true;
+        }
+        for (byte[] correlationId : correlationIds) {
+            if (Arrays.equals(correlationId, browsed.correlationId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 退避キューのオープンを制御するオプションを取得する。
+     * @return 退避キューのオープンを制御するオプション。日時の範囲を指定した場合は{@link CMQC#MQOO_BROWSE}を含む
+     */
+    private int getPoisonQueueOpenOptions() {
+        int openOptions = CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_FAIL_IF_QUIESCING;
+        if (putTimeFrom != null || putTimeTo != null) {
+            openOptions |= CMQC.MQOO_BROWSE;
+        }
+        return openOptions;
+    }
+
+    /**
+     * 退避キュー名を設定する。
+     * <p/>
+     * 指定しない場合は、{@link WmqMessagingProvider}の退避キュー名を使用する。
+     *
+     * @param poisonQueueName 退避キュー名
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setPoisonQueueName(String poisonQueueName) {
+        this.poisonQueueName = poisonQueueName;
+        return this;
+    }
+
+    /**
+     * 再投入先のキュー名を設定する。
+     * <p/>
+     * 指定しない場合は、{@link WmqMessagingProvider}の受信先キュー名を使用する。
+     *
+     * @param targetQueueName 再投入先のキュー名
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setTargetQueueName(String targetQueueName) {
+        this.targetQueueName = targetQueueName;
+        return this;
+    }
+
+    /**
+     * 1回のコミットで再投入する件数を設定する。
+     * <p/>
+     * デフォルトは100。
+     *
+     * @param batchSize 1回のコミットで再投入する件数
+     * @return このオブジェクト自体
+     * @throws IllegalArgumentException 1未満の値が指定された場合
+     */
+    public WmqPoisonMessageReplayer setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0. batchSize = [" + batchSize + "]");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 1秒あたりに再投入する最大件数を設定する。
+     * <p/>
+     * 0以下の場合は制限しない。デフォルトは0。
+     *
+     * @param maxRate 1秒あたりに再投入する最大件数
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setMaxRate(double maxRate) {
+        this.maxRate = maxRate;
+        return this;
+    }
+
+    /**
+     * 再投入する最大件数を設定する。
+     * <p/>
+     * 0以下の場合は制限しない。デフォルトは0。
+     *
+     * @param maxMessages 再投入する最大件数
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setMaxMessages(long maxMessages) {
+        this.maxMessages = maxMessages;
+        return this;
+    }
+
+    /**
+     * 再投入するメッセージの、退避キューに書き込まれた日時の下限(この日時を含む)を設定する。
+     * @param putTimeFrom 日時の下限
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setPutTimeFrom(Date putTimeFrom) {
+        this.putTimeFrom = putTimeFrom == null ? null : new Date(putTimeFrom.getTime());
+        return this;
+    }
+
+    /**
+     * 再投入するメッセージの、退避キューに書き込まれた日時の上限(この日時を含まない)を設定する。
+     * @param putTimeTo 日時の上限
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setPutTimeTo(Date putTimeTo) {
+        this.putTimeTo = putTimeTo == null ? null : new Date(putTimeTo.getTime());
+        return this;
+    }
+
+    /**
+     * 再投入するメッセージの相関ID(16進数表記)を設定する。
+     * <p/>
+     * 退避時に相関IDには元のメッセージIDが設定されるため、障害時にログに出力されたメッセージIDを指定できる。
+     *
+     * @param correlationIds 相関ID(16進数表記)
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setCorrelationIds(List<String> correlationIds) {
+        List<byte[]> ids = new ArrayList<byte[]>(correlationIds.size());
+        for (String correlationId : correlationIds) {
+            ids.add(BinaryUtil.convertHexToBytes(correlationId));
+        }
+        this.correlationIds = ids;
+        return this;
+    }
+
+    /**
+     * 進捗をログに出力する間隔(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは5000。
+     *
+     * @param progressInterval 進捗をログに出力する間隔(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqPoisonMessageReplayer setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    /**
+     * 退避キューの読み込み位置。
+     */
+    private static final class Cursor {
+
+        /** ブラウズを開始している場合はtrue */
+        private boolean browsing = false;
+
+        /** 読み込み中の相関IDの位置 */
+        private int correlationIdIndex = 0;
+    }
+
+    /**
+     * 再投入の進捗。
+     */
+    private final class Progress {
+
+        /** 退避キュー名 */
+        private final String poisonQueueName;
+
+        /** 再投入先のキュー名 */
+        private final String targetQueueName;
+
+        /** 開始時刻(単位:nsec) */
+        private final long startTime = System.nanoTime();
+
+        /** 次に進捗を出力する時刻(単位:nsec) */
+        private long nextReportTime = startTime + TimeUnit.MILLISECONDS.toNanos(progressInterval);
+
+        /** 流量の制限で次の再投入を許可する時刻(単位:nsec) */
+        private long nextPermitTime = startTime;
+
+        /** 再投入(コミット)した件数 */
+        private long replayed = 0;
+
+        /**
+         * コンストラクタ。
+         * @param poisonQueueName 退避キュー名
+         * @param targetQueueName 再投入先のキュー名
+         */
+        private Progress(String poisonQueueName, String targetQueueName) {
+            this.poisonQueueName = poisonQueueName;
+            this.targetQueueName = targetQueueName;
+        }
+
+        /**
+         * 流量の制限を超えないように待機する。
+         */
+        private void throttle() {
+            if (maxRate <= 0) {
+                return;
+            }
+            nextPermitTime += (long) (TimeUnit.SECONDS.toNanos(1) / maxRate);
+            long wait = nextPermitTime - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MessagingException("interrupted while replaying the poison messages.", e);
+                }
+            }
+        }
+
+        /**
+         * バッチのコミットを記録し、出力間隔が経過していれば進捗を出力する。
+         * @param count コミットした件数
+         */
+        private void committed(int count) {
+            replayed += count;
+            long now = System.nanoTime();
+            if (now - nextReportTime >= 0) {
+                nextReportTime = now + TimeUnit.MILLISECONDS.toNanos(progressInterval);
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.logInfo(format("replaying the poison messages.", now));
+                }
+            }
+        }
+
+        /**
+         * 終了時の結果を出力する。
+         */
+        private void finished() {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.logInfo(format("replayed the poison messages.", System.nanoTime()));
+            }
+        }
+
+        /**
+         * 進捗のログを組み立てる。
+         * @param message メッセージ
+         * @param now 現在時刻(単位:nsec)
+         * @return 進捗のログ
+         */
+        private String format(String message, long now) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - startTime);
+            double throughput = elapsedMillis > 0 ? replayed * 1000d / elapsedMillis : 0d;
+            return String.format(Locale.ROOT, "%s poisonQueueName = [%s], targetQueueName = [%s], "
+                                            + "replayed = [%s], elapsed = [%s] ms, throughput = [%.1f] msg/sec",
+                                 message, poisonQueueName, targetQueueName, replayed, elapsedMillis, throughput);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ヘッダ名とIBM MQのメッセージプロパティ名を相互に変換するクラス。
+ * <pre>
+ * メッセージプロパティ名にはJavaの識別子に使用できる文字と"."のみ使用できるため、
+ * それ以外の文字は"_"に置き換え、数字で始まるヘッダ名は先頭に"_"を付ける。
+ * 
+ * 同じヘッダ名はメッセージごとに繰り返し変換されるため、変換結果をキャッシュする。
+ * 受信時の逆変換は、送信時に変換したヘッダ名のみ元のヘッダ名に戻し、
+ * それ以外はメッセージプロパティ名をそのままヘッダ名とする。
+ * キャッシュは{@link #maxCacheSize}件を上限とし、上限に達した場合は変換結果をキャッシュしない。
+ * </pre>
+ */
+final class WmqPropertyNameConverter {
+
+    /** キャッシュする件数の上限 */
+    private final int maxCacheSize;
+
+    /** ヘッダ名をキーにしたメッセージプロパティ名のキャッシュ */
+    private final ConcurrentMap<String, String> propertyNames = new ConcurrentHashMap<String, String>();
+
+    /** メッセージプロパティ名をキーにしたヘッダ名のキャッシュ */
+    private final ConcurrentMap<String, String> headerNames = new ConcurrentHashMap<String, String>();
+
+    /**
+     * コンストラクタ。
+     * @param maxCacheSize キャッシュする件数の上限
+     */
+    WmqPropertyNameConverter(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * ヘッダ名をメッセージプロパティ名に変換する。
+     * @param headerName ヘッダ名
+     * @return メッセージプロパティ名
+     */
+    String toPropertyName(String headerName) {
+        String propertyName = propertyNames.get(headerName);
+        if (propertyName != null) {
+            return propertyName;
+        }
+        propertyName = convert(headerName);
+        if (propertyNames.size() < maxCacheSize) {
+            propertyNames.putIfAbsent(headerName, propertyName);
+            headerNames.putIfAbsent(propertyName, headerName);
+        }
+        return propertyName;
+    }
+
+    /**
+     * メッセージプロパティ名をヘッダ名に変換する。
+     * @param propertyName メッセージプロパティ名
+     * @return ヘッダ名
+     */
+    String toHeaderName(String propertyName) {
+        String headerName = headerNames.get(propertyName);
+        return headerName != null ? headerName : propertyName;
+    }
+
+    /**
+     * ヘッダ名に含まれる、メッセージプロパティ名に使用できない文字を置き換える。
+     * @param headerName ヘッダ名
+     * @return メッセージプロパティ名
+     */
+    private static String convert(String headerName) {
+        StringBuilder builder = new StringBuilder(headerName.length() + 1);
+        if (headerName.length() == 0 || !Character.isJavaIdentifierStart(headerName.charAt(0))) {
+            builder.append('_');
+        }
+        for (int i = 0; i < headerName.length(); i++) {
+            char c = headerName.charAt(i);
+            builder.append(Character.isJavaIdentifierPart(c) || c == '.' ? c : '_');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,160 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+
+/**
+ * キュー自体に定義された属性を問い合わせ、キューごとにキャッシュするクラス。
+ * <pre>
+ * バックアウト回数の上限や最大メッセージ長をコンポーネント定義で重複して設定すると、
+ * キューの定義を変更した際に食い違いが生じる。本クラスはキューをオープンした時点で下記の属性を問い合わせ(MQINQ)、
+ * {@link WmqMessagingProvider}がキューの定義に従って動作できるようにする。
+ *
+ *     BOTHRESH  バックアウトしきい値。バックアウト回数の上限に使用する
+ *     BOQNAME   バックアウト再キュー名。退避キューの指定がない場合の退避キューに使用する
+ *     MAXMSGL   最大メッセージ長。超えるメッセージを、キューマネージャに転送せずに送信エラーとするために使用する
+ *     DEFPSIST  デフォルトの持続性
+ *     INDXTYPE  索引タイプ
+ *
+ * INDXTYPEはz/OSのキューマネージャのみの属性で、他のプラットフォームでは問い合わせに失敗するため、
+ * 他の属性とは別に問い合わせ、失敗した場合は{@link CMQC#MQIT_NONE}(索引なし)とする。
+ *
+ * 問い合わせた属性はキューごとに{@link #refreshInterval}の間キャッシュし、
+ * 期間を過ぎた後に属性を参照した時点で問い合わせ直す。このため、キューの定義の変更は
+ * アプリケーションを再起動せずに、{@link #refreshInterval}以内に反映される。
+ *
+ * 問い合わせに失敗したキュー(リモートキュー定義など)は、属性が不明な状態をキャッシュし、
+ * {@link WmqMessagingProvider}は属性を使用せずにコンポーネント定義の設定に従って動作する。
+ * </pre>
+ */
+public class WmqQueueAttributeCache {
+
+    /** メッセージングログを出力するロガー */
+    private static final Logger LOGGER = LoggerManager.get("MESSAGING");
+
+    /** 問い合わせる属性のセレクタ(整数属性、文字属性の順) */
+    private static final int[] SELECTORS = {
+        CMQC.MQIA_BACKOUT_THRESHOLD,
+        CMQC.MQIA_MAX_MSG_LENGTH,
+        CMQC.MQIA_DEF_PERSISTENCE,
+        CMQC.MQCA_BACKOUT_REQ_Q_NAME
+    };
+
+    /** 問い合わせる整数属性の数 */
+    private static final int INT_ATTR_COUNT = 3;
+
+    /** 索引タイプを問い合わせるセレクタ */
+    private static final int[] INDEX_TYPE_SELECTORS = {CMQC.MQIA_INDEX_TYPE};
+
+    /** キュー名の文字セット(キュー名に使用できる文字はASCIIの範囲のみ) */
+    private static final Charset QUEUE_NAME_CHARSET = Charset.forName("US-ASCII");
+
+    /** 属性をキャッシュする期間(単位:msec) */
+    private long refreshInterval = 60 * 1000;
+
+    /** キューごとにキャッシュした属性 */
+    private final ConcurrentMap<String, WmqQueueAttributes> attributes = new ConcurrentHashMap<String, WmqQueueAttributes>();
+
+    /**
+     * キュー属性を取得する。
+     * <p/>
+     * キャッシュしていない場合、またはキャッシュが{@link #refreshInterval}より古い場合は、{@link MQQueue}に問い合わせる。
+     *
+     * @param mqQueue 問い合わせを許可して({@link CMQC#MQOO_INQUIRE})オープンした{@link MQQueue}
+     * @param queueName キュー名
+     * @return キュー属性
+     */
+    public WmqQueueAttributes getAttributes(MQQueue mqQueue, String queueName) {
+        long now = System.currentTimeMillis();
+        WmqQueueAttributes cached = attributes.get(queueName);
+        if (cached != null && now - cached.getInquiredAt() < refreshInterval) {
+            return cached;
+        }
+        WmqQueueAttributes inquired = inquire(mqQueue, queueName, now);
+        attributes.put(queueName, inquired);
+        return inquired;
+    }
+
+    /**
+     * キャッシュしているキュー属性を、問い合わせずに取得する。
+     * <p/>
+     * オープンしていないキュー(MQPUT1で書き込むキューなど)の属性の参照に使用する。
+     *
+     * @param queueName キュー名
+     * @return キュー属性。キャッシュしていない場合はnull
+     */
+    public WmqQueueAttributes getCachedAttributes(String queueName) {
+        return queueName == null ? null : attributes.get(queueName);
+    }
+
+    /**
+     * {@link MQQueue}にキュー属性を問い合わせる。
+     * <p/>
+     * キューの種類により該当しない属性が含まれる場合({@link CMQC#MQRC_SELECTOR_NOT_FOR_TYPE})は、
+     * 該当する属性のみを使用する。それ以外の理由で失敗した場合は、属性が不明な状態を返す。
+     *
+     * @param mqQueue {@link MQQueue}
+     * @param queueName キュー名
+     * @param now 現在時刻(エポックミリ秒)
+     * @return キュー属性
+     */
+    private WmqQueueAttributes inquire(MQQueue mqQueue, String queueName, long now) {
+        int[] intAttrs = new int[INT_ATTR_COUNT];
+        byte[] charAttrs = new byte[CMQC.MQ_Q_NAME_LENGTH];
+        try {
+            mqQueue.inquire(SELECTORS, intAttrs, charAttrs);
+        } catch (MQException e) {
+            if (e.reasonCode != CMQC.MQRC_SELECTOR_NOT_FOR_TYPE) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.logDebug(String.format("could not inquire the queue attributes. queueName = [%s], reasonCode = [%s]",
+                                                  queueName, e.reasonCode));
+                }
+                return WmqQueueAttributes.unknown(now);
+            }
+        }
+        String backoutRequeueName = new String(charAttrs, QUEUE_NAME_CHARSET).trim();
+        WmqQueueAttributes inquired = new WmqQueueAttributes(
+                intAttrs[0], backoutRequeueName.length() == 0 ? null : backoutRequeueName,
+                intAttrs[1], intAttrs[2], inquireIndexType(mqQueue), now);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.logDebug(String.format("inquired the queue attributes. queueName = [%s], %s", queueName, inquired));
+        }
+        return inquired;
+    }
+
+    /**
+     * {@link MQQueue}に索引タイプを問い合わせる。
+     * @param mqQueue {@link MQQueue}
+     * @return 索引タイプ。問い合わせに失敗した場合(z/OS以外のキューマネージャ)は{@link CMQC#MQIT_NONE}
+     */
+    private int inquireIndexType(MQQueue mqQueue) {
+        int[] intAttrs = new int[1];
+        try {
+            mqQueue.inquire(INDEX_TYPE_SELECTORS, intAttrs, new byte[0]);
+            return intAttrs[0];
+        } catch (MQException e) {
+            return CMQC.MQIT_NONE;
+        }
+    }
+
+    /**
+     * 属性をキャッシュする期間(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは60000。
+     *
+     * @param refreshInterval 属性をキャッシュする期間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqQueueAttributeCache setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+        return this;
+    }
+}
@@ -0,0 +1,136 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link WmqQueueAttributeCache}がキューに問い合わせた(MQINQ)キュー属性を保持するクラス。
+ * <pre>
+ * 問い合わせに失敗した属性、またはキューの種類により該当しない属性は、数値の場合は0以下、キュー名の場合はnullとなる。
+ *
+ *     backoutThreshold     バックアウトしきい値(BOTHRESH)
+ *     backoutRequeueName   バックアウト再キュー名(BOQNAME)
+ *     maxMessageLength     最大メッセージ長(MAXMSGL)
+ *     defaultPersistence   デフォルトの持続性(DEFPSIST)
+ *     indexType            索引タイプ(INDXTYPE)
+ * </pre>
+ */
+public class WmqQueueAttributes {
+
+    /** バックアウトしきい値。指定されていない場合は0 */
+    private final int backoutThreshold;
+
+    /** バックアウト再キュー名。指定されていない場合はnull */
+    private final String backoutRequeueName;
+
+    /** 最大メッセージ長(単位:byte) */
+    private final int maxMessageLength;
+
+    /** デフォルトの持続性 */
+    private final int defaultPersistence;
+
+    /** 索引タイプ */
+    private final int indexType;
+
+    /** 問い合わせた時刻(エポックミリ秒) */
+    private final long inquiredAt;
+
+    /**
+     * コンストラクタ。
+     * @param backoutThreshold バックアウトしきい値
+     * @param backoutRequeueName バックアウト再キュー名
+     * @param maxMessageLength 最大メッセージ長(単位:byte)
+     * @param defaultPersistence デフォルトの持続性
+     * @param indexType 索引タイプ
+     * @param inquiredAt 問い合わせた時刻(エポックミリ秒)
+     */
+    WmqQueueAttributes(int backoutThreshold, String backoutRequeueName, int maxMessageLength,
+                       int defaultPersistence, int indexType, long inquiredAt) {
+        this.backoutThreshold = backoutThreshold;
+        this.backoutRequeueName = backoutRequeueName;
+        this.maxMessageLength = maxMessageLength;
+        this.defaultPersistence = defaultPersistence;
+        this.indexType = indexType;
+        this.inquiredAt = inquiredAt;
+    }
+
+    /**
+     * 問い合わせに失敗したキューの属性を生成する。
+     * @param inquiredAt 問い合わせた時刻(エポックミリ秒)
+     * @return すべての属性が不明なキュー属性
+     */
+    static WmqQueueAttributes unknown(long inquiredAt) {
+        return new WmqQueueAttributes(0, null, 0, 0, 0, inquiredAt);
+    }
+
+    /**
+     * バックアウトしきい値を取得する。
+     * <p/>
+     * バックアウト回数がこの値以上となったメッセージは、ポイズンメッセージとして扱われることを表す。
+     *
+     * @return バックアウトしきい値。指定されていない場合、または不明な場合は0以下
+     */
+    public int getBackoutThreshold() {
+        return backoutThreshold;
+    }
+
+    /**
+     * バックアウト再キュー名を取得する。
+     * @return バックアウト再キュー名。指定されていない場合、または不明な場合はnull
+     */
+    public String getBackoutRequeueName() {
+        return backoutRequeueName;
+    }
+
+    /**
+     * 最大メッセージ長(単位:byte)を取得する。
+     * @return 最大メッセージ長。不明な場合は0以下
+     */
+    public int getMaxMessageLength() {
+        return maxMessageLength;
+    }
+
+    /**
+     * デフォルトの持続性を取得する。
+     * @return {@link CMQC#MQPER_PERSISTENT}または{@link CMQC#MQPER_NOT_PERSISTENT}。不明な場合はそれ以外の値
+     */
+    public int getDefaultPersistence() {
+        return defaultPersistence;
+    }
+
+    /**
+     * 索引タイプを取得する。
+     * <p/>
+     * 相関IDを突合する読み込みが多いキューで、{@link CMQC#MQIT_CORREL_ID}でない場合は、
+     * z/OSのキューマネージャで読み込みの性能が低下することを表す。
+     *
+     * @return {@link CMQC#MQIT_NONE}、{@link CMQC#MQIT_MSG_ID}、{@link CMQC#MQIT_CORREL_ID}など。
+     *          z/OS以外のキューマネージャでは{@link CMQC#MQIT_NONE}
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * 指定された長さのメッセージが、最大メッセージ長を超えるか否かを判定する。
+     * @param messageLength メッセージ長(単位:byte)
+     * @return 超える場合はtrue。最大メッセージ長が不明な場合はfalse
+     */
+    public boolean isTooLong(int messageLength) {
+        return maxMessageLength > 0 && messageLength > maxMessageLength;
+    }
+
+    /**
+     * 問い合わせた時刻を取得する。
+     * @return 問い合わせた時刻(エポックミリ秒)
+     */
+    long getInquiredAt() {
+        return inquiredAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("backoutThreshold = [%s], backoutRequeueName = [%s], maxMessageLength = [%s], "
+                           + "defaultPersistence = [%s], indexType = [%s]",
+                             backoutThreshold, backoutRequeueName, maxMessageLength, defaultPersistence, indexType);
+    }
+}
@@ -0,0 +1,329 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueue;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.fw.messaging.MessagingException;
+import nablarch.integration.messaging.wmq.provider.exception.WmqQueueFullException;
+
+/**
+ * 送信先キューのキュー深さを監視し、送信側に背圧をかけるクラス。
+ * <pre>
+ * 受信側の処理が滞った状態で送信を続けると、キューが満杯になった時点で初めて送信に失敗し、
+ * それまでに行った業務処理(データベース更新など)が無駄になる。
+ * 本クラスは送信の前にキュー深さを確認し、高水準点を超えている場合は下記のいずれかの動作を行う。
+ *
+ *     BLOCK  キュー深さが高水準点を下回るまで待機する。{@link #maxBlockTime}を超えた場合は{@link WmqQueueFullException}を送出する(デフォルト)
+ *     SHED   直ちに{@link WmqQueueFullException}を送出する
+ *     DELAY  {@link #delay}の間待機してから送信する(送信側の流量を絞る)
+ *
+ * キュー深さ(現在の深さと最大深さ)は、送信に使用する{@link MQQueue}に問い合わせ(MQINQ)、
+ * キューごとに{@link #inquiryInterval}の間キャッシュする。このため、問い合わせは送信の頻度によらず
+ * キューごとに{@link #inquiryInterval}あたり最大で1回程度となる。
+ * 送信でキューが満杯({@link com.ibm.mq.constants.CMQC#MQRC_Q_FULL})となった場合は、キャッシュを満杯の状態に更新する。
+ *
+ * キュー深さを問い合わせることができるのは、ローカルキュー(またはローカルキューを指す別名キュー)のみである。
+ * リモートキュー定義など、問い合わせに失敗したキューは背圧の対象外とする。
+ *
+ * MQPUT1で送信する場合は問い合わせに使用する{@link MQQueue}がないため、キャッシュしたキュー深さのみを使用する。
+ * キャッシュは、同じキューに{@link MQQueue}で送信した際の問い合わせ結果か、送信でキューが満杯となった記録であり、
+ * {@link #inquiryInterval}を過ぎたキャッシュはキュー深さが不明として扱う。
+ * このため、MQPUT1のみで送信するキューには、満杯となってから{@link #inquiryInterval}の間だけ背圧がかかる。
+ * </pre>
+ */
+public class WmqQueueDepthMonitor {
+
+    /** メッセージングログを出力するロガー */
+    private static final Logger LOGGER = LoggerManager.get("MESSAGING");
+
+    /** 高水準点を超えた場合の動作 */
+    private enum Action {
+        /** 待機する */
+        BLOCK,
+        /** 送出する */
+        SHED,
+        /** 遅延させる */
+        DELAY
+    }
+
+    /** 監視対象のキュー名。空の場合はすべての送信先キュー */
+    private Set<String> queueNames = new HashSet<String>();
+
+    /** キュー深さをキャッシュする期間(単位:msec) */
+    private long inquiryInterval = 1000;
+
+    /** 高水準点(最大深さに対する割合) */
+    private double highWaterMark = 0.8;
+
+    /** 高水準点を超えた場合の動作 */
+    private Action action = Action.BLOCK;
+
+    /** BLOCKの場合に待機する最大時間(単位:msec) */
+    private long maxBlockTime = 5000;
+
+    /** DELAYの場合に待機する時間(単位:msec) */
+    private long delay = 100;
+
+    /** キューごとにキャッシュしたキュー深さ */
+    private final ConcurrentMap<String, Depth> depths = new ConcurrentHashMap<String, Depth>();
+
+    /**
+     * 監視対象のキューであるか否かを判定する。
+     * @param queueName キュー名
+     * @return 監視対象の場合はtrue
+     */
+    public boolean isMonitored(String queueName) {
+        return queueName != null && (queueNames.isEmpty() || queueNames.contains(queueName));
+    }
+
+    /**
+     * 送信の前にキュー深さを確認し、高水準点を超えている場合は設定された動作を行う。
+     * @param mqQueue 送信に使用する{@link MQQueue}。MQPUT1で送信する場合はnull
+     * @param queueName キュー名
+     * @throws WmqQueueFullException SHEDの場合、またはBLOCKで待機する最大時間を超えた場合
+     */
+    public void beforePut(MQQueue mqQueue, String queueName) {
+        if (!isMonitored(queueName)) {
+            return;
+        }
+        Depth depth = getDepth(mqQueue, queueName);
+        if (!depth.isAbove(highWaterMark)) {
+            return;
+        }
+        switch (action) {
+        case SHED:
+            throw createQueueFullException(queueName, depth);
+        case DELAY:
+            sleep(delay);
+            return;
+        default:
+            long deadline = System.currentTimeMillis() + maxBlockTime;
+            while (depth.isAbove(highWaterMark)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw createQueueFullException(queueName, depth);
+                }
+                sleep(Math.min(Math.max(inquiryInterval, 1L), remaining));
+                depth = getDepth(mqQueue, queueName);
+            }
+        }
+    }
+
+    /**
+     * 送信でキューが満杯となったことを記録する。
+     * <p/>
+     * 次の問い合わせまで、キューを満杯として扱う。
+     *
+     * @param queueName キュー名
+     */
+    public void queueFull(String queueName) {
+        if (!isMonitored(queueName)) {
+            return;
+        }
+        Depth cached = depths.get(queueName);
+        int maxDepth = cached != null && cached.maxDepth > 0 ? cached.maxDepth : 1;
+        depths.put(queueName, new Depth(maxDepth, maxDepth, System.currentTimeMillis()));
+    }
+
+    /**
+     * キャッシュしているキュー深さの、最大深さに対する割合を取得する。
+     * @param queueName キュー名
+     * @return 最大深さに対する割合。キャッシュしていない場合、または問い合わせに失敗した場合は-1
+     */
+    public double getDepthRatio(String queueName) {
+        Depth depth = depths.get(queueName);
+        return depth == null || depth.maxDepth <= 0 ? -1 : (double) depth.currentDepth / depth.maxDepth;
+    }
+
+    /**
+     * キュー深さを取得する。
+     * <p/>
+     * キャッシュが{@link #inquiryInterval}より古い場合は、{@link MQQueue}に問い合わせる。
+     * 問い合わせに失敗した場合は、キュー深さが不明な状態をキャッシュする。
+     * {@link MQQueue}がない場合(MQPUT1)は問い合わせず、キュー深さが不明な状態を返す(キャッシュは更新しない)。
+     *
+     * @param mqQueue 送信に使用する{@link MQQueue}。MQPUT1で送信する場合はnull
+     * @param queueName キュー名
+     * @return キュー深さ
+     */
+    private Depth getDepth(MQQueue mqQueue, String queueName) {
+        long now = System.currentTimeMillis();
+        Depth cached = depths.get(queueName);
+        if (cached != null && now - cached.inquiredAt < inquiryInterval) {
+            return cached;
+        }
+        if (mqQueue == null) {
+            return new Depth(0, 0, now);
+        }
+        Depth depth;
+        try {
+            depth = new Depth(mqQueue.getCurrentDepth(), mqQueue.getMaximumDepth(), now);
+        } catch (MQException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.logDebug(String.format("could not inquire the queue depth. queueName = [%s], reasonCode = [%s]",
+                                              queueName, e.reasonCode));
+            }
+            depth = new Depth(0, 0, now);
+        }
+        depths.put(queueName, depth);
+        return depth;
+    }
+
+    /**
+     * キューが満杯であることを示す例外を生成する。
+     * @param queueName キュー名
+     * @param depth キュー深さ
+     * @return キューが満杯であることを示す例外
+     */
+    private WmqQueueFullException createQueueFullException(String queueName, Depth depth) {
+        return new WmqQueueFullException(
+                String.format("queue depth exceeded the high water mark. queueName = [%s], currentDepth = [%s], maxDepth = [%s]",
+                              queueName, depth.currentDepth, depth.maxDepth));
+    }
+
+    /**
+     * 指定された時間待機する。
+     * @param millis 待機時間(単位:msec)
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("interrupted while waiting for the queue depth to decrease.", e);
+        }
+    }
+
+    /**
+     * 監視対象のキュー名を設定する。
+     * <p/>
+     * 指定しない場合は、すべての送信先キューを監視する。
+     *
+     * @param queueNames 監視対象のキュー名
+     * @return このオブジェクト自体
+     */
+    public WmqQueueDepthMonitor setQueueNames(List<String> queueNames) {
+        this.queueNames = new HashSet<String>(queueNames);
+        return this;
+    }
+
+    /**
+     * キュー深さをキャッシュする期間(単位:msec)を設定する。
+     * <p/>
+     * BLOCKの場合は、この間隔でキュー深さを確認し直す。デフォルトは1000。
+     *
+     * @param inquiryInterval キュー深さをキャッシュする期間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqQueueDepthMonitor setInquiryInterval(long inquiryInterval) {
+        this.inquiryInterval = inquiryInterval;
+        return this;
+    }
+
+    /**
+     * 高水準点を、最大深さに対する割合(0より大きく1以下)で設定する。
+     * <p/>
+     * デフォルトは0.8。
+     *
+     * @param highWaterMark 高水準点
+     * @return このオブジェクト自体
+     * @throws IllegalArgumentException 0以下または1より大きい値が指定された場合
+     */
+    public WmqQueueDepthMonitor setHighWaterMark(double highWaterMark) {
+        if (highWaterMark <= 0 || highWaterMark > 1) {
+            throw new IllegalArgumentException(
+                    "highWaterMark must be greater than 0 and less than or equal to 1. highWaterMark = [" + highWaterMark + "]");
+        }
+        this.highWaterMark = highWaterMark;
+        return this;
+    }
+
+    /**
+     * 高水準点を超えた場合の動作を設定する。
+     * <p/>
+     * "BLOCK"、"SHED"、"DELAY"のいずれかを指定する。デフォルトは"BLOCK"。
+     *
+     * @param action 高水準点を超えた場合の動作
+     * @return このオブジェクト自体
+     * @throws IllegalArgumentException いずれにも該当しない値が指定された場合
+     */
+    public WmqQueueDepthMonitor setAction(String action) {
+        try {
+            this.action = Action.valueOf(action);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "action must be one of BLOCK, SHED or DELAY. action = [" + action + "]", e);
+        }
+        return this;
+    }
+
+    /**
+     * BLOCKの場合に待機する最大時間(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは5000。
+     *
+     * @param maxBlockTime 待機する最大時間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqQueueDepthMonitor setMaxBlockTime(long maxBlockTime) {
+        this.maxBlockTime = maxBlockTime;
+        return this;
+    }
+
+    /**
+     * DELAYの場合に待機する時間(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは100。
+     *
+     * @param delay 待機する時間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqQueueDepthMonitor setDelay(long delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    /**
+     * 問い合わせたキュー深さ。
+     */
+    private static final class Depth {
+
+        /** 現在の深さ */
+        private final int currentDepth;
+
+        /** 最大深さ。問い合わせに失敗した場合は0 */
+        private final int maxDepth;
+
+        /** 問い合わせた時刻(エポックミリ秒) */
+        private final long inquiredAt;
+
+        /**
+         * コンストラクタ。
+         * @param currentDepth 現在の深さ
+         * @param maxDepth 最大深さ
+         * @param inquiredAt 問い合わせた時刻(エポックミリ秒)
+         */
+        private Depth(int currentDepth, int maxDepth, long inquiredAt) {
+            this.currentDepth = currentDepth;
+            this.maxDepth = maxDepth;
+            this.inquiredAt = inquiredAt;
+        }
+
+        /**
+         * 高水準点を超えているか否かを判定する。
+         * @param highWaterMark 高水準点(最大深さに対する割合)
+         * @return 超えている場合はtrue。キュー深さが不明な場合はfalse
+         */
+        private boolean isAbove(double highWaterMark) {
+            return maxDepth > 0 && currentDepth >= maxDepth * highWaterMark;
+        }
+    }
+}
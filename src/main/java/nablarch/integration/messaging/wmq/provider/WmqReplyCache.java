@@ -0,0 +1,294 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+
+/**
+ * 同期送信(要求/応答)の応答メッセージをキャッシュするクラス。
+ * <pre>
+ * コードマスタやレート表の参照など、同じ要求に対して常に同じ応答を返す問い合わせを対象とする。
+ * {@link #destinations}プロパティに指定された送信先への同期送信のみをキャッシュの対象とし、
+ * 送信先と本文が一致する要求を同じ要求とみなす。
+ *
+ * 応答メッセージは{@link #timeToLive}の間保持し、{@link #maxSize}件を超えた場合は最も長く参照されていないものから破棄する。
+ * 応答がなかった場合(タイムアウト)や例外が送出された場合はキャッシュしない。
+ *
+ * 同じ要求が同時に行われた場合は、最初の要求のみIBM MQに送信し、
+ * 後続の要求はその応答を待って同じ内容の応答メッセージを受け取る(送信中の要求の集約)。
+ * 最初の要求が例外で終了した場合は、待っていた後続の要求にも同じ例外が送出される。
+ *
+ * 応答メッセージは要求ごとに複製して返すため、受け取った応答メッセージの読み込み位置やヘッダは他の要求に影響しない。
+ * </pre>
+ */
+public class WmqReplyCache {
+
+    /** キャッシュの対象とする送信先 */
+    private Set<String> destinations = new HashSet<String>();
+
+    /** 応答メッセージを保持する期間(単位:msec) */
+    private long timeToLive = 60 * 1000;
+
+    /** 保持する応答メッセージの最大件数 */
+    private int maxSize = 1000;
+
+    /** 保持している応答メッセージ。参照順に並ぶ */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /** 送信中の要求 */
+    private final ConcurrentMap<Key, FutureTask<ReceivedMessage>> inFlight
+            = new ConcurrentHashMap<Key, FutureTask<ReceivedMessage>>();
+
+    /**
+     * 送信メッセージがキャッシュの対象であるか否かを判定する。
+     * @param sendingMessage 送信メッセージ
+     * @return キャッシュの対象である場合はtrue
+     */
+    public boolean isCacheable(SendingMessage sendingMessage) {
+        return sendingMessage.getDestination() != null && destinations.contains(sendingMessage.getDestination());
+    }
+
+    /**
+     * 送信メッセージに対する応答メッセージを取得する。
+     * <p/>
+     * 保持している応答メッセージがあればそれを返す。
+     * ない場合は、同じ要求が送信中であればその応答を待ち、送信中でなければ指定された処理で同期送信を行う。
+     *
+     * @param sendingMessage 送信メッセージ
+     * @param timeout 応答を待つタイムアウト値(単位:msec)。0以下の場合は送信中の要求の完了まで待つ
+     * @param sender 同期送信を行う処理
+     * @return 応答メッセージ。タイムアウトした場合はnull
+     */
+    public ReceivedMessage getReply(SendingMessage sendingMessage, long timeout, Callable<ReceivedMessage> sender) {
+
+        Key key = new Key(sendingMessage.getDestination(), sendingMessage.getBodyBytes());
+        ReceivedMessage cached = get(key);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        FutureTask<ReceivedMessage> task = new FutureTask<ReceivedMessage>(sender);
+        FutureTask<ReceivedMessage> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+                ReceivedMessage reply = await(task, 0L);
+                if (reply != null) {
+                    put(key, reply);
+                }
+                return reply == null ? null : copy(reply);
+            } finally {
+                inFlight.remove(key, task);
+            }
+        }
+        ReceivedMessage reply = await(running, timeout);
+        return reply == null ? null : copy(reply);
+    }
+
+    /**
+     * 送信中の要求の完了を待ち、応答メッセージを取得する。
+     * @param task 送信中の要求
+     * @param timeout タイムアウト値(単位:msec)。0以下の場合は完了まで待つ
+     * @return 応答メッセージ。タイムアウトした場合はnull
+     */
+    private static ReceivedMessage await(FutureTask<ReceivedMessage> task, long timeout) {
+        try {
+            return timeout > 0 ? task.get(timeout, TimeUnit.MILLISECONDS) : task.get();
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("interrupted while waiting for the reply.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MessagingException(cause);
+        }
+    }
+
+    /**
+     * 有効期限内の応答メッセージを取得する。
+     * @param key 要求のキー
+     * @return 応答メッセージ。保持していない場合はnull
+     */
+    private synchronized ReceivedMessage get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.reply;
+    }
+
+    /**
+     * 応答メッセージを保持する。
+     * @param key 要求のキー
+     * @param reply 応答メッセージ
+     */
+    private synchronized void put(Key key, ReceivedMessage reply) {
+        entries.put(key, new Entry(reply, System.currentTimeMillis() + timeToLive));
+    }
+
+    /**
+     * 保持している応答メッセージをすべて破棄する。
+     * <p/>
+     * 応答の内容が変わったことが分かっている場合(マスタの更新など)に使用する。
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 保持している応答メッセージの件数を取得する。
+     * @return 保持している応答メッセージの件数(有効期限切れを含む)
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 応答メッセージを複製する。
+     * @param reply 応答メッセージ
+     * @return 複製した応答メッセージ
+     */
+    protected ReceivedMessage copy(ReceivedMessage reply) {
+        ReceivedMessage copied = new ReceivedMessage(reply.getBodyBytes());
+        copied.setHeaderMap(new HashMap<String, Object>(reply.getHeaderMap()));
+        return copied;
+    }
+
+    /**
+     * キャッシュの対象とする送信先を設定する。
+     * <p/>
+     * 同じ要求に対して常に同じ応答を返す送信先のみを指定すること。
+     *
+     * @param destinations キャッシュの対象とする送信先
+     * @return このオブジェクト自体
+     */
+    public WmqReplyCache setDestinations(List<String> destinations) {
+        this.destinations = new HashSet<String>(destinations);
+        return this;
+    }
+
+    /**
+     * 応答メッセージを保持する期間(単位:msec)を設定する。
+     * <p/>
+     * デフォルトは60000(1分)。
+     *
+     * @param timeToLive 応答メッセージを保持する期間(単位:msec)
+     * @return このオブジェクト自体
+     */
+    public WmqReplyCache setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * 保持する応答メッセージの最大件数を設定する。
+     * <p/>
+     * デフォルトは1000。
+     *
+     * @param maxSize 保持する応答メッセージの最大件数
+     * @return このオブジェクト自体
+     * @throws IllegalArgumentException 1未満の値が指定された場合
+     */
+    public WmqReplyCache setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 0. maxSize = [" + maxSize + "]");
+        }
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * 送信先と本文からなる要求のキー。
+     * <p/>
+     * ハッシュ値は生成時に1度だけ計算する。本文の一致は内容を比較して判定するため、ハッシュ値の衝突で誤った応答を返すことはない。
+     */
+    private static final class Key {
+
+        /** 送信先 */
+        private final String destination;
+
+        /** 本文 */
+        private final byte[] body;
+
+        /** ハッシュ値 */
+        private final int hash;
+
+        /**
+         * コンストラクタ。
+         * @param destination 送信先
+         * @param body 本文
+         */
+        private Key(String destination, byte[] body) {
+            this.destination = destination;
+            this.body = body;
+            this.hash = destination.hashCode() * 31 + Arrays.hashCode(body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && destination.equals(other.destination) && Arrays.equals(body, other.body);
+        }
+    }
+
+    /**
+     * 保持している応答メッセージ。
+     */
+    private static final class Entry {
+
+        /** 応答メッセージ */
+        private final ReceivedMessage reply;
+
+        /** 有効期限(エポックミリ秒) */
+        private final long expireAt;
+
+        /**
+         * コンストラクタ。
+         * @param reply 応答メッセージ
+         * @param expireAt 有効期限(エポックミリ秒)
+         */
+        private Entry(ReceivedMessage reply, long expireAt) {
+            this.reply = reply;
+            this.expireAt = expireAt;
+        }
+    }
+}
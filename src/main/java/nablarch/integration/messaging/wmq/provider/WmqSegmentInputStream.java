@@ -0,0 +1,132 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.ibm.mq.MQGetMessageOptions;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * 論理メッセージのセグメントを順に読み込み、本文を連続した{@link InputStream}として提供するクラス。
+ * <p/>
+ * 読み込み済みのセグメントの本文を読み終えた時点で、次のセグメントを{@link MQQueue}から読み込む。
+ * クローズ時に未読のセグメントが残っている場合は、キューに残らないようにすべて読み捨てる。
+ */
+class WmqSegmentInputStream extends InputStream {
+
+    /** セグメントの読み込みに使用する{@link WmqMessagingProvider} */
+    private final WmqMessagingProvider provider;
+
+    /** 受信先{@link MQQueue} */
+    private final MQQueue receivedMqQueue;
+
+    /** 読み込み中のセグメント */
+    private final MQMessage mqMessage;
+
+    /** 2つ目以降のセグメントの読み込みを制御するオプション */
+    private final MQGetMessageOptions mqGetMessageOptions;
+
+    /** 最後のセグメントを読み込み済みの場合はtrue */
+    private boolean lastSegment;
+
+    /** クローズ済みの場合はtrue */
+    private boolean closed = false;
+
+    /**
+     * コンストラクタ。
+     * @param provider セグメントの読み込みに使用する{@link WmqMessagingProvider}
+     * @param receivedMqQueue 受信先{@link MQQueue}
+     * @param mqMessage 読み込み済みの最初のセグメント
+     * @param mqGetMessageOptions 2つ目以降のセグメントの読み込みを制御するオプション
+     */
+    WmqSegmentInputStream(WmqMessagingProvider provider, MQQueue receivedMqQueue,
+                          MQMessage mqMessage, MQGetMessageOptions mqGetMessageOptions) {
+        this.provider = provider;
+        this.receivedMqQueue = receivedMqQueue;
+        this.mqMessage = mqMessage;
+        this.mqGetMessageOptions = mqGetMessageOptions;
+        this.lastSegment = isLastSegment(mqMessage);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream was already closed.");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, mqMessage.getDataLength());
+        mqMessage.readFully(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : mqMessage.getDataLength();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 未読のセグメントをすべて読み捨てる。
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        while (!lastSegment) {
+            readNextSegment();
+        }
+        closed = true;
+    }
+
+    /**
+     * 読み込み中のセグメントを読み終えている場合は次のセグメントを読み込む。
+     * @return 読み込める本文が残っている場合はtrue
+     * @throws IOException 本文の読み込みに失敗した場合
+     */
+    private boolean fill() throws IOException {
+        while (mqMessage.getDataLength() == 0) {
+            if (lastSegment) {
+                return false;
+            }
+            readNextSegment();
+        }
+        return true;
+    }
+
+    /**
+     * 次のセグメントを読み込む。
+     */
+    private void readNextSegment() {
+        provider.getNextSegment(receivedMqQueue, mqMessage, mqGetMessageOptions);
+        lastSegment = isLastSegment(mqMessage);
+    }
+
+    /**
+     * 指定された{@link MQMessage}が論理メッセージの最後のセグメントであるか否かを判定する。
+     * <p/>
+     * 分割されていないメッセージは、最後のセグメントとして扱う。
+     *
+     * @param mqMessage {@link MQMessage}
+     * @return 最後のセグメントの場合はtrue
+     */
+    private static boolean isLastSegment(MQMessage mqMessage) {
+        return (mqMessage.messageFlags & CMQC.MQMF_SEGMENT) == 0
+                || (mqMessage.messageFlags & CMQC.MQMF_LAST_SEGMENT) != 0;
+    }
+}
@@ -0,0 +1,41 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import java.io.InputStream;
+
+import nablarch.fw.messaging.ReceivedMessage;
+
+/**
+ * 本文を{@link InputStream}で読み込む受信メッセージ。
+ * <pre>
+ * {@link WmqMessagingContext#receiveMessageStream(String, String, long)}メソッドが返す。
+ * ヘッダは{@link ReceivedMessage}と同様に設定されるが、本文はバイト配列に展開されず、
+ * {@link #getBodyInputStream()}メソッドが返す{@link InputStream}から読み込む。
+ * {@link #getBodyBytes()}メソッドは空のバイト配列を返す。
+ *
+ * 分割して送信されたメッセージの場合、{@link InputStream}は読み込みに応じてセグメントを1つずつ読み込むため、
+ * ヒープに保持される本文はセグメント1つ分となる。
+ * {@link InputStream}は、本文を読み終えたか否かにかかわらず、コミットまたはバックアウトの前にクローズすること。
+ * </pre>
+ */
+public class WmqStreamingReceivedMessage extends ReceivedMessage {
+
+    /** 本文を読み込む{@link InputStream} */
+    private final InputStream bodyInputStream;
+
+    /**
+     * コンストラクタ。
+     * @param bodyInputStream 本文を読み込む{@link InputStream}
+     */
+    public WmqStreamingReceivedMessage(InputStream bodyInputStream) {
+        super(new byte[0]);
+        this.bodyInputStream = bodyInputStream;
+    }
+
+    /**
+     * 本文を読み込む{@link InputStream}を取得する。
+     * @return 本文を読み込む{@link InputStream}
+     */
+    public InputStream getBodyInputStream() {
+        return bodyInputStream;
+    }
+}
@@ -36,13 +36,17 @@ public class BasicWmqMessagingExceptionFactory implements MessagingExceptionFact
     /**
      * {@inheritDoc}
      * <p/>
+     * 発生した例外がキューの満杯を示す場合は、{@link WmqQueueFullException}を生成する。
      * 発生した例外がMOM接続に関する問題である場合は、{@link MomConnectionException}を生成する。
-     * MOM接続に関する問題でない場合は、{@link MessagingException}を生成する。
+     * いずれでもない場合は、{@link MessagingException}を生成する。
      * </p>
-     * 発生した例外がMOM接続に関する問題であるか否かの判定は、
-     * {@link #isMomConnectionError(Throwable)}メソッドに委譲する。
+     * 発生した例外がキューの満杯を示すか否かの判定は、{@link #isQueueFull(Throwable)}メソッドに、
+     * MOM接続に関する問題であるか否かの判定は、{@link #isMomConnectionError(Throwable)}メソッドに委譲する。
      */
     public MessagingException createMessagingException(String message, Throwable cause) {
+        if (isQueueFull(cause)) {
+            return new WmqQueueFullException(message, cause);
+        }
         if (isMomConnectionError(cause)) {
             return new MomConnectionException(message, cause);
         }
@@ -77,4 +81,20 @@ public class BasicWmqMessagingExceptionFactory implements MessagingExceptionFact
         Throwable cause = t.getCause();
         return cause != null && isMomConnectionError(cause);
     }
+
+    /**
+     * 発生した例外がキューの満杯を示すか否かを判定する。
+     * <p/>
+     * 基本実装では、発生した例外がMQExceptionである、かつ理由コードが{@link CMQC#MQRC_Q_FULL}の場合にtrueを返す。
+     * 
+     * @param t 発生した例外
+     * @return 発生した例外がキューの満杯を示す場合はtrue
+     */
+    protected boolean isQueueFull(Throwable t) {
+        if (t instanceof MQException && ((MQException) t).reasonCode == CMQC.MQRC_Q_FULL) {
+            return true;
+        }
+        Throwable cause = t.getCause();
+        return cause != null && isQueueFull(cause);
+    }
 }
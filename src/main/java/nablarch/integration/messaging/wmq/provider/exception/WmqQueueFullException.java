@@ -0,0 +1,32 @@
+package nablarch.integration.messaging.wmq.provider.exception;
+
+import nablarch.fw.handler.retry.Retryable;
+import nablarch.fw.messaging.MessagingException;
+
+/**
+ * 送信先のキューが満杯、またはキュー深さが高水準点を超えているため、メッセージを送信できなかったことを示す例外。
+ * <p/>
+ * 受信側の処理が追いつけば解消するため、リトライ可能な例外とする。
+ *
+ * @see BasicWmqMessagingExceptionFactory
+ * @see nablarch.integration.messaging.wmq.provider.WmqQueueDepthMonitor
+ */
+public class WmqQueueFullException extends MessagingException implements Retryable {
+
+    /**
+     * コンストラクタ。
+     * @param message エラーメッセージ
+     */
+    public WmqQueueFullException(String message) {
+        super(message);
+    }
+
+    /**
+     * コンストラクタ。
+     * @param message エラーメッセージ
+     * @param cause 起因となる例外
+     */
+    public WmqQueueFullException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
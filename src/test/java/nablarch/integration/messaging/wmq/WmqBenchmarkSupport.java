@@ -0,0 +1,80 @@
+package nablarch.integration.messaging.wmq;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import nablarch.core.date.BasicSystemTimeProvider;
+import nablarch.core.repository.ObjectLoader;
+import nablarch.core.repository.SystemRepository;
+
+/**
+ * ベンチマークの共通処理。
+ */
+public final class WmqBenchmarkSupport {
+
+    /** 本文生成に使用する乱数のシード。実行ごとに同じ本文を使用し、結果を比較可能にする。 */
+    private static final long SEED = 20111129L;
+
+    /** 隠蔽コンストラクタ */
+    private WmqBenchmarkSupport() {
+    }
+
+    /**
+     * ベンチマーク対象が参照するコンポーネントをリポジトリにロードする。
+     */
+    public static void loadSystemRepository() {
+        SystemRepository.load(new ObjectLoader() {
+            public Map<String, Object> load() {
+                Map<String, Object> components = new HashMap<String, Object>();
+                components.put("systemTimeProvider", new BasicSystemTimeProvider());
+                return components;
+            }
+        });
+    }
+
+    /**
+     * 指定されたサイズの本文を生成する。
+     * <p/>
+     * 圧縮率などが実行ごとに変わらないように、固定シードの乱数で英数字を並べる。
+     * 
+     * @param size 本文のサイズ(単位:byte)
+     * @return 本文
+     */
+    public static byte[] createBody(int size) {
+        byte[] chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".getBytes();
+        Random random = new Random(SEED);
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = chars[random.nextInt(chars.length)];
+        }
+        return body;
+    }
+
+    /**
+     * 指定されたサイズの、固定長レコードを並べた本文を生成する。
+     * <p/>
+     * 業務電文を想定し、空白で埋めた項目と数字項目からなる100バイトのレコードを繰り返す。
+     * {@link #createBody(int)}と同様に、固定シードの乱数で項目値を決める。
+     * 
+     * @param size 本文のサイズ(単位:byte)
+     * @return 本文
+     */
+    public static byte[] createRecordBody(int size) {
+        Random random = new Random(SEED);
+        StringBuilder builder = new StringBuilder(size + 100);
+        while (builder.length() < size) {
+            builder.append(String.format("%-10s%010d%-30s%08d%-12s%-30s",
+                                         "REC" + random.nextInt(100),
+                                         random.nextInt(1000000),
+                                         "CUSTOMER NAME " + random.nextInt(1000),
+                                         20110000 + random.nextInt(1231),
+                                         random.nextBoolean() ? "ACTIVE" : "INACTIVE",
+                                         "TOKYO"));
+        }
+        byte[] body = new byte[size];
+        byte[] records = builder.toString().getBytes();
+        System.arraycopy(records, 0, body, 0, size);
+        return body;
+    }
+}
@@ -0,0 +1,401 @@
+package nablarch.integration.messaging.wmq.cluster;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.provider.exception.MomConnectionException;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+import nablarch.integration.messaging.wmq.xa.WmqXATransaction;
+import nablarch.test.support.SystemRepositoryResource;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * {@link WmqClusterMessagingProvider}のテスト
+ */
+public class WmqClusterMessagingProviderTest {
+
+    @Rule
+    public SystemRepositoryResource systemRepositoryResource = new SystemRepositoryResource(
+            "nablarch/integration/messaging/wmq/cluster/WmqClusterMessagingProviderTest.xml");
+
+    /**
+     * ラウンドロビンでキューマネージャに均等に送信されること。
+     */
+    @Test
+    public void testRoundRobin() throws IOException {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(createMember(qm1, 1), createMember(qm2, 1)));
+
+        MessagingContext context = provider.createContext();
+        try {
+            for (int i = 0; i < 10; i++) {
+                context.sendMessage(createMessage());
+            }
+        } finally {
+            context.close();
+        }
+
+        assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(5));
+        assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(5));
+    }
+
+    /**
+     * 重みの比率でキューマネージャに送信されること。
+     */
+    @Test
+    public void testWeighted() throws IOException {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(createMember(qm1, 3), createMember(qm2, 1)))
+                .setLoadBalancingPolicy(new WeightedWmqLoadBalancingPolicy());
+
+        MessagingContext context = provider.createContext();
+        try {
+            for (int i = 0; i < 20; i++) {
+                context.sendMessage(createMessage());
+            }
+        } finally {
+            context.close();
+        }
+
+        assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(15));
+        assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(5));
+    }
+
+    /**
+     * 処理中の送信数が最も少ないキューマネージャが選択されること。
+     */
+    @Test
+    public void testLeastInFlight() {
+
+        WmqClusterMember busy = new WmqClusterMember();
+        WmqClusterMember idle = new WmqClusterMember();
+        busy.beginSend();
+        busy.beginSend();
+        idle.beginSend();
+
+        LeastInFlightWmqLoadBalancingPolicy policy = new LeastInFlightWmqLoadBalancingPolicy();
+        for (int i = 0; i < 4; i++) {
+            assertThat(policy.select(Arrays.asList(busy, idle)), is(idle));
+        }
+        idle.beginSend();
+        WmqClusterMember first = policy.select(Arrays.asList(busy, idle));
+        WmqClusterMember second = policy.select(Arrays.asList(busy, idle));
+        assertThat(first != second, is(true));
+    }
+
+    /**
+     * 接続障害が発生したキューマネージャは送信先から除外され、他のキューマネージャに送信し直されること。
+     * 除外期間が過ぎた後は再び送信先となること。
+     */
+    @Test
+    public void testFailover() throws Exception {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMember member1 = createMember(qm1, 1);
+        WmqClusterMember member2 = createMember(qm2, 1);
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(member1, member2))
+                .setRecoveryInterval(200);
+
+        MessagingContext context = provider.createContext();
+        try {
+            context.sendMessage(createMessage());
+            context.sendMessage(createMessage());
+            assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(1));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(1));
+
+            // QM1の障害(接続済みのコンテキストでの送信が失敗する)
+            qm1.setAvailable(false);
+            for (int i = 0; i < 4; i++) {
+                context.sendMessage(createMessage());
+            }
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(5));
+            assertThat(member1.isAvailable(System.currentTimeMillis()), is(false));
+
+            // すべてのキューマネージャの障害
+            qm2.setAvailable(false);
+            try {
+                context.sendMessage(createMessage());
+                fail("must be thrown the MomConnectionException.");
+            } catch (MomConnectionException e) {
+                assertThat(member2.isAvailable(System.currentTimeMillis()), is(false));
+            }
+
+            // 復旧
+            qm1.setAvailable(true);
+            qm2.setAvailable(true);
+            Thread.sleep(250);
+            for (int i = 0; i < 4; i++) {
+                context.sendMessage(createMessage());
+            }
+            assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(3));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(7));
+            assertThat(member1.isAvailable(System.currentTimeMillis()), is(true));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 作業単位を固定したキューマネージャで接続障害が発生した場合は、送信し直さずに例外が送出されること。
+     */
+    @Test
+    public void testNoFailoverInUnitOfWork() throws IOException {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMember member1 = createXaReceiver(qm1);
+        WmqClusterMember member2 = createXaReceiver(qm2);
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(member1, member2));
+
+        WmqClusterMessagingContext context = (WmqClusterMessagingContext) provider.createContext();
+        try {
+            // 最初に送信したQM1に作業単位が固定される
+            context.begin();
+            context.sendMessage(createMessage());
+            context.sendMessage(createMessage());
+
+            // QM1の障害
+            qm1.setAvailable(false);
+            try {
+                context.sendMessage(createMessage());
+                fail("must be thrown the MomConnectionException.");
+            } catch (MomConnectionException e) {
+                assertThat(member1.isAvailable(System.currentTimeMillis()), is(false));
+            }
+            assertThat(member2.isAvailable(System.currentTimeMillis()), is(true));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(0));
+
+            // 作業単位はキューマネージャによってバックアウトされているため、コミットできない
+            try {
+                context.commit();
+                fail("must be thrown the MessagingException.");
+            } catch (MessagingException e) {
+                assertThat(e.getMessage().contains("connection to the queue manager was lost"), is(true));
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 作業単位の中で受信した場合は、受信したキューマネージャで作業単位がコミットまたはバックアウトされ、
+     * 作業単位の間はそのキューマネージャのコンテキストがスレッドに紐づけられること。
+     */
+    @Test
+    public void testUnitOfWork() throws IOException {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(createXaReceiver(qm1), createXaReceiver(qm2)))
+                .setReceivePollInterval(5);
+
+        put(qm2, 1);
+
+        WmqClusterMessagingContext context = (WmqClusterMessagingContext) provider.createContext();
+        MessagingContext.attach(context);
+        try {
+            // 受信したQM2に作業単位が固定され、送信もQM2で行われる
+            context.begin();
+            assertThat(context.receiveMessage("TEST.QUEUE", null, 100) != null, is(true));
+            context.sendMessage(createMessage());
+            WmqMessagingContext.getInstance().sendMessage(createMessage());
+            // キュー深さは確定していないメッセージを含む
+            assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(0));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(3));
+
+            // バックアウトすると、受信したメッセージはキューに戻り、送信したメッセージは取り消される
+            context.backout();
+            assertThat(MessagingContext.getInstance(), is((MessagingContext) context));
+            assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(0));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(1));
+
+            // コミットすると、受信したメッセージが削除され、送信したメッセージが確定する
+            context.begin();
+            assertThat(context.receiveMessage("TEST.QUEUE", null, 100) != null, is(true));
+            context.sendMessage(createMessage());
+            WmqMessagingContext.getInstance().sendMessage(createMessage());
+            context.commit();
+            assertThat(MessagingContext.getInstance(), is((MessagingContext) context));
+            assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(0));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(2));
+            assertThat(qm2.getCurrentDepth("TEST.POISON"), is(0));
+
+            try {
+                context.commit();
+                fail("must be thrown the IllegalStateException.");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("unit of work was not started."));
+            }
+        } finally {
+            context.close();
+            MessagingContext.detach();
+        }
+    }
+
+    /**
+     * 同期点外で送受信するキューマネージャが設定されている場合は、作業単位を開始できないこと。
+     */
+    @Test
+    public void testBeginRequiresXa() {
+
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(createXaReceiver(new InMemoryQueueManager("QM1")),
+                                          createMember(new InMemoryQueueManager("QM2"), 1)));
+        WmqClusterMessagingContext context = (WmqClusterMessagingContext) provider.createContext();
+        try {
+            context.begin();
+            fail("must be thrown the IllegalStateException.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage().contains("useXa"), is(true));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * メッセージIDを指定しない受信では、すべてのキューマネージャの受信キューから読み込めること。
+     * 受信は同期点外で行われ、受信した時点でキューから削除されること。
+     */
+    @Test
+    public void testCompetingReceive() throws IOException {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(createReceiver(qm1), createReceiver(qm2)))
+                .setReceivePollInterval(5);
+
+        put(qm1, 3);
+        put(qm2, 2);
+
+        MessagingContext context = provider.createContext();
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertThat(context.receiveMessage("TEST.QUEUE", null, 100) != null, is(true));
+            }
+            assertNull(context.receiveMessage("TEST.QUEUE", null, 20));
+            assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(0));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(0));
+
+            // 障害が発生したキューマネージャは除外して受信する
+            put(qm2, 1);
+            qm1.setAvailable(false);
+            assertThat(context.receiveMessage("TEST.QUEUE", null, 100) != null, is(true));
+            assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(0));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * MessagingContextHandlerと同様にスレッドに紐づけたコンテキストから受信した場合も、
+     * 作業単位の終了を待たずに受信したメッセージがキューから削除されること。
+     * {@link WmqXATransaction}とは併用できないこと。
+     */
+    @Test
+    public void testReceiveWithBoundContext() throws IOException {
+
+        InMemoryQueueManager qm1 = new InMemoryQueueManager("QM1");
+        InMemoryQueueManager qm2 = new InMemoryQueueManager("QM2");
+        WmqClusterMessagingProvider provider = new WmqClusterMessagingProvider()
+                .setMembers(Arrays.asList(createReceiver(qm1), createReceiver(qm2)))
+                .setReceivePollInterval(5);
+
+        put(qm1, 1);
+        put(qm2, 1);
+
+        MessagingContext.attach(provider.createContext());
+        try {
+            try {
+                new WmqXATransaction("tran").begin();
+                fail("must be thrown the IllegalStateException.");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage().contains(WmqClusterMessagingContext.class.getName()), is(true));
+            }
+
+            assertThat(MessagingContext.getInstance().receiveMessage("TEST.QUEUE", null, 100) != null, is(true));
+            assertThat(MessagingContext.getInstance().receiveMessage("TEST.QUEUE", null, 100) != null, is(true));
+            assertNull(MessagingContext.getInstance().receiveMessage("TEST.QUEUE", null, 20));
+        } finally {
+            MessagingContext.getInstance().close();
+            MessagingContext.detach();
+        }
+        assertThat(qm1.getCurrentDepth("TEST.QUEUE"), is(0));
+        assertThat(qm2.getCurrentDepth("TEST.QUEUE"), is(0));
+        assertThat(qm1.getCurrentDepth("TEST.POISON"), is(0));
+        assertThat(qm2.getCurrentDepth("TEST.POISON"), is(0));
+    }
+
+    private WmqClusterMember createReceiver(InMemoryQueueManager queueManager) {
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setReceivedQueueName("TEST.QUEUE");
+        provider.setPoisonQueueName("TEST.POISON");
+        provider.setUseXa(false);
+        provider.initialize();
+        return new WmqClusterMember().setProvider(provider);
+    }
+
+    private WmqClusterMember createXaReceiver(InMemoryQueueManager queueManager) {
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setReceivedQueueName("TEST.QUEUE");
+        provider.setPoisonQueueName("TEST.POISON");
+        provider.setUseXa(true);
+        provider.setBackoutLimit(5);
+        provider.initialize();
+        return new WmqClusterMember().setProvider(provider);
+    }
+
+    private void put(InMemoryQueueManager queueManager, int count) throws IOException {
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setUseXa(false);
+        provider.initialize();
+        MessagingContext context = provider.createContext();
+        try {
+            for (int i = 0; i < count; i++) {
+                context.sendMessage(createMessage());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private WmqClusterMember createMember(InMemoryQueueManager queueManager, int weight) {
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setUseXa(false);
+        provider.initialize();
+        return new WmqClusterMember().setProvider(provider).setWeight(weight);
+    }
+
+    private SendingMessage createMessage() throws IOException {
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setDestination("TEST.QUEUE");
+        sendingMessage.getBodyStream().write("hello".getBytes("UTF-8"));
+        return sendingMessage;
+    }
+}
@@ -0,0 +1,46 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.integration.messaging.wmq.provider.BasicWmqMqmdFieldsOperator;
+
+import org.junit.Test;
+
+/**
+ * {@link BasicWmqDispatchKeyResolver}のテスト
+ */
+public class BasicWmqDispatchKeyResolverTest {
+
+    /**
+     * デフォルトでは相関IDを振り分けキーとすること。
+     */
+    @Test
+    public void testDefault() {
+        BasicWmqDispatchKeyResolver resolver = new BasicWmqDispatchKeyResolver();
+
+        ReceivedMessage receivedMessage = new ReceivedMessage(new byte[0]);
+        assertNull(resolver.resolve(receivedMessage));
+
+        receivedMessage.setCorrelationId("0123456789ABCDEF");
+        assertThat(resolver.resolve(receivedMessage), is("0123456789ABCDEF"));
+    }
+
+    /**
+     * 指定したヘッダの値を振り分けキーとすること。
+     */
+    @Test
+    public void testHeaderName() {
+        BasicWmqDispatchKeyResolver resolver = new BasicWmqDispatchKeyResolver()
+                .setHeaderName(BasicWmqMqmdFieldsOperator.GROUP_ID_HEADER);
+
+        ReceivedMessage receivedMessage = new ReceivedMessage(new byte[0]);
+        receivedMessage.setCorrelationId("0123456789ABCDEF");
+        assertNull(resolver.resolve(receivedMessage));
+
+        receivedMessage.setHeader(BasicWmqMqmdFieldsOperator.GROUP_ID_HEADER, "FEDCBA9876543210");
+        assertThat(resolver.resolve(receivedMessage), is("FEDCBA9876543210"));
+    }
+}
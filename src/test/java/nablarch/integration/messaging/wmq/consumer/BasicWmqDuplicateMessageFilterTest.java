@@ -0,0 +1,125 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+
+import org.junit.Test;
+
+/**
+ * {@link BasicWmqDuplicateMessageFilter}のテスト
+ */
+public class BasicWmqDuplicateMessageFilterTest {
+
+    /**
+     * コミットしたメッセージIDのみ処理済みと判定されること。
+     */
+    @Test
+    public void testCommitted() {
+
+        BasicWmqDuplicateMessageFilter filter = new BasicWmqDuplicateMessageFilter();
+        filter.processed(null, Arrays.asList("ID1", "ID2"));
+        assertThat(filter.isDuplicate(null, "ID1"), is(false));
+
+        filter.committed(Arrays.asList("ID1", "ID2"));
+        assertThat(filter.isDuplicate(null, "ID1"), is(true));
+        assertThat(filter.isDuplicate(null, "ID2"), is(true));
+        assertThat(filter.isDuplicate(null, "ID3"), is(false));
+
+        // デフォルトではバックアウトしたバッチ内で処理が終了していたメッセージIDも記録する
+        filter.backedOut(Arrays.asList("ID3"));
+        assertThat(filter.isDuplicate(null, "ID3"), is(true));
+
+        // 記録しないことを指定した場合は、バックアウトによる再配信を処理し直す
+        filter.setRememberBackedOut(false);
+        filter.backedOut(Arrays.asList("ID4"));
+        assertThat(filter.isDuplicate(null, "ID4"), is(false));
+    }
+
+    /**
+     * 最大件数を超えた場合は、古いメッセージIDから破棄されること。
+     */
+    @Test
+    public void testMaxSize() {
+
+        BasicWmqDuplicateMessageFilter filter = new BasicWmqDuplicateMessageFilter().setMaxSize(2);
+        filter.committed(Arrays.asList("ID1", "ID2"));
+        filter.committed(Arrays.asList("ID1"));
+        filter.committed(Arrays.asList("ID3"));
+
+        assertThat(filter.size(), is(2));
+        assertThat(filter.isDuplicate(null, "ID1"), is(true));
+        assertThat(filter.isDuplicate(null, "ID2"), is(false));
+        assertThat(filter.isDuplicate(null, "ID3"), is(true));
+
+        try {
+            filter.setMaxSize(0);
+            fail("must be thrown the IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("maxSize must be greater than 0. maxSize = [0]"));
+        }
+    }
+
+    /**
+     * 保持期間が経過したメッセージIDは破棄されること。
+     */
+    @Test
+    public void testExpiration() throws InterruptedException {
+
+        BasicWmqDuplicateMessageFilter filter = new BasicWmqDuplicateMessageFilter().setExpiration(50);
+        filter.committed(Arrays.asList("ID1"));
+        assertThat(filter.isDuplicate(null, "ID1"), is(true));
+
+        Thread.sleep(100);
+        assertThat(filter.isDuplicate(null, "ID1"), is(false));
+        assertThat(filter.size(), is(0));
+
+        // 0以下の場合は期間による破棄を行わない
+        filter.setExpiration(0);
+        filter.committed(Arrays.asList("ID2"));
+        Thread.sleep(100);
+        assertThat(filter.isDuplicate(null, "ID2"), is(true));
+    }
+
+    /**
+     * 永続化を指定した場合は、メモリ上にないメッセージIDを問い合わせ、コミットの直前に記録すること。
+     */
+    @Test
+    public void testStore() {
+
+        final Set<String> stored = new HashSet<String>(Collections.singleton("OLD"));
+        final List<String> queried = new ArrayList<String>();
+        BasicWmqDuplicateMessageFilter filter = new BasicWmqDuplicateMessageFilter().setStore(new WmqProcessedMessageStore() {
+            public boolean contains(WmqMessagingContext context, String messageId) {
+                queried.add(messageId);
+                return stored.contains(messageId);
+            }
+            public void add(WmqMessagingContext context, List<String> messageIds) {
+                stored.addAll(messageIds);
+            }
+        });
+
+        assertThat(filter.isDuplicate(null, "OLD"), is(true));
+        assertThat(filter.isDuplicate(null, "NEW"), is(false));
+        assertThat(queried, is(Arrays.asList("OLD", "NEW")));
+
+        // 問い合わせで見つかったメッセージIDはメモリ上に記録される
+        assertThat(filter.isDuplicate(null, "OLD"), is(true));
+        assertThat(queried.size(), is(2));
+
+        filter.processed(null, Arrays.asList("NEW"));
+        assertThat(stored.contains("NEW"), is(true));
+
+        // 空の場合は記録しない
+        filter.processed(null, Collections.<String>emptyList());
+    }
+}
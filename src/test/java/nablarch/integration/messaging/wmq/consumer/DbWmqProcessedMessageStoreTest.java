@@ -0,0 +1,89 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.XADataSource;
+import javax.transaction.xa.XAException;
+
+import com.ibm.mq.MQQueueManager;
+
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+import nablarch.test.support.SystemRepositoryResource;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * {@link DbWmqProcessedMessageStore}のテスト
+ */
+public class DbWmqProcessedMessageStoreTest {
+
+    @Rule
+    public SystemRepositoryResource systemRepositoryResource = new SystemRepositoryResource(
+            "nablarch/integration/messaging/wmq/consumer/WmqParallelConsumerTest.xml");
+
+    /**
+     * データベース接続がコンテキストごとに1度だけ取得され、コンテキストのクローズ時にクローズされること。
+     */
+    @Test
+    public void testConnectionClosedWithContext() throws SQLException {
+
+        final List<String> events = new ArrayList<String>();
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(new InMemoryQueueManager("TEST.QM")) {
+            @Override
+            protected Connection getJdbcConnection(MQQueueManager mqQueueManager, XADataSource xaDataSource)
+                    throws SQLException, XAException {
+                events.add("open");
+                return createConnection(events);
+            }
+        };
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setUseXa(true);
+        provider.initialize();
+
+        DbWmqProcessedMessageStore store = new DbWmqProcessedMessageStore();
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        Connection connection = store.getConnection(context);
+        assertThat(store.getConnection(context), is(sameInstance(connection)));
+        assertThat(events, is(Arrays.asList("open")));
+
+        context.close();
+        assertThat(events, is(Arrays.asList("open", "close")));
+
+        // 新しいコンテキストでは接続し直す
+        WmqMessagingContext newContext = (WmqMessagingContext) provider.createContext();
+        try {
+            assertThat(store.getConnection(newContext), is(not(sameInstance(connection))));
+            assertThat(events, is(Arrays.asList("open", "close", "open")));
+        } finally {
+            newContext.close();
+        }
+        assertThat(events, is(Arrays.asList("open", "close", "open", "close")));
+    }
+
+    private static Connection createConnection(final List<String> events) {
+        return (Connection) Proxy.newProxyInstance(
+                DbWmqProcessedMessageStoreTest.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("close".equals(method.getName())) {
+                            events.add("close");
+                        }
+                        return null;
+                    }
+                });
+    }
+}
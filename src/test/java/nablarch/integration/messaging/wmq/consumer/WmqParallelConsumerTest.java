@@ -0,0 +1,427 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nablarch.fw.launcher.ProcessAbnormalEnd;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
+import nablarch.integration.messaging.wmq.provider.BasicWmqMqmdFieldsOperator;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+import nablarch.test.support.SystemRepositoryResource;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * {@link WmqParallelConsumer}のテスト
+ */
+public class WmqParallelConsumerTest {
+
+    @Rule
+    public SystemRepositoryResource systemRepositoryResource = new SystemRepositoryResource(
+            "nablarch/integration/messaging/wmq/consumer/WmqParallelConsumerTest.xml");
+
+    /**
+     * 同じ振り分けキーのメッセージが受信順に処理され、すべてのメッセージがコミットされること。
+     */
+    @Test
+    public void testOrderedPerKey() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        String[] keys = {"0A", "0B", "0C"};
+        send(provider, keys, 50);
+
+        final Map<String, List<Integer>> processed = new HashMap<String, List<Integer>>();
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                String key = receivedMessage.getCorrelationId();
+                int seq = Integer.parseInt(new String(receivedMessage.getBodyBytes(), "UTF-8"));
+                synchronized (processed) {
+                    List<Integer> list = processed.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Integer>();
+                        processed.put(key, list);
+                    }
+                    list.add(seq);
+                }
+            }
+        }).setWorkerCount(4).setMaxInFlight(16).setReceiveTimeout(10);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 150);
+        } finally {
+            consumer.stop();
+        }
+
+        assertThat(consumer.getCommittedCount(), is(150L));
+        assertThat(consumer.getBackedOutCount(), is(0L));
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+        assertThat(processed.size(), is(3));
+        for (List<Integer> list : processed.values()) {
+            assertThat(list.size(), is(50));
+            for (int i = 0; i < list.size(); i++) {
+                assertThat(list.get(i), is(i));
+            }
+        }
+    }
+
+    /**
+     * ハンドラが例外を送出した場合はバッチ全体がバックアウトされ、再配信されたメッセージが処理されること。
+     */
+    @Test
+    public void testBackoutOnFailure() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        send(provider, new String[] {"0A"}, 3);
+
+        final AtomicInteger handledCount = new AtomicInteger();
+        final AtomicInteger failureCount = new AtomicInteger();
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                handledCount.incrementAndGet();
+                if ("1".equals(new String(receivedMessage.getBodyBytes(), "UTF-8"))
+                        && failureCount.getAndIncrement() == 0) {
+                    throw new IllegalStateException("test failure");
+                }
+            }
+        }).setWorkerCount(2).setMaxInFlight(10).setReceiveTimeout(10).setBatchWaitTimeout(10);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 3);
+        } finally {
+            consumer.stop();
+        }
+
+        assertThat(consumer.getCommittedCount(), is(3L));
+        assertTrue(consumer.getBackedOutCount() >= 1L);
+        assertThat(failureCount.get(), is(2));
+        assertTrue(handledCount.get() > 3);
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    /**
+     * ハンドラが例外を送出したメッセージは単独で処理し直され、成功した場合はバッチ全体がコミットされること。
+     */
+    @Test
+    public void testRetryFailedMessageAlone() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        send(provider, new String[] {"0A", "0B", "0C"}, 1);
+
+        final AtomicInteger handledCount = new AtomicInteger();
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                if (handledCount.getAndIncrement() == 0) {
+                    throw new IllegalStateException("test failure");
+                }
+            }
+        }).setWorkerCount(3).setMaxInFlight(10).setReceiveTimeout(10).setBatchWaitTimeout(10);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 3);
+        } finally {
+            consumer.stop();
+        }
+
+        assertThat(consumer.getCommittedCount(), is(3L));
+        assertThat(consumer.getBackedOutCount(), is(0L));
+        assertThat(handledCount.get(), is(4));
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    /**
+     * 処理し直しても失敗した場合はバッチ全体がバックアウトされ、
+     * 以降はバックアウトした件数分のメッセージが1件ずつ処理されること。
+     */
+    @Test
+    public void testIsolateAfterBackout() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        send(provider, new String[] {"0A", "0B", "0C"}, 1);
+
+        final AtomicReference<String> failingMessageId = new AtomicReference<String>();
+        final AtomicInteger failureCount = new AtomicInteger();
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                failingMessageId.compareAndSet(null, receivedMessage.getMessageId());
+                if (receivedMessage.getMessageId().equals(failingMessageId.get())
+                        && failureCount.getAndIncrement() < 4) {
+                    throw new IllegalStateException("test failure");
+                }
+            }
+        }).setWorkerCount(3).setMaxInFlight(10).setReceiveTimeout(10).setBatchWaitTimeout(10);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 3);
+        } finally {
+            consumer.stop();
+        }
+
+        // 最初のバックアウトは3件、2回目は失敗したメッセージの1件のみ
+        assertThat(consumer.getCommittedCount(), is(3L));
+        assertThat(consumer.getBackedOutCount(), is(4L));
+        assertThat(failureCount.get(), is(5));
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    /**
+     * 処理済みのメッセージを検出するフィルタを指定した場合は、再配信された処理済みのメッセージでハンドラが呼び出されないこと。
+     */
+    @Test
+    public void testDuplicateMessageFilter() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        send(provider, new String[] {"0A"}, 3);
+
+        final List<String> handled = new ArrayList<String>();
+        final AtomicInteger failureCount = new AtomicInteger();
+        final List<String> stored = new ArrayList<String>();
+        WmqDuplicateMessageFilter filter = new BasicWmqDuplicateMessageFilter()
+                .setStore(new WmqProcessedMessageStore() {
+                    public boolean contains(WmqMessagingContext context, String messageId) {
+                        return false;
+                    }
+                    public void add(WmqMessagingContext context, List<String> messageIds) {
+                        stored.addAll(messageIds);
+                    }
+                });
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                String body = new String(receivedMessage.getBodyBytes(), "UTF-8");
+                synchronized (handled) {
+                    handled.add(body);
+                }
+                if ("1".equals(body) && failureCount.getAndIncrement() == 0) {
+                    throw new IllegalStateException("test failure");
+                }
+            }
+        }).setWorkerCount(2).setMaxInFlight(10).setReceiveTimeout(10).setBatchWaitTimeout(10)
+          .setDuplicateMessageFilter(filter);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 3);
+        } finally {
+            consumer.stop();
+        }
+
+        // 再配信では、失敗したメッセージのみハンドラが呼び出される
+        assertThat(handled, is(Arrays.asList("0", "1", "2", "1")));
+        assertThat(consumer.getDuplicateCount(), is(2L));
+        assertThat(consumer.getCommittedCount(), is(3L));
+        assertThat(consumer.getBackedOutCount(), is(3L));
+        assertThat(stored.size(), is(1));
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    /**
+     * 遅延時間を記録するオブジェクトを指定した場合は、処理したメッセージの遅延時間が優先度ごとに記録されること。
+     */
+    @Test
+    public void testLatencyRecorder() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            context.begin();
+            for (int i = 0; i < 10; i++) {
+                SendingMessage sendingMessage = new SendingMessage();
+                sendingMessage.setDestination("TEST.QUEUE");
+                if (i % 2 == 0) {
+                    sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, 7);
+                }
+                sendingMessage.getBodyStream().write(String.valueOf(i).getBytes("UTF-8"));
+                context.sendMessage(sendingMessage);
+            }
+            context.commit();
+        } finally {
+            context.close();
+        }
+
+        WmqPriorityLatencyRecorder recorder = new WmqPriorityLatencyRecorder();
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) {
+            }
+        }).setWorkerCount(2).setReceiveTimeout(10).setLatencyRecorder(recorder);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 10);
+        } finally {
+            consumer.stop();
+        }
+
+        assertThat(recorder.getCount(7), is(5L));
+        assertThat(recorder.getCount(0), is(5L));
+        assertTrue(recorder.getMaxLatency(7) < 10000L);
+    }
+
+    /**
+     * 二重に開始できないこと。
+     */
+    @Test
+    public void testStartTwice() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) {
+            }
+        }).setWorkerCount(1).setReceiveTimeout(10);
+
+        consumer.start();
+        try {
+            consumer.start();
+            fail("must be thrown the IllegalStateException.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("consumer was already started. queueName = [TEST.QUEUE]"));
+        } finally {
+            consumer.stop();
+        }
+
+        // 停止済みの場合は何もしない
+        consumer.stop();
+    }
+
+    /**
+     * ポイズンメッセージの退避キューがない場合は、受信スレッドが停止し、
+     * {@link WmqParallelConsumer#stop()}で{@link ProcessAbnormalEnd}が送出されること。
+     * ポイズンメッセージは受信キューに残ること。
+     */
+    @Test
+    public void testPoisonMessageWithoutPoisonQueue() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        send(provider, new String[] {"0A"}, 1);
+
+        final AtomicInteger handledCount = new AtomicInteger();
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                handledCount.incrementAndGet();
+                throw new IllegalStateException("test failure");
+            }
+        }).setWorkerCount(1).setMaxInFlight(1).setReceiveTimeout(10);
+
+        consumer.start();
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (consumer.getAbnormalEnd() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotNull(consumer.getAbnormalEnd());
+        } finally {
+            try {
+                consumer.stop();
+                fail("must be thrown the ProcessAbnormalEnd.");
+            } catch (ProcessAbnormalEnd e) {
+                assertThat(e == consumer.getAbnormalEnd(), is(true));
+            }
+        }
+
+        // バックアウト回数が上限(5回)以下の6回の配信で、それぞれ単独での処理し直しを含めて2回ずつ処理される
+        assertThat(handledCount.get(), is(12));
+        assertThat(consumer.getBackedOutCount(), is(6L));
+        assertThat(consumer.getCommittedCount(), is(0L));
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(1));
+    }
+
+    /**
+     * 受信中に実行時例外が送出された場合は、受信中のバッチをバックアウトし、受信を続けること。
+     */
+    @Test
+    public void testRuntimeExceptionWhileReceiving() throws Exception {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        send(provider, new String[] {"0A"}, 3);
+
+        final AtomicInteger filterCount = new AtomicInteger();
+        final List<String> handled = new ArrayList<String>();
+        WmqDuplicateMessageFilter filter = new BasicWmqDuplicateMessageFilter() {
+            @Override
+            public boolean isDuplicate(WmqMessagingContext context, String messageId) {
+                if (filterCount.incrementAndGet() == 2) {
+                    throw new IllegalStateException("test failure");
+                }
+                return super.isDuplicate(context, messageId);
+            }
+        };
+        WmqParallelConsumer consumer = new WmqParallelConsumer(provider, "TEST.QUEUE", new WmqMessageHandler() {
+            public void handle(ReceivedMessage receivedMessage) throws Exception {
+                synchronized (handled) {
+                    handled.add(new String(receivedMessage.getBodyBytes(), "UTF-8"));
+                }
+            }
+        }).setWorkerCount(1).setMaxInFlight(10).setReceiveTimeout(10).setBatchWaitTimeout(10)
+          .setDuplicateMessageFilter(filter);
+
+        consumer.start();
+        try {
+            awaitCommitted(consumer, 3);
+        } finally {
+            consumer.stop();
+        }
+
+        // 1件目を振り分けた後に例外が送出され、バッチがバックアウトされて再配信される
+        // 処理が終了していた1件目は、再配信されても処理済みとして処理し直さない
+        assertThat(handled, is(Arrays.asList("0", "1", "2")));
+        assertThat(consumer.getBackedOutCount(), is(2L));
+        assertThat(consumer.getCommittedCount(), is(3L));
+        assertThat(consumer.getDuplicateCount(), is(1L));
+        assertNull(consumer.getAbnormalEnd());
+        assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    private InMemoryWmqMessagingProvider createProvider(InMemoryQueueManager queueManager) {
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setReceivedQueueName("TEST.QUEUE");
+        provider.setUseXa(true);
+        provider.setBackoutLimit(5);
+        provider.initialize();
+        return provider;
+    }
+
+    private void send(InMemoryWmqMessagingProvider provider, String[] keys, int countPerKey) throws Exception {
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            context.begin();
+            for (int i = 0; i < countPerKey; i++) {
+                for (String key : keys) {
+                    SendingMessage sendingMessage = new SendingMessage();
+                    sendingMessage.setDestination("TEST.QUEUE");
+                    sendingMessage.setCorrelationId(key);
+                    sendingMessage.getBodyStream().write(String.valueOf(i).getBytes("UTF-8"));
+                    context.sendMessage(sendingMessage);
+                }
+            }
+            context.commit();
+        } finally {
+            context.close();
+        }
+    }
+
+    private void awaitCommitted(WmqParallelConsumer consumer, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (consumer.getCommittedCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package nablarch.integration.messaging.wmq.consumer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * {@link WmqPriorityLatencyRecorder}のテスト
+ */
+public class WmqPriorityLatencyRecorderTest {
+
+    /**
+     * 優先度ごとに件数、平均値、最大値、パーセンタイルを集計できること。
+     */
+    @Test
+    public void testRecord() {
+
+        WmqPriorityLatencyRecorder recorder = new WmqPriorityLatencyRecorder();
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(9, i);
+        }
+        recorder.record(0, 70000);
+
+        assertThat(recorder.getCount(9), is(100L));
+        assertThat(recorder.getAverageLatency(9), is(50.5d));
+        assertThat(recorder.getMaxLatency(9), is(100L));
+        assertThat(recorder.getPercentileLatency(9, 50), is(50L));
+        assertThat(recorder.getPercentileLatency(9, 95), is(100L));
+        assertThat(recorder.getPercentileLatency(9, 1), is(1L));
+
+        // 上限のない区間は最大値
+        assertThat(recorder.getCount(0), is(1L));
+        assertThat(recorder.getPercentileLatency(0, 99), is(70000L));
+
+        // 記録がない場合
+        assertThat(recorder.getCount(5), is(0L));
+        assertThat(recorder.getAverageLatency(5), is(0d));
+        assertThat(recorder.getPercentileLatency(5, 99), is(0L));
+    }
+
+    /**
+     * 範囲外の優先度と負の遅延時間は丸めて記録されること。
+     */
+    @Test
+    public void testNormalize() {
+
+        WmqPriorityLatencyRecorder recorder = new WmqPriorityLatencyRecorder();
+        recorder.record(-1, -5);
+        recorder.record(20, 3);
+
+        assertThat(recorder.getCount(0), is(1L));
+        assertThat(recorder.getMaxLatency(0), is(0L));
+        assertThat(recorder.getCount(9), is(1L));
+        assertThat(recorder.getPercentileLatency(9, 100), is(3L));
+    }
+}
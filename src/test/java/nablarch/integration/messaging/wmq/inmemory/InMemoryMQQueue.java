@@ -0,0 +1,330 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQGetMessageOptions;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.MQPutMessageOptions;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link InMemoryQueue}をオープンした{@link MQQueue}。
+ * <pre>
+ * 書き込みでは下記のオプションに対応する。
+ *
+ *     MQPMO_SYNCPOINT
+ *     MQPMO_NEW_MSG_ID(メッセージIDが未設定の場合も採番する)
+ *     MQPMO_NEW_CORREL_ID
+ *     MQPMO_LOGICAL_ORDER(MQMF_SEGMENT、MQMF_LAST_SEGMENTを設定したセグメントの書き込みのみ)
+ *
+ * 読み込みでは下記のオプションに対応する。
+ *
+ *     MQGMO_SYNCPOINT
+ *     MQGMO_WAIT(待機時間はMQGetMessageOptions#waitInterval、MQWI_UNLIMITEDを含む)
+ *     MQGMO_ACCEPT_TRUNCATED_MSG
+ *     MQGMO_COMPLETE_MSG
+ *     MQGMO_ALL_SEGMENTS_AVAILABLE
+ *     MQGMO_LOGICAL_ORDER(セグメントの順序のみ。グループ内の論理メッセージの順序には対応しない)
+ *     MQMO_MATCH_MSG_ID、MQMO_MATCH_CORREL_ID、MQMO_MATCH_GROUP_ID
+ *     MQGMO_BROWSE_FIRST、MQGMO_BROWSE_NEXT(突合オプションとセグメントに関するオプションは無視する)
+ *
+ * 書き込みでは、本文が最大メッセージ長を超える場合はMQRC_MSG_TOO_BIG_FOR_Qとなる。
+ * 問い合わせ(MQINQ)では、MQIA_BACKOUT_THRESHOLD、MQIA_MAX_MSG_LENGTH、MQIA_DEF_PERSISTENCE(常にMQPER_NOT_PERSISTENT)、
+ * MQIA_CURRENT_Q_DEPTH、MQIA_MAX_Q_DEPTH、MQCA_BACKOUT_REQ_Q_NAMEに対応する。
+ * z/OS以外のキューマネージャと同様に、MQIA_INDEX_TYPEはMQRC_SELECTOR_ERRORとなる。
+ *
+ * メッセージプロパティは書き込み時に複製し、読み込み時に設定する。
+ * セグメントはそれぞれ1つの物理メッセージとして格納する。
+ * MQGMO_COMPLETE_MSGを指定した読み込みでは、すべてのセグメントが揃った論理メッセージのみを
+ * 1つのメッセージに再構成して返す。
+ * MQGMO_LOGICAL_ORDERを指定した読み込みでは、論理メッセージの先頭のセグメントを読み込んだ後は、
+ * 最後のセグメントまで同じ論理メッセージのセグメントを順に返す。
+ *
+ * 最大メッセージ長を指定した読み込みで、本文が最大メッセージ長を超える場合は、
+ * MQGMO_ACCEPT_TRUNCATED_MSGが指定されていればMQRC_TRUNCATED_MSG_ACCEPTED(メッセージは削除される)、
+ * 指定されていなければMQRC_TRUNCATED_MSG_FAILED(メッセージはキューに残る)となる。
+ * いずれの場合もMQMDフィールドは設定される。
+ * </pre>
+ */
+final class InMemoryMQQueue extends MQQueue {
+
+    /** オープンしたキューマネージャ */
+    private InMemoryMQQueueManager mqQueueManager;
+
+    /** キュー */
+    private InMemoryQueue queue;
+
+    /** オープン中の場合はtrue */
+    private boolean open;
+
+    /** 書き込み中の論理メッセージのグループID。セグメントの書き込み中でない場合はnull */
+    private byte[] segmentGroupId;
+
+    /** 次に書き込むセグメントのオフセット */
+    private int segmentOffset;
+
+    /** 読み込み中の論理メッセージのグループID。セグメントの読み込み中でない場合はnull */
+    private byte[] readingGroupId;
+
+    /** ブラウズ済みのメッセージ(ブラウズ・カーソルの位置)。ブラウズしていない場合はnull */
+    private InMemoryStoredMessage browseCursor;
+
+    /**
+     * コンストラクタを経由せずに{@link InMemoryMQQueue}を生成する。
+     * @param mqQueueManager オープンしたキューマネージャ
+     * @param queue キュー
+     * @param openOptions オープンを制御するオプション
+     * @return {@link InMemoryMQQueue}
+     */
+    static InMemoryMQQueue create(InMemoryMQQueueManager mqQueueManager, InMemoryQueue queue, int openOptions) {
+        InMemoryMQQueue mqQueue = InMemoryObjects.allocate(InMemoryMQQueue.class);
+        mqQueue.mqQueueManager = mqQueueManager;
+        mqQueue.queue = queue;
+        mqQueue.open = true;
+        mqQueue.name = queue.getName();
+        mqQueue.openOptions = openOptions;
+        return mqQueue;
+    }
+
+    /**
+     * コンストラクタ。{@link #create(InMemoryMQQueueManager, InMemoryQueue, int)}を使用すること。
+     * @throws MQException 常に送出する
+     */
+    private InMemoryMQQueue() throws MQException {
+        super(null, null, 0, null, null, null);
+    }
+
+    @Override
+    public String getName() {
+        return queue.getName();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public int getCurrentDepth() throws MQException {
+        checkOpen();
+        return queue.getCurrentDepth();
+    }
+
+    @Override
+    public int getMaximumDepth() throws MQException {
+        checkOpen();
+        return queue.getMaxDepth();
+    }
+
+    @Override
+    public int getMaximumMessageLength() throws MQException {
+        checkOpen();
+        return queue.getMaxMessageLength();
+    }
+
+    @Override
+    public void inquire(int[] selectors, int[] intAttrs, byte[] charAttrs) throws MQException {
+        checkOpen();
+        int intIndex = 0;
+        int charIndex = 0;
+        for (int selector : selectors) {
+            if (selector == CMQC.MQCA_BACKOUT_REQ_Q_NAME) {
+                byte[] value = String.format("%-" + CMQC.MQ_Q_NAME_LENGTH + "s", queue.getBackoutRequeueName()).getBytes();
+                System.arraycopy(value, 0, charAttrs, charIndex, CMQC.MQ_Q_NAME_LENGTH);
+                charIndex += CMQC.MQ_Q_NAME_LENGTH;
+            } else if (selector == CMQC.MQIA_BACKOUT_THRESHOLD) {
+                intAttrs[intIndex++] = queue.getBackoutThreshold();
+            } else if (selector == CMQC.MQIA_MAX_MSG_LENGTH) {
+                intAttrs[intIndex++] = queue.getMaxMessageLength();
+            } else if (selector == CMQC.MQIA_DEF_PERSISTENCE) {
+                intAttrs[intIndex++] = CMQC.MQPER_NOT_PERSISTENT;
+            } else if (selector == CMQC.MQIA_CURRENT_Q_DEPTH) {
+                intAttrs[intIndex++] = queue.getCurrentDepth();
+            } else if (selector == CMQC.MQIA_MAX_Q_DEPTH) {
+                intAttrs[intIndex++] = queue.getMaxDepth();
+            } else {
+                throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_SELECTOR_ERROR, this);
+            }
+        }
+    }
+
+    @Override
+    public void put(MQMessage mqMessage, MQPutMessageOptions pmo) throws MQException {
+        checkOpen();
+        int reasonCode = queue.reserve();
+        if (reasonCode != CMQC.MQRC_NONE) {
+            throw new MQException(CMQC.MQCC_FAILED, reasonCode, this);
+        }
+        InMemoryQueueManager broker = mqQueueManager.getBroker();
+        long sequence = broker.nextSequence();
+        if ((pmo.options & CMQC.MQPMO_NEW_MSG_ID) != 0 || Arrays.equals(mqMessage.messageId, CMQC.MQMI_NONE)) {
+            mqMessage.messageId = broker.newMessageId(sequence);
+        }
+        if ((pmo.options & CMQC.MQPMO_NEW_CORREL_ID) != 0) {
+            mqMessage.correlationId = broker.newMessageId(sequence);
+        }
+        mqMessage.putDateTime = new GregorianCalendar();
+        boolean segment = (pmo.options & CMQC.MQPMO_LOGICAL_ORDER) != 0
+                && (mqMessage.messageFlags & (CMQC.MQMF_SEGMENT | CMQC.MQMF_LAST_SEGMENT)) != 0;
+        if (segment) {
+            if (segmentGroupId == null) {
+                segmentGroupId = broker.newMessageId(sequence);
+                segmentOffset = 0;
+            }
+            mqMessage.groupId = segmentGroupId.clone();
+            mqMessage.offset = segmentOffset;
+        }
+
+        InMemoryStoredMessage message;
+        try {
+            message = new InMemoryStoredMessage(sequence, mqMessage);
+        } catch (IOException e) {
+            queue.release();
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_UNEXPECTED_ERROR, this);
+        }
+        if (message.body.length > queue.getMaxMessageLength()) {
+            queue.release();
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_MSG_TOO_BIG_FOR_Q, this);
+        }
+        if (segment) {
+            segmentOffset += message.body.length;
+            if ((mqMessage.messageFlags & CMQC.MQMF_LAST_SEGMENT) != 0) {
+                segmentGroupId = null;
+            }
+        }
+        if ((pmo.options & CMQC.MQPMO_SYNCPOINT) != 0) {
+            mqQueueManager.addPendingPut(queue, message);
+        } else {
+            queue.publish(message);
+        }
+        pmo.resolvedQueueName = queue.getName();
+        pmo.resolvedQueueManagerName = broker.getName();
+    }
+
+    @Override
+    public void get(MQMessage mqMessage, MQGetMessageOptions gmo) throws MQException {
+        get(mqMessage, gmo, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void get(MQMessage mqMessage, MQGetMessageOptions gmo, int maxMsgSize) throws MQException {
+        checkOpen();
+        boolean syncpoint = (gmo.options & CMQC.MQGMO_SYNCPOINT) != 0;
+        long waitMillis = 0;
+        if ((gmo.options & CMQC.MQGMO_WAIT) != 0) {
+            waitMillis = gmo.waitInterval == CMQC.MQWI_UNLIMITED ? -1 : gmo.waitInterval;
+        }
+
+        if ((gmo.options & (CMQC.MQGMO_BROWSE_FIRST | CMQC.MQGMO_BROWSE_NEXT)) != 0) {
+            browse(mqMessage, gmo, maxMsgSize, waitMillis);
+            return;
+        }
+
+        boolean logicalOrder = (gmo.options & CMQC.MQGMO_LOGICAL_ORDER) != 0;
+        InMemoryStoredMessage message;
+        try {
+            if (logicalOrder && readingGroupId != null) {
+                // 読み込み中の論理メッセージの続きのセグメント
+                message = queue.take(gmo.options & ~CMQC.MQGMO_LOGICAL_ORDER, CMQC.MQMO_MATCH_GROUP_ID,
+                                     CMQC.MQMI_NONE, CMQC.MQCI_NONE, readingGroupId, waitMillis);
+            } else {
+                message = queue.take(gmo.options, gmo.matchOptions,
+                                     mqMessage.messageId, mqMessage.correlationId, mqMessage.groupId, waitMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_UNEXPECTED_ERROR, this);
+        }
+        if (message == null) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_NO_MSG_AVAILABLE, this);
+        }
+
+        boolean truncated = message.body.length > maxMsgSize;
+        boolean acceptTruncated = (gmo.options & CMQC.MQGMO_ACCEPT_TRUNCATED_MSG) != 0;
+        try {
+            message.copyTo(mqMessage, maxMsgSize);
+        } catch (IOException e) {
+            if (syncpoint) {
+                queue.restore(message);
+            }
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_UNEXPECTED_ERROR, this);
+        }
+        gmo.resolvedQueueName = queue.getName();
+        gmo.returnedLength = Math.min(message.body.length, maxMsgSize);
+        if (truncated && !acceptTruncated) {
+            queue.putBack(message, syncpoint);
+            throw new MQException(CMQC.MQCC_WARNING, CMQC.MQRC_TRUNCATED_MSG_FAILED, this);
+        }
+        if (syncpoint) {
+            mqQueueManager.addPendingGet(queue, message);
+        }
+        if (logicalOrder) {
+            readingGroupId = message.isSegment() && !message.isLastSegment() ? message.groupId : null;
+        }
+        if (truncated) {
+            throw new MQException(CMQC.MQCC_WARNING, CMQC.MQRC_TRUNCATED_MSG_ACCEPTED, this);
+        }
+    }
+
+    /**
+     * ブラウズ・カーソルの次のメッセージを、キューから取り出さずに読み込む。
+     * <p/>
+     * MQGMO_BROWSE_FIRSTが指定された場合は先頭から、MQGMO_BROWSE_NEXTが指定された場合は
+     * ブラウズ・カーソルの後ろからブラウズする。
+     *
+     * @param mqMessage 読み込み先の{@link MQMessage}
+     * @param gmo 読み込みを制御するオプション
+     * @param maxMsgSize 最大メッセージ長
+     * @param waitMillis 待機時間(単位:msec)
+     * @throws MQException メッセージがない場合、または本文が最大メッセージ長を超える場合
+     */
+    private void browse(MQMessage mqMessage, MQGetMessageOptions gmo, int maxMsgSize, long waitMillis)
+            throws MQException {
+        InMemoryStoredMessage after = (gmo.options & CMQC.MQGMO_BROWSE_FIRST) != 0 ? null : browseCursor;
+        InMemoryStoredMessage message;
+        try {
+            message = queue.browse(after, waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_UNEXPECTED_ERROR, this);
+        }
+        if (message == null) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_NO_MSG_AVAILABLE, this);
+        }
+        try {
+            message.copyTo(mqMessage, maxMsgSize);
+        } catch (IOException e) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_UNEXPECTED_ERROR, this);
+        }
+        gmo.resolvedQueueName = queue.getName();
+        gmo.returnedLength = Math.min(message.body.length, maxMsgSize);
+        if (message.body.length > maxMsgSize) {
+            if ((gmo.options & CMQC.MQGMO_ACCEPT_TRUNCATED_MSG) == 0) {
+                throw new MQException(CMQC.MQCC_WARNING, CMQC.MQRC_TRUNCATED_MSG_FAILED, this);
+            }
+            browseCursor = message;
+            throw new MQException(CMQC.MQCC_WARNING, CMQC.MQRC_TRUNCATED_MSG_ACCEPTED, this);
+        }
+        browseCursor = message;
+    }
+
+    /**
+     * オープン中であることをチェックする。
+     * @throws MQException クローズ済みの場合、または接続が切断済みの場合
+     */
+    private void checkOpen() throws MQException {
+        mqQueueManager.checkConnected();
+        if (!open) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_HOBJ_ERROR, this);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.XADataSource;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.MQPutMessageOptions;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link InMemoryQueueManager}に接続した{@link MQQueueManager}。
+ * <p/>
+ * 同期点内の書き込みと読み込みを作業単位として保持し、コミットまたはバックアウトでキューに反映する。
+ * IBM MQと同様に、切断時にコミットされていない作業単位はコミットする。
+ * XAには対応しないため、{@link #getJDBCConnection(XADataSource)}は常に例外を送出する。
+ */
+final class InMemoryMQQueueManager extends MQQueueManager {
+
+    /** 接続先のキューマネージャ */
+    private InMemoryQueueManager broker;
+
+    /** 同期点内で書き込まれたメッセージ */
+    private List<Pending> pendingPuts;
+
+    /** 同期点内で読み込まれたメッセージ */
+    private List<Pending> pendingGets;
+
+    /** 接続中の場合はtrue */
+    private boolean connected;
+
+    /**
+     * コンストラクタを経由せずに{@link InMemoryMQQueueManager}を生成する。
+     * @param broker 接続先のキューマネージャ
+     * @return {@link InMemoryMQQueueManager}
+     */
+    static InMemoryMQQueueManager create(InMemoryQueueManager broker) {
+        InMemoryMQQueueManager mqQueueManager = InMemoryObjects.allocate(InMemoryMQQueueManager.class);
+        mqQueueManager.broker = broker;
+        mqQueueManager.pendingPuts = new ArrayList<Pending>();
+        mqQueueManager.pendingGets = new ArrayList<Pending>();
+        mqQueueManager.connected = true;
+        mqQueueManager.name = broker.getName();
+        return mqQueueManager;
+    }
+
+    /**
+     * コンストラクタ。{@link #create(InMemoryQueueManager)}を使用すること。
+     * @throws MQException 常に送出する
+     */
+    private InMemoryMQQueueManager() throws MQException {
+        super(null);
+    }
+
+    @Override
+    public String getName() {
+        return broker.getName();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public MQQueue accessQueue(String queueName, int openOptions) throws MQException {
+        checkConnected();
+        return InMemoryMQQueue.create(this, broker.getQueue(queueName), openOptions);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * キューのオープン、書き込み、クローズを1回の呼び出しで行う(MQPUT1)。
+     */
+    @Override
+    public void put(String queueName, MQMessage mqMessage, MQPutMessageOptions pmo) throws MQException {
+        MQQueue mqQueue = accessQueue(queueName, CMQC.MQOO_OUTPUT);
+        try {
+            mqQueue.put(mqMessage, pmo);
+        } finally {
+            mqQueue.close();
+        }
+    }
+
+    @Override
+    public void begin() throws MQException {
+        checkConnected();
+    }
+
+    @Override
+    public void commit() throws MQException {
+        checkConnected();
+        for (Pending pending : pendingPuts) {
+            pending.queue.publish(pending.message);
+        }
+        for (Pending pending : pendingGets) {
+            pending.queue.release();
+        }
+        pendingPuts.clear();
+        pendingGets.clear();
+    }
+
+    @Override
+    public void backout() throws MQException {
+        checkConnected();
+        for (Pending pending : pendingPuts) {
+            pending.queue.release();
+        }
+        for (Pending pending : pendingGets) {
+            pending.queue.restore(pending.message);
+        }
+        pendingPuts.clear();
+        pendingGets.clear();
+    }
+
+    @Override
+    public void disconnect() throws MQException {
+        if (!connected) {
+            return;
+        }
+        commit();
+        connected = false;
+    }
+
+    @Override
+    public Connection getJDBCConnection(XADataSource xaDataSource) throws MQException {
+        throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_ENVIRONMENT_ERROR, this);
+    }
+
+    /**
+     * キューマネージャを取得する。
+     * @return キューマネージャ
+     */
+    InMemoryQueueManager getBroker() {
+        return broker;
+    }
+
+    /**
+     * 同期点内で書き込まれたメッセージを作業単位に追加する。
+     * @param queue 書き込み先のキュー
+     * @param message メッセージ
+     */
+    void addPendingPut(InMemoryQueue queue, InMemoryStoredMessage message) {
+        pendingPuts.add(new Pending(queue, message));
+    }
+
+    /**
+     * 同期点内で読み込まれたメッセージを作業単位に追加する。
+     * @param queue 読み込み元のキュー
+     * @param message メッセージ
+     */
+    void addPendingGet(InMemoryQueue queue, InMemoryStoredMessage message) {
+        pendingGets.add(new Pending(queue, message));
+    }
+
+    /**
+     * 接続中であることをチェックする。
+     * @throws MQException 切断済みの場合、またはキューマネージャが接続不可に設定されている場合
+     */
+    void checkConnected() throws MQException {
+        if (!connected) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_HCONN_ERROR, this);
+        }
+        if (!getBroker().isAvailable()) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_CONNECTION_BROKEN, this);
+        }
+    }
+
+    /**
+     * 作業単位に含まれるメッセージ。
+     */
+    private static final class Pending {
+
+        /** キュー */
+        private final InMemoryQueue queue;
+
+        /** メッセージ */
+        private final InMemoryStoredMessage message;
+
+        /**
+         * コンストラクタ。
+         * @param queue キュー
+         * @param message メッセージ
+         */
+        private Pending(InMemoryQueue queue, InMemoryStoredMessage message) {
+            this.queue = queue;
+            this.message = message;
+        }
+    }
+}
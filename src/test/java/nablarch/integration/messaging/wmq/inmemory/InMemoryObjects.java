@@ -0,0 +1,50 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * IBM MQのクラスを継承したスタンドインのインスタンスを生成するクラス。
+ * <p/>
+ * {@link com.ibm.mq.MQQueueManager}と{@link com.ibm.mq.MQQueue}のコンストラクタは
+ * キューマネージャへの接続やキューのオープンを行うため、コンストラクタを経由せずにインスタンスを生成する。
+ * 生成したインスタンスはフィールドが初期化されていないため、生成後に必要なフィールドを設定すること。
+ */
+final class InMemoryObjects {
+
+    /** sun.misc.Unsafeのインスタンス */
+    private static final Object UNSAFE;
+
+    /** sun.misc.Unsafe#allocateInstance(Class) */
+    private static final Method ALLOCATE_INSTANCE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            UNSAFE = theUnsafe.get(null);
+            ALLOCATE_INSTANCE = unsafeClass.getMethod("allocateInstance", Class.class);
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** 隠蔽コンストラクタ */
+    private InMemoryObjects() {
+    }
+
+    /**
+     * コンストラクタを経由せずにインスタンスを生成する。
+     * @param <T> 生成するクラスの型
+     * @param type 生成するクラス
+     * @return 生成したインスタンス
+     */
+    static <T> T allocate(Class<T> type) {
+        try {
+            return type.cast(ALLOCATE_INSTANCE.invoke(UNSAFE, type));
+        } catch (Exception e) {
+            throw new IllegalStateException("could not allocate instance. class = [" + type.getName() + "]", e);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link InMemoryQueueManager}上のキュー。
+ * <p/>
+ * メッセージは優先度の高い順、同じ優先度の場合は書き込み順に読み込まれる。
+ * 同期点内で読み込まれたメッセージは、コミットまで他の読み込みから見えなくなり、
+ * バックアウトされた場合はバックアウト回数を加算して元の位置に戻される。
+ * <p/>
+ * 論理メッセージに再構成して読み込まれたセグメントは、バックアウトされた場合は再構成後の1つのメッセージとして戻される。
+ */
+class InMemoryQueue {
+
+    /** キュー名 */
+    private final String name;
+
+    /** 最大キュー深さ */
+    private final int maxDepth;
+
+    /** バックアウトしきい値(BOTHRESH)。0の場合は指定なし */
+    private volatile int backoutThreshold = 0;
+
+    /** バックアウト再キュー名(BOQNAME)。空文字の場合は指定なし */
+    private volatile String backoutRequeueName = "";
+
+    /** 最大メッセージ長(MAXMSGL) */
+    private volatile int maxMessageLength = 4 * 1024 * 1024;
+
+    /** 読み込み可能なメッセージ */
+    private final LinkedList<InMemoryStoredMessage> messages = new LinkedList<InMemoryStoredMessage>();
+
+    /** コミット待ちのメッセージ数(書き込みと読み込みの両方) */
+    private int uncommittedCount = 0;
+
+    /** 排他制御に使用するロック */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** メッセージの到着を待つ読み込みに通知する条件 */
+    private final Condition arrived = lock.newCondition();
+
+    /**
+     * コンストラクタ。
+     * @param name キュー名
+     * @param maxDepth 最大キュー深さ
+     */
+    InMemoryQueue(String name, int maxDepth) {
+        this.name = name;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * キュー名を取得する。
+     * @return キュー名
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * 最大キュー深さを取得する。
+     * @return 最大キュー深さ
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * キューの属性を変更する。
+     * @param backoutThreshold バックアウトしきい値。0の場合は指定なし
+     * @param backoutRequeueName バックアウト再キュー名。空文字の場合は指定なし
+     * @param maxMessageLength 最大メッセージ長
+     */
+    void alter(int backoutThreshold, String backoutRequeueName, int maxMessageLength) {
+        this.backoutThreshold = backoutThreshold;
+        this.backoutRequeueName = backoutRequeueName;
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * バックアウトしきい値を取得する。
+     * @return バックアウトしきい値。0の場合は指定なし
+     */
+    int getBackoutThreshold() {
+        return backoutThreshold;
+    }
+
+    /**
+     * バックアウト再キュー名を取得する。
+     * @return バックアウト再キュー名。空文字の場合は指定なし
+     */
+    String getBackoutRequeueName() {
+        return backoutRequeueName;
+    }
+
+    /**
+     * 最大メッセージ長を取得する。
+     * @return 最大メッセージ長
+     */
+    int getMaxMessageLength() {
+        return maxMessageLength;
+    }
+
+    /**
+     * 現在のキュー深さを取得する。
+     * <p/>
+     * IBM MQと同様に、コミット待ちのメッセージもキュー深さに含める。
+     *
+     * @return 現在のキュー深さ
+     */
+    int getCurrentDepth() {
+        lock.lock();
+        try {
+            return messages.size() + uncommittedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 書き込みの前にキューの容量を確保する。
+     * <p/>
+     * 同期点内の書き込みの場合は、確保した容量を{@link #publish(InMemoryStoredMessage)}または
+     * {@link #release()}で解放すること。
+     *
+     * @return 容量を確保できた場合は{@link CMQC#MQRC_NONE}、キューが満杯の場合は{@link CMQC#MQRC_Q_FULL}
+     */
+    int reserve() {
+        lock.lock();
+        try {
+            if (messages.size() + uncommittedCount >= maxDepth) {
+                return CMQC.MQRC_Q_FULL;
+            }
+            uncommittedCount++;
+            return CMQC.MQRC_NONE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@link #reserve()}で確保した容量を使用して、メッセージを読み込み可能にする。
+     * @param message メッセージ
+     */
+    void publish(InMemoryStoredMessage message) {
+        lock.lock();
+        try {
+            uncommittedCount--;
+            insert(message);
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@link #reserve()}で確保した容量、または同期点内で読み込まれたメッセージの分の容量を解放する。
+     */
+    void release() {
+        lock.lock();
+        try {
+            uncommittedCount--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 同期点内で読み込まれたメッセージを、バックアウト回数を加算して元の位置に戻す。
+     * @param message メッセージ
+     */
+    void restore(InMemoryStoredMessage message) {
+        lock.lock();
+        try {
+            uncommittedCount--;
+            message.backoutCount++;
+            insert(message);
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@link #take(int, int, byte[], byte[], byte[], long)}で取り出したメッセージを、
+     * バックアウト回数を変えずに元の位置に戻す。
+     * @param message メッセージ
+     * @param syncpoint 同期点内で取り出した場合はtrue
+     */
+    void putBack(InMemoryStoredMessage message, boolean syncpoint) {
+        lock.lock();
+        try {
+            if (syncpoint) {
+                uncommittedCount--;
+            }
+            insert(message);
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 条件に一致するメッセージを取り出す。
+     * <p/>
+     * 同期点内の読み込みの場合は、取り出したメッセージの分の容量をコミットまたはバックアウトまで保持する。
+     * <p/>
+     * 読み込みオプションのうち、下記をセグメントの取り出しに使用する。
+     * <pre>
+     * MQGMO_COMPLETE_MSG
+     *     すべてのセグメントが揃った論理メッセージを、1つのメッセージに再構成して取り出す。
+     * MQGMO_ALL_SEGMENTS_AVAILABLE
+     *     すべてのセグメントが揃った論理メッセージの先頭のセグメントのみを取り出す。
+     * MQGMO_LOGICAL_ORDER
+     *     論理メッセージの先頭以外のセグメントを取り出さない。
+     *     (読み込み中の論理メッセージの続きは、グループIDを突合して取り出すこと)
+     * </pre>
+     *
+     * @param getOptions 読み込みオプション
+     * @param matchOptions 読み込み時の突合オプション
+     * @param messageId 突合するメッセージID
+     * @param correlationId 突合する相関ID
+     * @param groupId 突合するグループID
+     * @param waitMillis 待機時間(単位:msec)。0の場合は待機しない。負の場合は無制限に待機する
+     * @return 取り出したメッセージ。待機時間内に条件に一致するメッセージがない場合はnull
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    InMemoryStoredMessage take(int getOptions, int matchOptions, byte[] messageId, byte[] correlationId, byte[] groupId,
+                               long waitMillis) throws InterruptedException {
+        boolean syncpoint = (getOptions & CMQC.MQGMO_SYNCPOINT) != 0;
+        long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        lock.lock();
+        try {
+            while (true) {
+                InMemoryStoredMessage message = removeFirstMatch(getOptions, matchOptions, messageId, correlationId, groupId);
+                if (message != null) {
+                    if (syncpoint) {
+                        uncommittedCount++;
+                    }
+                    return message;
+                }
+                if (waitMillis < 0) {
+                    arrived.await();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                arrived.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定されたメッセージより後ろにある先頭のメッセージを、取り出さずに返す(ブラウズ)。
+     * <p/>
+     * 位置は優先度と書き込み順で比較するため、指定されたメッセージが既に取り出されていても、
+     * その位置の後ろから続けてブラウズできる。
+     *
+     * @param after ブラウズ済みのメッセージ。先頭からブラウズする場合はnull
+     * @param waitMillis 待機時間(単位:msec)。0の場合は待機しない。負の場合は無制限に待機する
+     * @return ブラウズしたメッセージ。待機時間内に後ろにメッセージがない場合はnull
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    InMemoryStoredMessage browse(InMemoryStoredMessage after, long waitMillis) throws InterruptedException {
+        long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                for (InMemoryStoredMessage message : messages) {
+                    if (!message.isExpired(now) && (after == null || isBehind(message, after))) {
+                        return message;
+                    }
+                }
+                if (waitMillis < 0) {
+                    arrived.await();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                arrived.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 優先度と書き込み順に従った位置で、メッセージが基準のメッセージより後ろにあるか否かを判定する。
+     * @param message メッセージ
+     * @param base 基準のメッセージ
+     * @return 後ろにある場合はtrue
+     */
+    private static boolean isBehind(InMemoryStoredMessage message, InMemoryStoredMessage base) {
+        return message.priority < base.priority
+                || (message.priority == base.priority && message.sequence > base.sequence);
+    }
+
+    /**
+     * 条件に一致する先頭のメッセージを取り除いて返す。有効期限切れのメッセージは破棄する。
+     * @param getOptions 読み込みオプション
+     * @param matchOptions 読み込み時の突合オプション
+     * @param messageId 突合するメッセージID
+     * @param correlationId 突合する相関ID
+     * @param groupId 突合するグループID
+     * @return 条件に一致したメッセージ。存在しない場合はnull
+     */
+    private InMemoryStoredMessage removeFirstMatch(int getOptions, int matchOptions,
+                                                   byte[] messageId, byte[] correlationId, byte[] groupId) {
+        long now = System.currentTimeMillis();
+        Iterator<InMemoryStoredMessage> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            InMemoryStoredMessage message = iterator.next();
+            if (message.isExpired(now)) {
+                iterator.remove();
+                continue;
+            }
+            if (!message.matches(matchOptions, messageId, correlationId, groupId)) {
+                continue;
+            }
+            if ((getOptions & CMQC.MQGMO_COMPLETE_MSG) != 0 && message.isSegment()) {
+                if (message.getOffset() != 0) {
+                    continue;
+                }
+                List<InMemoryStoredMessage> segments = findSegments(message);
+                if (segments == null) {
+                    continue;
+                }
+                messages.removeAll(segments);
+                return InMemoryStoredMessage.merge(segments);
+            }
+            if ((getOptions & CMQC.MQGMO_LOGICAL_ORDER) != 0 && message.isSegment() && message.getOffset() != 0) {
+                continue;
+            }
+            if ((getOptions & CMQC.MQGMO_ALL_SEGMENTS_AVAILABLE) != 0 && message.isSegment()
+                    && message.getOffset() == 0 && findSegments(message) == null) {
+                continue;
+            }
+            iterator.remove();
+            return message;
+        }
+        return null;
+    }
+
+    /**
+     * 指定された先頭のセグメントと同じ論理メッセージのセグメントを、オフセットの順に取得する。
+     * @param first 先頭のセグメント
+     * @return 論理メッセージのすべてのセグメント。最後のセグメントまで揃っていない場合はnull
+     */
+    private List<InMemoryStoredMessage> findSegments(InMemoryStoredMessage first) {
+        List<InMemoryStoredMessage> segments = new ArrayList<InMemoryStoredMessage>();
+        int offset = 0;
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (InMemoryStoredMessage message : messages) {
+                if (Arrays.equals(message.groupId, first.groupId) && message.isSegment() && message.getOffset() == offset) {
+                    segments.add(message);
+                    if (message.isLastSegment()) {
+                        return segments;
+                    }
+                    offset += message.body.length;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 優先度と書き込み順に従った位置にメッセージを挿入する。
+     * @param message メッセージ
+     */
+    private void insert(InMemoryStoredMessage message) {
+        ListIterator<InMemoryStoredMessage> iterator = messages.listIterator(messages.size());
+        while (iterator.hasPrevious()) {
+            InMemoryStoredMessage previous = iterator.previous();
+            if (previous.priority > message.priority
+                    || (previous.priority == message.priority && previous.sequence < message.sequence)) {
+                iterator.next();
+                break;
+            }
+        }
+        iterator.add(message);
+    }
+}
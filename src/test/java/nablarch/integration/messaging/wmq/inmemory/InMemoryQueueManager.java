@@ -0,0 +1,169 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * IBM MQをインストールせずに負荷試験やベンチマークを行うための、プロセス内で動作するキューマネージャ。
+ * <pre>
+ * {@link #connect()}で取得した{@link MQQueueManager}は、下記の操作に対応する。
+ *
+ *     キューのオープン({@link MQQueueManager#accessQueue(String, int)})
+ *     メッセージの書き込みと読み込み(待機あり、メッセージID/相関ID/グループIDによる突合)
+ *     同期点内の書き込みと読み込みのコミット/バックアウト
+ *     バックアウトされたメッセージのバックアウト回数の加算
+ *
+ * キューは最初にオープンされた時点で定義される。
+ * 最大キュー深さを指定する場合は、オープンする前に{@link #defineQueue(String, int)}で定義しておくこと。
+ *
+ * {@link nablarch.integration.messaging.wmq.provider.WmqMessagingProvider}から使用する場合は、
+ * {@link InMemoryWmqMessagingProvider}を使用する。
+ * </pre>
+ */
+public class InMemoryQueueManager {
+
+    /** デフォルトの最大キュー深さ */
+    private static final int DEFAULT_MAX_DEPTH = 5000;
+
+    /** キューマネージャ名称 */
+    private final String name;
+
+    /** キューマップ(キーはキュー名) */
+    private final Map<String, InMemoryQueue> queues = new ConcurrentHashMap<String, InMemoryQueue>();
+
+    /** メッセージの書き込み順を表す連番 */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** 接続可能な場合はtrue */
+    private volatile boolean available = true;
+
+    /**
+     * コンストラクタ。
+     * @param name キューマネージャ名称
+     */
+    public InMemoryQueueManager(String name) {
+        this.name = name;
+    }
+
+    /**
+     * キューマネージャ名称を取得する。
+     * @return キューマネージャ名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * キューマネージャに接続する。
+     * @return 接続した{@link MQQueueManager}
+     */
+    public MQQueueManager connect() {
+        return InMemoryMQQueueManager.create(this);
+    }
+
+    /**
+     * 障害を模擬するために、接続可能か否かを設定する。
+     * <p/>
+     * falseを指定した場合は、新たな接続は{@link CMQC#MQRC_Q_MGR_NOT_AVAILABLE}、
+     * 接続済みの{@link MQQueueManager}に対する操作は{@link CMQC#MQRC_CONNECTION_BROKEN}で失敗する。
+     *
+     * @param available 接続可能な場合はtrue
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    /**
+     * 接続可能か否かを取得する。
+     * @return 接続可能な場合はtrue
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * キューを定義する。既に定義されている場合は何もしない。
+     * @param queueName キュー名
+     * @param maxDepth 最大キュー深さ
+     */
+    public synchronized void defineQueue(String queueName, int maxDepth) {
+        if (!queues.containsKey(queueName)) {
+            queues.put(queueName, new InMemoryQueue(queueName, maxDepth));
+        }
+    }
+
+    /**
+     * キューの属性を変更する(ALTER QLOCAL)。キューが定義されていない場合はデフォルトの最大キュー深さで定義する。
+     * @param queueName キュー名
+     * @param backoutThreshold バックアウトしきい値(BOTHRESH)。0の場合は指定なし
+     * @param backoutRequeueName バックアウト再キュー名(BOQNAME)。空文字の場合は指定なし
+     * @param maxMessageLength 最大メッセージ長(MAXMSGL)
+     */
+    public void alterQueue(String queueName, int backoutThreshold, String backoutRequeueName, int maxMessageLength) {
+        defineQueue(queueName, DEFAULT_MAX_DEPTH);
+        queues.get(queueName).alter(backoutThreshold, backoutRequeueName, maxMessageLength);
+    }
+
+    /**
+     * 現在のキュー深さを取得する。
+     * @param queueName キュー名
+     * @return 現在のキュー深さ。キューが定義されていない場合は0
+     */
+    public int getCurrentDepth(String queueName) {
+        InMemoryQueue queue = queues.get(queueName);
+        return queue == null ? 0 : queue.getCurrentDepth();
+    }
+
+    /**
+     * キューを取得する。キューが定義されていない場合はデフォルトの最大キュー深さで定義する。
+     * @param queueName キュー名
+     * @return キュー
+     * @throws MQException キュー名が指定されていない場合
+     */
+    InMemoryQueue getQueue(String queueName) throws MQException {
+        if (queueName == null || queueName.trim().length() == 0) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_UNKNOWN_OBJECT_NAME, this);
+        }
+        InMemoryQueue queue = queues.get(queueName);
+        if (queue == null) {
+            defineQueue(queueName, DEFAULT_MAX_DEPTH);
+            queue = queues.get(queueName);
+        }
+        return queue;
+    }
+
+    /**
+     * メッセージの書き込み順を表す連番を採番する。
+     * @return 連番
+     */
+    long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * メッセージIDを採番する。
+     * <p/>
+     * IBM MQと同様に"AMQ "とキューマネージャ名称の先頭12文字に連番を続けた24バイトとする。
+     *
+     * @param sequence 連番
+     * @return メッセージID
+     */
+    byte[] newMessageId(long sequence) {
+        byte[] messageId = new byte[CMQC.MQMI_NONE.length];
+        String prefix = "AMQ " + name + "            ";
+        for (int i = 0; i < 16; i++) {
+            messageId[i] = (byte) prefix.charAt(i);
+        }
+        long value = sequence;
+        for (int i = messageId.length - 1; i >= 16; i--) {
+            messageId[i] = (byte) value;
+            value >>>= 8;
+        }
+        return messageId;
+    }
+}
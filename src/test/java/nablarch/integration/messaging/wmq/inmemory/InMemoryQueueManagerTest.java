@@ -0,0 +1,952 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQGetMessageOptions;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.MQPutMessageOptions;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.integration.messaging.wmq.provider.BasicWmqMessageSelector;
+import nablarch.integration.messaging.wmq.provider.BasicWmqMqmdFieldsOperator;
+import nablarch.integration.messaging.wmq.provider.WmqDestinationProfile;
+import nablarch.integration.messaging.wmq.provider.WmqMessageProperties;
+import nablarch.integration.messaging.wmq.provider.WmqMessageSelector;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+import nablarch.integration.messaging.wmq.provider.WmqQueueAttributeCache;
+import nablarch.integration.messaging.wmq.provider.WmqQueueDepthMonitor;
+import nablarch.integration.messaging.wmq.provider.WmqStreamingReceivedMessage;
+import nablarch.integration.messaging.wmq.provider.exception.WmqQueueFullException;
+import nablarch.test.support.SystemRepositoryResource;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * {@link InMemoryQueueManager}のテスト
+ */
+public class InMemoryQueueManagerTest {
+
+    @Rule
+    public SystemRepositoryResource systemRepositoryResource = new SystemRepositoryResource(
+            "nablarch/integration/messaging/wmq/inmemory/InMemoryQueueManagerTest.xml");
+
+    /**
+     * {@link InMemoryWmqMessagingProvider}を経由してメッセージを送受信できること。
+     */
+    @Test
+    public void testSendAndReceiveThroughProvider() throws IOException {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            SendingMessage sendingMessage = new SendingMessage();
+            sendingMessage.setDestination("TEST.QUEUE");
+            sendingMessage.getBodyStream().write("hello".getBytes("UTF-8"));
+            String messageId = context.sendMessage(sendingMessage);
+            assertThat(messageId, is(notNullValue()));
+
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(1));
+
+            ReceivedMessage receivedMessage = context.receiveMessage("TEST.QUEUE", null, 10);
+            assertThat(new String(receivedMessage.getBodyBytes(), "UTF-8"), is("hello"));
+            assertThat(receivedMessage.getMessageId(), is(messageId));
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+
+            // メッセージがない場合はタイムアウトする
+            assertNull(context.receiveMessage("TEST.QUEUE", null, 10));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * セグメントに分割して送信したメッセージを、1つのメッセージとして受信できること。
+     */
+    @Test
+    public void testSegmentation() throws IOException {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        provider.setSegmentSize(3);
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            SendingMessage sendingMessage = new SendingMessage();
+            sendingMessage.setDestination("TEST.QUEUE");
+            sendingMessage.getBodyStream().write("hello world".getBytes("UTF-8"));
+            String messageId = context.sendMessage(sendingMessage);
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(4));
+
+            ReceivedMessage receivedMessage = context.receiveMessage("TEST.QUEUE", null, 10);
+            assertThat(new String(receivedMessage.getBodyBytes(), "UTF-8"), is("hello world"));
+            assertThat(receivedMessage.getMessageId(), is(messageId));
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * InputStreamとReadableByteChannelから読み込んだ本文で送信し、InputStreamで受信できること。
+     */
+    @Test
+    public void testStreaming() throws IOException {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        provider.setSegmentSize(3);
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            SendingMessage sendingMessage = new SendingMessage();
+            sendingMessage.setDestination("TEST.QUEUE");
+            String messageId = context.sendMessage(sendingMessage, new ByteArrayInputStream("hello world".getBytes("UTF-8")));
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(4));
+
+            sendingMessage = new SendingMessage();
+            sendingMessage.setDestination("TEST.QUEUE");
+            context.sendMessage(sendingMessage, Channels.newChannel(new ByteArrayInputStream("abc".getBytes("UTF-8"))));
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(5));
+
+            WmqStreamingReceivedMessage receivedMessage = context.receiveMessageStream("TEST.QUEUE", null, 10);
+            assertThat(receivedMessage.getMessageId(), is(messageId));
+            assertThat(readFully(receivedMessage.getBodyInputStream()), is("hello world"));
+
+            receivedMessage = context.receiveMessageStream("TEST.QUEUE", null, 10);
+            assertThat(readFully(receivedMessage.getBodyInputStream()), is("abc"));
+            assertThat(provider.getQueueManager().getCurrentDepth("TEST.QUEUE"), is(0));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 送信メッセージのヘッダがメッセージプロパティとして受信メッセージに引き継がれること。
+     */
+    @Test
+    public void testMessageProperties() throws IOException {
+
+        InMemoryWmqMessagingProvider provider = createProvider(new InMemoryQueueManager("TEST.QM"));
+        provider.setMqmdFieldsOperator(new BasicWmqMqmdFieldsOperator().setUseMessageProperties(true));
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            SendingMessage sendingMessage = new SendingMessage();
+            sendingMessage.setDestination("TEST.QUEUE");
+            sendingMessage.setHeader("orderType", "EXPRESS");
+            sendingMessage.getBodyStream().write("hello".getBytes("UTF-8"));
+            context.sendMessage(sendingMessage);
+
+            ReceivedMessage receivedMessage = context.receiveMessage("TEST.QUEUE", null, 10);
+            WmqMessageProperties properties = (WmqMessageProperties)
+                    receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.MESSAGE_PROPERTIES_HEADER);
+            assertThat(properties.get("orderType"), is((Object) "EXPRESS"));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * {@link nablarch.integration.messaging.wmq.provider.WmqMessageSelector}が選択したメッセージのみを受信し、
+     * 選択されなかったメッセージはキューに残ること。
+     */
+    @Test
+    public void testMessageSelector() throws IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        provider.setMqmdFieldsOperator(new BasicWmqMqmdFieldsOperator().setUseMessageProperties(true));
+        provider.setMessageSelector(createSelector("EAST"));
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            send(context, "first", "WEST");
+            send(context, "second", "EAST");
+            send(context, "third", "WEST");
+            send(context, "fourth", "EAST");
+
+            assertThat(new String(context.receiveMessage("TEST.QUEUE", null, 10).getBodyBytes(), "UTF-8"), is("second"));
+            assertThat(new String(context.receiveMessage("TEST.QUEUE", null, 10).getBodyBytes(), "UTF-8"), is("fourth"));
+            assertNull(context.receiveMessage("TEST.QUEUE", null, 10));
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(2));
+
+            // 受信ごとに選択条件を指定する
+            ReceivedMessage receivedMessage = context.receiveSelectedMessage("TEST.QUEUE", createSelector("WEST"), 10);
+            assertThat(new String(receivedMessage.getBodyBytes(), "UTF-8"), is("first"));
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(1));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 選択して受信する場合は、前回のブラウズ位置から再開し、受信ごとに先頭からブラウズし直さないこと。
+     * キューの末尾に達した場合は、先頭からブラウズし直すこと。
+     */
+    @Test
+    public void testMessageSelectorKeepsBrowseCursor() throws IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        provider.setMqmdFieldsOperator(new BasicWmqMqmdFieldsOperator().setUseMessageProperties(true));
+        final BasicWmqMessageSelector east = createSelector("EAST");
+        final AtomicInteger selected = new AtomicInteger();
+        provider.setMessageSelector(new WmqMessageSelector() {
+            public boolean select(MQMessage mqMessage) throws MQException {
+                selected.incrementAndGet();
+                return east.select(mqMessage);
+            }
+        });
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            send(context, "first", "WEST");
+            send(context, "second", "EAST");
+            send(context, "third", "WEST");
+            send(context, "fourth", "EAST");
+            send(context, "fifth", "WEST");
+            send(context, "sixth", "EAST");
+
+            assertThat(receive(context), is("second"));
+            assertThat(receive(context), is("fourth"));
+            assertThat(receive(context), is("sixth"));
+            // 各メッセージを1度ずつブラウズする
+            assertThat(selected.get(), is(6));
+
+            // 末尾から先頭に戻り、残ったメッセージをブラウズし直す
+            assertNull(context.receiveMessage("TEST.QUEUE", null, 10));
+            assertThat(selected.get(), is(9));
+
+            // 前回の位置の後ろに到着したメッセージから再開する
+            send(context, "seventh", "EAST");
+            assertThat(receive(context), is("seventh"));
+            assertThat(selected.get(), is(10));
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(3));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * ブラウズした場合は、メッセージを取り出さずに先頭から順に読み込めること。
+     */
+    @Test
+    public void testBrowse() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        MQQueue mqQueue = queueManager.connect().accessQueue("TEST.QUEUE",
+                CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_BROWSE);
+
+        byte[] firstId = put(mqQueue, "first", CMQC.MQPMO_NO_SYNCPOINT, 0);
+        byte[] secondId = put(mqQueue, "second", CMQC.MQPMO_NO_SYNCPOINT, 0);
+
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_BROWSE_FIRST | CMQC.MQGMO_ACCEPT_TRUNCATED_MSG;
+        MQMessage mqMessage = new MQMessage();
+        try {
+            mqQueue.get(mqMessage, gmo, 0);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_TRUNCATED_MSG_ACCEPTED));
+        }
+        assertThat(Arrays.equals(mqMessage.messageId, firstId), is(true));
+
+        gmo.options = CMQC.MQGMO_BROWSE_NEXT;
+        mqMessage = new MQMessage();
+        mqQueue.get(mqMessage, gmo);
+        assertThat(Arrays.equals(mqMessage.messageId, secondId), is(true));
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("second"));
+
+        try {
+            mqQueue.get(new MQMessage(), gmo);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_NO_MSG_AVAILABLE));
+        }
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(2));
+    }
+
+    /**
+     * 初期化時に事前生成したコンテキストが払い出され、使い切った後は都度接続されること。
+     */
+    @Test
+    public void testWarmUp() throws InterruptedException {
+
+        final AtomicInteger connectCount = new AtomicInteger();
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(new InMemoryQueueManager("TEST.QM")) {
+            @Override
+            protected MQQueueManager createMQQueueManager() throws MQException {
+                connectCount.incrementAndGet();
+                return super.createMQQueueManager();
+            }
+        };
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setReceivedQueueName("TEST.QUEUE");
+        provider.setUseXa(false);
+        provider.setWarmUpContextCount(3).setWarmUpParallelism(2);
+        provider.initialize();
+        assertThat(provider.isReady(), is(true));
+        assertThat(connectCount.get(), is(3));
+
+        List<WmqMessagingContext> contexts = new ArrayList<WmqMessagingContext>();
+        for (int i = 0; i < 3; i++) {
+            contexts.add((WmqMessagingContext) provider.createContext());
+        }
+        assertThat(connectCount.get(), is(3));
+        contexts.add((WmqMessagingContext) provider.createContext());
+        assertThat(connectCount.get(), is(4));
+        for (WmqMessagingContext context : contexts) {
+            context.close();
+        }
+
+        // バックグラウンドでの事前生成
+        connectCount.set(0);
+        provider.setWarmUpInBackground(true);
+        provider.initialize();
+        assertThat(provider.awaitReady(5000), is(true));
+        assertThat(provider.isReady(), is(true));
+        assertThat(connectCount.get(), is(3));
+
+        // 接続できない場合も、事前生成が終われば準備完了となる
+        connectCount.set(0);
+        provider.getQueueManager().setAvailable(false);
+        provider.setWarmUpInBackground(false);
+        provider.initialize();
+        assertThat(provider.isReady(), is(true));
+        assertThat(connectCount.get(), is(3));
+    }
+
+    /**
+     * 分散トランザクションを使用する場合は、事前生成を指定すると例外が送出されること。
+     */
+    @Test
+    public void testWarmUpWithXa() {
+
+        final AtomicInteger connectCount = new AtomicInteger();
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(new InMemoryQueueManager("TEST.QM")) {
+            @Override
+            protected MQQueueManager createMQQueueManager() throws MQException {
+                connectCount.incrementAndGet();
+                return super.createMQQueueManager();
+            }
+        };
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setUseXa(true);
+        provider.setWarmUpContextCount(3);
+        try {
+            provider.initialize();
+            fail("IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().contains("useXa"), is(true));
+        }
+        assertThat(connectCount.get(), is(0));
+    }
+
+    /**
+     * 分散トランザクションを使用する場合は、同期点内の送受信がコミットまたはバックアウトで反映されること。
+     */
+    @Test
+    public void testUnitOfWorkWithXa() throws IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        provider.setUseXa(true);
+        provider.setBackoutLimit(5);
+
+        WmqMessagingContext sender = (WmqMessagingContext) provider.createContext();
+        WmqMessagingContext receiver = (WmqMessagingContext) provider.createContext();
+        try {
+            // コミットまでは他の接続から読み込めない
+            sender.begin();
+            sendTo(sender, "TEST.QUEUE", "first");
+            assertNull(receiver.receiveMessage("TEST.QUEUE", null, 10));
+            sender.commit();
+
+            // バックアウトした読み込みはキューに戻る
+            receiver.begin();
+            assertThat(receive(receiver), is("first"));
+            receiver.backout();
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(1));
+
+            receiver.begin();
+            assertThat(receive(receiver), is("first"));
+            receiver.commit();
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    /**
+     * バックアウトした場合は、読み込んだメッセージがバックアウト回数を加算されて戻されること。
+     */
+    @Test
+    public void testBackout() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+
+        put(mqQueue, "first", CMQC.MQPMO_SYNCPOINT, 0);
+        mqQueueManager.backout();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+
+        put(mqQueue, "second", CMQC.MQPMO_NO_SYNCPOINT, 0);
+
+        MQMessage mqMessage = get(mqQueue, CMQC.MQGMO_SYNCPOINT);
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("second"));
+        assertThat(mqMessage.backoutCount, is(0));
+        mqQueueManager.backout();
+
+        mqMessage = get(mqQueue, CMQC.MQGMO_SYNCPOINT);
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("second"));
+        assertThat(mqMessage.backoutCount, is(1));
+
+        // 切断時はコミットする
+        mqQueueManager.disconnect();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+
+        try {
+            mqQueue.put(new MQMessage(), new MQPutMessageOptions());
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_HCONN_ERROR));
+        }
+    }
+
+    /**
+     * 優先度の高い順、同じ優先度の場合は書き込み順に読み込まれ、相関IDで突合できること。
+     */
+    @Test
+    public void testOrderAndMatch() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+
+        byte[] firstId = put(mqQueue, "low1", CMQC.MQPMO_NO_SYNCPOINT, 1);
+        put(mqQueue, "high", CMQC.MQPMO_NO_SYNCPOINT, 5);
+        put(mqQueue, "low2", CMQC.MQPMO_NO_SYNCPOINT, 1);
+        assertThat(firstId.length, is(24));
+
+        // 相関IDで突合
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.correlationId = firstId;
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_NO_SYNCPOINT;
+        gmo.matchOptions = CMQC.MQMO_MATCH_CORREL_ID;
+        try {
+            mqQueue.get(mqMessage, gmo);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_NO_MSG_AVAILABLE));
+        }
+        mqMessage = new MQMessage();
+        mqMessage.messageId = firstId;
+        gmo.matchOptions = CMQC.MQMO_MATCH_MSG_ID;
+        mqQueue.get(mqMessage, gmo);
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("low1"));
+
+        mqMessage = get(mqQueue, CMQC.MQGMO_NO_SYNCPOINT);
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("high"));
+        mqMessage = get(mqQueue, CMQC.MQGMO_NO_SYNCPOINT);
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("low2"));
+    }
+
+    /**
+     * 最大キュー深さに達した場合は{@link CMQC#MQRC_Q_FULL}となること。
+     */
+    @Test
+    public void testQueueFull() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.defineQueue("TEST.QUEUE", 1);
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT);
+
+        put(mqQueue, "first", CMQC.MQPMO_SYNCPOINT, 0);
+        try {
+            put(mqQueue, "second", CMQC.MQPMO_SYNCPOINT, 0);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_Q_FULL));
+        }
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(1));
+        assertThat(mqQueue.getMaximumDepth(), is(1));
+
+        try {
+            mqQueueManager.getJDBCConnection(null);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_ENVIRONMENT_ERROR));
+        } catch (Exception e) {
+            fail("MQException");
+        }
+    }
+
+    /**
+     * MQPUT1で送信する送信先には、キューが満杯となった記録をキャッシュしている間、背圧がかかること。
+     */
+    @Test
+    public void testQueueDepthMonitorWithPut1() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.defineQueue("REPLY.A", 1);
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        provider.setUseDynamicDestinations(true).setDynamicQueueOpenThreshold(10);
+        WmqQueueDepthMonitor monitor = new WmqQueueDepthMonitor()
+                .setInquiryInterval(60000).setAction("SHED");
+        provider.setQueueDepthMonitor(monitor);
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            // キュー深さが不明な間は背圧をかけない
+            sendTo(context, "REPLY.A", "body");
+            assertThat(monitor.getDepthRatio("REPLY.A"), is(-1.0));
+            try {
+                sendTo(context, "REPLY.A", "body");
+                fail("MessagingException");
+            } catch (MessagingException e) {
+                assertThat(((MQException) e.getCause()).reasonCode, is(CMQC.MQRC_Q_FULL));
+            }
+
+            // 満杯となった記録をキャッシュしている間は、キューマネージャに転送せずに送出する
+            assertThat(monitor.getDepthRatio("REPLY.A"), is(1.0));
+            try {
+                sendTo(context, "REPLY.A", "body");
+                fail("WmqQueueFullException");
+            } catch (WmqQueueFullException e) {
+                assertThat(e.getMessage(), is("queue depth exceeded the high water mark. "
+                                            + "queueName = [REPLY.A], currentDepth = [1], maxDepth = [1]"));
+            }
+
+            // キャッシュが古くなった後は、キュー深さが不明として送信する
+            monitor.setInquiryInterval(0);
+            MQQueue mqQueue = queueManager.connect().accessQueue("REPLY.A", CMQC.MQOO_INPUT_SHARED);
+            get(mqQueue, CMQC.MQGMO_NO_SYNCPOINT);
+            mqQueue.close();
+            sendTo(context, "REPLY.A", "body");
+            assertThat(queueManager.getCurrentDepth("REPLY.A"), is(1));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * キュー深さの監視を指定した場合は、高水準点を超えた送信先への送信に背圧がかかること。
+     */
+    @Test
+    public void testQueueDepthMonitor() throws IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.defineQueue("TEST.QUEUE", 10);
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        WmqQueueDepthMonitor monitor = new WmqQueueDepthMonitor()
+                .setHighWaterMark(0.5).setInquiryInterval(0).setAction("SHED");
+        provider.setQueueDepthMonitor(monitor);
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            // SHED:高水準点を超えた時点で送出する
+            for (int i = 0; i < 5; i++) {
+                send(context, "body", null);
+            }
+            try {
+                send(context, "body", null);
+                fail("WmqQueueFullException");
+            } catch (WmqQueueFullException e) {
+                assertThat(e.getMessage(), is("queue depth exceeded the high water mark. "
+                                            + "queueName = [TEST.QUEUE], currentDepth = [5], maxDepth = [10]"));
+            }
+            assertThat(monitor.getDepthRatio("TEST.QUEUE"), is(0.5));
+
+            // DELAY:待機してから送信する
+            monitor.setAction("DELAY").setDelay(50);
+            long start = System.currentTimeMillis();
+            send(context, "body", null);
+            assertThat(System.currentTimeMillis() - start >= 50, is(true));
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(6));
+
+            // BLOCK:高水準点を下回るまで待機し、最大時間を超えた場合は送出する
+            monitor.setAction("BLOCK").setMaxBlockTime(50);
+            try {
+                send(context, "body", null);
+                fail("WmqQueueFullException");
+            } catch (WmqQueueFullException e) {
+                assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(6));
+            }
+            for (int i = 0; i < 2; i++) {
+                context.receiveMessage("TEST.QUEUE", null, 10);
+            }
+            monitor.setMaxBlockTime(5000);
+            send(context, "body", null);
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(5));
+
+            // 監視対象外のキューには背圧をかけない
+            monitor.setQueueNames(Arrays.asList("OTHER.QUEUE"));
+            send(context, "body", null);
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(6));
+        } finally {
+            context.close();
+        }
+
+        try {
+            monitor.setAction("WAIT");
+            fail("IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("action must be one of BLOCK, SHED or DELAY. action = [WAIT]"));
+        }
+        try {
+            monitor.setHighWaterMark(1.5);
+            fail("IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(),
+                       is("highWaterMark must be greater than 0 and less than or equal to 1. highWaterMark = [1.5]"));
+        }
+    }
+
+    /**
+     * 送信先キュー名にない送信先には、MQPUT1またはオープンしたままの{@link MQQueue}で送信できること。
+     */
+    @Test
+    public void testDynamicDestination() throws IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.defineQueue("TEST.QUEUE", 100);
+        queueManager.defineQueue("REPLY.A", 100);
+        queueManager.defineQueue("REPLY.B", 100);
+        final List<String> opened = new ArrayList<String>();
+        final List<String> closed = new ArrayList<String>();
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager) {
+            @Override
+            protected MQQueue getMQQueue(MQQueueManager mqQueueManager, String queueName, int openOptions)
+                    throws MQException {
+                if (queueName != null) {
+                    opened.add(queueName);
+                }
+                return super.getMQQueue(mqQueueManager, queueName, openOptions);
+            }
+            @Override
+            protected void close(MQQueue mqQueue) {
+                if (mqQueue != null) {
+                    closed.add(mqQueue.name.trim());
+                }
+                super.close(mqQueue);
+            }
+        };
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setUseXa(false);
+        provider.initialize();
+
+        // デフォルトでは送信先キュー名にない送信先への送信は例外とする
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            sendTo(context, "REPLY.A", "body");
+            fail("MessagingException");
+        } catch (MessagingException e) {
+            assertThat(e.getMessage(), is("queue was not found. queueName = [REPLY.A]"));
+        } finally {
+            context.close();
+        }
+
+        provider.setUseDynamicDestinations(true).setDynamicQueueCacheSize(1).setDynamicQueueOpenThreshold(2);
+        opened.clear();
+        closed.clear();
+        context = (WmqMessagingContext) provider.createContext();
+        try {
+            // 1回目はMQPUT1で送信し、2回目からオープンしたままの MQQueue を使用する
+            sendTo(context, "REPLY.A", "body");
+            assertThat(opened, is(Arrays.asList("TEST.QUEUE")));
+            sendTo(context, "REPLY.A", "body");
+            sendTo(context, "REPLY.A", "body");
+            assertThat(opened, is(Arrays.asList("TEST.QUEUE", "REPLY.A")));
+            assertThat(queueManager.getCurrentDepth("REPLY.A"), is(3));
+
+            // 最大数を超えた場合は最も長く使用されていない MQQueue をクローズする
+            sendTo(context, "REPLY.B", "body");
+            sendTo(context, "REPLY.B", "body");
+            assertThat(opened, is(Arrays.asList("TEST.QUEUE", "REPLY.A", "REPLY.B")));
+            assertThat(closed, is(Arrays.asList("REPLY.A")));
+            assertThat(queueManager.getCurrentDepth("REPLY.B"), is(2));
+        } finally {
+            context.close();
+        }
+        assertThat(closed, is(Arrays.asList("REPLY.A", "TEST.QUEUE", "REPLY.B")));
+    }
+
+    /**
+     * 送信先キュー名にない送信先に分割が必要なメッセージを送信する場合は、MQPUT1を使用せず、
+     * オープンしたままの{@link MQQueue}で送信すること。
+     */
+    @Test
+    public void testDynamicDestinationSegmentation() throws IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.defineQueue("TEST.QUEUE", 100);
+        queueManager.defineQueue("REPLY.A", 100);
+        queueManager.defineQueue("REPLY.B", 100);
+        final List<String> opened = new ArrayList<String>();
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager) {
+            @Override
+            protected MQQueue getMQQueue(MQQueueManager mqQueueManager, String queueName, int openOptions)
+                    throws MQException {
+                if (queueName != null) {
+                    opened.add(queueName);
+                }
+                return super.getMQQueue(mqQueueManager, queueName, openOptions);
+            }
+        };
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setUseXa(false);
+        provider.setSegmentSize(3);
+        provider.setUseDynamicDestinations(true).setDynamicQueueCacheSize(1).setDynamicQueueOpenThreshold(10);
+        provider.initialize();
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            // 分割が必要なメッセージは、しきい値に達していなくてもオープンした MQQueue を再利用する
+            sendTo(context, "REPLY.A", "hello world");
+            sendTo(context, "REPLY.A", "hello world");
+            assertThat(opened, is(Arrays.asList("TEST.QUEUE", "REPLY.A")));
+            assertThat(queueManager.getCurrentDepth("REPLY.A"), is(8));
+
+            // 分割が不要なメッセージはMQPUT1で送信する
+            sendTo(context, "REPLY.B", "abc");
+            assertThat(opened, is(Arrays.asList("TEST.QUEUE", "REPLY.A")));
+            assertThat(queueManager.getCurrentDepth("REPLY.B"), is(1));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 送信先ごとの{@link WmqDestinationProfile}の値でMQMDフィールドが設定されること。
+     */
+    @Test
+    public void testDestinationProfiles() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("AUDIT", "NOTIFY"));
+        provider.setUseXa(false);
+        Map<String, WmqDestinationProfile> profiles = new HashMap<String, WmqDestinationProfile>();
+        profiles.put("NOTIFY", new WmqDestinationProfile().setPersistence(false).setTimeToLive(3000).setPriority(1));
+        provider.setDestinationProfiles(profiles);
+        provider.initialize();
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            sendTo(context, "AUDIT", "audit");
+            sendTo(context, "NOTIFY", "notify");
+        } finally {
+            context.close();
+        }
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQMessage audit = get(mqQueueManager.accessQueue("AUDIT", CMQC.MQOO_INPUT_SHARED), CMQC.MQGMO_NO_SYNCPOINT);
+        assertThat(audit.persistence, is(CMQC.MQPER_PERSISTENT));
+        assertThat(audit.priority, is(0));
+
+        MQMessage notify = get(mqQueueManager.accessQueue("NOTIFY", CMQC.MQOO_INPUT_SHARED), CMQC.MQGMO_NO_SYNCPOINT);
+        assertThat(notify.persistence, is(CMQC.MQPER_NOT_PERSISTENT));
+        assertThat(notify.expiry > 0 && notify.expiry <= 30, is(true));
+        assertThat(notify.priority, is(1));
+    }
+
+    /**
+     * キュー属性のキャッシュを指定した場合は、キューに定義されたバックアウトしきい値、バックアウト再キュー名、
+     * 最大メッセージ長に従って動作すること。
+     */
+    @Test
+    public void testQueueAttributeCache() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.alterQueue("TEST.QUEUE", 3, "TEST.BOQ", 10);
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        provider.setQueueAttributeCache(new WmqQueueAttributeCache());
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        put(mqQueue, "retry", CMQC.MQPMO_NO_SYNCPOINT, 0);
+        get(mqQueue, CMQC.MQGMO_SYNCPOINT);
+        mqQueueManager.backout();
+        // 優先度を高くして、先に取り出されるようにする
+        put(mqQueue, "poison", CMQC.MQPMO_NO_SYNCPOINT, 5);
+        for (int i = 0; i < 3; i++) {
+            get(mqQueue, CMQC.MQGMO_SYNCPOINT);
+            mqQueueManager.backout();
+        }
+        mqQueue.close();
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            // しきい値に達したメッセージはバックアウト再キューに退避される
+            assertNull(context.receiveMessage("TEST.QUEUE", null, 10));
+            assertThat(queueManager.getCurrentDepth("TEST.BOQ"), is(1));
+
+            // バックアウト回数がしきい値未満のメッセージは受信できる
+            assertThat(receive(context), is("retry"));
+
+            // 最大メッセージ長を超えるメッセージはキューマネージャに転送せずに送信エラーとする
+            try {
+                send(context, "01234567890", null);
+                fail("MessagingException");
+            } catch (MessagingException e) {
+                assertThat(((MQException) e.getCause()).reasonCode, is(CMQC.MQRC_MSG_TOO_BIG_FOR_Q));
+            }
+            send(context, "0123456789", null);
+            assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(1));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * バックアウト回数の上限値を指定した場合は、キューのバックアウトしきい値より優先されること。
+     */
+    @Test
+    public void testBackoutLimitOverridesQueueAttribute() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.alterQueue("TEST.QUEUE", 1, "TEST.BOQ", 10);
+        InMemoryWmqMessagingProvider provider = createProvider(queueManager);
+        provider.setQueueAttributeCache(new WmqQueueAttributeCache());
+        provider.setBackoutLimit(5);
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        put(mqQueue, "retry", CMQC.MQPMO_NO_SYNCPOINT, 0);
+        get(mqQueue, CMQC.MQGMO_SYNCPOINT);
+        mqQueueManager.backout();
+        mqQueue.close();
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            // しきい値(1)に達しているが、指定した上限値(5)以内のため受信できる
+            assertThat(receive(context), is("retry"));
+            assertThat(queueManager.getCurrentDepth("TEST.BOQ"), is(0));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 最大メッセージ長を超える場合は、切り捨ての許可に応じてメッセージが残るか切り捨てられること。
+     */
+    @Test
+    public void testTruncated() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        byte[] messageId = put(mqQueue, "0123456789", CMQC.MQPMO_NO_SYNCPOINT, 0);
+
+        MQMessage mqMessage = new MQMessage();
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_SYNCPOINT;
+        try {
+            mqQueue.get(mqMessage, gmo, 4);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_TRUNCATED_MSG_FAILED));
+        }
+        assertThat(mqMessage.messageId, is(messageId));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(1));
+
+        gmo.options = CMQC.MQGMO_SYNCPOINT | CMQC.MQGMO_ACCEPT_TRUNCATED_MSG;
+        try {
+            mqQueue.get(mqMessage, gmo, 4);
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_TRUNCATED_MSG_ACCEPTED));
+        }
+        assertThat(mqMessage.readStringOfByteLength(mqMessage.getDataLength()), is("0123"));
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    private String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private void send(WmqMessagingContext context, String body, String region) throws IOException {
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setDestination("TEST.QUEUE");
+        sendingMessage.setHeader("region", region);
+        sendingMessage.getBodyStream().write(body.getBytes("UTF-8"));
+        context.sendMessage(sendingMessage);
+    }
+
+    private void sendTo(WmqMessagingContext context, String destination, String body) throws IOException {
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setDestination(destination);
+        sendingMessage.getBodyStream().write(body.getBytes("UTF-8"));
+        context.sendMessage(sendingMessage);
+    }
+
+    private String receive(WmqMessagingContext context) throws IOException {
+        return new String(context.receiveMessage("TEST.QUEUE", null, 10).getBodyBytes(), "UTF-8");
+    }
+
+    private BasicWmqMessageSelector createSelector(String region) {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("region", region);
+        return new BasicWmqMessageSelector().setProperties(properties);
+    }
+
+    private InMemoryWmqMessagingProvider createProvider(InMemoryQueueManager queueManager) {
+        InMemoryWmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST.QUEUE"));
+        provider.setReceivedQueueName("TEST.QUEUE");
+        provider.setUseXa(false);
+        provider.initialize();
+        return provider;
+    }
+
+    private byte[] put(MQQueue mqQueue, String body, int options, int priority) throws MQException, IOException {
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.priority = priority;
+        mqMessage.write(body.getBytes("UTF-8"));
+        MQPutMessageOptions pmo = new MQPutMessageOptions();
+        pmo.options = options;
+        mqQueue.put(mqMessage, pmo);
+        return mqMessage.messageId;
+    }
+
+    private MQMessage get(MQQueue mqQueue, int options) throws MQException {
+        MQMessage mqMessage = new MQMessage();
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = options;
+        mqQueue.get(mqMessage, gmo);
+        return mqMessage;
+    }
+}
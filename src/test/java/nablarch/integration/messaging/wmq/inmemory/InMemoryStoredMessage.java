@@ -0,0 +1,276 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link InMemoryQueue}に格納されたメッセージ。
+ * <p/>
+ * 書き込み時点の{@link MQMessage}のMQMDフィールドとメッセージプロパティ、本文を複製して保持する。
+ */
+class InMemoryStoredMessage {
+
+    /** 書き込み順を表す連番 */
+    final long sequence;
+
+    /** 有効期限(エポックミリ秒)。無制限の場合は{@link Long#MAX_VALUE} */
+    final long expireAt;
+
+    /** 本文 */
+    final byte[] body;
+
+    /** メッセージID */
+    final byte[] messageId;
+
+    /** 相関ID */
+    final byte[] correlationId;
+
+    /** グループID */
+    final byte[] groupId;
+
+    /** 優先度 */
+    final int priority;
+
+    /** バックアウト回数 */
+    int backoutCount;
+
+    /** その他のMQMDフィールドを保持する{@link MQMessage} */
+    private final MQMessage descriptor;
+
+    /** メッセージプロパティ */
+    private final Map<String, Object> properties;
+
+    /**
+     * 書き込まれた{@link MQMessage}から、格納するメッセージを生成する。
+     * @param sequence 書き込み順を表す連番
+     * @param mqMessage 書き込まれた{@link MQMessage}
+     * @throws IOException 本文の読み込みに失敗した場合
+     */
+    InMemoryStoredMessage(long sequence, MQMessage mqMessage) throws IOException {
+        this.sequence = sequence;
+        mqMessage.seek(0);
+        body = new byte[mqMessage.getDataLength()];
+        mqMessage.readFully(body);
+        messageId = mqMessage.messageId.clone();
+        correlationId = mqMessage.correlationId.clone();
+        groupId = mqMessage.groupId.clone();
+        priority = mqMessage.priority == CMQC.MQPRI_PRIORITY_AS_Q_DEF ? 0 : mqMessage.priority;
+        expireAt = mqMessage.expiry <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + mqMessage.expiry * 100L;
+        backoutCount = 0;
+
+        descriptor = new MQMessage();
+        descriptor.report = mqMessage.report;
+        descriptor.messageType = mqMessage.messageType;
+        descriptor.feedback = mqMessage.feedback;
+        descriptor.encoding = mqMessage.encoding;
+        descriptor.characterSet = mqMessage.characterSet;
+        descriptor.format = mqMessage.format;
+        descriptor.persistence = mqMessage.persistence;
+        descriptor.replyToQueueName = mqMessage.replyToQueueName;
+        descriptor.replyToQueueManagerName = mqMessage.replyToQueueManagerName;
+        descriptor.messageSequenceNumber = mqMessage.messageSequenceNumber;
+        descriptor.offset = mqMessage.offset;
+        descriptor.messageFlags = mqMessage.messageFlags;
+        descriptor.originalLength = mqMessage.originalLength;
+        descriptor.putDateTime = new GregorianCalendar();
+
+        properties = new LinkedHashMap<String, Object>();
+        try {
+            Enumeration<String> names = mqMessage.getPropertyNames("%");
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                properties.put(name, mqMessage.getObjectProperty(name));
+            }
+        } catch (MQException e) {
+            throw new IOException("failed to read message properties.", e);
+        }
+    }
+
+    /**
+     * 指定されたメッセージの本文とMQMDフィールドを置き換えたメッセージを生成する。
+     * @param source 置き換え元のメッセージ
+     * @param body 本文
+     * @param descriptor MQMDフィールドを保持する{@link MQMessage}
+     */
+    private InMemoryStoredMessage(InMemoryStoredMessage source, byte[] body, MQMessage descriptor) {
+        this.sequence = source.sequence;
+        this.expireAt = source.expireAt;
+        this.body = body;
+        this.messageId = source.messageId;
+        this.correlationId = source.correlationId;
+        this.groupId = source.groupId;
+        this.priority = source.priority;
+        this.backoutCount = source.backoutCount;
+        this.descriptor = descriptor;
+        this.properties = source.properties;
+    }
+
+    /**
+     * 論理メッセージのすべてのセグメントから、1つのメッセージに再構成したメッセージを生成する。
+     * <p/>
+     * MQMDフィールドは先頭のセグメントから引き継ぎ、セグメントであることを示すメッセージ・フラグを取り除く。
+     *
+     * @param segments オフセットの順に並んだすべてのセグメント
+     * @return 再構成したメッセージ
+     */
+    static InMemoryStoredMessage merge(List<InMemoryStoredMessage> segments) {
+        int length = 0;
+        for (InMemoryStoredMessage segment : segments) {
+            length += segment.body.length;
+        }
+        byte[] body = new byte[length];
+        int position = 0;
+        for (InMemoryStoredMessage segment : segments) {
+            System.arraycopy(segment.body, 0, body, position, segment.body.length);
+            position += segment.body.length;
+        }
+        InMemoryStoredMessage first = segments.get(0);
+        MQMessage descriptor = new MQMessage();
+        copyDescriptor(first.descriptor, descriptor);
+        descriptor.messageFlags = first.descriptor.messageFlags & ~(CMQC.MQMF_SEGMENT | CMQC.MQMF_LAST_SEGMENT);
+        descriptor.offset = 0;
+        descriptor.originalLength = length;
+        return new InMemoryStoredMessage(first, body, descriptor);
+    }
+
+    /**
+     * MQMDフィールドを複製する。
+     * @param source 複製元
+     * @param destination 複製先
+     */
+    private static void copyDescriptor(MQMessage source, MQMessage destination) {
+        destination.report = source.report;
+        destination.messageType = source.messageType;
+        destination.feedback = source.feedback;
+        destination.encoding = source.encoding;
+        destination.characterSet = source.characterSet;
+        destination.format = source.format;
+        destination.persistence = source.persistence;
+        destination.replyToQueueName = source.replyToQueueName;
+        destination.replyToQueueManagerName = source.replyToQueueManagerName;
+        destination.messageSequenceNumber = source.messageSequenceNumber;
+        destination.offset = source.offset;
+        destination.messageFlags = source.messageFlags;
+        destination.originalLength = source.originalLength;
+        destination.putDateTime = source.putDateTime;
+    }
+
+    /**
+     * セグメントであるか否かを判定する。
+     * @return セグメントの場合はtrue
+     */
+    boolean isSegment() {
+        return (descriptor.messageFlags & (CMQC.MQMF_SEGMENT | CMQC.MQMF_LAST_SEGMENT)) != 0;
+    }
+
+    /**
+     * 論理メッセージの最後のセグメントであるか否かを判定する。
+     * @return 最後のセグメントの場合はtrue
+     */
+    boolean isLastSegment() {
+        return (descriptor.messageFlags & CMQC.MQMF_LAST_SEGMENT) != 0;
+    }
+
+    /**
+     * 論理メッセージ内のオフセットを取得する。
+     * @return オフセット
+     */
+    int getOffset() {
+        return descriptor.offset;
+    }
+
+    /**
+     * 有効期限が切れているか否かを判定する。
+     * @param now 現在時刻(エポックミリ秒)
+     * @return 有効期限が切れている場合はtrue
+     */
+    boolean isExpired(long now) {
+        return expireAt <= now;
+    }
+
+    /**
+     * 読み込み時の条件に一致するか否かを判定する。
+     * <p/>
+     * 条件に{@link CMQC#MQMI_NONE}などの未設定値が指定された項目は、すべてのメッセージに一致する。
+     *
+     * @param matchOptions 読み込み時の突合オプション
+     * @param messageId 突合するメッセージID
+     * @param correlationId 突合する相関ID
+     * @param groupId 突合するグループID
+     * @return 条件に一致する場合はtrue
+     */
+    boolean matches(int matchOptions, byte[] messageId, byte[] correlationId, byte[] groupId) {
+        if ((matchOptions & CMQC.MQMO_MATCH_MSG_ID) != 0
+                && !Arrays.equals(messageId, CMQC.MQMI_NONE) && !Arrays.equals(messageId, this.messageId)) {
+            return false;
+        }
+        if ((matchOptions & CMQC.MQMO_MATCH_CORREL_ID) != 0
+                && !Arrays.equals(correlationId, CMQC.MQCI_NONE) && !Arrays.equals(correlationId, this.correlationId)) {
+            return false;
+        }
+        if ((matchOptions & CMQC.MQMO_MATCH_GROUP_ID) != 0
+                && !Arrays.equals(groupId, CMQC.MQGI_NONE) && !Arrays.equals(groupId, this.groupId)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 読み込み先の{@link MQMessage}にMQMDフィールドと本文を設定する。
+     * @param mqMessage 読み込み先の{@link MQMessage}
+     * @throws IOException 本文の書き込みに失敗した場合
+     */
+    void copyTo(MQMessage mqMessage) throws IOException {
+        copyTo(mqMessage, body.length);
+    }
+
+    /**
+     * 読み込み先の{@link MQMessage}にMQMDフィールドとメッセージプロパティ、本文の先頭から指定された長さまでを設定する。
+     * @param mqMessage 読み込み先の{@link MQMessage}
+     * @param length 設定する本文の長さ
+     * @throws IOException 本文の書き込みに失敗した場合
+     */
+    void copyTo(MQMessage mqMessage, int length) throws IOException {
+        mqMessage.report = descriptor.report;
+        mqMessage.messageType = descriptor.messageType;
+        mqMessage.feedback = descriptor.feedback;
+        mqMessage.encoding = descriptor.encoding;
+        mqMessage.characterSet = descriptor.characterSet;
+        mqMessage.format = descriptor.format;
+        mqMessage.priority = priority;
+        mqMessage.persistence = descriptor.persistence;
+        mqMessage.messageId = messageId.clone();
+        mqMessage.correlationId = correlationId.clone();
+        mqMessage.groupId = groupId.clone();
+        mqMessage.backoutCount = backoutCount;
+        mqMessage.replyToQueueName = descriptor.replyToQueueName;
+        mqMessage.replyToQueueManagerName = descriptor.replyToQueueManagerName;
+        mqMessage.putDateTime = (GregorianCalendar) descriptor.putDateTime.clone();
+        mqMessage.messageSequenceNumber = descriptor.messageSequenceNumber;
+        mqMessage.offset = descriptor.offset;
+        mqMessage.messageFlags = descriptor.messageFlags;
+        mqMessage.originalLength = descriptor.originalLength;
+        mqMessage.expiry = expireAt == Long.MAX_VALUE
+                ? CMQC.MQEI_UNLIMITED
+                : (int) Math.max(1L, (expireAt - System.currentTimeMillis()) / 100L);
+        try {
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                mqMessage.setObjectProperty(property.getKey(), property.getValue());
+            }
+        } catch (MQException e) {
+            throw new IOException("failed to write message properties.", e);
+        }
+        mqMessage.clearMessage();
+        mqMessage.write(body, 0, Math.min(length, body.length));
+        mqMessage.seek(0);
+    }
+}
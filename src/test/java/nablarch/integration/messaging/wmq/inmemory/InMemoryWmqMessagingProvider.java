@@ -0,0 +1,56 @@
+package nablarch.integration.messaging.wmq.inmemory;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.integration.messaging.wmq.provider.WmqMessagingProvider;
+
+/**
+ * {@link InMemoryQueueManager}に接続する{@link WmqMessagingProvider}。
+ * <p/>
+ * IBM MQをインストールしていない環境で、アダプタを含めた負荷試験やベンチマークを行うために使用する。
+ * <p/>
+ * {@link #setUseXa(boolean)}にtrueを指定した場合は、同期点内の書き込みと読み込み、および
+ * begin/commit/backoutによる作業単位を、{@link InMemoryQueueManager}がIBM MQと同じ意味で扱う。
+ * コミットまでは書き込んだメッセージを他の接続から読み込めず、バックアウトした読み込みは
+ * バックアウト回数を加算してキューに戻す。このため、同期点とバックアウト回数に依存する処理を試験できる。
+ * <p/>
+ * データベースとの分散トランザクションには対応しないため、{@link #getJdbcConnection(MQQueueManager, javax.sql.XADataSource)}は
+ * 常に例外を送出する。データベース接続を使用する処理を試験する場合は、同メソッドをオーバーライドすること。
+ */
+public class InMemoryWmqMessagingProvider extends WmqMessagingProvider {
+
+    /** 接続先のキューマネージャ */
+    private final InMemoryQueueManager queueManager;
+
+    /**
+     * コンストラクタ。
+     * @param queueManager 接続先のキューマネージャ
+     */
+    public InMemoryWmqMessagingProvider(InMemoryQueueManager queueManager) {
+        this.queueManager = queueManager;
+        setQueueManagerName(queueManager.getName());
+    }
+
+    /**
+     * {@link InMemoryQueueManager}に接続する。
+     * @return {@link MQQueueManager}
+     * @throws MQException キューマネージャが接続不可に設定されている場合
+     */
+    @Override
+    protected MQQueueManager createMQQueueManager() throws MQException {
+        if (!queueManager.isAvailable()) {
+            throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_Q_MGR_NOT_AVAILABLE, this);
+        }
+        return queueManager.connect();
+    }
+
+    /**
+     * 接続先のキューマネージャを取得する。
+     * @return 接続先のキューマネージャ
+     */
+    public InMemoryQueueManager getQueueManager() {
+        return queueManager;
+    }
+}
@@ -0,0 +1,48 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQMessage;
+
+import org.junit.Test;
+
+/**
+ * {@link BasicWmqMessageSelector}のテスト
+ */
+public class BasicWmqMessageSelectorTest {
+
+    /**
+     * すべてのメッセージプロパティの値が一致するメッセージのみを選択すること。
+     */
+    @Test
+    public void testSelect() throws MQException {
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("region", "EAST");
+        properties.put("level", "3");
+        BasicWmqMessageSelector selector = new BasicWmqMessageSelector().setProperties(properties);
+
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.setStringProperty("region", "EAST");
+        mqMessage.setIntProperty("level", 3);
+        assertThat(selector.select(mqMessage), is(true));
+
+        mqMessage = new MQMessage();
+        mqMessage.setStringProperty("region", "WEST");
+        mqMessage.setIntProperty("level", 3);
+        assertThat(selector.select(mqMessage), is(false));
+
+        // メッセージプロパティが存在しない
+        mqMessage = new MQMessage();
+        mqMessage.setStringProperty("region", "EAST");
+        assertThat(selector.select(mqMessage), is(false));
+
+        // 条件が指定されない場合はすべてのメッセージを選択する
+        assertThat(new BasicWmqMessageSelector().select(new MQMessage()), is(true));
+    }
+}
@@ -3,8 +3,11 @@ package nablarch.integration.messaging.wmq.provider;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.nio.charset.Charset;
+import java.util.GregorianCalendar;
+import java.util.Map;
 
 import com.ibm.mq.MQException;
 import com.ibm.mq.MQMessage;
@@ -222,6 +225,20 @@ public class BasicWmqMqmdFieldsOperatorTest {
         assertThat(receivedMessage.getMessageId(), is("414D51205445535420202020202020205A24D84E20000F02"));
         assertThat(receivedMessage.getCorrelationId(), is("414D51205445535420202020202020205A24D84E2FFFFF04"));
         assertThat(receivedMessage.getReplyTo(), is("TEST.RESPONSE"));
+        assertNull(receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.GROUP_ID_HEADER));
+
+        // グループIDが設定されている場合
+
+        mqMessage = new MQMessage();
+        mqMessage.messageId = BinaryUtil.convertHexToBytes("414D51205445535420202020202020205A24D84E20000F02");
+        mqMessage.groupId = BinaryUtil.convertHexToBytes("414D51205445535420202020202020205A24D84E20000F01");
+
+        receivedMessage = new ReceivedMessage("dummy".getBytes());
+
+        mqmdOperator.getFieldsAfterReceive(mqMessage, receivedMessage);
+
+        assertThat(receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.GROUP_ID_HEADER),
+                   is((Object) "414D51205445535420202020202020205A24D84E20000F01"));
 
         // メッセージIDのみ設定されている場合
 
@@ -251,4 +268,112 @@ public class BasicWmqMqmdFieldsOperatorTest {
         assertNull(receivedMessage.getCorrelationId());
         assertNull(receivedMessage.getReplyTo());
     }
+
+    /**
+     * useMessagePropertiesがtrueの場合は、ヘッダとメッセージプロパティが対応付けられること。
+     */
+    @Test
+    public void testMessageProperties() throws MQException {
+
+        BasicWmqMqmdFieldsOperator mqmdOperator = new BasicWmqMqmdFieldsOperator();
+
+        // デフォルトは対応付けない
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setHeader("orderType", "EXPRESS");
+        MQMessage mqMessage = new MQMessage();
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        assertThat(mqMessage.getPropertyNames("%").hasMoreElements(), is(false));
+
+        ReceivedMessage receivedMessage = new ReceivedMessage("dummy".getBytes());
+        mqmdOperator.getFieldsAfterReceive(mqMessage, receivedMessage);
+        assertNull(receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.MESSAGE_PROPERTIES_HEADER));
+
+        // 対応付ける場合
+        mqmdOperator.setUseMessageProperties(true);
+
+        sendingMessage = new SendingMessage();
+        sendingMessage.setCorrelationId("414D51205445535420202020202020205A24D84E2FFFFF04");
+        sendingMessage.setHeader("orderType", "EXPRESS");
+        sendingMessage.setHeader("order-count", 3);
+        sendingMessage.setHeader("1st.branch", new StringBuilder("TOKYO"));
+        sendingMessage.setHeader("nullValue", null);
+        mqMessage = new MQMessage();
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+
+        assertThat(mqMessage.getObjectProperty("orderType"), is((Object) "EXPRESS"));
+        assertThat(mqMessage.getObjectProperty("order_count"), is((Object) 3));
+        assertThat(mqMessage.getObjectProperty("_1st.branch"), is((Object) "TOKYO"));
+        try {
+            mqMessage.getObjectProperty("CorrelationId");
+            fail("MQException");
+        } catch (MQException e) {
+            assertThat(e.reasonCode, is(CMQC.MQRC_PROPERTY_NOT_AVAILABLE));
+        }
+
+        receivedMessage = new ReceivedMessage("dummy".getBytes());
+        mqmdOperator.getFieldsAfterReceive(mqMessage, receivedMessage);
+        WmqMessageProperties properties = (WmqMessageProperties)
+                receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.MESSAGE_PROPERTIES_HEADER);
+
+        assertThat(properties.get("orderType"), is((Object) "EXPRESS"));
+        assertThat(properties.get("order-count"), is((Object) 3));
+        assertNull(properties.get("unknown"));
+
+        Map<String, Object> all = properties.getAll();
+        assertThat(all.size(), is(3));
+        assertThat(all.get("orderType"), is((Object) "EXPRESS"));
+        assertThat(all.get("order-count"), is((Object) 3));
+        assertThat(all.get("1st.branch"), is((Object) "TOKYO"));
+    }
+
+    /**
+     * メッセージの優先度がヘッダ、キューのデフォルトの順に決定され、受信時にヘッダに設定されること。
+     * 送信先ごとの優先度は{@link WmqDestinationProfileTest}で確認する。
+     */
+    @Test
+    public void testPriority() throws MQException {
+
+        BasicWmqMqmdFieldsOperator mqmdOperator = new BasicWmqMqmdFieldsOperator();
+
+        // キューのデフォルト
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setDestination("BATCH.QUEUE");
+        MQMessage mqMessage = new MQMessage();
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        assertThat(mqMessage.priority, is(CMQC.MQPRI_PRIORITY_AS_Q_DEF));
+
+        // ヘッダ(数値と文字列)
+        sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, 2);
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        assertThat(mqMessage.priority, is(2));
+        sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, "9");
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        assertThat(mqMessage.priority, is(9));
+
+        // 範囲外
+        sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, 10);
+        try {
+            mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+            fail("must be thrown the IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("priority must be between 0 and 9. priority = [10]"));
+        }
+        sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, "HIGH");
+        try {
+            mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+            fail("must be thrown the IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("invalid priority. priority = [HIGH]"));
+        }
+
+        // 受信
+        mqMessage = new MQMessage();
+        mqMessage.priority = 4;
+        mqMessage.putDateTime = new GregorianCalendar(2024, 0, 2, 3, 4, 5);
+        ReceivedMessage receivedMessage = new ReceivedMessage("dummy".getBytes());
+        mqmdOperator.getFieldsAfterReceive(mqMessage, receivedMessage);
+        assertThat(receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER), is((Object) 4));
+        assertThat(receivedMessage.getHeaderMap().get(BasicWmqMqmdFieldsOperator.PUT_DATE_TIME_HEADER),
+                   is((Object) mqMessage.putDateTime.getTime()));
+    }
 }
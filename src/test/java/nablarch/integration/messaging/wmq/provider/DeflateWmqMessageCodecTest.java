@@ -0,0 +1,63 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+/**
+ * {@link DeflateWmqMessageCodec}のテスト
+ */
+public class DeflateWmqMessageCodecTest {
+
+    /**
+     * 圧縮した本文を復号すると元の本文に戻ること。
+     */
+    @Test
+    public void testEncodeAndDecode() throws IOException {
+
+        byte[] body = new byte[100000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('A' + i % 26);
+        }
+
+        for (int level : new int[] {Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+            DeflateWmqMessageCodec codec = new DeflateWmqMessageCodec().setLevel(level);
+            byte[] encoded = codec.encode(body);
+            assertThat(encoded.length < body.length / 10, is(true));
+            assertThat(codec.decode(encoded), is(body));
+        }
+
+        DeflateWmqMessageCodec codec = new DeflateWmqMessageCodec();
+        assertThat(codec.getFormat(), is("NBDEFLAT"));
+        assertThat(codec.decode(codec.encode(new byte[0])), is(new byte[0]));
+    }
+
+    /**
+     * 不正な本文を復号した場合は例外が送出されること。
+     */
+    @Test
+    public void testDecodeInvalidBody() throws IOException {
+
+        DeflateWmqMessageCodec codec = new DeflateWmqMessageCodec();
+        try {
+            codec.decode("not compressed".getBytes("UTF-8"));
+            fail("IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("invalid compressed body."));
+        }
+
+        byte[] encoded = codec.encode(new byte[1000]);
+        try {
+            codec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+            fail("IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("compressed body was truncated."));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * {@link WmqAdaptiveWaitInterval}のテスト
+ */
+public class WmqAdaptiveWaitIntervalTest {
+
+    /**
+     * 受信できなかった場合は上限値まで延び、受信できた場合は下限値まで縮むこと。
+     */
+    @Test
+    public void testAdapt() {
+
+        WmqAdaptiveWaitInterval interval = new WmqAdaptiveWaitInterval(100, 500);
+        assertThat(interval.getCurrentInterval(), is(100L));
+        assertThat(interval.getWaitInterval(1000), is(100L));
+
+        interval.empty();
+        assertThat(interval.getCurrentInterval(), is(200L));
+        interval.empty();
+        assertThat(interval.getCurrentInterval(), is(400L));
+        interval.empty();
+        assertThat(interval.getCurrentInterval(), is(500L));
+        interval.empty();
+        assertThat(interval.getCurrentInterval(), is(500L));
+
+        // 呼び出し元が指定した待機時間を超えない
+        assertThat(interval.getWaitInterval(1000), is(500L));
+        assertThat(interval.getWaitInterval(300), is(300L));
+
+        interval.received();
+        assertThat(interval.getCurrentInterval(), is(250L));
+        interval.received();
+        assertThat(interval.getCurrentInterval(), is(125L));
+        interval.received();
+        assertThat(interval.getCurrentInterval(), is(100L));
+    }
+
+    /**
+     * 不正な設定の場合は例外が送出されること。
+     */
+    @Test
+    public void testInvalidSetting() {
+
+        try {
+            new WmqAdaptiveWaitInterval(0, 500);
+            fail("IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("adaptive wait interval setting was invalid. "
+                                        + "minInterval must be greater than 0 and less than or equal to maxInterval. "
+                                        + "minInterval = [0], maxInterval = [500]"));
+        }
+
+        try {
+            new WmqAdaptiveWaitInterval(600, 500);
+            fail("IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("minInterval = [600], maxInterval = [500]"));
+        }
+    }
+}
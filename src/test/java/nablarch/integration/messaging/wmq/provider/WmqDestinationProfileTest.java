@@ -0,0 +1,97 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import nablarch.fw.messaging.SendingMessage;
+
+import org.junit.Test;
+
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.constants.CMQC;
+
+/**
+ * {@link WmqDestinationProfile}のテスト
+ */
+public class WmqDestinationProfileTest {
+
+    /**
+     * 指定したプロパティのみMQMDフィールドを上書きすること。
+     */
+    @Test
+    public void testApply() {
+
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.persistence = CMQC.MQPER_PERSISTENT;
+        mqMessage.priority = CMQC.MQPRI_PRIORITY_AS_Q_DEF;
+        mqMessage.characterSet = 1208;
+
+        new WmqDestinationProfile().apply(new SendingMessage(), mqMessage);
+        assertThat(mqMessage.persistence, is(CMQC.MQPER_PERSISTENT));
+        assertThat(mqMessage.priority, is(CMQC.MQPRI_PRIORITY_AS_Q_DEF));
+        assertThat(mqMessage.characterSet, is(1208));
+
+        new WmqDestinationProfile().setPersistence(false).setPriority(2).setCharacterSetId(943)
+                                   .apply(new SendingMessage(), mqMessage);
+        assertThat(mqMessage.persistence, is(CMQC.MQPER_NOT_PERSISTENT));
+        assertThat(mqMessage.priority, is(2));
+        assertThat(mqMessage.characterSet, is(943));
+    }
+
+    /**
+     * 送信メッセージのヘッダで指定された優先度とメッセージ存続時間は上書きしないこと。
+     */
+    @Test
+    public void testHeaderPrecedence() {
+
+        WmqDestinationProfile profile = new WmqDestinationProfile().setPriority(2);
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, 7);
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.priority = 7;
+        profile.apply(sendingMessage, mqMessage);
+        assertThat(mqMessage.priority, is(7));
+
+        // メッセージ存続時間はヘッダがない場合のデフォルト値として使用される
+        assertThat(profile.getTimeToLive(5000L), is(5000L));
+        assertThat(profile.setTimeToLive(60000L).getTimeToLive(5000L), is(60000L));
+
+        try {
+            profile.setPriority(10);
+            fail("must be thrown the IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("priority must be between 0 and 9. priority = [10]"));
+        }
+    }
+
+    /**
+     * メッセージの優先度がヘッダ、送信先プロファイル、キューのデフォルトの順に決定されること。
+     */
+    @Test
+    public void testPriorityPrecedence() throws Exception {
+
+        BasicWmqMqmdFieldsOperator mqmdOperator = new BasicWmqMqmdFieldsOperator();
+        WmqDestinationProfile profile = new WmqDestinationProfile().setPriority(8);
+
+        // キューのデフォルト
+        SendingMessage sendingMessage = new SendingMessage();
+        MQMessage mqMessage = new MQMessage();
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        new WmqDestinationProfile().apply(sendingMessage, mqMessage);
+        assertThat(mqMessage.priority, is(CMQC.MQPRI_PRIORITY_AS_Q_DEF));
+
+        // 送信先プロファイル
+        mqMessage = new MQMessage();
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        profile.apply(sendingMessage, mqMessage);
+        assertThat(mqMessage.priority, is(8));
+
+        // ヘッダ
+        sendingMessage.setHeader(BasicWmqMqmdFieldsOperator.PRIORITY_HEADER, 2);
+        mqMessage = new MQMessage();
+        mqmdOperator.setFieldsBeforeSend(sendingMessage, mqMessage, 15000);
+        profile.apply(sendingMessage, mqMessage);
+        assertThat(mqMessage.priority, is(2));
+    }
+}
@@ -6,11 +6,17 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import com.ibm.mq.MQEnvironment;
@@ -29,6 +35,8 @@ import nablarch.fw.messaging.SendingMessage;
 import nablarch.fw.messaging.provider.MessagingExceptionFactory;
 import nablarch.fw.messaging.provider.exception.BasicMessagingExceptionFactory;
 import nablarch.fw.messaging.provider.exception.MomConnectionException;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
 
 import org.junit.Test;
 
@@ -211,6 +219,42 @@ public class WmqMessagingProviderTest {
         }
     }
 
+    /**
+     * 退避キューが満杯の場合は、リトライせずにプロセスを異常終了させること。
+     */
+    @Test
+    public void testPoisonQueueFull() throws MQException, IOException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.defineQueue("TEST.POISON", 1);
+        MQQueue poisonMqQueue = queueManager.connect().accessQueue("TEST.POISON", CMQC.MQOO_OUTPUT);
+        MQMessage full = new MQMessage();
+        full.write("full".getBytes("UTF-8"));
+        MQPutMessageOptions pmo = new MQPutMessageOptions();
+        pmo.options = CMQC.MQPMO_NO_SYNCPOINT;
+        poisonMqQueue.put(full, pmo);
+
+        WmqMessagingProvider provider = new WmqMessagingProvider() {
+            @Override
+            protected void writeBackoutLimitExceededLog(MessagingException backoutLimitExceededException, MQMessage mqMessage) {
+            }
+        };
+        provider.setUseXa(false);
+        provider.setPutPoisonFailedFailureCode("POISON_FULL");
+        MQMessage m = new MQMessage();
+        m.backoutCount = 1;
+        m.write("poison".getBytes("UTF-8"));
+        try {
+            provider.processPoisonMessage(poisonMqQueue, m);
+            fail("ProcessAbnormalEnd");
+        } catch (ProcessAbnormalEnd e) {
+            assertThat(e.getStatusCode(), is(191));
+            assertThat(e.getMessageId(), is("POISON_FULL"));
+            assertThat(((MQException) e.getCause().getCause()).reasonCode, is(CMQC.MQRC_Q_FULL));
+        }
+        assertThat(queueManager.getCurrentDepth("TEST.POISON"), is(1));
+    }
+
     /**
      * {@link WmqMessagingContext}の生成時に{@link MQException}を捕捉した場合に、
      * {@link MessagingExceptionFactory#createMessagingException(String, Throwable)}
@@ -294,6 +338,16 @@ public class WmqMessagingProviderTest {
         assertThat(provider.getReceivedQueueOpenOptions(),
                    is(CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_FAIL_IF_QUIESCING));
 
+        /* メッセージを選択して受信する */
+        provider = new WmqMessagingProvider();
+        provider.setUseMessageSelector(true);
+        assertThat(provider.getReceivedQueueOpenOptions(),
+                   is(CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_FAIL_IF_QUIESCING | CMQC.MQOO_BROWSE));
+        provider = new WmqMessagingProvider();
+        provider.setMessageSelector(new BasicWmqMessageSelector());
+        assertThat(provider.getReceivedQueueOpenOptions(),
+                   is(CMQC.MQOO_INPUT_SHARED | CMQC.MQOO_FAIL_IF_QUIESCING | CMQC.MQOO_BROWSE));
+
         // MQQueueへのメッセージ書き込みを制御するオプション
 
         /* XA使用する */
@@ -446,4 +500,473 @@ public class WmqMessagingProviderTest {
             assertThat(((MQException) e.getCause()).reasonCode, is(CMQC.MQRC_Q_MGR_QUIESCING));
         }
     }
+
+    /**
+     * {@link WmqOperationListener}に操作の実行結果が通知されること。
+     */
+    @Test
+    public void testOperationListener() {
+
+        final StringBuilder events = new StringBuilder();
+        WmqOperationListener listener = new WmqOperationListener() {
+            public void connected(String queueManagerName, long elapsedNanos, int reasonCode) {
+                events.append("connected:").append(queueManagerName).append(':').append(reasonCode).append(';');
+            }
+            public void queueOpened(String queueName, int openOptions, long elapsedNanos, int reasonCode) {
+                events.append("queueOpened:").append(queueName).append(':').append(reasonCode).append(';');
+            }
+            public void messagePut(String queueName, int messageLength, long elapsedNanos, int reasonCode) {
+                events.append("messagePut:").append(queueName).append(':').append(reasonCode).append(';');
+            }
+            public void messageGot(String queueName, int messageLength, long mqGetNanos, long copyNanos, int reasonCode) {
+                events.append("messageGot:").append(queueName).append(':').append(reasonCode).append(';');
+            }
+            public void committed(String queueManagerName, long elapsedNanos, int reasonCode) {
+                events.append("committed:").append(queueManagerName).append(':').append(reasonCode).append(';');
+            }
+            public void backedOut(String queueManagerName, long elapsedNanos, int reasonCode) {
+                events.append("backedOut:").append(queueManagerName).append(':').append(reasonCode).append(';');
+            }
+            public void poisonMessageRouted(String poisonQueueName, int messageLength, int backoutCount,
+                                            long elapsedNanos, int reasonCode) {
+                events.append("poisonMessageRouted:").append(poisonQueueName).append(':').append(reasonCode).append(';');
+            }
+        };
+
+        // 接続に失敗した場合
+        WmqMessagingProvider provider = new WmqMessagingProvider() {
+            @Override
+            protected MQQueueManager createMQQueueManager() throws MQException {
+                throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_Q_MGR_NOT_AVAILABLE, null);
+            }
+        };
+        provider.setQueueManagerName("TEST.QMGR");
+        provider.setOperationListener(listener);
+        try {
+            provider.createContext();
+            fail("MomConnectionException");
+        } catch (MomConnectionException e) {
+            assertThat(events.toString(), is("connected:TEST.QMGR:" + CMQC.MQRC_Q_MGR_NOT_AVAILABLE + ";"));
+        }
+
+        // 接続に成功した場合
+        events.setLength(0);
+        provider = new WmqMessagingProvider() {
+            @Override
+            protected MQQueueManager createMQQueueManager() throws MQException {
+                return null;
+            }
+        };
+        provider.setQueueManagerName("TEST.QMGR");
+        provider.setOperationListener(listener);
+        provider.createContext();
+        assertThat(events.toString(), is("connected:TEST.QMGR:" + CMQC.MQRC_NONE + ";"));
+
+        // メッセージの書き込みに失敗した場合
+        events.setLength(0);
+        provider = new WmqMessagingProvider();
+        provider.setOperationListener(listener);
+        provider.setMqmdFieldsOperator(new BasicWmqMqmdFieldsOperator() {
+            @Override
+            public void setFieldsBeforeSend(
+                    SendingMessage sendingMessage, MQMessage mqMessage, long defaultTimeToLive)
+                    throws MQException {
+                throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_Q_MGR_NOT_AVAILABLE, null);
+            }
+            @Override
+            public void setFieldsBeforeReceive(
+                    String messageId, MQMessage mqMessage) throws MQException {
+                throw new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_NO_MSG_AVAILABLE, null);
+            }
+        });
+        try {
+            provider.putMessage(null, null);
+            fail("MomConnectionException");
+        } catch (MomConnectionException e) {
+            assertThat(events.toString(), is("messagePut:null:" + CMQC.MQRC_Q_MGR_NOT_AVAILABLE + ";"));
+        }
+
+        // 受信メッセージがない場合
+        events.setLength(0);
+        assertNull(provider.getMessage(null, null, 999, null));
+        assertThat(events.toString(), is("messageGot:null:" + CMQC.MQRC_NO_MSG_AVAILABLE + ";"));
+    }
+
+    /**
+     * メッセージIDを指定しない受信の待機時間が、適応的な待機時間に従うこと。
+     */
+    @Test
+    public void testPollingWaitInterval() {
+
+        WmqMessagingProvider provider = new WmqMessagingProvider();
+
+        // デフォルトは適応的な待機時間を使用しない
+        assertNull(provider.createAdaptiveWaitInterval());
+        assertThat(provider.getPollingWaitInterval(1000, null), is(1000));
+
+        provider.setMinAdaptiveWaitInterval(50).setMaxAdaptiveWaitInterval(400);
+        WmqAdaptiveWaitInterval adaptiveWaitInterval = provider.createAdaptiveWaitInterval();
+        assertThat(adaptiveWaitInterval.getCurrentInterval(), is(50L));
+        assertThat(provider.getPollingWaitInterval(1000, adaptiveWaitInterval), is(50));
+        adaptiveWaitInterval.empty();
+        assertThat(provider.getPollingWaitInterval(1000, adaptiveWaitInterval), is(100));
+        assertThat(provider.getPollingWaitInterval(80, adaptiveWaitInterval), is(80));
+    }
+
+    /**
+     * 受信結果に応じて適応的な待機時間が変化すること。
+     */
+    @Test
+    public void testGetMessageWithAdaptiveWaitInterval() throws MQException {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setUseXa(false);
+        provider.setMinAdaptiveWaitInterval(10).setMaxAdaptiveWaitInterval(40);
+        MQQueue mqQueue = queueManager.connect().accessQueue("TEST.QUEUE", CMQC.MQOO_INPUT_SHARED);
+
+        WmqAdaptiveWaitInterval adaptiveWaitInterval = provider.createAdaptiveWaitInterval();
+        long startTime = System.currentTimeMillis();
+        assertNull(provider.getMessage(mqQueue, null, 60000, null, adaptiveWaitInterval));
+        assertNull(provider.getMessage(mqQueue, null, 60000, null, adaptiveWaitInterval));
+        assertNull(provider.getMessage(mqQueue, null, 60000, null, adaptiveWaitInterval));
+        assertThat(System.currentTimeMillis() - startTime < 30000, is(true));
+        assertThat(adaptiveWaitInterval.getCurrentInterval(), is(40L));
+    }
+
+    /**
+     * {@link WmqMessagingContext#requestShutdownPolling()}の後は、
+     * そのコンテキストのメッセージIDを指定しない受信のみが待機せずにnullを返すこと。
+     */
+    @Test
+    public void testRequestShutdownPolling() throws Exception {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setUseXa(false);
+        provider.setReceivedQueueName("TEST.QUEUE");
+
+        MQQueue mqQueue = queueManager.connect().accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT);
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.write("test".getBytes("UTF-8"));
+        mqQueue.put(mqMessage, new MQPutMessageOptions());
+
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        WmqMessagingContext other = (WmqMessagingContext) provider.createContext();
+        assertThat(context.isShutdownPollingRequested(), is(false));
+
+        context.requestShutdownPolling();
+        assertThat(context.isShutdownPollingRequested(), is(true));
+        assertThat(other.isShutdownPollingRequested(), is(false));
+
+        // メッセージがあっても受信せず、待機もしない
+        long startTime = System.currentTimeMillis();
+        assertNull(context.receiveMessage("TEST.QUEUE", null, 60000));
+        assertNull(context.receiveMessageStream("TEST.QUEUE", null, 60000));
+        assertThat(System.currentTimeMillis() - startTime < 30000, is(true));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(1));
+
+        // 他のコンテキストの受信には影響しない
+        assertNotNull(other.receiveMessage("TEST.QUEUE", null, 1000));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+
+        context.close();
+        other.close();
+    }
+
+    /**
+     * ポイズンメッセージの障害ログが集約され、すべてのポイズンメッセージが退避キューに送信されること。
+     */
+    @Test
+    public void testPoisonLogAggregation() throws Exception {
+
+        final List<String> logs = new ArrayList<String>();
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager) {
+            @Override
+            protected void writeBackoutLimitExceededLog(MessagingException backoutLimitExceededException, MQMessage mqMessage) {
+                logs.add(backoutLimitExceededException.getMessage());
+            }
+        };
+        provider.setUseXa(false);
+        provider.setPoisonLogAggregationCount(3);
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        MQQueue poisonMqQueue = mqQueueManager.accessQueue("TEST.QUEUE.POISON", CMQC.MQOO_OUTPUT);
+
+        // 1回バックアウトされたメッセージを5件用意する
+        for (int i = 0; i < 5; i++) {
+            MQMessage mqMessage = new MQMessage();
+            mqMessage.write(("poison" + i).getBytes("UTF-8"));
+            mqQueue.put(mqMessage, new MQPutMessageOptions());
+        }
+        for (int i = 0; i < 5; i++) {
+            MQGetMessageOptions gmo = new MQGetMessageOptions();
+            gmo.options = CMQC.MQGMO_SYNCPOINT;
+            mqQueue.get(new MQMessage(), gmo);
+        }
+        mqQueueManager.backout();
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(provider.getMessage(mqQueue, null, 10, poisonMqQueue));
+        }
+
+        assertThat(logs.size(), is(2));
+        assertThat(logs.get(0).endsWith(", backoutCount = [1]"), is(true));
+        assertThat(logs.get(1).endsWith(", backoutCount = [1], poisonMessageCount = [3]"), is(true));
+        assertThat(provider.getPoisonMessageCounter().getCount("TEST.QUEUE"), is(5L));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE.POISON"), is(5));
+    }
+
+    /**
+     * ポイズンメッセージの判定のために最初に読み込む本文の長さを指定した場合に、
+     * 本文の長さに関わらず本文全体を受信でき、長いポイズンメッセージも本文全体が退避キューに送信されること。
+     */
+    @Test
+    public void testPoisonDetectionLength() throws Exception {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager) {
+            @Override
+            protected void writeBackoutLimitExceededLog(MessagingException backoutLimitExceededException, MQMessage mqMessage) {
+            }
+        };
+        provider.setUseXa(false);
+        provider.setPoisonDetectionLength(4);
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        MQQueue poisonMqQueue = mqQueueManager.accessQueue("TEST.QUEUE.POISON", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+
+        for (String body : new String[] {"abc", "long message body"}) {
+            MQMessage mqMessage = new MQMessage();
+            mqMessage.write(body.getBytes("UTF-8"));
+            mqQueue.put(mqMessage, new MQPutMessageOptions());
+        }
+        assertThat(new String(provider.getMessage(mqQueue, null, 10, poisonMqQueue).getBodyBytes(), "UTF-8"), is("abc"));
+        assertThat(new String(provider.getMessage(mqQueue, null, 10, poisonMqQueue).getBodyBytes(), "UTF-8"),
+                   is("long message body"));
+
+        // 長いポイズンメッセージ
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.write("long poison message".getBytes("UTF-8"));
+        mqQueue.put(mqMessage, new MQPutMessageOptions());
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_SYNCPOINT;
+        mqQueue.get(new MQMessage(), gmo);
+        mqQueueManager.backout();
+
+        assertNull(provider.getMessage(mqQueue, null, 10, poisonMqQueue));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+
+        MQMessage poisonMessage = new MQMessage();
+        poisonMqQueue.get(poisonMessage, new MQGetMessageOptions());
+        assertThat(poisonMessage.readStringOfByteLength(poisonMessage.getDataLength()), is("long poison message"));
+        // バックアウト回数は書き込み時にリセットされるため、元のメッセージIDを相関IDで確認する
+        assertThat(poisonMessage.backoutCount, is(0));
+        assertThat(poisonMessage.correlationId, is(mqMessage.messageId));
+    }
+
+    /**
+     * segmentSizeを指定した場合は、本文をセグメントに分割して書き込み、再構成された論理メッセージを読み込むこと。
+     */
+    @Test
+    public void testSegmentation() throws Exception {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setUseXa(true);
+        provider.setSegmentSize(4);
+        provider.setBackoutLimit(5);
+
+        MQGetMessageOptions getOpts = provider.getGetMessageOptions(null, 100);
+        assertThat(getOpts.options, is(CMQC.MQGMO_SYNCPOINT | CMQC.MQGMO_WAIT | CMQC.MQGMO_COMPLETE_MSG));
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.setVersion(CMQC.MQMD_VERSION_2);
+        provider.putSegments(mqQueue, mqMessage, "segmented message".getBytes("UTF-8"));
+        byte[] messageId = mqMessage.messageId;
+
+        // コミットまでは論理メッセージが揃わない
+        assertNull(provider.getMessage(mqQueue, null, 10, null));
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(5));
+
+        // セグメントごとの読み込みでは、すべてのセグメントが同じメッセージIDとグループIDを持つ
+        MQGetMessageOptions segmentGetOpts = new MQGetMessageOptions();
+        segmentGetOpts.options = CMQC.MQGMO_SYNCPOINT;
+        List<String> segments = new ArrayList<String>();
+        byte[] groupId = null;
+        for (int i = 0; i < 5; i++) {
+            MQMessage segment = new MQMessage();
+            mqQueue.get(segment, segmentGetOpts);
+            assertThat(segment.messageId, is(messageId));
+            if (groupId == null) {
+                groupId = segment.groupId;
+            }
+            assertThat(segment.groupId, is(groupId));
+            assertThat(segment.offset, is(i * 4));
+            assertThat(segment.messageFlags, is(i == 4 ? CMQC.MQMF_LAST_SEGMENT : CMQC.MQMF_SEGMENT));
+            segments.add(segment.readStringOfByteLength(segment.getDataLength()));
+        }
+        assertThat(segments.toString(), is("[segm, ente, d me, ssag, e]"));
+        mqQueueManager.backout();
+
+        // 再構成された論理メッセージを読み込む
+        ReceivedMessage receivedMessage = provider.getMessage(mqQueue, null, 10, null);
+        assertThat(new String(receivedMessage.getBodyBytes(), "UTF-8"), is("segmented message"));
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+    }
+
+    /**
+     * 本文をInputStreamで読み込む受信では、読み込みに応じてセグメントを1つずつ読み込むこと。
+     */
+    @Test
+    public void testGetMessageStream() throws Exception {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager) {
+            @Override
+            protected void writeBackoutLimitExceededLog(MessagingException backoutLimitExceededException, MQMessage mqMessage) {
+            }
+        };
+        provider.setUseXa(true);
+        provider.setSegmentSize(4);
+
+        MQGetMessageOptions getOpts = provider.getSegmentGetMessageOptions(null, 100);
+        assertThat(getOpts.options, is(CMQC.MQGMO_SYNCPOINT | CMQC.MQGMO_WAIT
+                                       | CMQC.MQGMO_LOGICAL_ORDER | CMQC.MQGMO_ALL_SEGMENTS_AVAILABLE));
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        MQQueue poisonMqQueue = mqQueueManager.accessQueue("TEST.QUEUE.POISON", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+
+        for (String body : new String[] {"segmented message", "second message"}) {
+            MQMessage mqMessage = new MQMessage();
+            mqMessage.setVersion(CMQC.MQMD_VERSION_2);
+            provider.putSegments(mqQueue, mqMessage, body.getBytes("UTF-8"));
+        }
+        MQMessage unsegmented = new MQMessage();
+        unsegmented.write("abc".getBytes("UTF-8"));
+        mqQueue.put(unsegmented, new MQPutMessageOptions());
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(5 + 4 + 1));
+
+        // 最初のセグメントのみが読み込まれ、残りは本文の読み込みに応じて読み込まれる
+        WmqStreamingReceivedMessage receivedMessage = provider.getMessageStream(mqQueue, null, 10, poisonMqQueue);
+        assertThat(receivedMessage.getBodyBytes().length, is(0));
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(10));
+        InputStream in = receivedMessage.getBodyInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        in.close();
+        assertThat(out.toString("UTF-8"), is("segmented message"));
+
+        // クローズ時に未読のセグメントは読み捨てられる
+        receivedMessage = provider.getMessageStream(mqQueue, null, 10, poisonMqQueue);
+        in = receivedMessage.getBodyInputStream();
+        assertThat((char) in.read(), is('s'));
+        in.close();
+        try {
+            in.read();
+            fail("IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("stream was already closed."));
+        }
+
+        // 分割されていないメッセージ
+        receivedMessage = provider.getMessageStream(mqQueue, null, 10, poisonMqQueue);
+        in = receivedMessage.getBodyInputStream();
+        byte[] body = new byte[10];
+        assertThat(in.read(body), is(3));
+        assertThat(new String(body, 0, 3, "UTF-8"), is("abc"));
+        assertThat(in.read(body), is(-1));
+        in.close();
+
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+        assertNull(provider.getMessageStream(mqQueue, null, 10, poisonMqQueue));
+
+        // ポイズンメッセージは1つのメッセージに連結して退避キューに送信される
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.setVersion(CMQC.MQMD_VERSION_2);
+        provider.putSegments(mqQueue, mqMessage, "poison message".getBytes("UTF-8"));
+        mqQueueManager.commit();
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_SYNCPOINT;
+        for (int i = 0; i < 4; i++) {
+            mqQueue.get(new MQMessage(), gmo);
+        }
+        mqQueueManager.backout();
+
+        assertNull(provider.getMessageStream(mqQueue, null, 10, poisonMqQueue));
+        mqQueueManager.commit();
+        assertThat(queueManager.getCurrentDepth("TEST.QUEUE"), is(0));
+        MQMessage poisonMessage = new MQMessage();
+        poisonMqQueue.get(poisonMessage, new MQGetMessageOptions());
+        assertThat(poisonMessage.readStringOfByteLength(poisonMessage.getDataLength()), is("poison message"));
+    }
+
+    /**
+     * messageCodecを指定した場合は、下限値以上の本文を符号化し、符号化されたメッセージのみを復号すること。
+     */
+    @Test
+    public void testMessageCodec() throws Exception {
+
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        WmqMessagingProvider provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setUseXa(false);
+        provider.setMessageCodec(new DeflateWmqMessageCodec()).setEncodeThreshold(16);
+
+        // 下限値未満の本文は符号化しない
+        MQMessage mqMessage = new MQMessage();
+        byte[] shortBody = "short".getBytes("UTF-8");
+        assertThat(provider.encodeBody(shortBody, mqMessage), is(sameInstance(shortBody)));
+        assertThat(mqMessage.format, is(CMQC.MQFMT_NONE));
+
+        // 符号化しても短くならない本文は符号化しない
+        byte[] random = new byte[64];
+        new Random(0).nextBytes(random);
+        assertThat(provider.encodeBody(random, mqMessage), is(sameInstance(random)));
+        assertThat(mqMessage.format, is(CMQC.MQFMT_NONE));
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append("<record><id>").append(i % 10).append("</id></record>");
+        }
+        byte[] body = builder.toString().getBytes("UTF-8");
+        byte[] encoded = provider.encodeBody(body, mqMessage);
+        assertThat(encoded.length < body.length / 5, is(true));
+        assertThat(mqMessage.format, is(DeflateWmqMessageCodec.FORMAT));
+
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST.QUEUE", CMQC.MQOO_OUTPUT | CMQC.MQOO_INPUT_SHARED);
+        mqMessage.write(encoded);
+        mqQueue.put(mqMessage, new MQPutMessageOptions());
+        MQMessage plainMessage = new MQMessage();
+        plainMessage.write(body);
+        mqQueue.put(plainMessage, new MQPutMessageOptions());
+
+        // 符号化されたメッセージは復号し、符号化されていないメッセージはそのまま受信する
+        assertThat(provider.getMessage(mqQueue, null, 10, null).getBodyBytes(), is(body));
+        assertThat(provider.getMessage(mqQueue, null, 10, null).getBodyBytes(), is(body));
+
+        // messageCodecを指定しない場合は復号しない
+        mqMessage = new MQMessage();
+        mqMessage.format = DeflateWmqMessageCodec.FORMAT;
+        mqMessage.write(encoded);
+        mqQueue.put(mqMessage, new MQPutMessageOptions());
+        provider.setMessageCodec(null);
+        assertThat(provider.getMessage(mqQueue, null, 10, null).getBodyBytes(), is(encoded));
+    }
 }
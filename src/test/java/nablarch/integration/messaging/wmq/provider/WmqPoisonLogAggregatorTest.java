@@ -0,0 +1,52 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * {@link WmqPoisonLogAggregator}のテスト
+ */
+public class WmqPoisonLogAggregatorTest {
+
+    /**
+     * 集約しない場合は1件ごとに出力すること。
+     */
+    @Test
+    public void testDisabled() {
+        WmqPoisonLogAggregator aggregator = new WmqPoisonLogAggregator();
+        assertThat(aggregator.isEnabled(), is(false));
+        assertThat(aggregator.aggregate(0), is(1L));
+        assertThat(aggregator.aggregate(0), is(1L));
+        assertThat(aggregator.aggregate(0), is(1L));
+    }
+
+    /**
+     * 件数を指定した場合は、最初の1件と、以降は指定件数ごとに出力すること。
+     */
+    @Test
+    public void testAggregationCount() {
+        WmqPoisonLogAggregator aggregator = new WmqPoisonLogAggregator().setAggregationCount(3);
+        assertThat(aggregator.isEnabled(), is(true));
+        assertThat(aggregator.aggregate(0), is(1L));
+        assertThat(aggregator.aggregate(0), is(0L));
+        assertThat(aggregator.aggregate(0), is(0L));
+        assertThat(aggregator.aggregate(0), is(3L));
+        assertThat(aggregator.aggregate(0), is(0L));
+    }
+
+    /**
+     * 間隔を指定した場合は、最初の1件と、以降は前回の出力から指定時間経過後に出力すること。
+     */
+    @Test
+    public void testAggregationInterval() {
+        WmqPoisonLogAggregator aggregator = new WmqPoisonLogAggregator().setAggregationInterval(1000);
+        assertThat(aggregator.aggregate(10000), is(1L));
+        assertThat(aggregator.aggregate(10100), is(0L));
+        assertThat(aggregator.aggregate(10999), is(0L));
+        assertThat(aggregator.aggregate(11000), is(3L));
+        assertThat(aggregator.aggregate(11500), is(0L));
+        assertThat(aggregator.aggregate(12000), is(2L));
+    }
+}
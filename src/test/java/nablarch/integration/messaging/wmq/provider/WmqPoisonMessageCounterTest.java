@@ -0,0 +1,33 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * {@link WmqPoisonMessageCounter}のテスト
+ */
+public class WmqPoisonMessageCounterTest {
+
+    /**
+     * 受信キューごとに件数を加算できること。
+     */
+    @Test
+    public void testIncrement() {
+        WmqPoisonMessageCounter counter = new WmqPoisonMessageCounter();
+        assertThat(counter.getCount("Q1"), is(0L));
+        assertThat(counter.getCounts().isEmpty(), is(true));
+
+        assertThat(counter.increment("Q2"), is(1L));
+        assertThat(counter.increment("Q1"), is(1L));
+        assertThat(counter.increment("Q2"), is(2L));
+
+        assertThat(counter.getCount("Q1"), is(1L));
+        assertThat(counter.getCount("Q2"), is(2L));
+        Map<String, Long> counts = counter.getCounts();
+        assertThat(counts.toString(), is("{Q1=1, Q2=2}"));
+    }
+}
@@ -0,0 +1,193 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQGetMessageOptions;
+import com.ibm.mq.MQMessage;
+import com.ibm.mq.MQPutMessageOptions;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.core.util.BinaryUtil;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
+import nablarch.test.support.SystemRepositoryResource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * {@link WmqPoisonMessageReplayer}のテスト
+ */
+public class WmqPoisonMessageReplayerTest {
+
+    @Rule
+    public SystemRepositoryResource systemRepositoryResource = new SystemRepositoryResource(
+            "nablarch/integration/messaging/wmq/inmemory/InMemoryQueueManagerTest.xml");
+
+    /** キューマネージャ */
+    private InMemoryQueueManager queueManager;
+
+    /** 再投入に使用するプロバイダ */
+    private InMemoryWmqMessagingProvider provider;
+
+    @Before
+    public void setUp() {
+        queueManager = new InMemoryQueueManager("TEST.QM");
+        provider = new InMemoryWmqMessagingProvider(queueManager);
+        provider.setSendingQueueNames(Arrays.asList("TEST"));
+        provider.setReceivedQueueName("TEST");
+        provider.setPoisonQueueName("TEST.POISON");
+        provider.setUseXa(false);
+        provider.initialize();
+    }
+
+    /**
+     * 退避キューのすべてのメッセージを、MQMDを変えずにバックアウト回数0で受信先キューに再投入できること。
+     */
+    @Test
+    public void testReplayAll() throws MQException, IOException {
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue poison = mqQueueManager.accessQueue("TEST.POISON", CMQC.MQOO_OUTPUT);
+        byte[] messageId1 = putPoison(poison, "message1", "ORIGINAL1");
+        byte[] messageId2 = putPoison(poison, "message2", "ORIGINAL2");
+        byte[] messageId3 = putPoison(poison, "message3", "ORIGINAL3");
+
+        long replayed = new WmqPoisonMessageReplayer(provider).setBatchSize(2).replay();
+
+        assertThat(replayed, is(3L));
+        assertThat(queueManager.getCurrentDepth("TEST.POISON"), is(0));
+        assertThat(queueManager.getCurrentDepth("TEST"), is(3));
+        MQQueue target = mqQueueManager.accessQueue("TEST", CMQC.MQOO_INPUT_SHARED);
+        MQMessage mqMessage = get(target);
+        assertThat(mqMessage.messageId, is(messageId1));
+        assertThat(mqMessage.correlationId, is(correlationId("ORIGINAL1")));
+        assertThat(mqMessage.backoutCount, is(0));
+        assertThat(mqMessage.getDataLength(), is("message1".length()));
+        assertThat(get(target).messageId, is(messageId2));
+        assertThat(get(target).messageId, is(messageId3));
+    }
+
+    /**
+     * 最大件数を指定した場合は、その件数で再投入を終了すること。
+     */
+    @Test
+    public void testMaxMessages() throws MQException, IOException {
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue poison = mqQueueManager.accessQueue("TEST.POISON", CMQC.MQOO_OUTPUT);
+        for (int i = 0; i < 5; i++) {
+            putPoison(poison, "message" + i, "ORIGINAL" + i);
+        }
+
+        long replayed = new WmqPoisonMessageReplayer(provider).setBatchSize(2).setMaxMessages(3).replay();
+
+        assertThat(replayed, is(3L));
+        assertThat(queueManager.getCurrentDepth("TEST.POISON"), is(2));
+        assertThat(queueManager.getCurrentDepth("TEST"), is(3));
+    }
+
+    /**
+     * 相関IDを指定した場合は、一致するメッセージのみを再投入すること。
+     */
+    @Test
+    public void testCorrelationIds() throws MQException, IOException {
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue poison = mqQueueManager.accessQueue("TEST.POISON", CMQC.MQOO_OUTPUT);
+        putPoison(poison, "message1", "ORIGINAL1");
+        byte[] messageId2 = putPoison(poison, "message2", "ORIGINAL2");
+        putPoison(poison, "message3", "ORIGINAL3");
+        byte[] messageId4 = putPoison(poison, "message4", "ORIGINAL2");
+
+        long replayed = new WmqPoisonMessageReplayer(provider)
+                .setCorrelationIds(Arrays.asList(BinaryUtil.convertToHexString(correlationId("ORIGINAL2"))))
+                .replay();
+
+        assertThat(replayed, is(2L));
+        assertThat(queueManager.getCurrentDepth("TEST.POISON"), is(2));
+        MQQueue target = mqQueueManager.accessQueue("TEST", CMQC.MQOO_INPUT_SHARED);
+        assertThat(get(target).messageId, is(messageId2));
+        assertThat(get(target).messageId, is(messageId4));
+    }
+
+    /**
+     * 日時の範囲を指定した場合は、範囲内に退避キューに書き込まれたメッセージのみを再投入すること。
+     */
+    @Test
+    public void testPutTime() throws Exception {
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue poison = mqQueueManager.accessQueue("TEST.POISON", CMQC.MQOO_OUTPUT);
+        putPoison(poison, "old", "ORIGINAL1");
+        Thread.sleep(20);
+        Date from = new Date();
+        byte[] messageId2 = putPoison(poison, "new1", "ORIGINAL2");
+        byte[] messageId3 = putPoison(poison, "new2", "ORIGINAL3");
+
+        long replayed = new WmqPoisonMessageReplayer(provider).setPutTimeFrom(from).setBatchSize(1).replay();
+
+        assertThat(replayed, is(2L));
+        assertThat(queueManager.getCurrentDepth("TEST.POISON"), is(1));
+        MQQueue target = mqQueueManager.accessQueue("TEST", CMQC.MQOO_INPUT_SHARED);
+        assertThat(get(target).messageId, is(messageId2));
+        assertThat(get(target).messageId, is(messageId3));
+    }
+
+    /**
+     * 退避キュー名が解決できない場合は例外が送出されること。
+     */
+    @Test
+    public void testNoPoisonQueueName() {
+        InMemoryWmqMessagingProvider noPoison = new InMemoryWmqMessagingProvider(queueManager);
+        noPoison.setSendingQueueNames(Arrays.asList("TEST"));
+        noPoison.setReceivedQueueName("TEST");
+        noPoison.setUseXa(false);
+        noPoison.initialize();
+        try {
+            new WmqPoisonMessageReplayer(noPoison).replay();
+            fail("IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("poisonQueueName = [null]"));
+        }
+    }
+
+    /**
+     * 1未満のバッチサイズを指定した場合は例外が送出されること。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() {
+        new WmqPoisonMessageReplayer(provider).setBatchSize(0);
+    }
+
+    private byte[] putPoison(MQQueue mqQueue, String body, String originalMessageId) throws MQException, IOException {
+        MQMessage mqMessage = new MQMessage();
+        mqMessage.correlationId = correlationId(originalMessageId);
+        mqMessage.write(body.getBytes("UTF-8"));
+        MQPutMessageOptions pmo = new MQPutMessageOptions();
+        pmo.options = CMQC.MQPMO_NO_SYNCPOINT;
+        mqQueue.put(mqMessage, pmo);
+        return mqMessage.messageId;
+    }
+
+    private byte[] correlationId(String id) {
+        byte[] correlationId = new byte[24];
+        byte[] bytes = id.getBytes();
+        System.arraycopy(bytes, 0, correlationId, 0, bytes.length);
+        return correlationId;
+    }
+
+    private MQMessage get(MQQueue mqQueue) throws MQException {
+        MQMessage mqMessage = new MQMessage();
+        MQGetMessageOptions gmo = new MQGetMessageOptions();
+        gmo.options = CMQC.MQGMO_NO_SYNCPOINT;
+        mqQueue.get(mqMessage, gmo);
+        return mqMessage;
+    }
+}
@@ -0,0 +1,94 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.test.support.SystemRepositoryResource;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * {@link WmqQueueAttributeCache}のテスト
+ */
+public class WmqQueueAttributeCacheTest {
+
+    @Rule
+    public SystemRepositoryResource systemRepositoryResource = new SystemRepositoryResource(
+            "nablarch/integration/messaging/wmq/inmemory/InMemoryQueueManagerTest.xml");
+
+    /**
+     * キューに定義された属性を問い合わせ、キャッシュできること。
+     */
+    @Test
+    public void testGetAttributes() throws MQException {
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.alterQueue("TEST", 5, "TEST.BOQ", 1024);
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST", CMQC.MQOO_INQUIRE);
+
+        WmqQueueAttributeCache cache = new WmqQueueAttributeCache();
+        assertNull(cache.getCachedAttributes("TEST"));
+
+        WmqQueueAttributes attributes = cache.getAttributes(mqQueue, "TEST");
+        assertThat(attributes.getBackoutThreshold(), is(5));
+        assertThat(attributes.getBackoutRequeueName(), is("TEST.BOQ"));
+        assertThat(attributes.getMaxMessageLength(), is(1024));
+        assertThat(attributes.getDefaultPersistence(), is(CMQC.MQPER_NOT_PERSISTENT));
+        // 索引タイプの問い合わせに失敗しても、他の属性は問い合わせられる
+        assertThat(attributes.getIndexType(), is(CMQC.MQIT_NONE));
+        assertThat(attributes.isTooLong(1024), is(false));
+        assertThat(attributes.isTooLong(1025), is(true));
+        assertThat(cache.getCachedAttributes("TEST"), is(sameInstance(attributes)));
+
+        // キャッシュの期間内はキューの定義の変更を反映しない
+        queueManager.alterQueue("TEST", 0, "", 2048);
+        assertThat(cache.getAttributes(mqQueue, "TEST"), is(sameInstance(attributes)));
+    }
+
+    /**
+     * キャッシュの期間を過ぎた場合は、問い合わせ直すこと。
+     */
+    @Test
+    public void testRefresh() throws MQException {
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.alterQueue("TEST", 5, "TEST.BOQ", 1024);
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST", CMQC.MQOO_INQUIRE);
+
+        WmqQueueAttributeCache cache = new WmqQueueAttributeCache().setRefreshInterval(0);
+        assertThat(cache.getAttributes(mqQueue, "TEST").getBackoutThreshold(), is(5));
+
+        queueManager.alterQueue("TEST", 0, "", 2048);
+        WmqQueueAttributes attributes = cache.getAttributes(mqQueue, "TEST");
+        assertThat(attributes.getBackoutThreshold(), is(0));
+        assertNull(attributes.getBackoutRequeueName());
+        assertThat(attributes.getMaxMessageLength(), is(2048));
+    }
+
+    /**
+     * 問い合わせに失敗した場合は、属性が不明な状態をキャッシュすること。
+     */
+    @Test
+    public void testInquiryFailed() throws MQException {
+        InMemoryQueueManager queueManager = new InMemoryQueueManager("TEST.QM");
+        queueManager.alterQueue("TEST", 5, "TEST.BOQ", 1024);
+        MQQueueManager mqQueueManager = queueManager.connect();
+        MQQueue mqQueue = mqQueueManager.accessQueue("TEST", CMQC.MQOO_INQUIRE);
+        mqQueue.close();
+
+        WmqQueueAttributeCache cache = new WmqQueueAttributeCache();
+        WmqQueueAttributes attributes = cache.getAttributes(mqQueue, "TEST");
+        assertThat(attributes.getBackoutThreshold(), is(0));
+        assertNull(attributes.getBackoutRequeueName());
+        assertThat(attributes.isTooLong(Integer.MAX_VALUE), is(false));
+        assertThat(cache.getCachedAttributes("TEST"), is(sameInstance(attributes)));
+    }
+}
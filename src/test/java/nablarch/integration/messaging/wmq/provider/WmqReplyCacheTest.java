@@ -0,0 +1,192 @@
+package nablarch.integration.messaging.wmq.provider;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+
+import org.junit.Test;
+
+/**
+ * {@link WmqReplyCache}のテスト
+ */
+public class WmqReplyCacheTest {
+
+    /**
+     * 送信先と本文が一致する要求には、保持している応答メッセージの複製が返されること。
+     */
+    @Test
+    public void testCache() throws Exception {
+
+        WmqReplyCache cache = new WmqReplyCache().setDestinations(Arrays.asList("RATE"));
+        CountingSender sender = new CountingSender("reply");
+
+        assertThat(cache.isCacheable(createRequest("RATE", "USD")), is(true));
+        assertThat(cache.isCacheable(createRequest("ORDER", "USD")), is(false));
+
+        ReceivedMessage first = cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        ReceivedMessage second = cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        assertThat(sender.count.get(), is(1));
+        assertThat(new String(second.getBodyBytes(), "UTF-8"), is("reply"));
+        assertThat(second, not(sameInstance(first)));
+
+        cache.getReply(createRequest("RATE", "EUR"), 1000, sender);
+        assertThat(sender.count.get(), is(2));
+        assertThat(cache.size(), is(2));
+
+        cache.clear();
+        cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        assertThat(sender.count.get(), is(3));
+    }
+
+    /**
+     * 保持期間が経過した応答メッセージと、最大件数を超えて参照されていない応答メッセージは破棄されること。
+     */
+    @Test
+    public void testEviction() throws Exception {
+
+        WmqReplyCache cache = new WmqReplyCache().setDestinations(Arrays.asList("RATE")).setTimeToLive(50);
+        CountingSender sender = new CountingSender("reply");
+
+        cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        Thread.sleep(100);
+        cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        assertThat(sender.count.get(), is(2));
+
+        cache = new WmqReplyCache().setDestinations(Arrays.asList("RATE")).setMaxSize(2);
+        sender = new CountingSender("reply");
+        cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        cache.getReply(createRequest("RATE", "EUR"), 1000, sender);
+        cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        cache.getReply(createRequest("RATE", "JPY"), 1000, sender);
+        assertThat(sender.count.get(), is(3));
+        assertThat(cache.size(), is(2));
+
+        // 最も長く参照されていないEURが破棄されている
+        cache.getReply(createRequest("RATE", "USD"), 1000, sender);
+        assertThat(sender.count.get(), is(3));
+        cache.getReply(createRequest("RATE", "EUR"), 1000, sender);
+        assertThat(sender.count.get(), is(4));
+
+        try {
+            cache.setMaxSize(0);
+            fail("must be thrown the IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("maxSize must be greater than 0. maxSize = [0]"));
+        }
+    }
+
+    /**
+     * 同時に行われた同じ要求は、1回の送信に集約されること。
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+
+        final WmqReplyCache cache = new WmqReplyCache().setDestinations(Arrays.asList("RATE"));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        final Callable<ReceivedMessage> sender = new Callable<ReceivedMessage>() {
+            public ReceivedMessage call() throws Exception {
+                count.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return new ReceivedMessage("reply".getBytes("UTF-8"));
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<ReceivedMessage>> futures = new ArrayList<Future<ReceivedMessage>>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(executor.submit(new Callable<ReceivedMessage>() {
+                    public ReceivedMessage call() throws Exception {
+                        return cache.getReply(createRequest("RATE", "USD"), 0, sender);
+                    }
+                }));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<ReceivedMessage> future : futures) {
+                assertThat(new String(future.get().getBodyBytes(), "UTF-8"), is("reply"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(count.get(), is(1));
+    }
+
+    /**
+     * 応答がなかった場合と例外が送出された場合は、キャッシュされないこと。
+     */
+    @Test
+    public void testNotCached() throws Exception {
+
+        WmqReplyCache cache = new WmqReplyCache().setDestinations(Arrays.asList("RATE"));
+
+        final AtomicInteger count = new AtomicInteger();
+        Callable<ReceivedMessage> timeout = new Callable<ReceivedMessage>() {
+            public ReceivedMessage call() {
+                count.incrementAndGet();
+                return null;
+            }
+        };
+        assertThat(cache.getReply(createRequest("RATE", "USD"), 10, timeout), is(nullValue()));
+        assertThat(cache.getReply(createRequest("RATE", "USD"), 10, timeout), is(nullValue()));
+        assertThat(count.get(), is(2));
+
+        Callable<ReceivedMessage> failure = new Callable<ReceivedMessage>() {
+            public ReceivedMessage call() {
+                throw new MessagingException("test failure");
+            }
+        };
+        try {
+            cache.getReply(createRequest("RATE", "USD"), 10, failure);
+            fail("must be thrown the MessagingException.");
+        } catch (MessagingException e) {
+            assertThat(e.getMessage(), is("test failure"));
+        }
+        assertThat(cache.size(), is(0));
+    }
+
+    private static SendingMessage createRequest(String destination, String body) throws Exception {
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setDestination(destination);
+        sendingMessage.getBodyStream().write(body.getBytes("UTF-8"));
+        return sendingMessage;
+    }
+
+    /**
+     * 呼び出し回数を数える同期送信の処理。
+     */
+    private static final class CountingSender implements Callable<ReceivedMessage> {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final String reply;
+
+        private CountingSender(String reply) {
+            this.reply = reply;
+        }
+
+        public ReceivedMessage call() throws Exception {
+            count.incrementAndGet();
+            return new ReceivedMessage(reply.getBytes("UTF-8"));
+        }
+    }
+}
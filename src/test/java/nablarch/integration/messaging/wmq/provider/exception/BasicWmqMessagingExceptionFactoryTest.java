@@ -9,6 +9,7 @@ import java.io.OutputStreamWriter;
 import com.ibm.mq.MQException;
 import com.ibm.mq.constants.CMQC;
 
+import nablarch.fw.handler.retry.Retryable;
 import nablarch.fw.messaging.MessagingException;
 import nablarch.fw.messaging.provider.exception.MomConnectionException;
 
@@ -86,4 +87,24 @@ public class BasicWmqMessagingExceptionFactoryTest {
         assertThat(e, instanceOf(MessagingException.class));
         assertSame(e.getCause(), cause);
     }
+
+    /**
+     * 発生した例外がキューの満杯を示す場合に、リトライ可能な{@link WmqQueueFullException}が生成されること。
+     */
+    @Test
+    public void testCatchReasonCodeForQueueFull() {
+
+        BasicWmqMessagingExceptionFactory factory = new BasicWmqMessagingExceptionFactory();
+        Throwable cause = new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_Q_FULL, null);
+        MessagingException e = factory.createMessagingException("dummy", cause);
+        assertThat(e, instanceOf(WmqQueueFullException.class));
+        assertThat(e, instanceOf(Retryable.class));
+        assertSame(e.getCause(), cause);
+
+        // causeにMQExceptionが設定されている場合
+        cause = new RuntimeException("fuga", new MQException(CMQC.MQCC_FAILED, CMQC.MQRC_Q_FULL, null));
+        e = factory.createMessagingException("dummy", cause);
+        assertThat(e, instanceOf(WmqQueueFullException.class));
+        assertSame(e.getCause(), cause);
+    }
 }
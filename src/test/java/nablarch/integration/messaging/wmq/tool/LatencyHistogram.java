@@ -0,0 +1,132 @@
+package nablarch.integration.messaging.wmq.tool;
+
+/**
+ * レイテンシ(単位:nsec)の分布を記録するヒストグラム。
+ * <p/>
+ * 値を2のべき乗ごとに64分割したバケットに集計するため、パーセンタイル値の誤差は最大で約1.6%となる。
+ * 記録数に関わらず使用するメモリは一定であり、長時間の計測でも全件を保持する必要がない。
+ * <p/>
+ * スレッドセーフではないため、スレッドごとに生成し、集計時に{@link #add(LatencyHistogram)}で合算すること。
+ */
+public class LatencyHistogram {
+
+    /** 値をそのまま添字とする範囲の上限(この値を含まない) */
+    private static final int LINEAR_LIMIT = 128;
+
+    /** 2のべき乗ごとの分割数 */
+    private static final int SUB_BUCKETS = 64;
+
+    /** バケット */
+    private final long[] counts = new long[LINEAR_LIMIT + (63 - 6) * SUB_BUCKETS];
+
+    /** 記録数 */
+    private long count;
+
+    /** 合計値 */
+    private long sum;
+
+    /** 最大値 */
+    private long max;
+
+    /**
+     * 値を記録する。負の値は0として記録する。
+     * @param value 値(単位:nsec)
+     */
+    public void record(long value) {
+        long v = Math.max(0L, value);
+        counts[indexOf(v)]++;
+        count++;
+        sum += v;
+        max = Math.max(max, v);
+    }
+
+    /**
+     * 指定されたヒストグラムの記録内容を合算する。
+     * @param other 合算するヒストグラム
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * 記録数を取得する。
+     * @return 記録数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 最大値を取得する。
+     * @return 最大値(単位:nsec)。記録がない場合は0
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * 平均値を取得する。
+     * @return 平均値(単位:nsec)。記録がない場合は0
+     */
+    public long getMean() {
+        return count == 0 ? 0L : sum / count;
+    }
+
+    /**
+     * パーセンタイル値を取得する。
+     * <p/>
+     * 該当するバケットの上限値を返す。ただし最大値を超えることはない。
+     *
+     * @param percentile パーセンタイル(0より大きく100以下)
+     * @return パーセンタイル値(単位:nsec)。記録がない場合は0
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0d);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long accumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 値に対応するバケットの添字を取得する。
+     * @param value 値
+     * @return 添字
+     */
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * バケットに含まれる値の上限を取得する。
+     * @param index 添字
+     * @return 上限値
+     */
+    private static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long mantissa = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,92 @@
+package nablarch.integration.messaging.wmq.tool;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * {@link LatencyHistogram}のテスト
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * 記録がない場合は、すべての値が0となること。
+     */
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getMax(), is(0L));
+        assertThat(histogram.getMean(), is(0L));
+        assertThat(histogram.getPercentile(99), is(0L));
+    }
+
+    /**
+     * 小さい値は誤差なく集計されること。
+     */
+    @Test
+    public void testLinearRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getMax(), is(100L));
+        assertThat(histogram.getMean(), is(50L));
+        assertThat(histogram.getPercentile(50), is(50L));
+        assertThat(histogram.getPercentile(99), is(99L));
+        assertThat(histogram.getPercentile(100), is(100L));
+    }
+
+    /**
+     * 大きい値のパーセンタイル値は、誤差が約1.6%以内の上限値となり、最大値を超えないこと。
+     */
+    @Test
+    public void testRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000L);
+        }
+        histogram.record(5000000L);
+
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 1000L && p50 <= 1016L);
+        assertThat(histogram.getPercentile(100), is(5000000L));
+        assertThat(histogram.getMax(), is(5000000L));
+    }
+
+    /**
+     * 負の値は0として記録されること。
+     */
+    @Test
+    public void testNegativeValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5L);
+        assertThat(histogram.getCount(), is(1L));
+        assertThat(histogram.getMax(), is(0L));
+        assertThat(histogram.getPercentile(100), is(0L));
+    }
+
+    /**
+     * 合算した場合は、記録数、最大値、分布が合算されること。
+     */
+    @Test
+    public void testAdd() {
+        LatencyHistogram first = new LatencyHistogram();
+        first.record(10L);
+        first.record(20L);
+        LatencyHistogram second = new LatencyHistogram();
+        second.record(30L);
+        second.record(40L);
+
+        first.add(second);
+        assertThat(first.getCount(), is(4L));
+        assertThat(first.getMax(), is(40L));
+        assertThat(first.getMean(), is(25L));
+        assertThat(first.getPercentile(50), is(20L));
+        assertThat(first.getPercentile(75), is(30L));
+        assertThat(second.getCount(), is(2L));
+    }
+}
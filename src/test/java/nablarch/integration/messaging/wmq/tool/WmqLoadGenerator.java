@@ -0,0 +1,434 @@
+package nablarch.integration.messaging.wmq.tool;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.integration.messaging.wmq.WmqBenchmarkSupport;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryQueueManager;
+import nablarch.integration.messaging.wmq.inmemory.InMemoryWmqMessagingProvider;
+import nablarch.integration.messaging.wmq.provider.BasicWmqMqmdFieldsOperator;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingContext;
+import nablarch.integration.messaging.wmq.provider.WmqMessagingProvider;
+
+/**
+ * {@link WmqMessagingContext#sendMessage(SendingMessage)}と
+ * {@link WmqMessagingContext#receiveMessage(String, String, long)}を経由した送受信のスループットとレイテンシを計測する負荷生成ツール。
+ * <pre>
+ * 送信スレッドと受信スレッドを指定された数だけ起動し、ウォームアップ後の計測時間内に受信したメッセージについて、
+ * 送信から受信までのレイテンシ(本文の先頭8バイトに埋め込んだ送信時刻との差)を集計する。
+ * 送信スレッドと受信スレッドは同じプロセス内で動作するため、時刻には{@link System#nanoTime()}を使用する。
+ *
+ * 引数は"--名前=値"の形式で指定する。
+ *
+ *     --queueManager  接続するキューマネージャ名称。省略した場合は{@link InMemoryQueueManager}を使用する
+ *     --queue         送受信に使用するキュー名(デフォルト:LOADGEN.QUEUE)
+ *     --size          本文のサイズ(単位:byte、8以上、デフォルト:1024)
+ *     --persistent    永続メッセージを使用する場合はtrue(デフォルト:false)
+ *     --xa            XAを使用する場合はtrue(デフォルト:false)。送受信ごとにbegin/commitを行う
+ *     --producers     送信スレッド数(デフォルト:1)
+ *     --consumers     受信スレッド数(デフォルト:1)
+ *     --warmup        ウォームアップ時間(単位:sec、デフォルト:5)
+ *     --duration      計測時間(単位:sec、デフォルト:30)
+ *     --timeout       受信のタイムアウト値(単位:msec、デフォルト:1000)
+ *
+ * 実キューマネージャへの接続は{@link WmqMessagingProvider}と同様にバインディングモードで行う。
+ *
+ * 結果は"名前=値"の形式で1行ずつ標準出力に出力する。項目と順序は固定であり、
+ * リリース間で結果ファイルを比較(diff)できる。レイテンシの単位はマイクロ秒とする。
+ *
+ *     mvn -P benchmark test-compile exec:exec@load-generator -Dloadgen.args="--size=4096 --producers=4 --consumers=4"
+ * </pre>
+ */
+public final class WmqLoadGenerator {
+
+    /** 送信時刻を埋め込むバイト数 */
+    private static final int TIMESTAMP_LENGTH = 8;
+
+    /** 引数のデフォルト値 */
+    private static final Map<String, String> DEFAULT_OPTIONS = new LinkedHashMap<String, String>();
+
+    static {
+        DEFAULT_OPTIONS.put("queueManager", "");
+        DEFAULT_OPTIONS.put("queue", "LOADGEN.QUEUE");
+        DEFAULT_OPTIONS.put("size", "1024");
+        DEFAULT_OPTIONS.put("persistent", "false");
+        DEFAULT_OPTIONS.put("xa", "false");
+        DEFAULT_OPTIONS.put("producers", "1");
+        DEFAULT_OPTIONS.put("consumers", "1");
+        DEFAULT_OPTIONS.put("warmup", "5");
+        DEFAULT_OPTIONS.put("duration", "30");
+        DEFAULT_OPTIONS.put("timeout", "1000");
+    }
+
+    /** 引数 */
+    private final Map<String, String> options;
+
+    /** 送信に使用する本文の雛形 */
+    private final byte[] bodyTemplate;
+
+    /** 計測開始時刻(単位:nsec) */
+    private long measureStart;
+
+    /** 計測終了時刻(単位:nsec) */
+    private long measureEnd;
+
+    /** 送信スレッドの停止を指示する場合はtrue */
+    private volatile boolean producersStopped = false;
+
+    /** 受信スレッドの停止を指示する場合はtrue */
+    private volatile boolean consumersStopped = false;
+
+    /** 計測時間内に送信したメッセージ数 */
+    private final AtomicLong sent = new AtomicLong();
+
+    /** 計測時間内に受信したメッセージ数 */
+    private final AtomicLong received = new AtomicLong();
+
+    /** 送信エラー数 */
+    private final AtomicLong sendErrors = new AtomicLong();
+
+    /** 受信エラー数 */
+    private final AtomicLong receiveErrors = new AtomicLong();
+
+    /** 受信スレッドごとのレイテンシ */
+    private final List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+
+    /**
+     * 負荷生成ツールを実行する。
+     * @param args 引数
+     * @throws Exception 実行に失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        new WmqLoadGenerator(parseOptions(args)).run(System.out);
+    }
+
+    /**
+     * コンストラクタ。
+     * @param options 引数
+     */
+    WmqLoadGenerator(Map<String, String> options) {
+        this.options = options;
+        int size = getInt("size");
+        if (size < TIMESTAMP_LENGTH) {
+            throw new IllegalArgumentException(
+                    String.format("size must be greater than or equal to %s. size = [%s]", TIMESTAMP_LENGTH, size));
+        }
+        bodyTemplate = WmqBenchmarkSupport.createBody(size);
+    }
+
+    /**
+     * 引数を解析する。
+     * @param args 引数
+     * @return 引数(キーは名前)。指定されなかった引数にはデフォルト値を設定する
+     * @throws IllegalArgumentException 引数の形式が不正な場合、または未知の引数が指定された場合
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<String, String>(DEFAULT_OPTIONS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException(
+                        String.format("argument must be --name=value. argument = [%s], names = %s",
+                                      arg, DEFAULT_OPTIONS.keySet()));
+            }
+            String name = arg.substring(2, separator);
+            if (!DEFAULT_OPTIONS.containsKey(name)) {
+                throw new IllegalArgumentException(
+                        String.format("unknown argument. name = [%s], names = %s", name, DEFAULT_OPTIONS.keySet()));
+            }
+            options.put(name, arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * 負荷を生成し、結果を出力する。
+     * @param out 結果の出力先
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    void run(PrintStream out) throws InterruptedException {
+
+        WmqBenchmarkSupport.loadSystemRepository();
+        final WmqMessagingProvider provider = createProvider();
+        final String queue = options.get("queue");
+        final boolean xa = getBoolean("xa");
+        final long timeout = getInt("timeout");
+
+        int producers = getInt("producers");
+        int consumers = getInt("consumers");
+        final CountDownLatch finished = new CountDownLatch(producers + consumers);
+
+        long now = System.nanoTime();
+        measureStart = now + TimeUnit.SECONDS.toNanos(getInt("warmup"));
+        measureEnd = measureStart + TimeUnit.SECONDS.toNanos(getInt("duration"));
+
+        final CountDownLatch producersFinished = new CountDownLatch(producers);
+        for (int i = 0; i < producers; i++) {
+            start("producer-" + i, new Runnable() {
+                public void run() {
+                    try {
+                        produce(provider, queue, xa);
+                    } finally {
+                        producersFinished.countDown();
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < consumers; i++) {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histograms.add(histogram);
+            start("consumer-" + i, new Runnable() {
+                public void run() {
+                    try {
+                        consume(provider, queue, xa, timeout, histogram);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+
+        TimeUnit.NANOSECONDS.sleep(measureEnd - System.nanoTime());
+        producersStopped = true;
+        producersFinished.await();
+        // 送信済みのメッセージを受信し終えるまで待つ
+        TimeUnit.MILLISECONDS.sleep(timeout);
+        consumersStopped = true;
+        finished.await();
+
+        report(out);
+    }
+
+    /**
+     * 送信スレッドの処理を行う。
+     * @param provider プロバイダ
+     * @param queue キュー名
+     * @param xa XAを使用する場合はtrue
+     */
+    private void produce(WmqMessagingProvider provider, String queue, boolean xa) {
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            byte[] body = bodyTemplate.clone();
+            while (!producersStopped) {
+                long sendTime = System.nanoTime();
+                writeTimestamp(body, sendTime);
+                SendingMessage sendingMessage = new SendingMessage();
+                sendingMessage.setDestination(queue);
+                try {
+                    sendingMessage.getBodyStream().write(body);
+                    if (xa) {
+                        context.begin();
+                    }
+                    context.sendMessage(sendingMessage);
+                    if (xa) {
+                        context.commit();
+                    }
+                    if (isMeasuring(sendTime)) {
+                        sent.incrementAndGet();
+                    }
+                } catch (MessagingException e) {
+                    sendErrors.incrementAndGet();
+                    backoutQuietly(context, xa);
+                } catch (IOException e) {
+                    sendErrors.incrementAndGet();
+                }
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 受信スレッドの処理を行う。
+     * @param provider プロバイダ
+     * @param queue キュー名
+     * @param xa XAを使用する場合はtrue
+     * @param timeout 受信のタイムアウト値(単位:msec)
+     * @param histogram レイテンシの記録先
+     */
+    private void consume(WmqMessagingProvider provider, String queue, boolean xa, long timeout,
+                         LatencyHistogram histogram) {
+        WmqMessagingContext context = (WmqMessagingContext) provider.createContext();
+        try {
+            while (!consumersStopped) {
+                try {
+                    if (xa) {
+                        context.begin();
+                    }
+                    ReceivedMessage receivedMessage = context.receiveMessage(queue, null, timeout);
+                    if (xa) {
+                        context.commit();
+                    }
+                    if (receivedMessage == null) {
+                        continue;
+                    }
+                    long receiveTime = System.nanoTime();
+                    long sendTime = readTimestamp(receivedMessage.getBodyBytes());
+                    if (isMeasuring(sendTime)) {
+                        received.incrementAndGet();
+                        histogram.record(receiveTime - sendTime);
+                    }
+                } catch (MessagingException e) {
+                    receiveErrors.incrementAndGet();
+                    backoutQuietly(context, xa);
+                }
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 結果を出力する。
+     * @param out 結果の出力先
+     */
+    private void report(PrintStream out) {
+        LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            total.add(histogram);
+        }
+        double seconds = getInt("duration");
+        String queueManager = options.get("queueManager");
+
+        out.println("target=" + (queueManager.length() == 0 ? "in-memory" : queueManager));
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (!"queueManager".equals(option.getKey())) {
+                out.println("option." + option.getKey() + "=" + option.getValue());
+            }
+        }
+        out.println("sent=" + sent.get());
+        out.println("received=" + received.get());
+        out.println("errors.send=" + sendErrors.get());
+        out.println("errors.receive=" + receiveErrors.get());
+        out.println("throughput.sent.msgsPerSec=" + String.format(Locale.ROOT, "%.1f", sent.get() / seconds));
+        out.println("throughput.received.msgsPerSec=" + String.format(Locale.ROOT, "%.1f", received.get() / seconds));
+        out.println("latency.count=" + total.getCount());
+        out.println("latency.meanMicros=" + toMicros(total.getMean()));
+        out.println("latency.p50Micros=" + toMicros(total.getPercentile(50.0d)));
+        out.println("latency.p90Micros=" + toMicros(total.getPercentile(90.0d)));
+        out.println("latency.p99Micros=" + toMicros(total.getPercentile(99.0d)));
+        out.println("latency.p99.9Micros=" + toMicros(total.getPercentile(99.9d)));
+        out.println("latency.maxMicros=" + toMicros(total.getMax()));
+    }
+
+    /**
+     * {@link WmqMessagingProvider}を生成する。
+     * @return {@link WmqMessagingProvider}
+     */
+    private WmqMessagingProvider createProvider() {
+        String queueManager = options.get("queueManager");
+        WmqMessagingProvider provider;
+        if (queueManager.length() == 0) {
+            provider = new InMemoryWmqMessagingProvider(new InMemoryQueueManager("LOADGEN.QM"));
+        } else {
+            provider = new WmqMessagingProvider().setQueueManagerName(queueManager);
+        }
+        provider.setSendingQueueNames(Arrays.asList(options.get("queue")))
+                .setReceivedQueueName(options.get("queue"))
+                .setMqmdFieldsOperator(new BasicWmqMqmdFieldsOperator().setPersistence(getBoolean("persistent")));
+        provider.setUseXa(getBoolean("xa"));
+        provider.initialize();
+        return provider;
+    }
+
+    /**
+     * 計測時間内の時刻か否かを判定する。
+     * @param time 時刻(単位:nsec)
+     * @return 計測時間内の場合はtrue
+     */
+    private boolean isMeasuring(long time) {
+        return time - measureStart >= 0 && time - measureEnd < 0;
+    }
+
+    /**
+     * 例外を送出せずにバックアウトする。
+     * @param context コンテキスト
+     * @param xa XAを使用する場合はtrue
+     */
+    private static void backoutQuietly(WmqMessagingContext context, boolean xa) {
+        if (!xa) {
+            return;
+        }
+        try {
+            context.backout();
+        } catch (MessagingException ignored) {
+            // 計測を継続するため無視する
+        }
+    }
+
+    /**
+     * デーモンスレッドで処理を開始する。
+     * @param name スレッド名
+     * @param task 処理
+     */
+    private static void start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 本文の先頭に時刻を書き込む。
+     * @param body 本文
+     * @param time 時刻(単位:nsec)
+     */
+    private static void writeTimestamp(byte[] body, long time) {
+        for (int i = TIMESTAMP_LENGTH - 1; i >= 0; i--) {
+            body[i] = (byte) time;
+            time >>>= 8;
+        }
+    }
+
+    /**
+     * 本文の先頭から時刻を読み込む。
+     * @param body 本文
+     * @return 時刻(単位:nsec)
+     */
+    private static long readTimestamp(byte[] body) {
+        long time = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            time = (time << 8) | (body[i] & 0xFF);
+        }
+        return time;
+    }
+
+    /**
+     * nsecをマイクロ秒に変換する。
+     * @param nanos 時間(単位:nsec)
+     * @return 時間(単位:マイクロ秒)
+     */
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * 数値の引数を取得する。
+     * @param name 名前
+     * @return 値
+     */
+    private int getInt(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    /**
+     * 真偽値の引数を取得する。
+     * @param name 名前
+     * @return 値
+     */
+    private boolean getBoolean(String name) {
+        return Boolean.parseBoolean(options.get(name));
+    }
+}